@@ -0,0 +1,148 @@
+package suncertify.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import suncertify.db.DBAccess;
+import suncertify.db.Data;
+import suncertify.sockets.RecordSocketClient;
+import suncertify.sockets.RecordSocketServer;
+import suncertify.sockets.ServerMode;
+
+/**
+ * Class <code>ConnectionLoadTest</code> is a command line tool that shows how
+ * many threads the server needs to hold many concurrent client connections.<br>
+ * Tool starts {@link RecordSocketServer} on loopback interface in the given
+ * mode, opens the given amount of {@link RecordSocketClient} connections, makes
+ * each client read a record and then, while all the connections are still
+ * open, reports count of live platform threads of Java machine. Clients do not
+ * create threads, so the count is mostly the threads of the server.<br>
+ * Usage:
+ * 
+ * <pre>
+ * java suncertify.bench.ConnectionLoadTest [mode [clients [database [port]]]]
+ * </pre>
+ * 
+ * where mode is one of {@link ServerMode} names (VIRTUAL by default), clients
+ * is amount of connections (2000 by default), database is path to the
+ * database file to copy (db-2x3.db by default) and port is server port (9877
+ * by default).
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class ConnectionLoadTest {
+	/**
+	 * amount of threads that open client connections
+	 */
+	private final static int CONNECTING_THREADS = 16;
+
+	/**
+	 * Runs the test.
+	 * 
+	 * @param args
+	 *         command line arguments: mode, clients, database, port
+	 * @throws Exception
+	 *          on any test error
+	 */
+	public static void main(String[] args) throws Exception {
+		ServerMode mode = args.length > 0 ? ServerMode.valueOf(args[0]
+				.toUpperCase()) : ServerMode.VIRTUAL;
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		String database = args.length > 2 ? args[2] : "db-2x3.db";
+		int port = args.length > 3 ? Integer.parseInt(args[3]) : 9877;
+
+		File copy = File.createTempFile("load", ".db");
+		copy.deleteOnExit();
+		copyFile(new File(database), copy);
+		Data data = new Data(copy.getPath());
+		final long[] recNos = data.findByCriteria(new String[] { "", "", "", "",
+				"", "" });
+		if (recNos.length == 0)
+			throw new IllegalArgumentException("database has no records");
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int threadsBefore = threads.getThreadCount();
+		RecordSocketServer server = new RecordSocketServer(data, port, 1000, mode);
+		server.start();
+
+		final String host = "127.0.0.1";
+		final int serverPort = port;
+		final List<DBAccess> connections = new ArrayList<DBAccess>();
+		ExecutorService connecting = Executors
+				.newFixedThreadPool(CONNECTING_THREADS);
+		List<Future<DBAccess>> futures = new ArrayList<Future<DBAccess>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < clients; i++) {
+			final int number = i;
+			futures.add(connecting.submit(new Callable<DBAccess>() {
+				public DBAccess call() throws Exception {
+					DBAccess client = new RecordSocketClient(host, serverPort);
+					client.readRecord(recNos[number % recNos.length]);
+					return client;
+				}
+			}));
+		}
+		int failed = 0;
+		for (Future<DBAccess> future : futures) {
+			try {
+				connections.add(future.get());
+			} catch (Exception e) {
+				failed++;
+			}
+		}
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		connecting.shutdown();
+		int threadsWithClients = threads.getThreadCount();
+
+		System.out.println("mode:                  " + mode);
+		System.out.println("connected clients:     " + connections.size());
+		System.out.println("failed clients:        " + failed);
+		System.out.println("connecting time, ms:   " + elapsed);
+		System.out.println("threads before server: " + threadsBefore);
+		System.out.println("threads with clients:  " + threadsWithClients);
+		System.out.println("peak threads:          " + threads.getPeakThreadCount());
+
+		server.stop();
+		System.exit(0);
+	}
+
+	/**
+	 * Copies file.
+	 * 
+	 * @param from
+	 *         source file
+	 * @param to
+	 *         destination file
+	 * @throws IOException
+	 *          on reading or writing error
+	 */
+	private static void copyFile(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buf = new byte[8192];
+				int len;
+				while ((len = in.read(buf)) > 0) {
+					out.write(buf, 0, len);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package suncertify.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import suncertify.db.Data;
+import suncertify.db.DataSettings;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.StorageType;
+
+/**
+ * Class <code>DataJmhBenchmark</code> measures reading, searching, creating
+ * and deleting, and locking of records by {@link Data} with JMH harness, which
+ * forks the measured JVM, keeps the results from being optimized away and
+ * reports confidence intervals.<br>
+ * Database file of each size is generated by {@link DatabaseGenerator} once
+ * per trial. Usage:
+ * 
+ * <pre>
+ * mvn -B package
+ * java -jar target/bench/benchmarks.jar DataJmhBenchmark [-p records=1000] [-p storage=MAPPED]
+ * </pre>
+ * 
+ * Path to the template database file is given by system property
+ * <code>bench.template</code> (db-2x3.db by default), relative to the working
+ * directory of the forked JVM.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataJmhBenchmark {
+	/**
+	 * logger of the database layer, kept referenced so its level is not lost
+	 */
+	private final static Logger DB_LOGGER = Logger.getLogger("suncertify.db");
+
+	/**
+	 * amount of records in database
+	 */
+	@Param( { "1000", "100000", "1000000" })
+	public int records;
+	/**
+	 * name of {@link StorageType} of database
+	 */
+	@Param( { "FILE" })
+	public String storage;
+
+	/**
+	 * generated database file
+	 */
+	private File file;
+	/**
+	 * database operating object
+	 */
+	private Data data;
+	/**
+	 * criteria that match all the records
+	 */
+	private String[] all;
+	/**
+	 * criteria that match a few records by prefix of the name
+	 */
+	private String[] selective;
+	/**
+	 * criteria that match nothing
+	 */
+	private String[] none;
+	/**
+	 * criteria that check all the records by the field that is not indexed
+	 */
+	private String[] scan;
+	/**
+	 * fields of created records
+	 */
+	private String[] sample;
+
+	/**
+	 * Generates database file and opens it.
+	 * 
+	 * @throws IOException
+	 *          on generating or opening error
+	 * @throws RecordNotFoundException
+	 *          if generated database has no sample records
+	 */
+	@Setup
+	public void setUp() throws IOException, RecordNotFoundException {
+		DB_LOGGER.setLevel(Level.OFF);
+		File template = new File(System.getProperty("bench.template",
+				"db-2x3.db"));
+		file = DatabaseGenerator.generateTemporary(template, records);
+		DataSettings settings = new DataSettings();
+		settings.setStorageType(StorageType.valueOf(storage.toUpperCase()));
+		data = new Data(file.getPath(), settings);
+		all = new String[] { "", "", "", "", "", "" };
+		selective = new String[] { data.readRecord(records / 2)[0].trim(), "",
+				"", "", "", "" };
+		none = new String[] { "No such contractor", "", "", "", "", "" };
+		scan = new String[] { "", "", "", "", "$85", "" };
+		sample = data.readRecord(0);
+	}
+
+	/**
+	 * Deletes generated database file.
+	 */
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Random numbers generator of the measuring thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		/**
+		 * random numbers generator
+		 */
+		private final Random random = new Random();
+	}
+
+	/**
+	 * Reads random record.
+	 * 
+	 * @param cursor
+	 *         random numbers of the thread
+	 * @return fields of record
+	 * @throws RecordNotFoundException
+	 *          never, all the records are valid
+	 */
+	@Benchmark
+	public String[] readRecord(Cursor cursor) throws RecordNotFoundException {
+		return data.readRecord(cursor.random.nextInt(records));
+	}
+
+	/**
+	 * Finds all the records.
+	 * 
+	 * @return numbers of records
+	 */
+	@Benchmark
+	public long[] findAll() {
+		return data.findByCriteria(all);
+	}
+
+	/**
+	 * Finds a few records by prefix of the name.
+	 * 
+	 * @return numbers of records
+	 */
+	@Benchmark
+	public long[] findByPrefix() {
+		return data.findByCriteria(selective);
+	}
+
+	/**
+	 * Finds nothing by the name.
+	 * 
+	 * @return numbers of records, empty
+	 */
+	@Benchmark
+	public long[] findNone() {
+		return data.findByCriteria(none);
+	}
+
+	/**
+	 * Finds records by the field that is not indexed.
+	 * 
+	 * @return numbers of records
+	 */
+	@Benchmark
+	public long[] findByScan() {
+		return data.findByCriteria(scan);
+	}
+
+	/**
+	 * Creates record and deletes it, so the size of database does not change.
+	 * 
+	 * @return number of created record
+	 * @throws Exception
+	 *          on any database error
+	 */
+	@Benchmark
+	public long createDelete() throws Exception {
+		long recNo = data.createRecord(sample);
+		long cookie = data.lockRecord(recNo);
+		data.deleteRecord(recNo, cookie);
+		data.unlock(recNo, cookie);
+		return recNo;
+	}
+
+	/**
+	 * Locks and unlocks the same record by 4 threads.
+	 * 
+	 * @return locking cookie
+	 * @throws Exception
+	 *          on any database error
+	 */
+	@Benchmark
+	@Threads(4)
+	public long lockUnlockContended() throws Exception {
+		long cookie = data.lockRecord(0);
+		data.unlock(0, cookie);
+		return cookie;
+	}
+}
@@ -0,0 +1,167 @@
+package suncertify.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import suncertify.db.DBAccess;
+
+/**
+ * Class <code>DatabaseGenerator</code> creates database files of the given
+ * size for benchmarks and load tests.<br>
+ * Generated file has the same header as the template database file. Records
+ * repeat valid records of the template in turn, and the name of contractor is
+ * followed by the number of the turn, so the names are almost unique while
+ * locations and specialties have the same distribution as in the template.
+ * Usage:
+ * 
+ * <pre>
+ * java suncertify.bench.DatabaseGenerator records file [template]
+ * </pre>
+ * 
+ * where records is amount of records, file is path to the created file and
+ * template is path to the template database file (db-2x3.db by default).
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class DatabaseGenerator {
+	/**
+	 * character encoding of database file
+	 */
+	private final static String ENCODING = "US-ASCII";
+	/**
+	 * flag byte of valid record
+	 */
+	private final static byte VALID = 0x00;
+	/**
+	 * byte that pads fields
+	 */
+	private final static byte SPACE = 0x20;
+
+	/**
+	 * Creates database file.
+	 * 
+	 * @param args
+	 *         command line arguments: records, file, template
+	 * @throws IOException
+	 *          on reading or writing error
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out
+					.println("usage: java suncertify.bench.DatabaseGenerator records file [template]");
+			return;
+		}
+		int records = Integer.parseInt(args[0]);
+		File template = new File(args.length > 2 ? args[2] : "db-2x3.db");
+		generate(template, new File(args[1]), records);
+	}
+
+	/**
+	 * Creates temporary database file that is deleted when Java machine exits.
+	 * 
+	 * @param template
+	 *         template database file
+	 * @param records
+	 *         amount of records
+	 * @return created file
+	 * @throws IOException
+	 *          on reading or writing error
+	 */
+	public static File generateTemporary(File template, int records)
+			throws IOException {
+		File file = File.createTempFile("db" + records + "-", ".db");
+		file.deleteOnExit();
+		generate(template, file, records);
+		return file;
+	}
+
+	/**
+	 * Creates database file.
+	 * 
+	 * @param template
+	 *         template database file
+	 * @param target
+	 *         created file
+	 * @param records
+	 *         amount of records
+	 * @throws IOException
+	 *          on reading or writing error
+	 */
+	public static void generate(File template, File target, int records)
+			throws IOException {
+		int recordLength = 0;
+		for (int length : DBAccess.FIELD_LENGTH) {
+			recordLength += length;
+		}
+		byte[] header;
+		List<byte[]> samples = new ArrayList<byte[]>();
+		DataInputStream in = new DataInputStream(new FileInputStream(template));
+		try {
+			header = readHeader(in);
+			byte[] record = new byte[recordLength + 1];
+			while (in.read(record, 0, 1) == 1) {
+				in.readFully(record, 1, recordLength);
+				if (record[0] == VALID)
+					samples.add(record.clone());
+			}
+		} finally {
+			in.close();
+		}
+		if (samples.isEmpty())
+			throw new IOException("template has no valid records");
+
+		int nameLength = DBAccess.FIELD_LENGTH[0];
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(target),
+				1 << 16);
+		try {
+			out.write(header);
+			for (int i = 0; i < records; i++) {
+				byte[] record = samples.get(i % samples.size()).clone();
+				String name = new String(record, 1, nameLength, ENCODING).trim() + " "
+						+ i / samples.size();
+				byte[] bytes = name.getBytes(ENCODING);
+				Arrays.fill(record, 1, 1 + nameLength, SPACE);
+				System.arraycopy(bytes, 0, record, 1, Math.min(bytes.length,
+						nameLength));
+				out.write(record);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads header of database file: magic cookie, amount of fields and
+	 * description of each field.
+	 * 
+	 * @param in
+	 *         stream positioned at the beginning of file
+	 * @return bytes of header
+	 * @throws IOException
+	 *          on reading error
+	 */
+	private static byte[] readHeader(DataInputStream in) throws IOException {
+		byte[] start = new byte[6];
+		in.readFully(start);
+		int fields = ((start[4] & 0xFF) << 8) | (start[5] & 0xFF);
+		byte[] header = start;
+		for (int i = 0; i < fields; i++) {
+			int nameLength = in.readUnsignedByte();
+			byte[] field = new byte[nameLength + 2];
+			field[0] = (byte) nameLength;
+			in.readFully(field, 1, nameLength + 1);
+			byte[] joined = Arrays.copyOf(header, header.length + field.length);
+			System.arraycopy(field, 0, joined, header.length, field.length);
+			header = joined;
+		}
+		return header;
+	}
+}
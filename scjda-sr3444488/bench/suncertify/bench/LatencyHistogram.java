@@ -0,0 +1,154 @@
+package suncertify.bench;
+
+/**
+ * Class <code>LatencyHistogram</code> is a histogram of latencies with
+ * logarithmic buckets of fixed relative precision.<br>
+ * Values less than 256 are counted exactly. Larger values are counted in
+ * buckets which width is less than 1 percent of the value, so the percentiles
+ * are reported with the same relative precision from microseconds to minutes,
+ * and the histogram takes fixed amount of memory regardless of amount of
+ * recorded values. Histogram is not thread safe, each thread records its own
+ * histogram and the histograms are merged by {@link #add(LatencyHistogram)}.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class LatencyHistogram {
+	/**
+	 * amount of bits of value kept by bucket number
+	 */
+	private final static int SUB_BUCKET_BITS = 7;
+	/**
+	 * amount of buckets with the same width
+	 */
+	private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * counts of values in buckets
+	 */
+	private final long[] counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS
+			+ SUB_BUCKETS];
+	/**
+	 * amount of recorded values
+	 */
+	private long count;
+	/**
+	 * sum of recorded values
+	 */
+	private long sum;
+	/**
+	 * maximum recorded value
+	 */
+	private long max;
+
+	/**
+	 * Records value.
+	 * 
+	 * @param value
+	 *         value, negative values are recorded as 0
+	 */
+	void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts[indexOf(value)]++;
+		count++;
+		sum += value;
+		if (value > max)
+			max = value;
+	}
+
+	/**
+	 * Adds all the values recorded by other histogram.
+	 * 
+	 * @param other
+	 *         histogram to add
+	 */
+	void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Returns amount of recorded values.
+	 * 
+	 * @return amount of recorded values
+	 */
+	long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns maximum recorded value.
+	 * 
+	 * @return maximum value or 0 if no values are recorded
+	 */
+	long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns mean of recorded values.
+	 * 
+	 * @return mean value or 0 if no values are recorded
+	 */
+	double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Returns value which is not less than the given percent of recorded values.
+	 * Value is the upper bound of the bucket, but not more than the maximum
+	 * recorded value.
+	 * 
+	 * @param percentile
+	 *         percent of values from 0 to 100
+	 * @return value at percentile or 0 if no values are recorded
+	 */
+	long getValueAtPercentile(double percentile) {
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100 * count);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(highestValueOf(i), max);
+		}
+		return max;
+	}
+
+	/**
+	 * Returns number of bucket of value.
+	 * 
+	 * @param value
+	 *         not negative value
+	 * @return number of bucket
+	 */
+	private static int indexOf(long value) {
+		if (value < 2 * SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Returns the highest value counted in bucket.
+	 * 
+	 * @param index
+	 *         number of bucket
+	 * @return the highest value of bucket
+	 */
+	private static long highestValueOf(int index) {
+		if (index < 2 * SUB_BUCKETS)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long mantissa = index - shift * SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,382 @@
+package suncertify.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import suncertify.db.ExtendedDBAccess;
+import suncertify.db.VersionedRecord;
+import suncertify.db.Data;
+import suncertify.sockets.RecordSocketClient;
+import suncertify.sockets.RecordSocketServer;
+import suncertify.sockets.ServerMode;
+
+/**
+ * Class <code>SocketLoadTest</code> is a command line tool that loads
+ * {@link RecordSocketServer} by many concurrent {@link RecordSocketClient}
+ * connections and reports latencies of the commands.<br>
+ * Tool generates database file by {@link DatabaseGenerator}, starts the server
+ * on loopback interface in the given mode and runs one thread per client. Each
+ * client repeats operations chosen at random with the given weights until the
+ * time is up:
+ * <ul>
+ * <li>find - search of the records by location;</li>
+ * <li>read - reading of random record;</li>
+ * <li>modify - locking of random record, reading it, booking it for random
+ * owner and unlocking;</li>
+ * <li>add - creating of record, locking, deleting and unlocking it;</li>
+ * <li>book - booking of ten random records for random owner by one
+ * request;</li>
+ * <li>edit - reading of random record with its version and booking it for
+ * random owner if the version is not changed, without locking.</li>
+ * </ul>
+ * Latency of each command is recorded by {@link LatencyHistogram}, so the tool
+ * prints percentiles 50, 99 and 99.9 of each command along with throughput.
+ * Usage:
+ * 
+ * <pre>
+ * java suncertify.bench.SocketLoadTest [mode [clients [seconds [mix [records [port]]]]]]
+ * </pre>
+ * 
+ * where mode is one of {@link ServerMode} names (THREADED by default), clients
+ * is amount of connections (100 by default), seconds is duration of the test
+ * (30 by default), mix is comma separated weights of operations
+ * (find=20,read=50,modify=25,add=5,book=0,edit=0 by default), records is amount of records
+ * in generated database (10000 by default) and port is server port (9878 by
+ * default). Database is generated from db-2x3.db of current directory.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class SocketLoadTest {
+	/**
+	 * names of operations in the order of their weights
+	 */
+	private final static String[] OPERATIONS = { "find", "read", "modify",
+			"add", "book", "edit" };
+	/**
+	 * names of measured commands
+	 */
+	private final static String[] COMMANDS = { "FIND", "READ", "LOCK", "UPDATE",
+			"UNLOCK", "CREATE", "DELETE", "BOOK", "VREAD", "VUPDATE" };
+	/**
+	 * number of find command
+	 */
+	private final static int FIND = 0;
+	/**
+	 * number of read command
+	 */
+	private final static int READ = 1;
+	/**
+	 * number of lock command
+	 */
+	private final static int LOCK = 2;
+	/**
+	 * number of update command
+	 */
+	private final static int UPDATE = 3;
+	/**
+	 * number of unlock command
+	 */
+	private final static int UNLOCK = 4;
+	/**
+	 * number of create command
+	 */
+	private final static int CREATE = 5;
+	/**
+	 * number of delete command
+	 */
+	private final static int DELETE = 6;
+	/**
+	 * number of book command
+	 */
+	private final static int BOOK = 7;
+	/**
+	 * number of versioned read command
+	 */
+	private final static int VREAD = 8;
+	/**
+	 * number of versioned update command
+	 */
+	private final static int VUPDATE = 9;
+	/**
+	 * amount of records booked by one book command
+	 */
+	private final static int BOOK_BATCH = 10;
+
+	/**
+	 * logger of the application, kept referenced so its level is not lost
+	 */
+	private final static Logger LOGGER = Logger.getLogger("suncertify");
+
+	/**
+	 * Runs the test.
+	 * 
+	 * @param args
+	 *         command line arguments: mode, clients, seconds, mix, records, port
+	 * @throws Exception
+	 *          on any test error
+	 */
+	public static void main(String[] args) throws Exception {
+		ServerMode mode = args.length > 0 ? ServerMode.valueOf(args[0]
+				.toUpperCase()) : ServerMode.THREADED;
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+		int[] weights = parseMix(args.length > 3 ? args[3]
+				: "find=20,read=50,modify=25,add=5");
+		final int records = args.length > 4 ? Integer.parseInt(args[4]) : 10000;
+		int port = args.length > 5 ? Integer.parseInt(args[5]) : 9878;
+
+		LOGGER.setLevel(Level.OFF);
+		File file = DatabaseGenerator.generateTemporary(new File("db-2x3.db"),
+				records);
+		Data data = new Data(file.getPath());
+		final List<String> locations = new ArrayList<String>();
+		for (int i = 0; i < records && i < 100; i++) {
+			String location = data.readRecord(i)[1].trim();
+			if (!locations.contains(location))
+				locations.add(location);
+		}
+		final String[] sample = data.readRecord(0);
+
+		RecordSocketServer server = new RecordSocketServer(data, port, 1000, mode);
+		server.start();
+
+		final int[] cumulative = new int[weights.length];
+		int total = 0;
+		for (int i = 0; i < weights.length; i++) {
+			total += weights[i];
+			cumulative[i] = total;
+		}
+		final int weightSum = total;
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] deadline = new long[1];
+		final LatencyHistogram[][] histograms = new LatencyHistogram[clients][];
+		final long[] errors = new long[clients];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < clients; i++) {
+			final int number = i;
+			final ExtendedDBAccess client = new RecordSocketClient("127.0.0.1", port);
+			histograms[i] = new LatencyHistogram[COMMANDS.length];
+			for (int c = 0; c < COMMANDS.length; c++) {
+				histograms[i][c] = new LatencyHistogram();
+			}
+			Thread thread = new Thread() {
+				public void run() {
+					Random random = new Random(number);
+					LatencyHistogram[] latencies = histograms[number];
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while (System.nanoTime() < deadline[0]) {
+						int choice = random.nextInt(weightSum);
+						int operation = 0;
+						while (choice >= cumulative[operation]) {
+							operation++;
+						}
+						try {
+							runOperation(operation, client, random, records, locations,
+									sample, latencies);
+						} catch (Exception e) {
+							errors[number]++;
+						}
+					}
+				}
+			};
+			thread.setName("LOAD_CLIENT_" + i);
+			threads.add(thread);
+			thread.start();
+		}
+
+		long begin = System.nanoTime();
+		deadline[0] = begin + seconds * 1000000000L;
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		double elapsed = (System.nanoTime() - begin) / 1e9;
+		server.stop();
+
+		LatencyHistogram[] merged = new LatencyHistogram[COMMANDS.length];
+		long errorCount = 0;
+		for (int c = 0; c < COMMANDS.length; c++) {
+			merged[c] = new LatencyHistogram();
+			for (int i = 0; i < clients; i++) {
+				merged[c].add(histograms[i][c]);
+			}
+		}
+		for (long e : errors) {
+			errorCount += e;
+		}
+		System.out.println("mode: " + mode + ", clients: " + clients
+				+ ", records: " + records + ", seconds: " + seconds + ", mix: "
+				+ formatMix(weights));
+		System.out.println(String.format("%-8s %10s %10s %10s %10s %10s %10s",
+				"command", "count", "ops/s", "p50 us", "p99 us", "p999 us",
+				"max us"));
+		long commands = 0;
+		for (int c = 0; c < COMMANDS.length; c++) {
+			LatencyHistogram h = merged[c];
+			commands += h.getCount();
+			System.out.println(String.format(
+					"%-8s %10d %10.1f %10.1f %10.1f %10.1f %10.1f", COMMANDS[c], h
+							.getCount(), h.getCount() / elapsed, h
+							.getValueAtPercentile(50) / 1000.0, h
+							.getValueAtPercentile(99) / 1000.0, h
+							.getValueAtPercentile(99.9) / 1000.0, h.getMax() / 1000.0));
+		}
+		System.out.println(String.format("total commands: %d, %.1f per second",
+				commands, commands / elapsed));
+		System.out.println("failed operations: " + errorCount);
+		System.exit(0);
+	}
+
+	/**
+	 * Runs one operation and records latencies of its commands.
+	 * 
+	 * @param operation
+	 *         number of operation in <code>OPERATIONS</code>
+	 * @param client
+	 *         connection to the server
+	 * @param random
+	 *         random numbers generator of the client
+	 * @param records
+	 *         amount of records in generated database
+	 * @param locations
+	 *         locations of records to search by
+	 * @param sample
+	 *         fields of created records
+	 * @param latencies
+	 *         histograms of the client indexed by command number
+	 * @throws Exception
+	 *          on any command error
+	 */
+	private static void runOperation(int operation, ExtendedDBAccess client,
+			Random random, int records, List<String> locations, String[] sample,
+			LatencyHistogram[] latencies) throws Exception {
+		long t = System.nanoTime();
+		switch (operation) {
+		case 0:
+			String location = locations.get(random.nextInt(locations.size()));
+			client.findByCriteria(new String[] { "", location, "", "", "", "" });
+			t = measured(latencies[FIND], t);
+			break;
+		case 1:
+			client.readRecord(random.nextInt(records));
+			t = measured(latencies[READ], t);
+			break;
+		case 2:
+			long recNo = random.nextInt(records);
+			long cookie = client.lockRecord(recNo);
+			t = measured(latencies[LOCK], t);
+			try {
+				String[] data = client.readRecord(recNo);
+				t = measured(latencies[READ], t);
+				data[5] = String.valueOf(10000000 + random.nextInt(90000000));
+				client.updateRecord(recNo, data, cookie);
+				t = measured(latencies[UPDATE], t);
+			} finally {
+				t = System.nanoTime();
+				client.unlock(recNo, cookie);
+				measured(latencies[UNLOCK], t);
+			}
+			break;
+		case 3:
+			long created = client.createRecord(sample);
+			t = measured(latencies[CREATE], t);
+			long lock = client.lockRecord(created);
+			t = measured(latencies[LOCK], t);
+			client.deleteRecord(created, lock);
+			t = measured(latencies[DELETE], t);
+			client.unlock(created, lock);
+			measured(latencies[UNLOCK], t);
+			break;
+		case 4:
+			long[] recNos = new long[BOOK_BATCH];
+			String[] newOwners = new String[BOOK_BATCH];
+			for (int i = 0; i < BOOK_BATCH; i++) {
+				recNos[i] = random.nextInt(records);
+				newOwners[i] = String.valueOf(10000000 + random.nextInt(90000000));
+			}
+			client.updateOwners(recNos, new String[BOOK_BATCH], newOwners);
+			measured(latencies[BOOK], t);
+			break;
+		default:
+			long edited = random.nextInt(records);
+			VersionedRecord record = client.readVersionedRecord(edited);
+			t = measured(latencies[VREAD], t);
+			String[] fields = record.getData().clone();
+			fields[ExtendedDBAccess.OWNER_FIELD] = String.valueOf(10000000 + random.nextInt(90000000));
+			client.updateRecordIfVersion(edited, fields, record.getVersion());
+			measured(latencies[VUPDATE], t);
+		}
+	}
+
+	/**
+	 * Records latency of command.
+	 * 
+	 * @param histogram
+	 *         histogram of the command
+	 * @param start
+	 *         time in nanoseconds when the command was sent
+	 * @return current time in nanoseconds
+	 */
+	private static long measured(LatencyHistogram histogram, long start) {
+		long now = System.nanoTime();
+		histogram.record(now - start);
+		return now;
+	}
+
+	/**
+	 * Parses weights of operations.
+	 * 
+	 * @param mix
+	 *         comma separated pairs name=weight
+	 * @return weights of operations in the order of <code>OPERATIONS</code>
+	 */
+	private static int[] parseMix(String mix) {
+		int[] weights = new int[OPERATIONS.length];
+		for (String pair : mix.split(",")) {
+			String[] parts = pair.split("=");
+			int operation = -1;
+			for (int i = 0; i < OPERATIONS.length; i++) {
+				if (OPERATIONS[i].equalsIgnoreCase(parts[0].trim()))
+					operation = i;
+			}
+			if (operation == -1 || parts.length != 2)
+				throw new IllegalArgumentException("invalid mix: " + pair);
+			weights[operation] = Integer.parseInt(parts[1].trim());
+		}
+		int sum = 0;
+		for (int weight : weights) {
+			if (weight < 0)
+				throw new IllegalArgumentException("negative weight in mix: " + mix);
+			sum += weight;
+		}
+		if (sum == 0)
+			throw new IllegalArgumentException("empty mix: " + mix);
+		return weights;
+	}
+
+	/**
+	 * Formats weights of operations.
+	 * 
+	 * @param weights
+	 *         weights of operations in the order of <code>OPERATIONS</code>
+	 * @return comma separated pairs name=weight
+	 */
+	private static String formatMix(int[] weights) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < weights.length; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append(OPERATIONS[i]).append('=').append(weights[i]);
+		}
+		return sb.toString();
+	}
+}
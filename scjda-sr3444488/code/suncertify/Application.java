@@ -3,6 +3,9 @@ package suncertify;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JDialog;
@@ -89,12 +92,18 @@ public class Application {
 
 	/**
 	 * Starts the program.<br>
-	 * Parses program arguments and starts application with a certain type.
+	 * Parses program arguments and starts application with a certain type. If
+	 * the first argument is "compact", database file is compacted by
+	 * {@link DatabaseCompactor} without any window.
 	 * 
 	 * @param args
 	 *         program (command line) arguments
 	 */
 	public static void main(String... args) {
+		if (args.length > 0 && "compact".equals(args[0])) {
+			DatabaseCompactor.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		Application app = new Application(args);
 		app.showMainWindow();
 	}
@@ -115,7 +124,9 @@ public class Application {
 					+ "The mode flag must be either \"server\", "
 					+ "indicating the server program must run, \n"
 					+ "\"alone\", indicating standalone mode, \nor left out entirely, "
-					+ "in which case the network client and gui must run.";
+					+ "in which case the network client and gui must run.\n"
+					+ "Database file is compacted offline by "
+					+ "java -jar <path_and_filename> compact <file> [<report>]";
 			System.out.println(msg);
 			JOptionPane.showMessageDialog(null, msg, "Error", JOptionPane.ERROR_MESSAGE);
 			System.exit(0);
@@ -206,6 +217,19 @@ public class Application {
 			return socketServer.getPort();
 	}
 
+	/**
+	 * Returns records locked by clients connected to running server.
+	 * 
+	 * @return numbers of locked records mapped by addresses of clients, empty
+	 *         map if server is not running
+	 */
+	public Map<String, long[]> getLockOwners() {
+		if (socketServer == null || !socketServer.isRunning())
+			return Collections.emptyMap();
+		else
+			return socketServer.getLockOwners();
+	}
+
 	/**
 	 * Handles exception, displays error style dialog.
 	 * 
@@ -263,8 +287,10 @@ public class Application {
 			int port = appOptions.getPortNumber();
 			String path = appOptions.getDBPath();
 			int locktimeout = appOptions.getLockTimeout();
-			this.dbaccess = new DataAU(path, locktimeout);
-			this.socketServer = new RecordSocketServer(dbaccess, port, 5000);
+			this.dbaccess = new DataAU(path, locktimeout, appOptions
+					.getDataSettings());
+			this.socketServer = new RecordSocketServer(dbaccess, port, 5000,
+					appOptions.getServerMode());
 			this.socketServer.start();
 		} catch (Exception e) {
 			handleException(e.getMessage());
@@ -278,7 +304,8 @@ public class Application {
 		try {
 			String path = this.appOptions.getDBPath();
 			int locktimeout = this.appOptions.getLockTimeout();
-			this.dbaccess = new DataAU(path, locktimeout);
+			this.dbaccess = new DataAU(path, locktimeout, this.appOptions
+					.getDataSettings());
 			connectionString = path;
 		} catch (Exception e) {
 			handleException(e.getMessage());
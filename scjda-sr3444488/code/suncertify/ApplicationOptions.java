@@ -7,6 +7,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import suncertify.Application.ApplicationType;
+import suncertify.db.DataSettings;
+import suncertify.db.StorageType;
+import suncertify.sockets.ServerMode;
 
 /**
  * Class <code>ApplicationOptions</code> provides functionality for the
@@ -34,6 +37,38 @@ public class ApplicationOptions {
 	 * name of exported property name for a lock timeout value
 	 */
 	private static final String LOCKTIMEOUT = "locktimeout";
+	/**
+	 * name of exported property name for a storage backend type of database
+	 */
+	private static final String STORAGE = "storage";
+	/**
+	 * name of exported property name for a flag of indexed records search
+	 */
+	private static final String INDEXEDSEARCH = "indexedsearch";
+	/**
+	 * name of exported property name for a size of records cache
+	 */
+	private static final String CACHESIZE = "cachesize";
+	/**
+	 * name of exported property name for a threshold of parallel records search
+	 */
+	private static final String PARALLELSCAN = "parallelscan";
+	/**
+	 * name of exported property name for a flag of write-ahead log of changes
+	 */
+	private static final String WRITEAHEADLOG = "writeaheadlog";
+	/**
+	 * name of exported property name for a flag of fair locking of records
+	 */
+	private static final String FAIRLOCKING = "fairlocking";
+	/**
+	 * name of exported property name for a flag of columnar replica of records
+	 */
+	private static final String COLUMNARSEARCH = "columnarsearch";
+	/**
+	 * name of exported property name for a mode of handling client connections
+	 */
+	private static final String SERVERMODE = "servermode";
 	/**
 	 * properties in which options is stored
 	 */
@@ -89,6 +124,14 @@ public class ApplicationOptions {
 		options.setProperty("PATH", "");
 		options.setProperty("PORT", Integer.toString(8080));
 		options.setProperty("LOCK_TIMEOUT", Integer.toString(5000));
+		options.setProperty("STORAGE", StorageType.FILE.name());
+		options.setProperty("INDEXED_SEARCH", Boolean.toString(true));
+		options.setProperty("CACHE_SIZE", Integer.toString(1024));
+		options.setProperty("PARALLEL_SCAN_THRESHOLD", Integer.toString(65536));
+		options.setProperty("WRITE_AHEAD_LOG", Boolean.toString(false));
+		options.setProperty("FAIR_LOCKING", Boolean.toString(false));
+		options.setProperty("COLUMNAR_SEARCH", Boolean.toString(false));
+		options.setProperty("SERVER_MODE", ServerMode.THREADED.name());
 	}
 
 	/**
@@ -234,6 +277,57 @@ public class ApplicationOptions {
 		return Integer.parseInt(timeout);
 	}
 	
+	/**
+	 * Returns storage backend type used to operate database file.<br>
+	 * If option is not specified, default storage backend type is returned.
+	 * 
+	 * @return storage backend type
+	 */
+	public StorageType getStorageType() {
+		String storage = getOptionByName(STORAGE);
+		if (storage == null || storage.trim().length() == 0)
+			return StorageType.FILE;
+		try {
+			return StorageType.valueOf(storage.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("unknown storage type " + storage);
+		}
+	}
+
+	/**
+	 * Returns mode in which server handles client connections.<br>
+	 * If option is not specified, threaded mode is returned.
+	 * 
+	 * @return mode of handling client connections
+	 */
+	public ServerMode getServerMode() {
+		String mode = getOptionByName(SERVERMODE);
+		if (mode == null || mode.trim().length() == 0)
+			return ServerMode.THREADED;
+		try {
+			return ServerMode.valueOf(mode.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("unknown server mode " + mode);
+		}
+	}
+
+	/**
+	 * Returns tuning settings of database operating object.
+	 * 
+	 * @return settings of database operating object
+	 */
+	public DataSettings getDataSettings() {
+		DataSettings settings = new DataSettings();
+		settings.setStorageType(getStorageType());
+		settings.setIndexedSearch(getBooleanOption(INDEXEDSEARCH, true));
+		settings.setCacheSize(getIntOption(CACHESIZE, 1024));
+		settings.setParallelScanThreshold(getIntOption(PARALLELSCAN, 65536));
+		settings.setWriteAheadLog(getBooleanOption(WRITEAHEADLOG, false));
+		settings.setFairLocking(getBooleanOption(FAIRLOCKING, false));
+		settings.setColumnarSearch(getBooleanOption(COLUMNARSEARCH, false));
+		return settings;
+	}
+
 	/**
 	 * Overrides method of {@link Object} class for debugging issues.
 	 */
@@ -251,6 +345,14 @@ public class ApplicationOptions {
 		mapping.put(PATH, "PATH");
 		mapping.put(PORT, "PORT");
 		mapping.put(LOCKTIMEOUT, "LOCK_TIMEOUT");
+		mapping.put(STORAGE, "STORAGE");
+		mapping.put(INDEXEDSEARCH, "INDEXED_SEARCH");
+		mapping.put(CACHESIZE, "CACHE_SIZE");
+		mapping.put(PARALLELSCAN, "PARALLEL_SCAN_THRESHOLD");
+		mapping.put(WRITEAHEADLOG, "WRITE_AHEAD_LOG");
+		mapping.put(FAIRLOCKING, "FAIR_LOCKING");
+		mapping.put(COLUMNARSEARCH, "COLUMNAR_SEARCH");
+		mapping.put(SERVERMODE, "SERVER_MODE");
 	}
 
 	/**
@@ -352,6 +454,38 @@ public class ApplicationOptions {
 		setValuesByNames(standaloneOptionsNames, optionsValues);
 	}
 
+	/**
+	 * Returns boolean value of option by option name.
+	 * 
+	 * @param optionName
+	 *         option name
+	 * @param defaultValue
+	 *         value returned if option is not specified
+	 * @return option value
+	 */
+	private boolean getBooleanOption(String optionName, boolean defaultValue) {
+		String value = getOptionByName(optionName);
+		if (value == null || value.trim().length() == 0)
+			return defaultValue;
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * Returns integer value of option by option name.
+	 * 
+	 * @param optionName
+	 *         option name
+	 * @param defaultValue
+	 *         value returned if option is not specified
+	 * @return option value
+	 */
+	private int getIntOption(String optionName, int defaultValue) {
+		String value = getOptionByName(optionName);
+		if (value == null || value.trim().length() == 0)
+			return defaultValue;
+		return Integer.parseInt(value.trim());
+	}
+
 	/**
 	 * Returns options value by option name.
 	 * 
@@ -0,0 +1,138 @@
+package suncertify;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+import suncertify.db.Data;
+import suncertify.db.DataSettings;
+import suncertify.db.StorageType;
+
+/**
+ * Class <code>DatabaseCompactor</code> compacts database file offline, while
+ * no server or standalone client has it opened.<br>
+ * Valid records from the end of file are moved into the slots of deleted
+ * records and the end of file is cut off by {@link Data#compact()}. Moved
+ * records get new numbers, so the remap report is written to the file: old
+ * and new number of each moved record, one record per line. Records kept
+ * elsewhere by their numbers must be renumbered by the report before clients
+ * use them again.<br>
+ * Database file is opened exclusively, so compaction is refused while other
+ * program has the file opened, and no program can open the file until
+ * compaction is done. File is operated by {@link StorageType#FILE} storage,
+ * because mapped file can not be cut off on some platforms. If log of
+ * changes is kept near database file, changes of the log are applied before
+ * compaction. Usage:
+ * 
+ * <pre>
+ * java -jar runme.jar compact file [report]
+ * </pre>
+ * 
+ * where file is path to the database file and report is path to the remap
+ * report, the path to the database file with <code>.remap</code> extension by
+ * default.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class DatabaseCompactor {
+	/**
+	 * extension of log file name, log file is kept near database file
+	 */
+	private final static String LOG_EXTENSION = ".wal";
+	/**
+	 * extension of default remap report file name
+	 */
+	private final static String REPORT_EXTENSION = ".remap";
+
+	/**
+	 * Compacts database file and writes remap report. Exits with status
+	 * <code>1</code> if compaction fails.
+	 * 
+	 * @param args
+	 *         command line arguments: file and optional report
+	 */
+	public static void main(String... args) {
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("usage: java -jar runme.jar compact file [report]");
+			return;
+		}
+		File report = new File(args.length > 1 ? args[1] : args[0]
+				+ REPORT_EXTENSION);
+		try {
+			Map<Long, Long> moved = compact(new File(args[0]), report);
+			System.out.println(moved.size() + " records moved, remap report: "
+					+ report.getPath());
+		} catch (IOException e) {
+			System.err.println("compaction failed: " + e.getMessage());
+			System.exit(1);
+		} catch (IllegalStateException e) {
+			System.err.println("compaction failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Compacts database file and writes remap report. Report file is created
+	 * before any record is moved. If the report can not be written after
+	 * compaction, it is printed to the standard output, so the new numbers are
+	 * not lost.
+	 * 
+	 * @param file
+	 *         database file
+	 * @param report
+	 *         remap report file, replaced if it exists
+	 * @return new numbers of moved records mapped by their old numbers
+	 * @throws IOException
+	 *          on reading, writing or truncating error, or if database file is
+	 *          in use by other program
+	 * @throws IllegalStateException
+	 *          if any record is locked
+	 */
+	public static Map<Long, Long> compact(File file, File report)
+			throws IOException {
+		DataSettings settings = new DataSettings();
+		settings.setStorageType(StorageType.FILE);
+		settings.setExclusive(true);
+		settings.setWriteAheadLog(new File(file.getPath() + LOG_EXTENSION)
+				.exists());
+		Data data = new Data(file.getPath(), settings);
+		Map<Long, Long> moved;
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+					report), "US-ASCII"));
+			moved = data.compact();
+			writeReport(moved, out);
+		} finally {
+			data.finalize();
+			if (out != null)
+				out.close();
+		}
+		if (out.checkError()) {
+			PrintWriter console = new PrintWriter(System.out);
+			writeReport(moved, console);
+			throw new IOException("error writing remap report "
+					+ report.getPath() + ", report is printed");
+		}
+		return moved;
+	}
+
+	/**
+	 * Writes remap report: old and new number of each moved record, one record
+	 * per line.
+	 * 
+	 * @param moved
+	 *         new numbers of moved records mapped by their old numbers
+	 * @param out
+	 *         writer of report
+	 */
+	private static void writeReport(Map<Long, Long> moved, PrintWriter out) {
+		for (Map.Entry<Long, Long> entry : moved.entrySet()) {
+			out.println(entry.getKey() + " -> " + entry.getValue());
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,22 @@
+package suncertify.db;
+
+/**
+ * Interface <code>AutoUnlockListener</code> is notified by {@link DataAU} when
+ * lock of record is released by auto-unlocking, so the objects that keep locks
+ * granted to clients can forget the released one.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public interface AutoUnlockListener {
+
+	/**
+	 * Called after the record which lock time is up is unlocked.
+	 * 
+	 * @param recNo
+	 *         number of unlocked record
+	 * @param cookie
+	 *         locking descriptor the record was locked with
+	 */
+	void autoUnlocked(long recNo, long cookie);
+}
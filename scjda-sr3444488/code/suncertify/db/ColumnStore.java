@@ -0,0 +1,218 @@
+package suncertify.db;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class <code>ColumnStore</code> is a columnar replica of records of database
+ * file kept in memory.<br>
+ * Bytes of each field of {@link DBAccess#FIELD_SEQUENCE} are packed into one
+ * array, the field of record <code>n</code> is at position
+ * <code>n * length</code> of the field's array, and valid records are kept as
+ * bits of {@link BitSet}. Filter of one field reads only the contiguous bytes
+ * of this field, not the whole records, and no search reads database file.
+ * Criteria are checked field by field: the first field is checked for all
+ * valid records, the next field only for the records accepted by previous
+ * ones.<br>
+ * Class is not thread safe, {@link Data} changes it while its write lock is
+ * locked and reads it while its read lock is locked.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class ColumnStore {
+	/**
+	 * initial capacity of columns in records
+	 */
+	private final static int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * packed bytes of fields, one array per field
+	 */
+	private final byte[][] columns = new byte[DBAccess.FIELD_LENGTH.length][];
+	/**
+	 * arrays of <code>columns</code> wrapped to match criteria
+	 */
+	private final ByteBuffer[] views = new ByteBuffer[DBAccess.FIELD_LENGTH.length];
+	/**
+	 * bits of valid records
+	 */
+	private final BitSet valid = new BitSet();
+	/**
+	 * amount of records columns can keep
+	 */
+	private int capacity;
+
+	/**
+	 * Constructor creates empty replica.
+	 */
+	ColumnStore() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Puts fields of valid record into the columns.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param buf
+	 *         buffer that contains bytes of record
+	 * @param offset
+	 *         position of record in the buffer, after "deleted flag"
+	 */
+	void put(long recNo, byte[] buf, int offset) {
+		int slot = toSlot(recNo);
+		if (slot >= capacity)
+			allocate(Math.max(capacity * 2, slot + 1));
+		for (int i = 0; i < columns.length; i++) {
+			int length = DBAccess.FIELD_LENGTH[i];
+			System.arraycopy(buf, offset, columns[i], slot * length, length);
+			offset += length;
+		}
+		valid.set(slot);
+	}
+
+	/**
+	 * Marks record as deleted.
+	 * 
+	 * @param recNo
+	 *         record number
+	 */
+	void remove(long recNo) {
+		valid.clear(toSlot(recNo));
+	}
+
+	/**
+	 * Forgets all the records.
+	 */
+	void clear() {
+		valid.clear();
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Converts bytes of valid record to the trimmed fields.
+	 * 
+	 * @param recNo
+	 *         number of valid record
+	 * @return fields of record
+	 */
+	String[] read(long recNo) {
+		int slot = toSlot(recNo);
+		String[] result = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			int length = DBAccess.FIELD_LENGTH[i];
+			result[i] = RecordCodec.decodeField(columns[i], slot * length, length);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if valid record is accepted by encoded filter criteria.
+	 * 
+	 * @param recNo
+	 *         number of valid record
+	 * @param prefixes
+	 *         criteria encoded by {@link RecordCodec#encodeCriteria(String[])}
+	 * @return <code>true</code> if record is accepted
+	 */
+	boolean matches(long recNo, byte[][] prefixes) {
+		if (prefixes == null)
+			return false;
+		int slot = toSlot(recNo);
+		for (int i = 0; i < columns.length; i++) {
+			int length = DBAccess.FIELD_LENGTH[i];
+			if (prefixes[i] != null
+					&& !RecordCodec.matchesField(views[i], slot * length, length,
+							prefixes[i]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Finds valid records accepted by encoded filter criteria, checking the
+	 * columns one after another.
+	 * 
+	 * @param prefixes
+	 *         criteria encoded by {@link RecordCodec#encodeCriteria(String[])}
+	 * @return numbers of accepted records in ascending order
+	 */
+	long[] find(byte[][] prefixes) {
+		if (prefixes == null)
+			return new long[0];
+		BitSet selected = (BitSet) valid.clone();
+		for (int i = 0; i < columns.length; i++) {
+			byte[] prefix = prefixes[i];
+			if (prefix == null)
+				continue;
+			ByteBuffer column = views[i];
+			int length = DBAccess.FIELD_LENGTH[i];
+			for (int slot = selected.nextSetBit(0); slot >= 0; slot = selected
+					.nextSetBit(slot + 1)) {
+				if (!RecordCodec.matchesField(column, slot * length, length, prefix))
+					selected.clear(slot);
+			}
+		}
+		long[] result = new long[selected.cardinality()];
+		int count = 0;
+		for (int slot = selected.nextSetBit(0); slot >= 0; slot = selected
+				.nextSetBit(slot + 1)) {
+			result[count++] = slot;
+		}
+		return result;
+	}
+
+	/**
+	 * Selects candidate records accepted by encoded filter criteria.
+	 * 
+	 * @param candidates
+	 *         numbers of valid records
+	 * @param prefixes
+	 *         criteria encoded by {@link RecordCodec#encodeCriteria(String[])}
+	 * @return numbers of accepted records in the order of candidates
+	 */
+	long[] filter(long[] candidates, byte[][] prefixes) {
+		long[] result = new long[candidates.length];
+		int count = 0;
+		for (long recNo : candidates) {
+			if (matches(recNo, prefixes))
+				result[count++] = recNo;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Allocates columns of specified capacity. Bytes of the records that fit
+	 * into new columns are kept.
+	 * 
+	 * @param newCapacity
+	 *         amount of records columns can keep
+	 */
+	private void allocate(int newCapacity) {
+		for (int i = 0; i < columns.length; i++) {
+			int length = DBAccess.FIELD_LENGTH[i];
+			byte[] column = new byte[newCapacity * length];
+			if (columns[i] != null)
+				System.arraycopy(columns[i], 0, column, 0, Math.min(
+						columns[i].length, column.length));
+			columns[i] = column;
+			views[i] = ByteBuffer.wrap(column);
+		}
+		capacity = newCapacity;
+	}
+
+	/**
+	 * Converts record number to the number of slot.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return number of slot
+	 */
+	private static int toSlot(long recNo) {
+		if (recNo < 0 || recNo > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("invalid record number " + recNo);
+		return (int) recNo;
+	}
+}
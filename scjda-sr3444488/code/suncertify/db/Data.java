@@ -2,27 +2,25 @@ package suncertify.db;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import suncertify.db.utils.WeakHashSet;
 
 /**
- * Class <code>Data</code> implements interface {@link DBAccess} provides
- * methods to operate a database file on local hard drive.
+ * Class <code>Data</code> implements interface {@link ExtendedDBAccess}
+ * provides methods to operate a database file on local hard drive.
  * 
  * @author Petr Shilkin
  * @version 1.0
  */
-public class Data implements DBAccess {
+public class Data implements ExtendedDBAccess, Finalizable {
 	/**
 	 * "field name" size, length in the header of file for each record
 	 */
@@ -51,21 +49,6 @@ public class Data implements DBAccess {
 	 * defined number of first record in database file
 	 */
 	protected final static int FIRST_RECNO = 0;
-	/**
-	 * space byte for fields that have not enough length
-	 */
-	private final static byte space_byte = (byte) 0x20;
-	/*
-	 * calculating length of record
-	 */
-	static {
-		int temp = 0;
-		for (int fl : FIELD_LENGTH) {
-			temp += fl;
-		}
-		record_length = temp;
-	}
-
 	/*
 	 * calculating header size of database file
 	 */
@@ -89,18 +72,14 @@ public class Data implements DBAccess {
 	 * logger is for debugging purposes
 	 */
 	private Logger log = Logger.getLogger(this.getClass().getPackage().getName());
-	/**
-	 * set of record numbers of the deleted records
-	 */
-	private final Set<Long> deleted = new HashSet<Long>();
 	/**
 	 * deleted flag byte value
 	 */
 	private final static byte deletedrecbyte = (byte) 0xFF;
 	/**
-	 * random access file reference to operate database file
+	 * storage backend reference to operate database file
 	 */
-	private RandomAccessFile file;
+	private RecordStore store;
 	/**
 	 * "deleted flag" size, length for each record
 	 */
@@ -111,40 +90,76 @@ public class Data implements DBAccess {
 	 */
 	private static int header_offset;
 	/**
-	 * Map of locks for locked record numbers. Key of map is unique object for
-	 * record number, value is locking descriptor ("cookie").
-	 */
-	private final Map<Long, Long> locks = new ConcurrentHashMap<Long, Long>();
-	/**
-	 * Cache of unique objects that is used in the functionality
-	 * "one lock"-"one record". Unique objects needed to perform valid blocking on
-	 * the same record numbers. Using this cache allows to lock/unlock records
-	 * separately each from other.
+	 * Table of locks of records, keeps locking descriptors ("cookies") of locked
+	 * records.
 	 */
-	private final WeakHashSet<Long> numberCache = new WeakHashSet<Long>();
-	/**
-	 * reference to helper object for file reading/writing
-	 */
-	private final ReaderWriter readerwriter = new ReaderWriter();
+	private final LockManager locks;
 	/**
 	 * record length without "deleted flag"
 	 */
-	private final static int record_length;
+	private final static int record_length = RecordStore.record_length;
 	/**
-	 * Read/write blocking for <code>valid</code> and <code>deleted</code> sets.
-	 * Many clients can read these sets but only one at time can write to sets.
-	 * While writing is in progress reading can not be done.
+	 * Read/write blocking for <code>slots</code> of records and for records of
+	 * database file. Many clients can read slots and records but only one at
+	 * time can write to slots or records. While writing is in progress reading
+	 * can not be done.
 	 */
 	private final ReentrantReadWriteLock rwlock = new ReentrantReadWriteLock();
 	/**
-	 * Valid, i.e. not deleted, record numbers set
+	 * Valid, i.e. not deleted, record numbers and slots of the deleted records
 	 */
-	private final Set<Long> valid = new HashSet<Long>();
+	private final RecordSlots slots = new RecordSlots();
 
 	/**
 	 * valid flag byte value
 	 */
 	private final static byte validrecbyte = 0x00;
+	/**
+	 * numbers of fields in field sequence that can be indexed: name, location and
+	 * specialties
+	 */
+	private final static int[] indexed_fields = new int[] { 0, 1, 2 };
+	/**
+	 * Prefix indexes of record fields. Element of array is index of the field
+	 * with the same number in field sequence or <code>null</code> if the field is
+	 * not indexed.
+	 */
+	private final PrefixIndex[] indexes = new PrefixIndex[FIELD_SEQUENCE.length];
+	/**
+	 * columnar replica of records, or <code>null</code> if records are searched
+	 * and read in database file
+	 */
+	private final ColumnStore columns;
+	/**
+	 * cache of decoded records, or <code>null</code> if records are not cached
+	 */
+	private final RecordCache cache;
+	/**
+	 * minimum amount of records checked by search that are checked in
+	 * parallel, <code>0</code> if records are always checked by one thread
+	 */
+	private final int parallelScanThreshold;
+	/**
+	 * amount of records checked by one task of parallel search
+	 */
+	private final static int SCAN_CHUNK = 4096;
+	/**
+	 * amount of records read by one reading when database file is opened
+	 */
+	private final static int LOAD_BLOCK = 1024;
+	/**
+	 * extension of log file name, log file is kept near database file
+	 */
+	private final static String LOG_EXTENSION = ".wal";
+	/**
+	 * log of changes of database file, or <code>null</code> if changes are
+	 * written to database file only
+	 */
+	private WriteAheadLog wal;
+	/**
+	 * pool of threads that check records in parallel search
+	 */
+	private final static ForkJoinPool scanPool = new ForkJoinPool();
 
 	/**
 	 * amount of all (deleted and valid) records in database file
@@ -161,15 +176,45 @@ public class Data implements DBAccess {
 	 *          on read or write error
 	 */
 	public Data(String path) throws IOException {
+		this(path, new DataSettings());
+	}
 
+	/**
+	 * Constructor creates database operating object to operate database file on
+	 * local hard drive using specified settings.
+	 * 
+	 * @param path
+	 *         local path to a database file
+	 * @param settings
+	 *         tuning settings of database operating object
+	 * @throws IOException
+	 *          on read or write error, or if database file is in use by other
+	 *          program and can not be shared as specified by settings
+	 */
+	public Data(String path, DataSettings settings) throws IOException {
 		File file = new File(path);
-		this.file = new RandomAccessFile(file, "rw");
+		this.locks = new LockManager(settings.isFairLocking());
+		if (settings.isIndexedSearch()) {
+			for (int field : indexed_fields) {
+				indexes[field] = new PrefixIndex();
+			}
+		}
+		this.columns = settings.isColumnarSearch() ? new ColumnStore() : null;
+		this.parallelScanThreshold = settings.getParallelScanThreshold();
+		this.cache = settings.getCacheSize() > 0 ? new RecordCache(settings
+				.getCacheSize()) : null;
+		this.store = openStore(file, settings.getStorageType());
 		try {
-			readerwriter.checkheader();
+			if (!store.lockFile(!settings.isExclusive()))
+				throw new IOException("database file is in use by other program");
+			checkHeader();
 		} catch (IOException e) {
-			log.log(Level.SEVERE, "wrong data file format");
+			log.log(Level.SEVERE, "error opening data file", e);
+			close();
 			throw e;
 		}
+		if (settings.isWriteAheadLog())
+			openLog(new File(path + LOG_EXTENSION));
 		buildIndex();
 	}
 
@@ -177,31 +222,33 @@ public class Data implements DBAccess {
 	 * {@inheritDoc}
 	 */
 	public long createRecord(String[] data) {
+		long recNo;
+		long sequence;
 		rwlock.writeLock().lock();
 		try {
-			Iterator<Long> it = deleted.iterator();
-			boolean reuse;
-			Long recNo;
-			if (reuse = it.hasNext()) {
-				recNo = it.next();
-			} else {
+			recNo = slots.pollFree();
+			boolean reuse = recNo != -1;
+			if (!reuse) {
 				recNo = recordCount;
 			}
 			long pos = getRecPos(recNo);
-			readerwriter.write(pos, validrecbyte);
-			readerwriter.write(pos + flaglength, data);
-			valid.add(recNo);
-			if (reuse) {
-				deleted.remove(recNo);
-			} else {
+			invalidate(recNo);
+			byte[] buf = new byte[flaglength + record_length];
+			buf[0] = validrecbyte;
+			RecordCodec.encode(data, buf, flaglength);
+			sequence = write(pos, buf);
+			addToIndexes(recNo, buf, flaglength);
+			slots.addValid(recNo);
+			if (!reuse) {
 				recordCount++;
 			}
-			return recNo;
 		} catch (IOException e) {
 			throw new RuntimeException("error writing file", e);
 		} finally {
 			rwlock.writeLock().unlock();
 		}
+		commit(sequence);
+		return recNo;
 	}
 
 	/**
@@ -209,45 +256,185 @@ public class Data implements DBAccess {
 	 */
 	public void deleteRecord(long recNo, long lockCookie)
 			throws RecordNotFoundException, SecurityException {
-		Object recNoMutex = getMutexForRecNo(recNo);
-		checkLockCookie(recNo, recNoMutex, lockCookie);
+		checkLockCookie(recNo, lockCookie);
+		long sequence;
 		rwlock.writeLock().lock();
 		try {
-			if (!valid.contains(recNo))
+			if (!slots.isValid(recNo))
 				throw new RecordNotFoundException();
 			long pos = getRecPos(recNo);
-			readerwriter.write(pos, deletedrecbyte);
-			valid.remove(recNo);
-			deleted.add(recNo);
+			removeFromIndexes(recNo);
+			invalidate(recNo);
+			sequence = write(pos, new byte[] { deletedrecbyte });
+			slots.addFree(recNo);
 		} catch (IOException e) {
 			throw new RuntimeException("error writing file", e);
 		} finally {
 			rwlock.writeLock().unlock();
 		}
+		commit(sequence);
+	}
+
+	/**
+	 * Compacts database file. Valid records from the end of file are moved one
+	 * by one into the slots of deleted records with the least numbers, then
+	 * deleted records at the end of file are cut off.<br>
+	 * Moved record gets new number, and nothing forwards the old number to the
+	 * new one: a client that keeps the old number would read, lock or update
+	 * other record, which may be created in the freed slot later. So
+	 * compaction must be done only while database is not served to clients,
+	 * and new numbers are returned to report them. Compaction refuses to run
+	 * while any record is locked. Database is blocked for reading and writing
+	 * until compaction is done.
+	 * 
+	 * @return new numbers of moved records mapped by their old numbers
+	 * @throws IOException
+	 *          on file reading, writing or truncating error
+	 * @throws IllegalStateException
+	 *          if any record is locked
+	 */
+	public Map<Long, Long> compact() throws IOException {
+		Map<Long, Long> moved = new LinkedHashMap<Long, Long>();
+		long sequence = 0;
+		rwlock.writeLock().lock();
+		try {
+			if (locks.size() > 0)
+				throw new IllegalStateException(
+						"database is in use, records are locked by clients");
+			while (true) {
+				long from = slots.lastValid(recordCount);
+				long to = slots.peekFree();
+				if (from < 0 || to < 0 || to > from)
+					break;
+				sequence = move(from, to);
+				moved.put(from, to);
+			}
+		} finally {
+			rwlock.writeLock().unlock();
+		}
+		commit(sequence);
+		long removed = shrink();
+		log.log(Level.SEVERE, "database compacted: " + moved.size()
+				+ " records moved, " + removed + " slots removed");
+		return moved;
+	}
+
+	/**
+	 * Moves valid record into the slot of deleted record. Record is written to
+	 * the new slot before it is deleted from the old one, so the record is not
+	 * lost if the moving is broken. Must be called by the owner of write lock.
+	 * 
+	 * @param from
+	 *         number of valid record
+	 * @param to
+	 *         number of free slot with the least number
+	 * @return sequence number of logged change to wait for by
+	 *         {@link #commit(long)}
+	 * @throws IOException
+	 *          on file reading or writing error
+	 */
+	private long move(long from, long to) throws IOException {
+		byte[] buf = new byte[flaglength + record_length];
+		readStored(from, buf);
+		removeFromIndexes(from);
+		invalidate(from);
+		invalidate(to);
+		write(getRecPos(to), buf);
+		slots.pollFree();
+		slots.addValid(to);
+		addToIndexes(to, buf, flaglength);
+		long sequence = write(getRecPos(from), new byte[] { deletedrecbyte });
+		slots.addFree(from);
+		return sequence;
+	}
+
+	/**
+	 * Cuts off deleted records at the end of database file. Changes are made
+	 * durable and applied before, so the log of changes has no changes beyond
+	 * the new end of file.
+	 * 
+	 * @return amount of removed slots
+	 * @throws IOException
+	 *          on file writing or truncating error
+	 */
+	private long shrink() throws IOException {
+		rwlock.writeLock().lock();
+		try {
+			long count = slots.lastValid(recordCount) + 1;
+			if (count >= recordCount)
+				return 0;
+			if (wal != null)
+				wal.checkpoint();
+			else
+				store.force();
+			store.truncate(getRecPos(count));
+			slots.truncate(count);
+			long removed = recordCount - count;
+			recordCount = count;
+			return removed;
+		} finally {
+			rwlock.writeLock().unlock();
+		}
 	}
 
 	/**
-	 * Performs clean-up of unused object.
+	 * Performs clean-up of unused object. Database file is closed, so other
+	 * programs can open it exclusively.
 	 */
-	protected void finalize() {
+	public void finalize() {
 		close();
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * {@inheritDoc}<br>
+	 * If criteria for any indexed field is specified, only the records found by
+	 * index of the most selective field are checked. Otherwise all the valid
+	 * records are checked. Criteria are encoded to bytes once, and the records
+	 * are checked against them without decoding. Criteria that can not match
+	 * any record, such as <code>null</code> criteria, give empty result at
+	 * once. If amount of records to check reaches the threshold of parallel
+	 * search and there is more than one processor, records are checked by the
+	 * threads of the pool while database is blocked for writing; found records
+	 * are in the same order as if they were checked by one thread.<br>
+	 * If columnar replica is kept, records are checked in the replica and
+	 * database file is not read at all.
 	 */
 	public long[] findByCriteria(String[] criteria) {
-		long[] result = new long[valid.size()];
-		int count = 0;
-		for (Long recNo : valid) {
+		long[] candidates;
+		boolean checked;
+		byte[][] prefixes = RecordCodec.encodeCriteria(criteria);
+		if (prefixes == null)
+			return new long[0];
+		rwlock.readLock().lock();
+		try {
+			int field = selectIndex(criteria);
+			if (columns != null && !RecordCodec.acceptsAll(prefixes))
+				return field == -1 ? columns.find(prefixes) : columns.filter(
+						getCandidates(criteria, field), prefixes);
+			candidates = getCandidates(criteria, field);
+			checked = isMatchedByIndex(criteria, field)
+					|| RecordCodec.acceptsAll(prefixes);
+		} finally {
+			rwlock.readLock().unlock();
+		}
+		if (checked)
+			return candidates;
+		if (parallelScanThreshold > 0 && candidates.length >= parallelScanThreshold
+				&& scanPool.getParallelism() > 1) {
+			rwlock.readLock().lock();
 			try {
-				String[] data = readRecord(recNo);
-				if (checkCriteria(data, criteria)) {
-					result[count] = recNo;
-					count++;
-				}
-			} catch (RecordNotFoundException e) {
-				log.log(Level.SEVERE, "record was valid but now not found");
+				return scanPool.invoke(new ScanTask(candidates, 0, candidates.length,
+						criteria, prefixes));
+			} finally {
+				rwlock.readLock().unlock();
+			}
+		}
+		long[] result = new long[candidates.length];
+		int count = 0;
+		for (long recNo : candidates) {
+			if (isMatched(recNo, criteria, prefixes)) {
+				result[count] = recNo;
+				count++;
 			}
 		}
 		long[] cutresult = new long[count];
@@ -256,30 +443,169 @@ public class Data implements DBAccess {
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Checks if valid record is accepted by filter criteria. Cached record is
+	 * checked by its fields, otherwise record is checked by its bytes in
+	 * database file without decoding and caching.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param criteria
+	 *         filter criteria
+	 * @param prefixes
+	 *         filter criteria encoded to bytes
+	 * @return <code>true</code> if record is valid and accepted,
+	 *         <code>false</code> otherwise
 	 */
-	public long lockRecord(long recNo) throws RecordNotFoundException {
-		log.log(Level.SEVERE, "lock record: " + recNo);
-		Object recNoMutex = getMutexForRecNo(recNo);
-		long lockCookie = 0;
-		synchronized (recNoMutex) {
-			while (locks.containsKey(recNo)) {
-				try {
-					recNoMutex.wait();
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				}
+	private boolean isMatched(long recNo, String[] criteria, byte[][] prefixes) {
+		rwlock.readLock().lock();
+		try {
+			return isMatchedLocked(recNo, criteria, prefixes);
+		} finally {
+			rwlock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks if valid record is accepted by filter criteria. Method must be
+	 * called while <code>rwlock</code> is locked for reading, possibly by other
+	 * thread.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param criteria
+	 *         filter criteria
+	 * @param prefixes
+	 *         filter criteria encoded to bytes
+	 * @return <code>true</code> if record is valid and accepted,
+	 *         <code>false</code> otherwise
+	 */
+	private boolean isMatchedLocked(long recNo, String[] criteria,
+			byte[][] prefixes) {
+		try {
+			if (!slots.isValid(recNo)) {
+				log.log(Level.SEVERE, "record was valid but now not found");
+				return false;
 			}
-			rwlock.readLock().lock();
-			try {
-				if (!valid.contains(recNo))
-					throw new RecordNotFoundException("invalid record number " + recNo);
-				lockCookie = System.nanoTime();
-				locks.put(recNo, lockCookie);
-			} finally {
-				rwlock.readLock().unlock();
+			if (columns != null)
+				return columns.matches(recNo, prefixes);
+			String[] data = cache != null ? cache.peek(recNo) : null;
+			if (data != null)
+				return checkCriteria(data, criteria);
+			return matchesStored(recNo, prefixes);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Records are matched and read while database is blocked for writing, each
+	 * record is read once. Records that are not cached are matched by their
+	 * bytes, and only the matching records are decoded. If columnar replica is
+	 * kept, records are matched and decoded in the replica.
+	 */
+	public Map<Long, String[]> findAndRead(String[] criteria) {
+		Map<Long, String[]> result = new LinkedHashMap<Long, String[]>();
+		byte[][] prefixes = RecordCodec.encodeCriteria(criteria);
+		if (prefixes == null)
+			return result;
+		rwlock.readLock().lock();
+		try {
+			int field = selectIndex(criteria);
+			long[] candidates = getCandidates(criteria, field);
+			Arrays.sort(candidates);
+			boolean checked = isMatchedByIndex(criteria, field)
+					|| RecordCodec.acceptsAll(prefixes);
+			for (long recNo : candidates) {
+				if (columns != null) {
+					if (checked || columns.matches(recNo, prefixes))
+						result.put(recNo, columns.read(recNo));
+					continue;
+				}
+				String[] data = cache != null ? cache.get(recNo) : null;
+				if (data == null) {
+					if (!checked && !matchesStored(recNo, prefixes))
+						continue;
+					data = readStored(recNo);
+					if (cache != null)
+						cache.put(recNo, data);
+				} else if (!checked && !checkCriteria(data, criteria)) {
+					continue;
+				}
+				result.put(recNo, data);
 			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			rwlock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Each record is locked only while its owner is compared and written, no
+	 * record is locked while other record is waited for. Calling thread never
+	 * waits for the record locked by other client, so the server does not hold
+	 * worker thread for the time of lock.
+	 */
+	public int[] updateOwners(long[] recNos, String[] expectedOwners,
+			String[] newOwners) {
+		return OwnerUpdates.updateOwners(this, recNos, expectedOwners, newOwners,
+				false);
+	}
+
+	/**
+	 * Returns numbers of records that may match criteria. Method must be called
+	 * while <code>rwlock</code> is locked for reading.
+	 * 
+	 * @param criteria
+	 *         criteria to search records
+	 * @param field
+	 *         number of indexed field selected to search records, or
+	 *         <code>-1</code> if all valid records are candidates
+	 * @return numbers of candidate records
+	 */
+	private long[] getCandidates(String[] criteria, int field) {
+		if (field != -1) {
+			long[] candidates = indexes[field].find(criteria[field]);
+			Arrays.sort(candidates);
+			return candidates;
 		}
+		return slots.getValid();
+	}
+
+	/**
+	 * Determines if candidate records found by index match criteria without
+	 * checking of their fields, i.e. criteria has no values for fields other
+	 * than indexed one.
+	 * 
+	 * @param criteria
+	 *         criteria to search records
+	 * @param field
+	 *         number of indexed field selected to search records, or
+	 *         <code>-1</code> if index is not used
+	 * @return <code>true</code> if candidate records match criteria
+	 */
+	private boolean isMatchedByIndex(String[] criteria, int field) {
+		if (field == -1)
+			return false;
+		for (int i = 0; i < FIELD_SEQUENCE.length; i++) {
+			if (i != field && criteria[i] != null && criteria[i].length() > 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long lockRecord(long recNo) throws RecordNotFoundException {
+		log.log(Level.SEVERE, "lock record: " + recNo);
+		if (recNo < FIRST_RECNO)
+			throw new RecordNotFoundException("invalid record number " + recNo);
+		long lockCookie = locks.lock(recNo);
+		checkLocked(recNo, lockCookie);
 		log
 				.log(Level.SEVERE, "record " + recNo + " locked with cookie " + lockCookie);
 		return lockCookie;
@@ -289,14 +615,120 @@ public class Data implements DBAccess {
 	/**
 	 * {@inheritDoc}
 	 */
+	public long tryLockRecord(long recNo) throws RecordNotFoundException {
+		return lockRecord(recNo, 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long lockRecord(long recNo, long timeout)
+			throws RecordNotFoundException {
+		log.log(Level.SEVERE, "lock record: " + recNo + ", timeout: " + timeout);
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout must be not negative");
+		if (recNo < FIRST_RECNO)
+			throw new RecordNotFoundException("invalid record number " + recNo);
+		long lockCookie = locks.lock(recNo, timeout);
+		if (lockCookie != 0)
+			checkLocked(recNo, lockCookie);
+		return lockCookie;
+	}
+
+	/**
+	 * Locks the record without holding current thread while the record is
+	 * locked by other client. If the record is locked, listener is queued and
+	 * is notified when the record is handed to it, then locking must be
+	 * completed by {@link #completeLock(long, long)}.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param listener
+	 *         listener that waits for the record
+	 * @return locking descriptor ("cookie") or <code>0</code> if listener is
+	 *         queued
+	 * @throws RecordNotFoundException
+	 *          if record is deleted or does not exist
+	 */
+	public long lockRecord(long recNo, LockListener listener)
+			throws RecordNotFoundException {
+		log.log(Level.SEVERE, "lock record: " + recNo + ", without waiting thread");
+		if (recNo < FIRST_RECNO)
+			throw new RecordNotFoundException("invalid record number " + recNo);
+		long lockCookie = locks.lock(recNo, listener);
+		if (lockCookie != 0)
+			checkLocked(recNo, lockCookie);
+		return lockCookie;
+	}
+
+	/**
+	 * Completes locking of the record handed to the listener queued by
+	 * {@link #lockRecord(long, LockListener)}.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param lockCookie
+	 *         locking descriptor given to the listener
+	 * @return locking descriptor ("cookie")
+	 * @throws RecordNotFoundException
+	 *          if record is deleted while listener waited for it
+	 */
+	public long completeLock(long recNo, long lockCookie)
+			throws RecordNotFoundException {
+		checkLocked(recNo, lockCookie);
+		return lockCookie;
+	}
+
+	/**
+	 * Removes listener queued by {@link #lockRecord(long, LockListener)} if the
+	 * record is not handed to it yet.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param listener
+	 *         listener that waits for the record
+	 * @return <code>true</code> if listener is removed, <code>false</code> if
+	 *         the record is already handed to it
+	 */
+	public boolean cancelLock(long recNo, LockListener listener) {
+		return locks.cancel(recNo, listener);
+	}
+
+	/**
+	 * Checks if just locked record is valid. Lock of the record that is not
+	 * valid is released.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param lockCookie
+	 *         locking descriptor of the record
+	 * @throws RecordNotFoundException
+	 *          if record is deleted or does not exist
+	 */
+	private void checkLocked(long recNo, long lockCookie)
+			throws RecordNotFoundException {
+		rwlock.readLock().lock();
+		try {
+			if (!slots.isValid(recNo)) {
+				locks.unlock(recNo, lockCookie);
+				throw new RecordNotFoundException("invalid record number " + recNo);
+			}
+		} finally {
+			rwlock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Decoded records are cached, so the next reading of the same record does
+	 * not access database file.
+	 */
 	public String[] readRecord(long recNo) throws RecordNotFoundException {
 		rwlock.readLock().lock();
 		try {
-			if (!valid.contains(recNo))
+			if (!slots.isValid(recNo))
 				throw new RecordNotFoundException();
-			long pos = getRecPos(recNo);
-			String[] data = readerwriter.readData(pos + flaglength);
-			return data;
+			return readData(recNo);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		} finally {
@@ -304,21 +736,36 @@ public class Data implements DBAccess {
 		}
 	}
 
+	/**
+	 * Reads fields of valid record from the cache, from columnar replica, from
+	 * the log of changes or from database file. Method must be called while <code>rwlock</code> is
+	 * locked for reading.
+	 * 
+	 * @param recNo
+	 *         number of valid record
+	 * @return fields of record
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	private String[] readData(long recNo) throws IOException {
+		String[] data = cache != null ? cache.get(recNo) : null;
+		if (data == null) {
+			if (columns != null)
+				return columns.read(recNo);
+			data = readStored(recNo);
+			if (cache != null)
+				cache.put(recNo, data);
+		}
+		return data;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	public void unlock(long recNo, long cookie) throws SecurityException {
 		log.log(Level.SEVERE, "unlock: " + recNo + ", " + cookie);
-		Object recNoMutex = getMutexForRecNo(recNo);
-		synchronized (recNoMutex) {
-			Long lock = locks.get(recNo);
-			if (lock != null && lock.longValue() == cookie) {
-				locks.remove(recNo);
-				recNoMutex.notifyAll();
-			} else {
-				throw new SecurityException("invalid unlock cookie");
-			}
-		}
+		if (!locks.unlock(recNo, cookie))
+			throw new SecurityException("invalid unlock cookie");
 	}
 
 	/**
@@ -327,53 +774,416 @@ public class Data implements DBAccess {
 	public void updateRecord(long recNo, String[] data, long lockCookie)
 			throws RecordNotFoundException, SecurityException {
 		log.log(Level.SEVERE, "update: " + recNo + ", " + lockCookie);
-		Object recNoMutex = getMutexForRecNo(recNo);
-		checkLockCookie(recNo, recNoMutex, lockCookie);
-		rwlock.readLock().lock();
+		checkLockCookie(recNo, lockCookie);
+		long sequence;
+		rwlock.writeLock().lock();
 		try {
-			if (!valid.contains(recNo))
+			if (!slots.isValid(recNo))
 				throw new RecordNotFoundException("invalid record number");
+			sequence = writeFields(recNo, data);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		} finally {
-			rwlock.readLock().unlock();
+			rwlock.writeLock().unlock();
 		}
+		commit(sequence);
+	}
 
-		long pos = getRecPos(recNo);
+	/**
+	 * {@inheritDoc}
+	 */
+	public VersionedRecord readVersionedRecord(long recNo)
+			throws RecordNotFoundException {
+		rwlock.readLock().lock();
 		try {
-			readerwriter.write(pos + flaglength, data);
+			if (!slots.isValid(recNo))
+				throw new RecordNotFoundException();
+			return new VersionedRecord(readData(recNo), slots.getVersion(recNo));
 		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			rwlock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Record is locked without waiting only while the version is compared and
+	 * the fields are written, so the clients that lock record by
+	 * {@link #lockRecord(long)} never see it changed under their lock.
+	 */
+	public long updateRecordIfVersion(long recNo, String[] data, long version)
+			throws RecordNotFoundException {
+		if (recNo < FIRST_RECNO)
+			throw new RecordNotFoundException("invalid record number " + recNo);
+		long cookie = locks.tryLock(recNo);
+		if (cookie == 0)
+			return 0;
+		try {
+			long sequence;
+			long newVersion;
+			rwlock.writeLock().lock();
+			try {
+				if (!slots.isValid(recNo))
+					throw new RecordNotFoundException("invalid record number " + recNo);
+				if (slots.getVersion(recNo) != version)
+					return 0;
+				sequence = writeFields(recNo, data);
+				newVersion = slots.getVersion(recNo);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			} finally {
+				rwlock.writeLock().unlock();
+			}
+			commit(sequence);
+			return newVersion;
+		} finally {
+			locks.unlock(recNo, cookie);
 		}
 	}
 
 	/**
-	 * Method fills <code>valid</code> and <code>deleted</code> sets with values,
-	 * according data in database file.
+	 * Writes new fields of valid record, updates indexes and version of record.
+	 * Must be called by the owner of write lock.
+	 * 
+	 * @param recNo
+	 *         number of valid record
+	 * @param data
+	 *         new fields of record
+	 * @return sequence number of log entry to wait for by
+	 *         {@link #commit(long)}, <code>0</code> if changes are not logged
+	 * @throws IOException
+	 *          on file reading or writing error
+	 */
+	private long writeFields(long recNo, String[] data) throws IOException {
+		long pos = getRecPos(recNo);
+		removeFromIndexes(recNo);
+		invalidate(recNo);
+		byte[] buf = new byte[flaglength + record_length];
+		buf[0] = validrecbyte;
+		RecordCodec.encode(data, buf, flaglength);
+		long sequence = write(pos, buf);
+		addToIndexes(recNo, buf, flaglength);
+		slots.touch(recNo);
+		return sequence;
+	}
+
+	/**
+	 * Writes bytes of record to database file. If changes are logged, the
+	 * bytes are only appended to the log, and they are written to database
+	 * file by the log after the entry is forced to the disk; until then they
+	 * are read from the log. Must be called by the owner of write lock.
+	 * 
+	 * @param pos
+	 *         position in database file
+	 * @param buf
+	 *         bytes to write
+	 * @return sequence number of log entry to wait for by
+	 *         {@link #commit(long)}, <code>0</code> if changes are not logged
+	 * @throws IOException
+	 *          on file writing error
+	 */
+	private long write(long pos, byte[] buf) throws IOException {
+		if (wal != null)
+			return wal.append(pos, buf);
+		store.write(pos, buf);
+		return 0;
+	}
+
+	/**
+	 * Returns bytes of valid record written to the log of changes but not to
+	 * database file yet. Method must be called while <code>rwlock</code> is
+	 * locked.
+	 * 
+	 * @param recNo
+	 *         number of valid record
+	 * @return bytes of record with "deleted flag", or <code>null</code> if
+	 *         database file has the latest bytes of record
+	 */
+	private byte[] getUnapplied(long recNo) {
+		if (wal == null)
+			return null;
+		byte[] bytes = wal.getUnapplied(getRecPos(recNo));
+		return bytes != null && bytes.length == flaglength + record_length ? bytes
+				: null;
+	}
+
+	/**
+	 * Reads bytes of valid record with "deleted flag" from the log of changes
+	 * or from database file. Method must be called while <code>rwlock</code>
+	 * is locked.
+	 * 
+	 * @param recNo
+	 *         number of valid record
+	 * @param buf
+	 *         buffer of record length with "deleted flag"
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	private void readStored(long recNo, byte[] buf) throws IOException {
+		byte[] bytes = getUnapplied(recNo);
+		if (bytes != null)
+			System.arraycopy(bytes, 0, buf, 0, buf.length);
+		else
+			store.read(getRecPos(recNo), buf);
+	}
+
+	/**
+	 * Reads fields of valid record from the log of changes or from database
+	 * file. Method must be called while <code>rwlock</code> is locked.
 	 * 
+	 * @param recNo
+	 *         number of valid record
+	 * @return fields of record
 	 * @throws IOException
 	 *          on file reading error
 	 */
+	private String[] readStored(long recNo) throws IOException {
+		byte[] bytes = getUnapplied(recNo);
+		if (bytes != null)
+			return RecordCodec.decode(bytes, flaglength);
+		return store.readData(getRecPos(recNo) + flaglength);
+	}
+
+	/**
+	 * Checks if valid record stored in the log of changes or in database file
+	 * is accepted by encoded filter criteria. Method must be called while
+	 * <code>rwlock</code> is locked.
+	 * 
+	 * @param recNo
+	 *         number of valid record
+	 * @param prefixes
+	 *         criteria encoded by {@link RecordCodec#encodeCriteria(String[])}
+	 * @return <code>true</code> if record is accepted
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	private boolean matchesStored(long recNo, byte[][] prefixes)
+			throws IOException {
+		byte[] bytes = getUnapplied(recNo);
+		if (bytes != null)
+			return RecordCodec.matches(ByteBuffer.wrap(bytes), flaglength, prefixes);
+		return store.matches(getRecPos(recNo) + flaglength, prefixes);
+	}
+
+	/**
+	 * Waits until logged change is forced to the disk. Must be called after
+	 * write lock is released, so the changes of other threads are forced
+	 * together with this one.
+	 * 
+	 * @param sequence
+	 *         sequence number returned by {@link #write(long, byte[])}
+	 */
+	private void commit(long sequence) {
+		if (sequence == 0)
+			return;
+		try {
+			wal.awaitDurable(sequence);
+		} catch (IOException e) {
+			throw new RuntimeException("error writing log file", e);
+		}
+	}
+
+	/**
+	 * Opens log of changes and applies the changes that could be not written
+	 * to database file before the last crash.
+	 * 
+	 * @param file
+	 *         log file
+	 * @throws IOException
+	 *          on log reading or database writing error
+	 */
+	private void openLog(File file) throws IOException {
+		try {
+			wal = new WriteAheadLog(file, store, new Runnable() {
+				/**
+				 * Forces database file and truncates the log while changes are
+				 * blocked
+				 */
+				public void run() {
+					checkpoint();
+				}
+			});
+			int recovered = wal.recover();
+			if (recovered > 0)
+				log.log(Level.INFO, recovered + " changes recovered from log file");
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "error recovering log file", e);
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Forces database file and truncates the log of changes. Blocks changes of
+	 * database while checkpoint is in progress.
+	 */
+	private void checkpoint() {
+		rwlock.writeLock().lock();
+		try {
+			if (store != null)
+				wal.checkpoint();
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "error of log checkpoint", e);
+		} finally {
+			rwlock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Method fills <code>slots</code> of valid and deleted records with values,
+	 * according data in database file. Records are read sequentially by blocks
+	 * of <code>LOAD_BLOCK</code> records, and indexed fields are decoded right
+	 * from the block.
+	 * 
+	 * @throws IOException
+	 *          on file reading error or if the last record is incomplete
+	 */
 	private void buildIndex() throws IOException {
 		rwlock.writeLock().lock();
 		try {
-			valid.clear();
-			deleted.clear();
-			for (long pos = header_offset, recNo = FIRST_RECNO; pos < file.length(); pos += (record_length + flaglength), recNo++) {
-				byte b = readerwriter.read(pos);
-				if (b == validrecbyte) {
-					valid.add(recNo);
-				} else if (b == deletedrecbyte) {
-					deleted.add(recNo);
-				} else {
-					throw new RuntimeException("flag expected but other found: " + b);
+			slots.clear();
+			if (cache != null)
+				cache.clear();
+			if (columns != null)
+				columns.clear();
+			for (PrefixIndex index : indexes) {
+				if (index != null)
+					index.clear();
+			}
+			long length = store.length();
+			int stride = record_length + flaglength;
+			byte[] block = new byte[LOAD_BLOCK * stride];
+			long recNo = FIRST_RECNO;
+			for (long pos = header_offset; pos < length; pos += block.length) {
+				if (length - pos < block.length)
+					block = new byte[(int) (length - pos)];
+				store.read(pos, block);
+				for (int offset = 0; offset < block.length; offset += stride, recNo++) {
+					if (offset + stride > block.length)
+						throw new IOException("incomplete record " + recNo);
+					byte b = block[offset];
+					if (b == validrecbyte) {
+						addToIndexes(recNo, block, offset + flaglength);
+						slots.addValid(recNo);
+					} else if (b == deletedrecbyte) {
+						slots.addFree(recNo);
+					} else {
+						throw new RuntimeException("flag expected but other found: " + b);
+					}
 				}
 			}
-			recordCount = valid.size() + deleted.size();
+			recordCount = slots.getValidCount() + slots.getFreeCount();
 		} finally {
 			rwlock.writeLock().unlock();
 		}
 
 	}
 
+	/**
+	 * Returns count of record reads that found record in the cache.
+	 * 
+	 * @return count of cache hits, <code>0</code> if records are not cached
+	 */
+	public long getCacheHitCount() {
+		return cache != null ? cache.getHitCount() : 0;
+	}
+
+	/**
+	 * Returns count of record reads that did not find record in the cache.
+	 * 
+	 * @return count of cache misses, <code>0</code> if records are not cached
+	 */
+	public long getCacheMissCount() {
+		return cache != null ? cache.getMissCount() : 0;
+	}
+
+	/**
+	 * Removes record from the cache of decoded records. Must be called before
+	 * record is changed in database file.
+	 * 
+	 * @param recNo
+	 *         record number
+	 */
+	private void invalidate(long recNo) {
+		if (cache != null)
+			cache.invalidate(recNo);
+	}
+
+	/**
+	 * Adds fields of the record to the indexes and to the columnar replica.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param buf
+	 *         buffer that contains bytes of record
+	 * @param offset
+	 *         position of record in the buffer, after "deleted flag"
+	 */
+	private void addToIndexes(long recNo, byte[] buf, int offset) {
+		if (columns != null)
+			columns.put(recNo, buf, offset);
+		if (indexes[indexed_fields[0]] == null)
+			return;
+		String[] data = RecordCodec.decode(buf, offset);
+		for (int field : indexed_fields) {
+			indexes[field].add(data[field], recNo);
+		}
+	}
+
+	/**
+	 * Removes fields of the record stored in database file from the indexes and
+	 * from the columnar replica.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	private void removeFromIndexes(long recNo) throws IOException {
+		if (indexes[indexed_fields[0]] == null) {
+			if (columns != null)
+				columns.remove(recNo);
+			return;
+		}
+		String[] data;
+		if (columns != null) {
+			data = columns.read(recNo);
+			columns.remove(recNo);
+		} else {
+			data = readStored(recNo);
+		}
+		for (int field : indexed_fields) {
+			indexes[field].remove(data[field], recNo);
+		}
+	}
+
+	/**
+	 * Selects indexed field that is the most selective for criteria.
+	 * 
+	 * @param criteriaArr
+	 *         filter criteria
+	 * @return number of field in field sequence, or <code>-1</code> if criteria
+	 *         is not specified for any indexed field
+	 */
+	private int selectIndex(String[] criteriaArr) {
+		if (criteriaArr == null || criteriaArr.length < FIELD_SEQUENCE.length)
+			return -1;
+		int selected = -1;
+		int selectedCount = Integer.MAX_VALUE;
+		for (int field = 0; field < FIELD_SEQUENCE.length; field++) {
+			String criteria = criteriaArr[field];
+			if (indexes[field] == null || criteria == null || criteria.length() == 0)
+				continue;
+			int count = indexes[field].count(criteria);
+			if (count < selectedCount) {
+				selected = field;
+				selectedCount = count;
+			}
+		}
+		return selected;
+	}
+
 	/**
 	 * Method checks if record is accepted by filter criteria.
 	 * 
@@ -403,21 +1213,18 @@ public class Data implements DBAccess {
 	/**
 	 * Validates locking descriptor for specified record.
 	 * 
-	 * @param recNoRef
-	 *         "unique per record number" object
+	 * @param recNo
+	 *         record number
 	 * @param lockCookie
 	 *         locking descriptor
 	 * @throws SecurityException
 	 *          if locking descriptor is invalid
 	 */
-	private void checkLockCookie(Long recNo, Object recNoMutex, long lockCookie)
+	private void checkLockCookie(long recNo, long lockCookie)
 			throws SecurityException {
-		synchronized (recNoMutex) {
-			log.log(Level.SEVERE, "check lock: " + recNo + ", " + lockCookie);
-			Long lock = locks.get(recNo);
-			if (lock == null || lock.longValue() != lockCookie)
-				throw new SecurityException("invalid cookie passed");
-		}
+		log.log(Level.SEVERE, "check lock: " + recNo + ", " + lockCookie);
+		if (!locks.isLockedWith(recNo, lockCookie))
+			throw new SecurityException("invalid cookie passed");
 	}
 
 	/**
@@ -426,154 +1233,150 @@ public class Data implements DBAccess {
 	 * no more references to the object.
 	 */
 	private void close() {
-		if (file != null)
+		if (wal != null)
 			try {
-				file.close();
-				file = null;
+				wal.close();
+				wal = null;
+			} catch (IOException e) {
+				log.log(Level.SEVERE, "Error closing log file", e);
+			}
+		if (store != null)
+			try {
+				store.close();
+				store = null;
 			} catch (IOException e) {
 				log.log(Level.SEVERE, "Error closing file", e);
 			}
 	}
 
 	/**
-	 * Returns unique object for record number. Unique object used to gain access
-	 * to the record index in sets: <code>valid, deleted</code>. Also it provides
-	 * ability to lock and unlock records independently each from other.
+	 * Returns position of record in file.
 	 * 
 	 * @param recNo
 	 *         record number
-	 * @return "unique per record number" object
+	 * @return position of record in database file
 	 */
-	private Object getMutexForRecNo(long recNo) {
-		Long number = numberCache.get(recNo);
-		if (number == null) {
-			number = new Long(recNo);
-			numberCache.add(number);
-		}
-		return number;
+	private long getRecPos(long recNo) {
+		return header_offset + (recNo - FIRST_RECNO) * (record_length + flaglength);
 	}
 
 	/**
-	 * Returns position of record in file.
+	 * Checks if existing header of database file is valid
 	 * 
-	 * @param recNo
-	 *         record number
-	 * @return position of record in database file
+	 * @throws IOException
+	 *          on file reading error or if header is not valid
 	 */
-	private long getRecPos(long recNo) {
-		return header_offset + (recNo - FIRST_RECNO) * (record_length + flaglength);
+	private void checkHeader() throws IOException {
+		if (store.length() < header_offset) {
+			throw new IOException("database file is too small to be valid");
+		}
+		byte[] hbytes = new byte[mc_value.length];
+		store.read(0, hbytes);
+		if (!Arrays.equals(hbytes, mc_value))
+			throw new IOException("wrong database file format");
 	}
 
 	/**
-	 * Helper class for reading and writing random access file that is database
-	 * file.
+	 * Opens storage backend of specified type for database file.
+	 * 
+	 * @param file
+	 *         database file
+	 * @param type
+	 *         type of storage backend
+	 * @return opened storage backend
+	 * @throws IOException
+	 *          on file opening error
 	 */
-	private class ReaderWriter {
+	private RecordStore openStore(File file, StorageType type) throws IOException {
+		switch (type) {
+		case MAPPED:
+			return new MappedRecordStore(file, header_offset, record_length
+					+ flaglength);
+		default:
+			return new FileRecordStore(file);
+		}
+	}
 
+	/**
+	 * Task of parallel search. Task checks range of candidate records, large
+	 * range is split in halves that are checked by the subtasks. Database must
+	 * be blocked for writing while task is executed.
+	 */
+	private class ScanTask extends RecursiveTask<long[]> {
 		/**
-		 * Checks if existing header of file is valid
-		 * 
-		 * @throws IOException
-		 *          on file reading error or if header is not valid
+		 * serial version UID
 		 */
-		public void checkheader() throws IOException {
-			if (file.length() < header_offset) {
-				throw new IOException("database file is too small to be valid");
-			}
-			synchronized (file) {
-				file.seek(0);
-				byte[] hbytes = new byte[mc_value.length];
-				file.read(hbytes);
-				if (!Arrays.equals(hbytes, mc_value))
-					throw new IOException("wrong database file format");
-			}
-		}
-
+		private static final long serialVersionUID = 1L;
 		/**
-		 * Reads one byte in position <code>pos</code> of random access file
-		 * 
-		 * @param pos
-		 *         position of byte
-		 * @return byte method reads
-		 * @throws IOException
-		 *          on error during reading
+		 * numbers of candidate records
 		 */
-		public byte read(long pos) throws IOException {
-			byte[] b = new byte[1];
-			synchronized (file) {
-				file.seek(pos);
-				file.read(b);
-			}
-			return b[0];
-		}
-
+		private final long[] candidates;
 		/**
-		 * Returns field values based on database record scheme as array of String
-		 * 
-		 * @param pos
-		 *         position of data in random access file
-		 * @param fields
-		 *         database record scheme
-		 * @return array of String representing fields of record
-		 * @throws IOException
-		 *          on file reading error
+		 * index of the first checked candidate
 		 */
-		public String[] readData(long pos) throws IOException {
-			String[] result = new String[FIELD_SEQUENCE.length];
-			synchronized (file) {
-				file.seek(pos);
-				for (int i = 0; i < FIELD_LENGTH.length; i++) {
-					byte[] fielddata = new byte[FIELD_LENGTH[i]];
-					file.read(fielddata, 0, fielddata.length);
-					result[i] = new String(fielddata, encoding).trim();
-				}
-			}
-			return result;
-		}
+		private final int from;
+		/**
+		 * index after the last checked candidate
+		 */
+		private final int to;
+		/**
+		 * filter criteria
+		 */
+		private final String[] criteria;
+		/**
+		 * filter criteria encoded to bytes
+		 */
+		private final byte[][] prefixes;
 
 		/**
-		 * Writes only one byte to a specified position <code>pos</code> in the random
-		 * access file
+		 * Constructor creates task that checks range of candidate records.
 		 * 
-		 * @param pos
-		 *         position in random access file
-		 * @param b
-		 *         one byte to write
-		 * @throws IOException
-		 *          on file writing error
+		 * @param candidates
+		 *         numbers of candidate records
+		 * @param from
+		 *         index of the first checked candidate
+		 * @param to
+		 *         index after the last checked candidate
+		 * @param criteria
+		 *         filter criteria
+		 * @param prefixes
+		 *         filter criteria encoded to bytes
 		 */
-		public void write(long pos, byte b) throws IOException {
-			synchronized (file) {
-				file.seek(pos);
-				file.write(b);
-			}
+		ScanTask(long[] candidates, int from, int to, String[] criteria,
+				byte[][] prefixes) {
+			this.candidates = candidates;
+			this.from = from;
+			this.to = to;
+			this.criteria = criteria;
+			this.prefixes = prefixes;
 		}
 
 		/**
-		 * Writes data to a specified position <code>pos</code> in the random access
-		 * file, according database record scheme.
-		 * 
-		 * @param pos
-		 *         position in a random access file
-		 * @param data
-		 *         array of String, representing fields of record
-		 * @throws IOException
-		 *          on file writing error
+		 * {@inheritDoc}<br>
+		 * Returns numbers of accepted records in the order of candidates.
 		 */
-		public void write(long pos, String[] data) throws IOException {
-			synchronized (file) {
-				file.seek(pos);
-				for (int i = 0; i < FIELD_LENGTH.length; i++) {
-					byte[] fielddata = new byte[FIELD_LENGTH[i]];
-					byte[] outdata = data[i].getBytes(encoding);
-					if (fielddata.length > outdata.length)
-						Arrays.fill(fielddata, space_byte);
-					System.arraycopy(outdata, 0, fielddata, 0, Math.min(fielddata.length,
-							outdata.length));
-					file.write(fielddata, 0, fielddata.length);
+		protected long[] compute() {
+			if (to - from <= SCAN_CHUNK) {
+				long[] result = new long[to - from];
+				int count = 0;
+				for (int i = from; i < to; i++) {
+					if (isMatchedLocked(candidates[i], criteria, prefixes)) {
+						result[count] = candidates[i];
+						count++;
+					}
 				}
+				return Arrays.copyOf(result, count);
 			}
+			int middle = (from + to) >>> 1;
+			ScanTask left = new ScanTask(candidates, from, middle, criteria,
+					prefixes);
+			left.fork();
+			long[] right = new ScanTask(candidates, middle, to, criteria, prefixes)
+					.compute();
+			long[] first = left.join();
+			long[] result = Arrays.copyOf(first, first.length + right.length);
+			System.arraycopy(right, 0, result, first.length, right.length);
+			return result;
 		}
 	}
-
 }
@@ -1,9 +1,8 @@
 package suncertify.db;
 
 import java.io.IOException;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,10 +25,19 @@ public class DataAU extends Data implements Finalizable {
 	private Logger log = Logger.getLogger(this.getClass().getPackage().getName());
 
 	/**
-	 * Auto-unlock queue. Delay queue that contains the pairs of recNo and
+	 * duration in milliseconds of one tick of auto-unlock wheel
+	 */
+	private final static long TICK_MILLIS = 100;
+	/**
+	 * amount of ticks in one turn of auto-unlock wheel
+	 */
+	private final static int TICKS_PER_WHEEL = 512;
+
+	/**
+	 * Auto-unlock wheel. Timing wheel that contains the pairs of recNo and
 	 * lockCookie to used in auto-unlocking feature
 	 */
-	private DelayQueue<DelayedUnlockParams> unlockQueue;
+	private TimingWheel unlockWheel;
 
 	/**
 	 * Auto-unlock timeout in milliseconds for auto-unlock feature. Maximum amount
@@ -44,6 +52,10 @@ public class DataAU extends Data implements Finalizable {
 	 * reference to the thread processing queue
 	 */
 	private Thread queueThread;
+	/**
+	 * listeners notified when record is auto-unlocked
+	 */
+	private final List<AutoUnlockListener> listeners = new CopyOnWriteArrayList<AutoUnlockListener>();
 
 	/**
 	 * Constructor. Creates new database operating object with auto-unlocking
@@ -57,11 +69,29 @@ public class DataAU extends Data implements Finalizable {
 	 *          error reading or writing database file
 	 */
 	public DataAU(String path, long locktimeout) throws IOException {
-		super(path);
+		this(path, locktimeout, new DataSettings());
+	}
+
+	/**
+	 * Constructor. Creates new database operating object with auto-unlocking
+	 * feature using specified settings.
+	 * 
+	 * @param path
+	 *         local path to database file
+	 * @param locktimeout
+	 *         maximum amount of time in milliseconds record can be locked
+	 * @param settings
+	 *         tuning settings of database operating object
+	 * @throws IOException
+	 *          error reading or writing database file
+	 */
+	public DataAU(String path, long locktimeout, DataSettings settings)
+			throws IOException {
+		super(path, settings);
 		if (locktimeout <= 0) {
 			throw new IllegalArgumentException("locktimeout must be more than 0");
 		}
-		this.unlockQueue = new DelayQueue<DelayedUnlockParams>();
+		this.unlockWheel = new TimingWheel(TICK_MILLIS, TICKS_PER_WHEEL);
 		this.timeout = locktimeout;
 		this.running = true;
 		this.queueThread = new Thread() {
@@ -70,22 +100,13 @@ public class DataAU extends Data implements Finalizable {
 			 */
 			public void run() {
 				while (running) {
-					long recNo = FIRST_RECNO - 1;
-					long cookie = recNo;
 					try {
-						DelayedUnlockParams ulckParams = unlockQueue.take();
-						recNo = ulckParams.recNo;
-						cookie = ulckParams.cookie;
-						unlock(recNo, cookie);
-						log.log(Level.SEVERE, "Record " + recNo + " auto-unlocked using cookie "
-								+ cookie);
+						List<long[]> expired = unlockWheel.advance();
+						for (long[] params : expired) {
+							autoUnlock(params[0], params[1]);
+						}
 					} catch (InterruptedException e) {
 
-					} catch (SecurityException e) {
-						log.log(Level.SEVERE, "\nAutounlocking fault. \nInvalid cookie " + cookie
-								+ " for record " + recNo + ".\n Perhaps record already unlocked.");
-					} catch (RuntimeException e) {
-						log.log(Level.SEVERE, "Runtime exception occured", e);
 					}
 				}
 			}
@@ -97,16 +118,109 @@ public class DataAU extends Data implements Finalizable {
 
 	/**
 	 * {@inheritDoc}<br>
-	 * After each lock operation the new "unlock parameters" pair offered to unlock
-	 * queue, so auto-unlocking thread can use these parameters for auto-unlock
-	 * feature.
+	 * After each lock operation the new "unlock parameters" pair scheduled in
+	 * unlock wheel, so auto-unlocking thread can use these parameters for
+	 * auto-unlock feature.
 	 */
 	public long lockRecord(long recNo) throws RecordNotFoundException {
 		long cookie = super.lockRecord(recNo);
-		unlockQueue.offer(new DelayedUnlockParams(recNo, cookie, timeout));
+		unlockWheel.schedule(recNo, cookie, timeout);
 		return cookie;
 	}
 
+	/**
+	 * {@inheritDoc}<br>
+	 * Acquired lock is scheduled for auto-unlock the same way as the lock
+	 * acquired by {@link #lockRecord(long)}.
+	 */
+	public long lockRecord(long recNo, long timeout)
+			throws RecordNotFoundException {
+		long cookie = super.lockRecord(recNo, timeout);
+		if (cookie != 0)
+			unlockWheel.schedule(recNo, cookie, this.timeout);
+		return cookie;
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Acquired lock is scheduled for auto-unlock the same way as the lock
+	 * acquired by {@link #lockRecord(long)}.
+	 */
+	public long lockRecord(long recNo, LockListener listener)
+			throws RecordNotFoundException {
+		long cookie = super.lockRecord(recNo, listener);
+		if (cookie != 0)
+			unlockWheel.schedule(recNo, cookie, timeout);
+		return cookie;
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Handed lock is scheduled for auto-unlock the same way as the lock
+	 * acquired by {@link #lockRecord(long)}.
+	 */
+	public long completeLock(long recNo, long lockCookie)
+			throws RecordNotFoundException {
+		long cookie = super.completeLock(recNo, lockCookie);
+		unlockWheel.schedule(recNo, cookie, timeout);
+		return cookie;
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Pending auto-unlock of the record is cancelled, so unlock wheel holds only
+	 * the locks that are still held.
+	 */
+	public void unlock(long recNo, long cookie) throws SecurityException {
+		super.unlock(recNo, cookie);
+		unlockWheel.cancel(recNo, cookie);
+	}
+
+	/**
+	 * Adds listener notified when record is auto-unlocked.
+	 * 
+	 * @param listener
+	 *         listener to add
+	 */
+	public void addAutoUnlockListener(AutoUnlockListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes listener added by
+	 * {@link #addAutoUnlockListener(AutoUnlockListener)}.
+	 * 
+	 * @param listener
+	 *         listener to remove
+	 */
+	public void removeAutoUnlockListener(AutoUnlockListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Unlocks the record which lock time is up and notifies listeners.
+	 * 
+	 * @param recNo
+	 *         number of locked record
+	 * @param cookie
+	 *         locking descriptor
+	 */
+	private void autoUnlock(long recNo, long cookie) {
+		try {
+			super.unlock(recNo, cookie);
+			log.log(Level.SEVERE, "Record " + recNo + " auto-unlocked using cookie "
+					+ cookie);
+			for (AutoUnlockListener listener : listeners) {
+				listener.autoUnlocked(recNo, cookie);
+			}
+		} catch (SecurityException e) {
+			log.log(Level.SEVERE, "\nAutounlocking fault. \nInvalid cookie " + cookie
+					+ " for record " + recNo + ".\n Perhaps record already unlocked.");
+		} catch (RuntimeException e) {
+			log.log(Level.SEVERE, "Runtime exception occured", e);
+		}
+	}
+
 	/**
 	 * {@inheritDoc} Thread that processing queue must be stopped to make object
 	 * available for garbage collector.
@@ -120,66 +234,4 @@ public class DataAU extends Data implements Finalizable {
 		}
 		super.finalize();
 	}
-
-	/**
-	 * Nested class describing unlock parameters.<br>
-	 * Unlock parameters used to unlock record when time is up.
-	 */
-	private static class DelayedUnlockParams implements Delayed {
-		/**
-		 * record number - the first parameter of the pair "unlock parameters"
-		 */
-		private long recNo;
-		/**
-		 * cookie - the second parameter of the pair "unlock parameters"
-		 */
-		private long cookie;
-		/**
-		 * timeout for auto-unlocking feature in milliseconds
-		 */
-		private long delay;
-		/**
-		 * time in milliseconds when the object created
-		 */
-		private long initialTime;
-
-		/**
-		 * Constructor. Creates delayed queue item with the lock info inside.
-		 * 
-		 * @param recNo
-		 *         record number of locked record
-		 * @param cookie
-		 *         locking descriptor
-		 * @param delay
-		 *         maximum amount of time in milliseconds record can be locked
-		 */
-		DelayedUnlockParams(long recNo, long cookie, long delay) {
-			this.initialTime = System.currentTimeMillis();
-			this.recNo = recNo;
-			this.cookie = cookie;
-			this.delay = delay;
-		}
-
-		/**
-		 * {@inheritDoc}
-		 */
-		public long getDelay(TimeUnit unit) {
-			long now = System.currentTimeMillis();
-			long result = unit.convert(delay - (now - initialTime),
-					TimeUnit.MILLISECONDS);
-			return result;
-		}
-
-		/**
-		 * Implemented method of Delayed interface means that no sorting occurs while
-		 * new object offered to a queue
-		 * 
-		 * @param o
-		 *         object comparing to
-		 * @return 0 always
-		 */
-		public int compareTo(Delayed o) {
-			return 0;
-		}
-	}
 }
@@ -0,0 +1,237 @@
+package suncertify.db;
+
+/**
+ * Class <code>DataSettings</code> holds tuning settings of {@link Data}.<br>
+ * Settings are applied when database file is opened, so changing settings of
+ * already created {@link Data} object has no effect. Default settings are
+ * used if no settings specified.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class DataSettings {
+	/**
+	 * storage backend that operates database file
+	 */
+	private StorageType storageType = StorageType.FILE;
+	/**
+	 * defines records are searched using prefix indexes of fields
+	 */
+	private boolean indexedSearch = true;
+	/**
+	 * maximum amount of decoded records kept in cache
+	 */
+	private int cacheSize = 1024;
+	/**
+	 * minimum amount of records checked by search that are checked in parallel
+	 */
+	private int parallelScanThreshold = 65536;
+	/**
+	 * defines changes of records are logged before they are written
+	 */
+	private boolean writeAheadLog = false;
+	/**
+	 * defines locked records are handed to waiting clients in order of waiting
+	 */
+	private boolean fairLocking = false;
+	/**
+	 * defines records are searched and read in columnar replica kept in memory
+	 */
+	private boolean columnarSearch = false;
+	/**
+	 * defines database file is not shared with other programs
+	 */
+	private boolean exclusive = false;
+
+	/**
+	 * Returns storage backend that operates database file.
+	 * 
+	 * @return storage backend type
+	 */
+	public StorageType getStorageType() {
+		return storageType;
+	}
+
+	/**
+	 * Sets storage backend that operates database file.
+	 * 
+	 * @param storageType
+	 *         storage backend type
+	 */
+	public void setStorageType(StorageType storageType) {
+		if (storageType == null)
+			throw new IllegalArgumentException("storage type must be not null");
+		this.storageType = storageType;
+	}
+
+	/**
+	 * Returns <code>true</code> if records are searched using prefix indexes of
+	 * name, location and specialties fields.
+	 * 
+	 * @return <code>true</code> if prefix indexes are used
+	 */
+	public boolean isIndexedSearch() {
+		return indexedSearch;
+	}
+
+	/**
+	 * Sets usage of prefix indexes of name, location and specialties fields for
+	 * records search. Indexes are kept in memory.
+	 * 
+	 * @param indexedSearch
+	 *         <code>true</code> if prefix indexes must be used
+	 */
+	public void setIndexedSearch(boolean indexedSearch) {
+		this.indexedSearch = indexedSearch;
+	}
+
+	/**
+	 * Returns maximum amount of decoded records kept in cache.
+	 * 
+	 * @return size of records cache, <code>0</code> if records are not cached
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Sets maximum amount of decoded records kept in cache.
+	 * 
+	 * @param cacheSize
+	 *         size of records cache, <code>0</code> to disable caching
+	 */
+	public void setCacheSize(int cacheSize) {
+		if (cacheSize < 0)
+			throw new IllegalArgumentException("cache size must be not negative");
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Returns minimum amount of records checked by search that are checked in
+	 * parallel.
+	 * 
+	 * @return threshold of parallel search, <code>0</code> if records are
+	 *         always checked by one thread
+	 */
+	public int getParallelScanThreshold() {
+		return parallelScanThreshold;
+	}
+
+	/**
+	 * Sets minimum amount of records checked by search that are checked in
+	 * parallel. Smaller amounts of records are checked by the searching thread.
+	 * 
+	 * @param parallelScanThreshold
+	 *         threshold of parallel search, <code>0</code> to disable parallel
+	 *         search
+	 */
+	public void setParallelScanThreshold(int parallelScanThreshold) {
+		if (parallelScanThreshold < 0)
+			throw new IllegalArgumentException(
+					"parallel scan threshold must be not negative");
+		this.parallelScanThreshold = parallelScanThreshold;
+	}
+
+	/**
+	 * Returns <code>true</code> if changes of records are appended to the
+	 * write-ahead log and forced to the disk before the change is completed.
+	 * 
+	 * @return <code>true</code> if write-ahead log is used
+	 */
+	public boolean isWriteAheadLog() {
+		return writeAheadLog;
+	}
+
+	/**
+	 * Sets usage of write-ahead log. Log file is kept near database file, its
+	 * name is the name of database file with <code>.wal</code> extension.
+	 * Changes of concurrent clients are forced to the disk together.
+	 * 
+	 * @param writeAheadLog
+	 *         <code>true</code> if write-ahead log must be used
+	 */
+	public void setWriteAheadLog(boolean writeAheadLog) {
+		this.writeAheadLog = writeAheadLog;
+	}
+
+	/**
+	 * Returns <code>true</code> if unlocked record is handed to the client that
+	 * waits for it longer than others.
+	 * 
+	 * @return <code>true</code> if fair locking is used
+	 */
+	public boolean isFairLocking() {
+		return fairLocking;
+	}
+
+	/**
+	 * Sets fair locking. Unlocked record is handed to the first client waiting
+	 * for it and only this client is woken up, so many clients waiting for the
+	 * same record do not compete for it each time it is unlocked.
+	 * 
+	 * @param fairLocking
+	 *         <code>true</code> if fair locking must be used
+	 */
+	public void setFairLocking(boolean fairLocking) {
+		this.fairLocking = fairLocking;
+	}
+
+	/**
+	 * Returns <code>true</code> if columnar replica of records is kept in
+	 * memory to search and read records.
+	 * 
+	 * @return <code>true</code> if columnar replica is used
+	 */
+	public boolean isColumnarSearch() {
+		return columnarSearch;
+	}
+
+	/**
+	 * Sets usage of columnar replica of records. Replica keeps bytes of each
+	 * field in one array, so records are searched and read without access to
+	 * database file, and filter of one field reads only the bytes of this
+	 * field. Replica takes as much memory as the records section of database
+	 * file.
+	 * 
+	 * @param columnarSearch
+	 *         <code>true</code> if columnar replica must be used
+	 */
+	public void setColumnarSearch(boolean columnarSearch) {
+		this.columnarSearch = columnarSearch;
+	}
+
+	/**
+	 * Returns <code>true</code> if database file is opened only if no other
+	 * program has it opened, and no other program can open it until it is
+	 * closed.
+	 * 
+	 * @return <code>true</code> if database file is not shared
+	 */
+	public boolean isExclusive() {
+		return exclusive;
+	}
+
+	/**
+	 * Sets exclusive opening of database file. Database file opened not
+	 * exclusively is shared with other programs that do not open it
+	 * exclusively. Programs share database file by the lock of file, so it
+	 * works between programs that use {@link Data} only.
+	 * 
+	 * @param exclusive
+	 *         <code>true</code> if database file must not be shared
+	 */
+	public void setExclusive(boolean exclusive) {
+		this.exclusive = exclusive;
+	}
+
+	/**
+	 * Overrides method of {@link Object} class for debugging issues.
+	 */
+	public String toString() {
+		return "storage=" + storageType + ", indexedSearch=" + indexedSearch
+				+ ", cacheSize=" + cacheSize + ", parallelScanThreshold="
+				+ parallelScanThreshold + ", writeAheadLog=" + writeAheadLog
+				+ ", fairLocking=" + fairLocking + ", columnarSearch="
+				+ columnarSearch + ", exclusive=" + exclusive;
+	}
+}
@@ -0,0 +1,140 @@
+package suncertify.db;
+
+import java.util.Map;
+
+/**
+ * Interface <code>ExtendedDBAccess</code> extends Data Access Interface
+ * {@link DBAccess} with operations that are not required by it, but let the
+ * clients work with the database more efficiently.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public interface ExtendedDBAccess extends DBAccess {
+	/**
+	 * result of owner update: owner of record is changed
+	 */
+	int OWNER_UPDATED = 0;
+	/**
+	 * result of owner update: owner of record is not the expected one, record is
+	 * not changed
+	 */
+	int OWNER_CONFLICT = 1;
+	/**
+	 * result of owner update: record is not found
+	 */
+	int OWNER_NOT_FOUND = 2;
+	/**
+	 * result of owner update: record is locked by other client, record is not
+	 * changed and can be updated again later
+	 */
+	int OWNER_BUSY = 3;
+	/**
+	 * number of owner field in field sequence
+	 */
+	int OWNER_FIELD = 5;
+
+	/**
+	 * Finds records that match the specified criteria and reads them. Criteria
+	 * have the same meaning as in {@link #findByCriteria(String[])}. Each
+	 * matching record is read once, and all the records are returned as they
+	 * were at the same moment.
+	 * 
+	 * @param criteria
+	 *         criteria to search records
+	 * @return fields of matching records mapped by record numbers, in ascending
+	 *         order of record numbers
+	 */
+	public Map<Long, String[]> findAndRead(String[] criteria);
+
+	/**
+	 * Books or unbooks records. Each record is locked, its owner field is
+	 * compared with the expected owner, replaced by the new owner if they are
+	 * equal, and record is unlocked, all in one call. Records are processed one
+	 * by one, so the result of each record does not depend on the others.
+	 * Record locked by other client is not waited for, so the call never holds
+	 * the caller while other client edits the record.
+	 * 
+	 * @param recNos
+	 *         numbers of records
+	 * @param expectedOwners
+	 *         expected owners of records, empty string if record must be not
+	 *         booked, <code>null</code> element accepts any owner
+	 * @param newOwners
+	 *         new owners of records, empty string to unbook record
+	 * @return result of each record: {@link #OWNER_UPDATED},
+	 *         {@link #OWNER_CONFLICT}, {@link #OWNER_NOT_FOUND} or
+	 *         {@link #OWNER_BUSY}
+	 */
+	public int[] updateOwners(long[] recNos, String[] expectedOwners,
+			String[] newOwners);
+
+	/**
+	 * Reads record along with its version. Version is changed by each change
+	 * of record, so it can be passed to
+	 * {@link #updateRecordIfVersion(long, String[], long)} to update record
+	 * without locking it.<br>
+	 * Version is valid only while the database stays opened: its high bits are
+	 * the epoch of the opening, the second the database file was opened, and
+	 * its low bits count the changes of record since then. After the server is
+	 * restarted, versions read before are stale and updates with them return
+	 * <code>0</code>, so the client must read the records again. Versions of
+	 * database reopened within the same second are not told apart.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return fields and version of record
+	 * @throws RecordNotFoundException
+	 *          if record does not exist or is deleted
+	 */
+	public VersionedRecord readVersionedRecord(long recNo)
+			throws RecordNotFoundException;
+
+	/**
+	 * Updates record only if its version is the given one, without locking of
+	 * record by {@link #lockRecord(long)}. Record is not updated if it is
+	 * changed since the version was read or if it is locked by other client at
+	 * the moment, the call never waits for the lock of record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param data
+	 *         new fields of record
+	 * @param version
+	 *         version of record the fields are based on
+	 * @return new version of record, or <code>0</code> if record is not updated
+	 * @throws RecordNotFoundException
+	 *          if record does not exist or is deleted
+	 */
+	public long updateRecordIfVersion(long recNo, String[] data, long version)
+			throws RecordNotFoundException;
+
+	/**
+	 * Locks record if it is not locked by other client, without waiting.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return locking descriptor ("cookie") or <code>0</code> if record is
+	 *         locked by other client
+	 * @throws RecordNotFoundException
+	 *          if record does not exist or is deleted
+	 */
+	public long tryLockRecord(long recNo) throws RecordNotFoundException;
+
+	/**
+	 * Locks record. If record is locked by other client, waits until it is
+	 * unlocked, but not longer than the given time.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param timeout
+	 *         maximum time to wait in milliseconds, <code>0</code> to return at
+	 *         once
+	 * @return locking descriptor ("cookie") or <code>0</code> if record is not
+	 *         unlocked by other client in time
+	 * @throws RecordNotFoundException
+	 *          if record does not exist or is deleted
+	 */
+	public long lockRecord(long recNo, long timeout)
+			throws RecordNotFoundException;
+}
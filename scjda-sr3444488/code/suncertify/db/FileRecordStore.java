@@ -0,0 +1,107 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class <code>FileRecordStore</code> is a storage backend that operates
+ * database file using {@link RandomAccessFile}.<br>
+ * Each access to the file is a pair of <code>seek</code> and
+ * <code>read</code> (<code>write</code>) operations, so all of the accesses
+ * are serialized by the lock of the file. Explicit lock is used instead of
+ * the monitor, so a virtual thread accessing the file does not pin its carrier.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class FileRecordStore extends RecordStore {
+	/**
+	 * random access file reference to operate database file
+	 */
+	private final RandomAccessFile file;
+	/**
+	 * lock that serializes accesses to the file
+	 */
+	private final ReentrantLock fileLock = new ReentrantLock();
+
+	/**
+	 * Constructor opens database file for reading and writing.
+	 * 
+	 * @param file
+	 *         database file
+	 * @throws IOException
+	 *          on file opening error
+	 */
+	FileRecordStore(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long length() throws IOException {
+		return file.length();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void read(long pos, byte[] buf) throws IOException {
+		fileLock.lock();
+		try {
+			file.seek(pos);
+			file.readFully(buf);
+		} finally {
+			fileLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void write(long pos, byte[] buf) throws IOException {
+		fileLock.lock();
+		try {
+			file.seek(pos);
+			file.write(buf);
+		} finally {
+			fileLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void force() throws IOException {
+		file.getChannel().force(false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void truncate(long length) throws IOException {
+		fileLock.lock();
+		try {
+			file.setLength(length);
+		} finally {
+			fileLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected FileChannel getChannel() {
+		return file.getChannel();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,26 @@
+package suncertify.db;
+
+/**
+ * Interface <code>LockListener</code> waits for the record locked by other
+ * client without holding any thread. Listener is queued by
+ * {@link Data#lockRecord(long, LockListener)} and is notified when the record
+ * is handed to it.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public interface LockListener {
+
+	/**
+	 * Called when the record is handed to the listener. Method is called by the
+	 * thread that unlocks the record, while the lock table is locked, so it must
+	 * not wait and must not lock other records. Locking must be completed by
+	 * {@link Data#completeLock(long, long)} in other thread.
+	 * 
+	 * @param recNo
+	 *         number of handed record
+	 * @param cookie
+	 *         locking descriptor of handed record
+	 */
+	void locked(long recNo, long cookie);
+}
@@ -0,0 +1,634 @@
+package suncertify.db;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class <code>LockManager</code> is a table of record locks used by
+ * {@link Data}.<br>
+ * Table is divided into fixed amount of stripes selected by record number.
+ * Each stripe is guarded by its own explicit lock and keeps locking
+ * descriptors of its records in open addressing hash table of primitive
+ * numbers, so records of different stripes are locked and unlocked
+ * independently each from other, and locking or unlocking of record that is
+ * not contended allocates no objects. Explicit locks are used instead of
+ * object monitors, so the thread waiting for record does not pin the carrier
+ * of virtual thread.<br>
+ * In the fair mode each stripe keeps the queue of waiting threads in order of
+ * waiting. Unlocked record is handed directly to the first thread waiting for
+ * it, with new locking descriptor, and only this thread is woken up. In the
+ * default mode the stripe has one condition for all of its records, so
+ * unlocking of a record wakes up every thread waiting for any record of the
+ * stripe: threads waiting for the unlocked record compete for it, and the
+ * others go back to waiting. Waking only one thread is not enough, because
+ * it may wait for other record, and the unlocked record would stay unclaimed
+ * while its waiters sleep. Unlocking of a record that many threads wait for,
+ * or of a stripe with many waiting threads, therefore costs a wake-up of each
+ * of them; the fair mode should be used when it matters.<br>
+ * Instead of thread, the record can be waited for by {@link LockListener}.
+ * Listener is queued the same way in both modes, and unlocked record is
+ * handed to the first listener waiting for it, so no thread is held while
+ * the record is locked.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class LockManager {
+	/**
+	 * amount of stripes, must be a power of two
+	 */
+	private final static int STRIPES = 64;
+	/**
+	 * initial capacity of hash table of stripe, must be a power of two
+	 */
+	private final static int INITIAL_CAPACITY = 16;
+	/**
+	 * key of free slot of hash table, record numbers are never negative
+	 */
+	private final static long FREE = -1;
+
+	/**
+	 * stripes of the lock table
+	 */
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	/**
+	 * defines records are handed to waiting threads in order of waiting
+	 */
+	private final boolean fair;
+
+	/**
+	 * Constructor creates empty lock table in the default mode.
+	 */
+	LockManager() {
+		this(false);
+	}
+
+	/**
+	 * Constructor creates empty lock table.
+	 * 
+	 * @param fair
+	 *         <code>true</code> if records must be handed to waiting threads in
+	 *         order of waiting
+	 */
+	LockManager(boolean fair) {
+		this.fair = fair;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Locks the record if it is not locked, without waiting.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return locking descriptor ("cookie") or <code>0</code> if the record is
+	 *         already locked
+	 */
+	long tryLock(long recNo) {
+		return lock(recNo, 0);
+	}
+
+	/**
+	 * Locks the record. If the record is already locked, current thread waits
+	 * until it is unlocked, but not longer than the given time.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param timeout
+	 *         maximum time to wait in milliseconds, <code>0</code> to return at
+	 *         once
+	 * @return locking descriptor ("cookie") or <code>0</code> if the record is
+	 *         not unlocked in time
+	 */
+	long lock(long recNo, long timeout) {
+		Stripe stripe = getStripe(recNo);
+		stripe.lock.lock();
+		try {
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+			if (fair)
+				return lockFair(stripe, recNo, nanos, true);
+			while (stripe.indexOf(recNo) >= 0) {
+				if (nanos <= 0)
+					return 0;
+				try {
+					nanos = stripe.unlocked.awaitNanos(nanos);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			long cookie = newCookie();
+			stripe.put(recNo, cookie);
+			return cookie;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Locks the record. If the record is already locked, current thread waits
+	 * until it is unlocked.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return locking descriptor ("cookie")
+	 */
+	long lock(long recNo) {
+		Stripe stripe = getStripe(recNo);
+		stripe.lock.lock();
+		try {
+			if (fair)
+				return lockFair(stripe, recNo, 0, false);
+			while (stripe.indexOf(recNo) >= 0) {
+				try {
+					stripe.unlocked.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			long cookie = newCookie();
+			stripe.put(recNo, cookie);
+			return cookie;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Locks the record if it is not locked. If the record is already locked,
+	 * listener is queued and is notified when the record is handed to it.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param listener
+	 *         listener that waits for the record
+	 * @return locking descriptor ("cookie") or <code>0</code> if listener is
+	 *         queued
+	 */
+	long lock(long recNo, LockListener listener) {
+		Stripe stripe = getStripe(recNo);
+		stripe.lock.lock();
+		try {
+			if (stripe.indexOf(recNo) < 0) {
+				long cookie = newCookie();
+				stripe.put(recNo, cookie);
+				return cookie;
+			}
+			stripe.enqueue(recNo, null).listener = listener;
+			return 0;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes queued listener if the record is not handed to it yet.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param listener
+	 *         listener that waits for the record
+	 * @return <code>true</code> if listener is removed, <code>false</code> if
+	 *         the record is already handed to it or listener is not queued
+	 */
+	boolean cancel(long recNo, LockListener listener) {
+		Stripe stripe = getStripe(recNo);
+		stripe.lock.lock();
+		try {
+			for (Waiter w = stripe.head; w != null; w = w.next) {
+				if (w.recNo == recNo && w.listener == listener) {
+					stripe.dequeue(w);
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Unlocks the record if it is locked with specified descriptor.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param cookie
+	 *         locking descriptor
+	 * @return <code>true</code> if record was unlocked, <code>false</code> if
+	 *         the record is not locked with specified descriptor
+	 */
+	boolean unlock(long recNo, long cookie) {
+		Stripe stripe = getStripe(recNo);
+		stripe.lock.lock();
+		try {
+			int slot = stripe.indexOf(recNo);
+			if (slot < 0 || stripe.cookies[slot] != cookie)
+				return false;
+			release(stripe, slot);
+			return true;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Locks the record in the fair mode. If the record is already locked,
+	 * current thread is queued and waits until the record is handed to it.
+	 * Must be called by the owner of the lock of stripe.
+	 * 
+	 * @param stripe
+	 *         stripe of the record
+	 * @param recNo
+	 *         record number
+	 * @param nanos
+	 *         maximum time to wait in nanoseconds, used if wait is timed
+	 * @param timed
+	 *         <code>true</code> if wait is limited by time
+	 * @return locking descriptor ("cookie") or <code>0</code> if the record is
+	 *         not handed in time
+	 */
+	private long lockFair(Stripe stripe, long recNo, long nanos, boolean timed) {
+		if (stripe.indexOf(recNo) < 0) {
+			long cookie = newCookie();
+			stripe.put(recNo, cookie);
+			return cookie;
+		}
+		if (timed && nanos <= 0)
+			return 0;
+		Waiter waiter = stripe.enqueue(recNo, stripe.lock.newCondition());
+		try {
+			while (waiter.cookie == 0) {
+				if (!timed)
+					waiter.granted.await();
+				else if (nanos > 0)
+					nanos = waiter.granted.awaitNanos(nanos);
+				else
+					break;
+			}
+		} catch (InterruptedException e) {
+			if (waiter.cookie == 0)
+				stripe.dequeue(waiter);
+			else
+				release(stripe, stripe.indexOf(recNo));
+			throw new RuntimeException(e);
+		}
+		if (waiter.cookie == 0)
+			stripe.dequeue(waiter);
+		return waiter.cookie;
+	}
+
+	/**
+	 * Releases locked record. Record is handed to the first listener waiting
+	 * for it, and in the fair mode to the first thread or listener waiting for
+	 * it, if any. Must be called by the owner of the lock of stripe.
+	 * 
+	 * @param stripe
+	 *         stripe of the record
+	 * @param slot
+	 *         slot of the record
+	 */
+	private void release(Stripe stripe, int slot) {
+		Waiter next = stripe.poll(stripe.keys[slot]);
+		if (next != null) {
+			long cookie = newCookie();
+			while (cookie == stripe.cookies[slot]) {
+				cookie = newCookie();
+			}
+			stripe.cookies[slot] = cookie;
+			next.cookie = cookie;
+			if (next.listener != null)
+				next.listener.locked(next.recNo, cookie);
+			else
+				next.granted.signal();
+			return;
+		}
+		stripe.remove(slot);
+		if (!fair)
+			stripe.unlocked.signalAll();
+	}
+
+	/**
+	 * Checks that the record is locked with specified descriptor.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param cookie
+	 *         locking descriptor
+	 * @return <code>true</code> if record is locked with specified descriptor
+	 */
+	boolean isLockedWith(long recNo, long cookie) {
+		Stripe stripe = getStripe(recNo);
+		stripe.lock.lock();
+		try {
+			int slot = stripe.indexOf(recNo);
+			return slot >= 0 && stripe.cookies[slot] == cookie;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns amount of locked records.
+	 * 
+	 * @return amount of locked records
+	 */
+	int size() {
+		int result = 0;
+		for (Stripe stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				result += stripe.size;
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates locking descriptor ("cookie"). Cookie is never <code>0</code>,
+	 * which means that the record is not locked.
+	 * 
+	 * @return locking descriptor
+	 */
+	private static long newCookie() {
+		long cookie = System.nanoTime();
+		return cookie != 0 ? cookie : 1;
+	}
+
+	/**
+	 * Returns stripe that guards locking of record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return stripe of the record
+	 */
+	private Stripe getStripe(long recNo) {
+		return stripes[hash(recNo) & (STRIPES - 1)];
+	}
+
+	/**
+	 * Mixes bits of record number, so the sequential numbers are spread over
+	 * the stripes and over the slots of hash table.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return hash code of record number
+	 */
+	private static int hash(long recNo) {
+		long h = recNo * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Stripe of the lock table, open addressing hash table of locked record
+	 * numbers and their locking descriptors with linear probing.
+	 */
+	private static class Stripe {
+		/**
+		 * lock that guards the stripe
+		 */
+		private final ReentrantLock lock = new ReentrantLock();
+		/**
+		 * condition signalled when record of the stripe is unlocked
+		 */
+		private final Condition unlocked = lock.newCondition();
+		/**
+		 * locked record numbers, <code>FREE</code> in free slots
+		 */
+		private long[] keys;
+		/**
+		 * locking descriptors of the records in the same slots
+		 */
+		private long[] cookies;
+		/**
+		 * amount of locked records
+		 */
+		private int size;
+		/**
+		 * first thread waiting in the fair mode or listener waiting in any mode
+		 */
+		private Waiter head;
+		/**
+		 * last thread waiting in the fair mode or listener waiting in any mode
+		 */
+		private Waiter tail;
+
+		/**
+		 * Constructor creates empty stripe.
+		 */
+		Stripe() {
+			allocate(INITIAL_CAPACITY);
+		}
+
+		/**
+		 * Finds slot of the record.
+		 * 
+		 * @param recNo
+		 *         record number
+		 * @return slot of the record or <code>-1</code> if record is not locked
+		 */
+		int indexOf(long recNo) {
+			int mask = keys.length - 1;
+			int slot = (hash(recNo) >>> 6) & mask;
+			while (keys[slot] != FREE) {
+				if (keys[slot] == recNo)
+					return slot;
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * Puts record that is not locked yet into the table.
+		 * 
+		 * @param recNo
+		 *         record number
+		 * @param cookie
+		 *         locking descriptor
+		 */
+		void put(long recNo, long cookie) {
+			if ((size + 1) * 2 > keys.length)
+				resize(keys.length * 2);
+			int mask = keys.length - 1;
+			int slot = (hash(recNo) >>> 6) & mask;
+			while (keys[slot] != FREE) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = recNo;
+			cookies[slot] = cookie;
+			size++;
+		}
+
+		/**
+		 * Removes record from the table. Records that follow the removed one in
+		 * the same probe sequence are shifted back, so the table needs no
+		 * deletion markers.
+		 * 
+		 * @param slot
+		 *         slot of the record
+		 */
+		void remove(int slot) {
+			int mask = keys.length - 1;
+			int free = slot;
+			int next = (free + 1) & mask;
+			while (keys[next] != FREE) {
+				int home = (hash(keys[next]) >>> 6) & mask;
+				if (((next - home) & mask) >= ((next - free) & mask)) {
+					keys[free] = keys[next];
+					cookies[free] = cookies[next];
+					free = next;
+				}
+				next = (next + 1) & mask;
+			}
+			keys[free] = FREE;
+			size--;
+		}
+
+		/**
+		 * Adds entry to the end of queue of waiting threads.
+		 * 
+		 * @param recNo
+		 *         number of record the thread waits for
+		 * @param granted
+		 *         condition of waiting thread, <code>null</code> for listener
+		 * @return waiting thread entry
+		 */
+		Waiter enqueue(long recNo, Condition granted) {
+			Waiter waiter = new Waiter(recNo, granted);
+			if (tail == null)
+				head = waiter;
+			else
+				tail.next = waiter;
+			tail = waiter;
+			return waiter;
+		}
+
+		/**
+		 * Removes the first thread waiting for the record from the queue.
+		 * 
+		 * @param recNo
+		 *         record number
+		 * @return waiting thread entry or <code>null</code> if no thread waits
+		 *         for the record
+		 */
+		Waiter poll(long recNo) {
+			Waiter prev = null;
+			for (Waiter w = head; w != null; prev = w, w = w.next) {
+				if (w.recNo == recNo) {
+					unlink(prev, w);
+					return w;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Removes thread that stops waiting from the queue.
+		 * 
+		 * @param waiter
+		 *         waiting thread entry
+		 */
+		void dequeue(Waiter waiter) {
+			Waiter prev = null;
+			for (Waiter w = head; w != null; prev = w, w = w.next) {
+				if (w == waiter) {
+					unlink(prev, w);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Unlinks entry from the queue.
+		 * 
+		 * @param prev
+		 *         previous entry or <code>null</code> if entry is the first one
+		 * @param waiter
+		 *         entry to unlink
+		 */
+		private void unlink(Waiter prev, Waiter waiter) {
+			if (prev == null)
+				head = waiter.next;
+			else
+				prev.next = waiter.next;
+			if (tail == waiter)
+				tail = prev;
+			waiter.next = null;
+		}
+
+		/**
+		 * Moves records into the new arrays of specified capacity.
+		 * 
+		 * @param capacity
+		 *         new capacity of the table
+		 */
+		private void resize(int capacity) {
+			long[] oldKeys = keys;
+			long[] oldCookies = cookies;
+			allocate(capacity);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != FREE)
+					put(oldKeys[i], oldCookies[i]);
+			}
+		}
+
+		/**
+		 * Allocates empty arrays of specified capacity.
+		 * 
+		 * @param capacity
+		 *         capacity of the table
+		 */
+		private void allocate(int capacity) {
+			keys = new long[capacity];
+			cookies = new long[capacity];
+			Arrays.fill(keys, FREE);
+		}
+	}
+
+	/**
+	 * Thread waiting for the record in the fair mode or listener waiting for
+	 * the record.
+	 */
+	private static class Waiter {
+		/**
+		 * number of record the thread waits for
+		 */
+		private final long recNo;
+		/**
+		 * condition signalled when the record is handed to the thread,
+		 * <code>null</code> if listener waits for the record
+		 */
+		private final Condition granted;
+		/**
+		 * listener notified when the record is handed to it, <code>null</code>
+		 * if thread waits for the record
+		 */
+		private LockListener listener;
+		/**
+		 * locking descriptor of handed record, <code>0</code> until the record
+		 * is handed
+		 */
+		private long cookie;
+		/**
+		 * next thread in the queue
+		 */
+		private Waiter next;
+
+		/**
+		 * Constructor creates entry of waiting thread.
+		 * 
+		 * @param recNo
+		 *         number of record the thread waits for
+		 * @param granted
+		 *         condition of the lock of stripe, <code>null</code> for listener
+		 */
+		Waiter(long recNo, Condition granted) {
+			this.recNo = recNo;
+			this.granted = granted;
+		}
+	}
+}
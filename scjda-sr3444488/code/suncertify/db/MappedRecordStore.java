@@ -0,0 +1,283 @@
+package suncertify.db;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class <code>MappedRecordStore</code> is a storage backend that maps records
+ * section of database file into memory.<br>
+ * Records section is mapped by segments of fixed amount of records, so record
+ * never crosses the bound of segment. Accesses to the mapped records are done
+ * without seeking and system calls, and do not block each other. The file
+ * header and records appended after the last mapping are accessed through the
+ * positional operations of {@link FileChannel}. Mapping is renewed when
+ * enough records are appended to the file.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class MappedRecordStore extends RecordStore {
+	/**
+	 * amount of records in one mapped segment
+	 */
+	private final static int SEGMENT_RECORDS = 1 << 16;
+	/**
+	 * amount of records appended to the file after which mapping is renewed
+	 */
+	private final static int REMAP_RECORDS = 1 << 10;
+	/**
+	 * random access file reference to open database file
+	 */
+	private final RandomAccessFile file;
+	/**
+	 * channel of database file
+	 */
+	private final FileChannel channel;
+	/**
+	 * position of first record in database file
+	 */
+	private final long dataOffset;
+	/**
+	 * length of one mapped segment in bytes
+	 */
+	private final long segmentLength;
+	/**
+	 * amount of bytes appended to the file after which mapping is renewed
+	 */
+	private final long remapLength;
+	/**
+	 * mapped segments of records section
+	 */
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	/**
+	 * position in database file where the mapped region ends
+	 */
+	private volatile long mappedLimit;
+	/**
+	 * current length of database file
+	 */
+	private volatile long length;
+
+	/**
+	 * Constructor opens database file and maps its records section.
+	 * 
+	 * @param file
+	 *         database file
+	 * @param dataOffset
+	 *         position of first record in database file
+	 * @param slotLength
+	 *         length of record including "deleted flag"
+	 * @throws IOException
+	 *          on file opening or mapping error
+	 */
+	MappedRecordStore(File file, long dataOffset, int slotLength)
+			throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+		this.dataOffset = dataOffset;
+		this.segmentLength = (long) SEGMENT_RECORDS * slotLength;
+		this.remapLength = (long) REMAP_RECORDS * slotLength;
+		this.length = channel.size();
+		remap();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte read(long pos) throws IOException {
+		MappedByteBuffer[] segs = segments;
+		if (pos >= dataOffset) {
+			int seg = (int) ((pos - dataOffset) / segmentLength);
+			int offset = (int) ((pos - dataOffset) % segmentLength);
+			if (seg < segs.length && offset < segs[seg].capacity()) {
+				return segs[seg].get(offset);
+			}
+		}
+		return super.read(pos);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void read(long pos, byte[] buf) throws IOException {
+		ByteBuffer mapped = getMapped(pos, buf.length);
+		if (mapped != null) {
+			mapped.get(buf);
+			return;
+		}
+		ByteBuffer bb = ByteBuffer.wrap(buf);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, pos + bb.position()) < 0)
+				throw new EOFException("unexpected end of database file");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Mapped record is matched right in the mapped segment, without copying.
+	 */
+	public boolean matches(long pos, byte[][] prefixes) throws IOException {
+		MappedByteBuffer[] segs = segments;
+		if (pos >= dataOffset) {
+			int seg = (int) ((pos - dataOffset) / segmentLength);
+			int offset = (int) ((pos - dataOffset) % segmentLength);
+			if (seg < segs.length
+					&& offset + record_length <= segs[seg].capacity()) {
+				return RecordCodec.matches(segs[seg], offset, prefixes);
+			}
+		}
+		return super.matches(pos, prefixes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void write(long pos, byte b) throws IOException {
+		MappedByteBuffer[] segs = segments;
+		if (pos >= dataOffset) {
+			int seg = (int) ((pos - dataOffset) / segmentLength);
+			int offset = (int) ((pos - dataOffset) % segmentLength);
+			if (seg < segs.length && offset < segs[seg].capacity()) {
+				segs[seg].put(offset, b);
+				return;
+			}
+		}
+		super.write(pos, b);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Writing beyond the end of file extends the file. When enough data is
+	 * appended to the file, mapping is renewed.
+	 */
+	public void write(long pos, byte[] buf) throws IOException {
+		ByteBuffer mapped = getMapped(pos, buf.length);
+		if (mapped != null) {
+			mapped.put(buf);
+			return;
+		}
+		ByteBuffer bb = ByteBuffer.wrap(buf);
+		while (bb.hasRemaining()) {
+			channel.write(bb, pos + bb.position());
+		}
+		if (pos + buf.length > length) {
+			length = pos + buf.length;
+			if (length - mappedLimit >= remapLength) {
+				remap();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void force() throws IOException {
+		for (MappedByteBuffer seg : segments) {
+			seg.force();
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Segments are mapped again up to the new length before the file is cut
+	 * off, so the records beyond the new end are not accessed anymore. If the
+	 * platform does not allow to cut off the mapped file, the file keeps its
+	 * length.<br>
+	 * Windows does not allow it while any mapping of the file is alive, and
+	 * the old mappings are released only by garbage collector, so there the
+	 * file usually can not be cut off by this storage backend. The file is
+	 * compacted offline with {@link StorageType#FILE} storage for this reason.
+	 */
+	public void truncate(long length) throws IOException {
+		this.length = length;
+		remap();
+		try {
+			channel.truncate(length);
+		} catch (IOException e) {
+			this.length = channel.size();
+			remap();
+			throw e;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected FileChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void close() throws IOException {
+		for (MappedByteBuffer seg : segments) {
+			seg.force();
+		}
+		segments = new MappedByteBuffer[0];
+		mappedLimit = 0;
+		file.close();
+	}
+
+	/**
+	 * Returns view of mapped segment positioned at <code>pos</code>.
+	 * 
+	 * @param pos
+	 *         position in database file
+	 * @param len
+	 *         amount of bytes to access
+	 * @return buffer positioned at <code>pos</code> or <code>null</code> if
+	 *         requested bytes are not mapped in one segment
+	 */
+	private ByteBuffer getMapped(long pos, int len) {
+		if (pos < dataOffset)
+			return null;
+		MappedByteBuffer[] segs = segments;
+		int seg = (int) ((pos - dataOffset) / segmentLength);
+		int offset = (int) ((pos - dataOffset) % segmentLength);
+		if (seg >= segs.length || offset + len > segs[seg].capacity())
+			return null;
+		ByteBuffer view = segs[seg].duplicate();
+		view.position(offset);
+		return view;
+	}
+
+	/**
+	 * Maps records section of database file up to the current file length.
+	 * Segments that are already mapped completely are reused.
+	 * 
+	 * @throws IOException
+	 *          on mapping error
+	 */
+	private void remap() throws IOException {
+		long end = length;
+		long datalen = Math.max(0, end - dataOffset);
+		int count = (int) ((datalen + segmentLength - 1) / segmentLength);
+		MappedByteBuffer[] old = segments;
+		MappedByteBuffer[] fresh = new MappedByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			long start = dataOffset + i * segmentLength;
+			long size = Math.min(segmentLength, end - start);
+			if (i < old.length && old[i].capacity() == size) {
+				fresh[i] = old[i];
+			} else {
+				fresh[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+			}
+		}
+		segments = fresh;
+		mappedLimit = end;
+	}
+}
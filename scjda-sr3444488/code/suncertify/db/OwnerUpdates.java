@@ -0,0 +1,105 @@
+package suncertify.db;
+
+/**
+ * Class <code>OwnerUpdates</code> books and unbooks records by lock, read,
+ * compare of the owner field, update and unlock of each record. It is the only
+ * implementation of {@link ExtendedDBAccess#updateOwners(long[], String[],
+ * String[])}: database calls it without waiting for locked records, and
+ * network client calls it through separate requests when server does not
+ * support the compound command.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public final class OwnerUpdates {
+
+	/**
+	 * Private constructor, class has only static members.
+	 */
+	private OwnerUpdates() {
+	}
+
+	/**
+	 * Books or unbooks records one by one. Only one record is locked at a time,
+	 * so concurrent calls can not deadlock.
+	 * 
+	 * @param dba
+	 *         database operating object
+	 * @param recNos
+	 *         numbers of records
+	 * @param expectedOwners
+	 *         expected owners of records, <code>null</code> element accepts any
+	 *         owner
+	 * @param newOwners
+	 *         new owners of records
+	 * @param wait
+	 *         <code>true</code> if record locked by other client is waited for,
+	 *         <code>false</code> if its result is
+	 *         {@link ExtendedDBAccess#OWNER_BUSY}
+	 * @return result of each record as defined by {@link ExtendedDBAccess}
+	 * @throws IllegalArgumentException
+	 *          if amounts of records and owners are not equal
+	 */
+	public static int[] updateOwners(ExtendedDBAccess dba, long[] recNos,
+			String[] expectedOwners, String[] newOwners, boolean wait) {
+		if (expectedOwners.length != recNos.length
+				|| newOwners.length != recNos.length)
+			throw new IllegalArgumentException(
+					"amounts of records and owners must be equal");
+		int[] result = new int[recNos.length];
+		for (int i = 0; i < recNos.length; i++) {
+			result[i] = updateOwner(dba, recNos[i], expectedOwners[i],
+					newOwners[i], wait);
+		}
+		return result;
+	}
+
+	/**
+	 * Locks record, replaces its owner if it is the expected one, and unlocks
+	 * record.
+	 * 
+	 * @param dba
+	 *         database operating object
+	 * @param recNo
+	 *         record number
+	 * @param expectedOwner
+	 *         expected owner of record, <code>null</code> accepts any owner
+	 * @param newOwner
+	 *         new owner of record
+	 * @param wait
+	 *         <code>true</code> if record locked by other client is waited for
+	 * @return result of record as defined by {@link ExtendedDBAccess}
+	 */
+	private static int updateOwner(ExtendedDBAccess dba, long recNo,
+			String expectedOwner, String newOwner, boolean wait) {
+		long cookie;
+		try {
+			cookie = wait ? dba.lockRecord(recNo) : dba.tryLockRecord(recNo);
+		} catch (RecordNotFoundException e) {
+			return ExtendedDBAccess.OWNER_NOT_FOUND;
+		}
+		if (cookie == 0)
+			return ExtendedDBAccess.OWNER_BUSY;
+		try {
+			String[] data = dba.readRecord(recNo).clone();
+			int owner = ExtendedDBAccess.OWNER_FIELD;
+			if (expectedOwner != null
+					&& !data[owner].trim().equals(expectedOwner.trim()))
+				return ExtendedDBAccess.OWNER_CONFLICT;
+			data[owner] = newOwner;
+			dba.updateRecord(recNo, data, cookie);
+			return ExtendedDBAccess.OWNER_UPDATED;
+		} catch (RecordNotFoundException e) {
+			return ExtendedDBAccess.OWNER_NOT_FOUND;
+		} catch (SecurityException e) {
+			throw new IllegalStateException("lock of record " + recNo + " is lost",
+					e);
+		} finally {
+			try {
+				dba.unlock(recNo, cookie);
+			} catch (SecurityException e) {
+				// lock is already released by timeout
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package suncertify.db;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Class <code>PrefixIndex</code> is an in-memory index of one field of
+ * database record.<br>
+ * Index keeps field values sorted, so all the records which field value
+ * begins with the specified prefix are found without reading of the records.
+ * Index is not thread safe, {@link Data} modifies index only while no one
+ * reads it.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class PrefixIndex {
+	/**
+	 * sorted field values mapped to the numbers of records that have these values
+	 */
+	private final TreeMap<String, Set<Long>> values = new TreeMap<String, Set<Long>>();
+
+	/**
+	 * Adds record to the index.
+	 * 
+	 * @param value
+	 *         field value of record
+	 * @param recNo
+	 *         record number
+	 */
+	public void add(String value, long recNo) {
+		Set<Long> recNos = values.get(value);
+		if (recNos == null) {
+			recNos = new HashSet<Long>();
+			values.put(value, recNos);
+		}
+		recNos.add(recNo);
+	}
+
+	/**
+	 * Removes record from the index.
+	 * 
+	 * @param value
+	 *         field value of record, the value record was added with
+	 * @param recNo
+	 *         record number
+	 */
+	public void remove(String value, long recNo) {
+		Set<Long> recNos = values.get(value);
+		if (recNos != null) {
+			recNos.remove(recNo);
+			if (recNos.isEmpty())
+				values.remove(value);
+		}
+	}
+
+	/**
+	 * Removes all records from the index.
+	 */
+	public void clear() {
+		values.clear();
+	}
+
+	/**
+	 * Returns amount of records which field value begins with
+	 * <code>prefix</code>.
+	 * 
+	 * @param prefix
+	 *         beginning of field value
+	 * @return amount of matching records
+	 */
+	public int count(String prefix) {
+		int count = 0;
+		for (Map.Entry<String, Set<Long>> entry : values.tailMap(prefix, true)
+				.entrySet()) {
+			if (!entry.getKey().startsWith(prefix))
+				break;
+			count += entry.getValue().size();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns numbers of records which field value begins with
+	 * <code>prefix</code>.
+	 * 
+	 * @param prefix
+	 *         beginning of field value
+	 * @return numbers of matching records in no particular order
+	 */
+	public long[] find(String prefix) {
+		long[] result = new long[count(prefix)];
+		int i = 0;
+		for (Map.Entry<String, Set<Long>> entry : values.tailMap(prefix, true)
+				.entrySet()) {
+			if (!entry.getKey().startsWith(prefix))
+				break;
+			for (Long recNo : entry.getValue()) {
+				result[i++] = recNo;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,194 @@
+package suncertify.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class <code>RecordCache</code> is a size-bounded cache of the decoded
+ * records.<br>
+ * Cache is divided into segments by record number, each segment evicts the
+ * least recently used record when it is full. Segments are locked separately,
+ * so readers of different records rarely block each other. Cache counts hits
+ * and misses of record reads; checks of records by searches are not counted.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class RecordCache {
+	/**
+	 * amount of segments, must be a power of two
+	 */
+	private final static int SEGMENTS = 16;
+	/**
+	 * segments of cache
+	 */
+	private final Segment[] segments = new Segment[SEGMENTS];
+	/**
+	 * count of reads that found record in the cache
+	 */
+	private final AtomicLong hits = new AtomicLong();
+	/**
+	 * count of reads that did not find record in the cache
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Constructor creates cache that holds at most <code>capacity</code>
+	 * records.
+	 * 
+	 * @param capacity
+	 *         maximum amount of records in cache
+	 */
+	RecordCache(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be more than 0");
+		int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * Returns cached fields of record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return copy of cached fields of record or <code>null</code> if record is
+	 *         not cached
+	 */
+	public String[] get(long recNo) {
+		Segment segment = segmentFor(recNo);
+		String[] data;
+		synchronized (segment) {
+			data = segment.get(recNo);
+		}
+		if (data == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return data.clone();
+	}
+
+	/**
+	 * Returns cached fields of record without counting of hit or miss. Used
+	 * when record is only checked, not read, so the counts show how well the
+	 * cache serves reads of records, not how many records searches visit.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return cached fields of record that must not be changed, or
+	 *         <code>null</code> if record is not cached
+	 */
+	public String[] peek(long recNo) {
+		Segment segment = segmentFor(recNo);
+		synchronized (segment) {
+			return segment.get(recNo);
+		}
+	}
+
+	/**
+	 * Puts fields of record to the cache.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param data
+	 *         fields of record, array is copied
+	 */
+	public void put(long recNo, String[] data) {
+		Segment segment = segmentFor(recNo);
+		synchronized (segment) {
+			segment.put(recNo, data.clone());
+		}
+	}
+
+	/**
+	 * Removes record from the cache.
+	 * 
+	 * @param recNo
+	 *         record number
+	 */
+	public void invalidate(long recNo) {
+		Segment segment = segmentFor(recNo);
+		synchronized (segment) {
+			segment.remove(recNo);
+		}
+	}
+
+	/**
+	 * Removes all records from the cache.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns count of reads that found record in the cache.
+	 * 
+	 * @return count of cache hits
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns count of reads that did not find record in the cache.
+	 * 
+	 * @return count of cache misses
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns segment that holds the record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return segment of cache
+	 */
+	private Segment segmentFor(long recNo) {
+		return segments[(int) (recNo ^ (recNo >>> 32)) & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * Segment of cache, the map that removes the least recently used record when
+	 * it is full.
+	 */
+	private static class Segment extends LinkedHashMap<Long, String[]> {
+		/**
+		 * A version number for this class so that serialization can occur without
+		 * worrying about the underlying class changing between serialization and
+		 * deserialization.
+		 */
+		private static final long serialVersionUID = 5165L;
+		/**
+		 * maximum amount of records in segment
+		 */
+		private final int capacity;
+
+		/**
+		 * Constructor creates segment of cache.
+		 * 
+		 * @param capacity
+		 *         maximum amount of records in segment
+		 */
+		Segment(int capacity) {
+			super(capacity * 4 / 3 + 1, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		/**
+		 * {@inheritDoc}<br>
+		 * Removes the least recently used record when segment is full.
+		 */
+		protected boolean removeEldestEntry(Map.Entry<Long, String[]> eldest) {
+			return size() > capacity;
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package suncertify.db;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class <code>RecordCodec</code> converts bytes of record to the fields of
+ * record and back, according database record scheme.<br>
+ * Bytes of database file are ASCII characters, so they are converted to the
+ * characters and back directly, without lookup of character set and without
+ * intermediate arrays. Fields are trimmed by scanning for the spaces at the
+ * ends of the field. Each thread reuses its own buffer of record bytes, so
+ * reading and writing of record allocates only the fields of record.<br>
+ * Search criteria are encoded to the bytes once per search, and records are
+ * matched against them right in the buffer or in the mapped region of database
+ * file, without decoding of fields.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+final class RecordCodec {
+	/**
+	 * record length without "deleted flag"
+	 */
+	final static int RECORD_LENGTH;
+	/**
+	 * offsets of fields in record
+	 */
+	private final static int[] FIELD_OFFSET = new int[DBAccess.FIELD_LENGTH.length];
+	/**
+	 * space byte for fields that have not enough length
+	 */
+	private final static byte SPACE = 0x20;
+	/**
+	 * byte written instead of character that is not ASCII
+	 */
+	private final static byte UNMAPPABLE = '?';
+	/**
+	 * character read instead of byte that is not ASCII
+	 */
+	private final static char REPLACEMENT = '\uFFFD';
+
+	/*
+	 * calculating offsets of fields and length of record
+	 */
+	static {
+		int offset = 0;
+		for (int i = 0; i < DBAccess.FIELD_LENGTH.length; i++) {
+			FIELD_OFFSET[i] = offset;
+			offset += DBAccess.FIELD_LENGTH[i];
+		}
+		RECORD_LENGTH = offset;
+	}
+
+	/**
+	 * reusable buffers of record bytes
+	 */
+	private final static ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(RECORD_LENGTH);
+		}
+	};
+	/**
+	 * reusable buffers of field characters
+	 */
+	private final static ThreadLocal<char[]> charBuffers = new ThreadLocal<char[]>() {
+		protected char[] initialValue() {
+			int max = 0;
+			for (int length : DBAccess.FIELD_LENGTH) {
+				max = Math.max(max, length);
+			}
+			return new char[max];
+		}
+	};
+
+	/**
+	 * Constructor is private, class has only static methods.
+	 */
+	private RecordCodec() {
+	}
+
+	/**
+	 * Returns buffer of record bytes of current thread. Buffer is reused by the
+	 * next call in the same thread, so it must not be kept.
+	 * 
+	 * @return buffer of <code>RECORD_LENGTH</code> bytes
+	 */
+	static byte[] getBuffer() {
+		return buffers.get().array();
+	}
+
+	/**
+	 * Returns buffer of record bytes of current thread wrapped by byte buffer.
+	 * Array of wrapped buffer is the same that {@link #getBuffer()} returns.
+	 * 
+	 * @return byte buffer of <code>RECORD_LENGTH</code> bytes
+	 */
+	static ByteBuffer getByteBuffer() {
+		return buffers.get();
+	}
+
+	/**
+	 * Converts bytes of record to the trimmed fields.
+	 * 
+	 * @param buf
+	 *         bytes of record
+	 * @return fields of record
+	 */
+	static String[] decode(byte[] buf) {
+		return decode(buf, 0);
+	}
+
+	/**
+	 * Converts bytes of record placed in a larger buffer to the trimmed fields.
+	 * 
+	 * @param buf
+	 *         buffer that contains bytes of record
+	 * @param offset
+	 *         position of record in the buffer
+	 * @return fields of record
+	 */
+	static String[] decode(byte[] buf, int offset) {
+		String[] result = new String[FIELD_OFFSET.length];
+		for (int i = 0; i < FIELD_OFFSET.length; i++) {
+			result[i] = decodeField(buf, offset + FIELD_OFFSET[i],
+					DBAccess.FIELD_LENGTH[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Converts bytes of one field to the trimmed value.
+	 * 
+	 * @param buf
+	 *         buffer that contains bytes of field
+	 * @param start
+	 *         position of field in the buffer
+	 * @param length
+	 *         length of field
+	 * @return value of field
+	 */
+	static String decodeField(byte[] buf, int start, int length) {
+		char[] chars = charBuffers.get();
+		int end = start + length;
+		while (start < end && isBlank(buf[start]))
+			start++;
+		while (end > start && isBlank(buf[end - 1]))
+			end--;
+		for (int j = start; j < end; j++) {
+			chars[j - start] = toChar(buf[j]);
+		}
+		return new String(chars, 0, end - start);
+	}
+
+	/**
+	 * Converts fields of record to the bytes. Fields are padded by spaces, and
+	 * cut if they are longer than the field length.
+	 * 
+	 * @param data
+	 *         fields of record
+	 * @param buf
+	 *         buffer of <code>RECORD_LENGTH</code> bytes to put bytes into
+	 */
+	static void encode(String[] data, byte[] buf) {
+		encode(data, buf, 0);
+	}
+
+	/**
+	 * Converts fields of record to the bytes placed in a larger buffer.
+	 * 
+	 * @param data
+	 *         fields of record
+	 * @param buf
+	 *         buffer to put bytes into
+	 * @param offset
+	 *         position of record in the buffer
+	 */
+	static void encode(String[] data, byte[] buf, int offset) {
+		for (int i = 0; i < FIELD_OFFSET.length; i++) {
+			int pos = offset + FIELD_OFFSET[i];
+			int end = pos + DBAccess.FIELD_LENGTH[i];
+			String field = data[i];
+			int length = field.length();
+			for (int j = 0; j < length && pos < end; j++) {
+				char c = field.charAt(j);
+				if (c < 0x80) {
+					buf[pos++] = (byte) c;
+				} else {
+					buf[pos++] = UNMAPPABLE;
+					if (Character.isHighSurrogate(c) && j + 1 < length
+							&& Character.isLowSurrogate(field.charAt(j + 1)))
+						j++;
+				}
+			}
+			while (pos < end)
+				buf[pos++] = SPACE;
+		}
+	}
+
+	/**
+	 * Encodes filter criteria to the prefixes of field bytes. Character that is
+	 * not ASCII can match only the byte that is not ASCII if it is the
+	 * replacement character, so it is encoded to <code>-1</code>; criteria with
+	 * other characters that are not ASCII can not match any record.
+	 * 
+	 * @param criteria
+	 *         filter criteria, <code>null</code> element matches any value of
+	 *         the field, <code>null</code> criteria match no record
+	 * @return prefixes of field bytes, <code>null</code> element if any value
+	 *         of the field is accepted, or <code>null</code> if criteria can not
+	 *         match any record
+	 */
+	static byte[][] encodeCriteria(String[] criteria) {
+		if (criteria == null || criteria.length < FIELD_OFFSET.length)
+			return null;
+		byte[][] prefixes = new byte[FIELD_OFFSET.length][];
+		for (int i = 0; i < FIELD_OFFSET.length; i++) {
+			String field = criteria[i];
+			if (field == null || field.length() == 0)
+				continue;
+			if (field.length() > DBAccess.FIELD_LENGTH[i])
+				return null;
+			byte[] prefix = new byte[field.length()];
+			for (int j = 0; j < prefix.length; j++) {
+				char c = field.charAt(j);
+				if (c < 0x80)
+					prefix[j] = (byte) c;
+				else if (c == REPLACEMENT)
+					prefix[j] = -1;
+				else
+					return null;
+			}
+			prefixes[i] = prefix;
+		}
+		return prefixes;
+	}
+
+	/**
+	 * Checks if encoded criteria accept any record.
+	 * 
+	 * @param prefixes
+	 *         criteria encoded by {@link #encodeCriteria(String[])}
+	 * @return <code>true</code> if criteria accept any record
+	 */
+	static boolean acceptsAll(byte[][] prefixes) {
+		if (prefixes == null)
+			return false;
+		for (byte[] prefix : prefixes) {
+			if (prefix != null)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if record is accepted by encoded filter criteria. Record is
+	 * accepted if each trimmed field starts with the prefix of this field.
+	 * Bytes are read by absolute positions, position of buffer is not changed.
+	 * 
+	 * @param buf
+	 *         buffer that contains bytes of record
+	 * @param offset
+	 *         position of record in the buffer
+	 * @param prefixes
+	 *         criteria encoded by {@link #encodeCriteria(String[])}
+	 * @return <code>true</code> if record is accepted, <code>false</code> if
+	 *         record is not accepted
+	 */
+	static boolean matches(ByteBuffer buf, int offset, byte[][] prefixes) {
+		if (prefixes == null)
+			return false;
+		for (int i = 0; i < FIELD_OFFSET.length; i++) {
+			byte[] prefix = prefixes[i];
+			if (prefix != null
+					&& !matchesField(buf, offset + FIELD_OFFSET[i],
+							DBAccess.FIELD_LENGTH[i], prefix))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if one field is accepted by encoded criteria of this field. Field
+	 * is accepted if the trimmed field starts with the prefix. Bytes are read by
+	 * absolute positions, position of buffer is not changed.
+	 * 
+	 * @param buf
+	 *         buffer that contains bytes of field
+	 * @param start
+	 *         position of field in the buffer
+	 * @param length
+	 *         length of field
+	 * @param prefix
+	 *         prefix of field bytes, element of criteria encoded by
+	 *         {@link #encodeCriteria(String[])}
+	 * @return <code>true</code> if field is accepted
+	 */
+	static boolean matchesField(ByteBuffer buf, int start, int length,
+			byte[] prefix) {
+		int end = start + length;
+		while (start < end && isBlank(buf.get(start)))
+			start++;
+		if (prefix.length > end - start)
+			return false;
+		for (int j = 0; j < prefix.length; j++) {
+			byte b = buf.get(start + j);
+			if (prefix[j] >= 0 ? b != prefix[j] : b >= 0)
+				return false;
+		}
+		if (isBlank(prefix[prefix.length - 1])) {
+			int pos = start + prefix.length;
+			while (pos < end && isBlank(buf.get(pos)))
+				pos++;
+			if (pos == end)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if byte is removed by trimming of field, as {@link String#trim()}
+	 * does.
+	 * 
+	 * @param b
+	 *         byte of record
+	 * @return <code>true</code> if byte is space or control character
+	 */
+	private static boolean isBlank(byte b) {
+		return b >= 0 && b <= SPACE;
+	}
+
+	/**
+	 * Converts byte of record to the character.
+	 * 
+	 * @param b
+	 *         byte of record
+	 * @return ASCII character or replacement character if byte is not ASCII
+	 */
+	private static char toChar(byte b) {
+		return b >= 0 ? (char) b : REPLACEMENT;
+	}
+}
@@ -0,0 +1,272 @@
+package suncertify.db;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class <code>RecordSlots</code> keeps states of record slots of database
+ * file: which records are valid, which slots are free because their records
+ * are deleted, and versions of records.<br>
+ * Record numbers are dense, so valid records are kept as bits of
+ * {@link BitSet}, and free slots are kept in binary min-heap of primitive
+ * numbers. Check of record validity takes constant time, marking of record
+ * and taking of free slot take logarithmic time at most, and no record number
+ * is boxed. Free slot with the least number is reused first, so new records
+ * fill the beginning of the file.<br>
+ * Version of record is the counter of changes of its slot in low bits and the
+ * second when database was opened in high bits, so versions are not repeated
+ * after database is opened again.
+ * Class is not thread safe, {@link Data} guards it by its read-write lock.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class RecordSlots {
+	/**
+	 * initial capacity of heap of free slots
+	 */
+	private final static int INITIAL_CAPACITY = 16;
+
+	/**
+	 * bits of valid records
+	 */
+	private final BitSet valid = new BitSet();
+	/**
+	 * amount of valid records
+	 */
+	private int validCount;
+	/**
+	 * binary min-heap of numbers of free slots
+	 */
+	private int[] free = new int[INITIAL_CAPACITY];
+	/**
+	 * amount of free slots
+	 */
+	private int freeCount;
+	/**
+	 * high bits of versions: the second when slots were created
+	 */
+	private final long epoch = (System.currentTimeMillis() / 1000) << 32;
+	/**
+	 * counters of changes of slots
+	 */
+	private int[] changes = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Checks if record is valid.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return <code>true</code> if record is valid
+	 */
+	boolean isValid(long recNo) {
+		return recNo >= 0 && recNo <= Integer.MAX_VALUE && valid.get((int) recNo);
+	}
+
+	/**
+	 * Marks record as valid. Slot of record must not be free.
+	 * 
+	 * @param recNo
+	 *         record number
+	 */
+	void addValid(long recNo) {
+		int slot = toSlot(recNo);
+		if (!valid.get(slot)) {
+			valid.set(slot);
+			validCount++;
+		}
+		touch(recNo);
+	}
+
+	/**
+	 * Marks record as deleted, so its slot becomes free.
+	 * 
+	 * @param recNo
+	 *         record number
+	 */
+	void addFree(long recNo) {
+		int slot = toSlot(recNo);
+		if (valid.get(slot)) {
+			valid.clear(slot);
+			validCount--;
+		}
+		touch(recNo);
+		if (freeCount == free.length)
+			free = Arrays.copyOf(free, freeCount * 2);
+		int i = freeCount++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (free[parent] <= slot)
+				break;
+			free[i] = free[parent];
+			i = parent;
+		}
+		free[i] = slot;
+	}
+
+	/**
+	 * Takes free slot with the least number. Slot is not free anymore, record
+	 * should be marked as valid by {@link #addValid(long)}.
+	 * 
+	 * @return number of free slot or <code>-1</code> if there are no free slots
+	 */
+	long pollFree() {
+		if (freeCount == 0)
+			return -1;
+		int result = free[0];
+		int last = free[--freeCount];
+		if (freeCount > 0)
+			siftDown(0, last);
+		return result;
+	}
+
+	/**
+	 * Returns free slot with the least number without taking it.
+	 * 
+	 * @return number of free slot or <code>-1</code> if there are no free slots
+	 */
+	long peekFree() {
+		return freeCount > 0 ? free[0] : -1;
+	}
+
+	/**
+	 * Returns the greatest number of valid record that is less than the limit.
+	 * 
+	 * @param limit
+	 *         record number to search below
+	 * @return number of valid record or <code>-1</code> if there are no valid
+	 *         records below the limit
+	 */
+	long lastValid(long limit) {
+		if (limit <= 0)
+			return -1;
+		return valid.previousSetBit((int) Math.min(limit - 1, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Forgets free slots which numbers are not less than the given amount of
+	 * slots, when the end of database file is cut off. Versions of forgotten
+	 * slots are kept, so the record created in such slot later has a new
+	 * version.
+	 * 
+	 * @param count
+	 *         amount of slots left
+	 */
+	void truncate(long count) {
+		int kept = 0;
+		for (int i = 0; i < freeCount; i++) {
+			if (free[i] < count)
+				free[kept++] = free[i];
+		}
+		freeCount = kept;
+		for (int i = (freeCount >>> 1) - 1; i >= 0; i--) {
+			siftDown(i, free[i]);
+		}
+	}
+
+	/**
+	 * Changes version of record. Must be called on each change of record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 */
+	void touch(long recNo) {
+		int slot = toSlot(recNo);
+		if (slot >= changes.length)
+			changes = Arrays.copyOf(changes, Math.max(changes.length * 2, slot + 1));
+		changes[slot]++;
+	}
+
+	/**
+	 * Returns version of record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return version of record
+	 */
+	long getVersion(long recNo) {
+		int slot = toSlot(recNo);
+		int count = slot < changes.length ? changes[slot] : 0;
+		return epoch | (count & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns amount of valid records.
+	 * 
+	 * @return amount of valid records
+	 */
+	int getValidCount() {
+		return validCount;
+	}
+
+	/**
+	 * Returns amount of free slots.
+	 * 
+	 * @return amount of free slots
+	 */
+	int getFreeCount() {
+		return freeCount;
+	}
+
+	/**
+	 * Returns numbers of valid records.
+	 * 
+	 * @return numbers of valid records in ascending order
+	 */
+	long[] getValid() {
+		long[] result = new long[validCount];
+		int i = 0;
+		for (int slot = valid.nextSetBit(0); slot >= 0; slot = valid
+				.nextSetBit(slot + 1)) {
+			result[i++] = slot;
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets states of all the slots.
+	 */
+	void clear() {
+		valid.clear();
+		validCount = 0;
+		free = new int[INITIAL_CAPACITY];
+		freeCount = 0;
+		changes = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Places slot into the heap of free slots at the given position or below
+	 * it, moving up the lesser children.
+	 * 
+	 * @param i
+	 *         position in the heap
+	 * @param slot
+	 *         number of free slot
+	 */
+	private void siftDown(int i, int slot) {
+		int half = freeCount >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < freeCount && free[child + 1] < free[child])
+				child++;
+			if (slot <= free[child])
+				break;
+			free[i] = free[child];
+			i = child;
+		}
+		free[i] = slot;
+	}
+
+	/**
+	 * Converts record number to the number of slot.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return number of slot
+	 */
+	private static int toSlot(long recNo) {
+		if (recNo < 0 || recNo > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("invalid record number " + recNo);
+		return (int) recNo;
+	}
+}
@@ -0,0 +1,204 @@
+package suncertify.db;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * Class <code>RecordStore</code> is a storage backend of database file used by
+ * {@link Data}.<br>
+ * Subclasses provide access to the raw bytes of database file, this class
+ * provides conversion of record bytes to the fields of record and back by
+ * {@link RecordCodec}.<br>
+ * Storage backend is not responsible for thread safety of reading and writing
+ * the same record. {@link Data} never writes record while the same record is
+ * being read, but the log of changes writes records in its own thread while
+ * other records are read.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+abstract class RecordStore {
+	/**
+	 * record length without "deleted flag"
+	 */
+	protected final static int record_length = RecordCodec.RECORD_LENGTH;
+	/**
+	 * position of the byte locked to share database file between programs. It
+	 * is far beyond any record, so the lock never blocks reading and writing of
+	 * records on the platforms where file locks are mandatory.
+	 */
+	private final static long LOCK_POSITION = Long.MAX_VALUE - 1;
+
+	/**
+	 * Returns length of database file.
+	 * 
+	 * @return length of database file in bytes
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	public abstract long length() throws IOException;
+
+	/**
+	 * Reads <code>buf.length</code> bytes starting from position
+	 * <code>pos</code> of database file.
+	 * 
+	 * @param pos
+	 *         position of first byte
+	 * @param buf
+	 *         buffer to read bytes into
+	 * @throws IOException
+	 *          on error during reading
+	 */
+	public abstract void read(long pos, byte[] buf) throws IOException;
+
+	/**
+	 * Writes all bytes of <code>buf</code> starting from position
+	 * <code>pos</code> of database file.
+	 * 
+	 * @param pos
+	 *         position of first byte
+	 * @param buf
+	 *         bytes to write
+	 * @throws IOException
+	 *          on file writing error
+	 */
+	public abstract void write(long pos, byte[] buf) throws IOException;
+
+	/**
+	 * Forces all of the changes of database file to the disk.
+	 * 
+	 * @throws IOException
+	 *          on file writing error
+	 */
+	public abstract void force() throws IOException;
+
+	/**
+	 * Cuts off the end of database file.
+	 * 
+	 * @param length
+	 *         new length of database file
+	 * @throws IOException
+	 *          on file truncating error
+	 */
+	public abstract void truncate(long length) throws IOException;
+
+	/**
+	 * Locks database file for the program until the file is closed. Shared lock
+	 * is refused while other program has the file locked exclusively, and
+	 * exclusive lock is refused while other program has the file locked in any
+	 * way. Other object of this program that has the file opened holds the lock
+	 * too, so the lock is refused also.
+	 * 
+	 * @param shared
+	 *         <code>true</code> if other programs may open the file too
+	 * @return <code>true</code> if file is locked, <code>false</code> if it is
+	 *         in use
+	 * @throws IOException
+	 *          on file locking error
+	 */
+	public boolean lockFile(boolean shared) throws IOException {
+		try {
+			return getChannel().tryLock(LOCK_POSITION, 1, shared) != null;
+		} catch (OverlappingFileLockException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns channel of database file.
+	 * 
+	 * @return channel of database file
+	 */
+	protected abstract FileChannel getChannel();
+
+	/**
+	 * Closes database file and releases any system resources associated with it.
+	 * 
+	 * @throws IOException
+	 *          on file closing error
+	 */
+	public abstract void close() throws IOException;
+
+	/**
+	 * Reads one byte in position <code>pos</code> of database file.
+	 * 
+	 * @param pos
+	 *         position of byte
+	 * @return byte method reads
+	 * @throws IOException
+	 *          on error during reading
+	 */
+	public byte read(long pos) throws IOException {
+		byte[] b = new byte[1];
+		read(pos, b);
+		return b[0];
+	}
+
+	/**
+	 * Writes only one byte to a specified position <code>pos</code> in the
+	 * database file.
+	 * 
+	 * @param pos
+	 *         position in database file
+	 * @param b
+	 *         one byte to write
+	 * @throws IOException
+	 *          on file writing error
+	 */
+	public void write(long pos, byte b) throws IOException {
+		write(pos, new byte[] { b });
+	}
+
+	/**
+	 * Returns field values based on database record scheme as array of String
+	 * 
+	 * @param pos
+	 *         position of data in database file
+	 * @return array of String representing fields of record
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	public String[] readData(long pos) throws IOException {
+		byte[] recdata = RecordCodec.getBuffer();
+		read(pos, recdata);
+		return RecordCodec.decode(recdata);
+	}
+
+	/**
+	 * Checks if record stored at position <code>pos</code> of database file is
+	 * accepted by encoded filter criteria. Fields of record are not decoded.
+	 * 
+	 * @param pos
+	 *         position of data in database file
+	 * @param prefixes
+	 *         criteria encoded by {@link RecordCodec#encodeCriteria(String[])}
+	 * @return <code>true</code> if record is accepted, <code>false</code> if
+	 *         record is not accepted
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	public boolean matches(long pos, byte[][] prefixes) throws IOException {
+		if (prefixes == null)
+			return false;
+		read(pos, RecordCodec.getBuffer());
+		return RecordCodec.matches(RecordCodec.getByteBuffer(), 0, prefixes);
+	}
+
+	/**
+	 * Writes data to a specified position <code>pos</code> in the database file,
+	 * according database record scheme.
+	 * 
+	 * @param pos
+	 *         position in database file
+	 * @param data
+	 *         array of String, representing fields of record
+	 * @throws IOException
+	 *          on file writing error
+	 */
+	public void write(long pos, String[] data) throws IOException {
+		byte[] recdata = RecordCodec.getBuffer();
+		RecordCodec.encode(data, recdata);
+		write(pos, recdata);
+	}
+}
@@ -0,0 +1,22 @@
+package suncertify.db;
+
+/**
+ * Enumeration of storage backends that {@link Data} can use to operate
+ * database file.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public enum StorageType {
+	/**
+	 * Database file is operated by random access file. Each access to the file
+	 * seeks the position and reads (writes) bytes, accesses are performed one at
+	 * a time.
+	 */
+	FILE,
+	/**
+	 * Records of database file are mapped into memory. Records are read without
+	 * seeking and system calls, and many records can be read at the same time.
+	 */
+	MAPPED
+}
@@ -0,0 +1,230 @@
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class <code>TimingWheel</code> is a hashed timing wheel of lock expirations
+ * used by auto-unlocking feature of {@link DataAU}.<br>
+ * Time is divided into ticks of fixed duration. Wheel is a circular array of
+ * buckets, expiration is put into the bucket of the tick it expires at, so
+ * scheduling and cancelling take constant time regardless of the amount of
+ * pending expirations. Expiration that is more than one turn of the wheel away
+ * stays in its bucket while the wheel turns. Each record has at most one
+ * pending expiration, and the expiration is cancelled as soon as the record is
+ * unlocked, so the wheel holds only the locks that are still held.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class TimingWheel {
+	/**
+	 * duration of one tick in nanoseconds
+	 */
+	private final long tickNanos;
+	/**
+	 * buckets of the wheel, heads of doubly-linked lists of expirations
+	 */
+	private final Expiration[] buckets;
+	/**
+	 * mask of bucket number, amount of buckets is a power of two
+	 */
+	private final int mask;
+	/**
+	 * pending expirations mapped by record numbers
+	 */
+	private final Map<Long, Expiration> pending = new HashMap<Long, Expiration>();
+	/**
+	 * time in nanoseconds when the wheel was created
+	 */
+	private final long startTime;
+	/**
+	 * the last processed tick
+	 */
+	private long tick;
+
+	/**
+	 * Constructor creates timing wheel.
+	 * 
+	 * @param tickMillis
+	 *         duration of one tick in milliseconds
+	 * @param ticksPerWheel
+	 *         amount of buckets of the wheel, rounded up to a power of two
+	 */
+	TimingWheel(long tickMillis, int ticksPerWheel) {
+		if (tickMillis <= 0)
+			throw new IllegalArgumentException("tick must be more than 0");
+		if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30)
+			throw new IllegalArgumentException("invalid amount of ticks per wheel");
+		int size = Integer.highestOneBit(ticksPerWheel);
+		if (size < ticksPerWheel)
+			size <<= 1;
+		this.tickNanos = tickMillis * 1000000L;
+		this.buckets = new Expiration[size];
+		this.mask = size - 1;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Schedules expiration of the lock. Pending expiration of the same record is
+	 * replaced.
+	 * 
+	 * @param recNo
+	 *         number of locked record
+	 * @param cookie
+	 *         locking descriptor
+	 * @param delayMillis
+	 *         time in milliseconds after which the lock expires
+	 */
+	synchronized void schedule(long recNo, long cookie, long delayMillis) {
+		Expiration old = pending.remove(recNo);
+		if (old != null)
+			unlink(old);
+		long deadline = System.nanoTime() - startTime + delayMillis * 1000000L;
+		long deadlineTick = Math.max(tick + 1, (deadline + tickNanos - 1)
+				/ tickNanos);
+		Expiration e = new Expiration(recNo, cookie, deadlineTick);
+		link(e);
+		pending.put(recNo, e);
+	}
+
+	/**
+	 * Cancels pending expiration of the lock.
+	 * 
+	 * @param recNo
+	 *         number of record
+	 * @param cookie
+	 *         locking descriptor
+	 * @return <code>true</code> if expiration was pending
+	 */
+	synchronized boolean cancel(long recNo, long cookie) {
+		Expiration e = pending.get(recNo);
+		if (e == null || e.cookie != cookie)
+			return false;
+		pending.remove(recNo);
+		unlink(e);
+		return true;
+	}
+
+	/**
+	 * Returns amount of pending expirations.
+	 * 
+	 * @return amount of pending expirations
+	 */
+	synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Waits for the next tick and removes expirations of the passed ticks from
+	 * the wheel.
+	 * 
+	 * @return expired locks, pairs of record number and locking descriptor
+	 * @throws InterruptedException
+	 *          if waiting thread is interrupted
+	 */
+	List<long[]> advance() throws InterruptedException {
+		long nextTick;
+		synchronized (this) {
+			nextTick = tick + 1;
+		}
+		long sleepNanos = nextTick * tickNanos - (System.nanoTime() - startTime);
+		if (sleepNanos > 0)
+			Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+		List<long[]> expired = new ArrayList<long[]>();
+		synchronized (this) {
+			long now = (System.nanoTime() - startTime) / tickNanos;
+			long last = Math.min(now, tick + buckets.length);
+			while (tick < last) {
+				tick++;
+				Expiration e = buckets[(int) (tick & mask)];
+				while (e != null) {
+					Expiration following = e.next;
+					if (e.deadlineTick <= now) {
+						unlink(e);
+						pending.remove(e.recNo);
+						expired.add(new long[] { e.recNo, e.cookie });
+					}
+					e = following;
+				}
+			}
+			tick = Math.max(tick, now);
+		}
+		return expired;
+	}
+
+	/**
+	 * Puts expiration into the bucket of its tick.
+	 * 
+	 * @param e
+	 *         expiration
+	 */
+	private void link(Expiration e) {
+		int bucket = (int) (e.deadlineTick & mask);
+		e.next = buckets[bucket];
+		if (e.next != null)
+			e.next.prev = e;
+		buckets[bucket] = e;
+	}
+
+	/**
+	 * Removes expiration from its bucket.
+	 * 
+	 * @param e
+	 *         expiration
+	 */
+	private void unlink(Expiration e) {
+		if (e.prev != null)
+			e.prev.next = e.next;
+		else
+			buckets[(int) (e.deadlineTick & mask)] = e.next;
+		if (e.next != null)
+			e.next.prev = e.prev;
+		e.prev = null;
+		e.next = null;
+	}
+
+	/**
+	 * Pending expiration of the lock, element of the bucket list.
+	 */
+	private static class Expiration {
+		/**
+		 * number of locked record
+		 */
+		private final long recNo;
+		/**
+		 * locking descriptor
+		 */
+		private final long cookie;
+		/**
+		 * tick the lock expires at
+		 */
+		private final long deadlineTick;
+		/**
+		 * previous expiration in the bucket
+		 */
+		private Expiration prev;
+		/**
+		 * next expiration in the bucket
+		 */
+		private Expiration next;
+
+		/**
+		 * Constructor creates expiration.
+		 * 
+		 * @param recNo
+		 *         number of locked record
+		 * @param cookie
+		 *         locking descriptor
+		 * @param deadlineTick
+		 *         tick the lock expires at
+		 */
+		Expiration(long recNo, long cookie, long deadlineTick) {
+			this.recNo = recNo;
+			this.cookie = cookie;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package suncertify.db;
+
+/**
+ * Class <code>VersionedRecord</code> holds fields of record along with the
+ * version of record they were read at.<br>
+ * Version is changed by each change of record, so the client that passes the
+ * version to {@link ExtendedDBAccess#updateRecordIfVersion(long, String[], long)}
+ * updates record only if nobody has changed it since it was read.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class VersionedRecord {
+	/**
+	 * fields of record
+	 */
+	private final String[] data;
+	/**
+	 * version of record
+	 */
+	private final long version;
+
+	/**
+	 * Constructor creates record with version.
+	 * 
+	 * @param data
+	 *         fields of record
+	 * @param version
+	 *         version of record
+	 */
+	public VersionedRecord(String[] data, long version) {
+		this.data = data;
+		this.version = version;
+	}
+
+	/**
+	 * Returns fields of record.
+	 * 
+	 * @return fields of record
+	 */
+	public String[] getData() {
+		return data;
+	}
+
+	/**
+	 * Returns version of record.
+	 * 
+	 * @return version of record, never <code>0</code>
+	 */
+	public long getVersion() {
+		return version;
+	}
+}
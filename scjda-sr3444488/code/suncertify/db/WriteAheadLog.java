@@ -0,0 +1,510 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Class <code>WriteAheadLog</code> is a log of changes of database file that
+ * makes the changes durable without forcing of database file on each change.<br>
+ * Each change is appended to the log as one entry: position in database file,
+ * amount of bytes, the bytes and checksum of entry. Writing threads append
+ * entries to the buffer in memory, and the only flushing thread writes the
+ * buffer to the log file, forces it to the disk and only then applies the
+ * entries to database file, in order of appending. Entries appended while the
+ * previous group is being forced are forced together by the next call, so
+ * many concurrent changes cost one force of the log file. Writing thread waits
+ * for its change by {@link #awaitDurable(long)} after it releases locks of
+ * database.<br>
+ * Until the entry is applied, its bytes are returned by
+ * {@link #getUnapplied(long)}, so readers of database see the change as soon
+ * as it is appended. Database file is never written before the change is
+ * forced to the log, so the record which writing to database file is broken
+ * by system crash is always restored from the log.<br>
+ * When the log file grows over <code>CHECKPOINT_LENGTH</code> bytes,
+ * flushing thread runs the checkpointer given to constructor, which forces
+ * database file and truncates the log by {@link #checkpoint()}. When database
+ * is opened, complete entries with correct checksum are applied to database
+ * file again by {@link #recover()}.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class WriteAheadLog {
+	/**
+	 * length of log file after which checkpoint is done
+	 */
+	private final static long CHECKPOINT_LENGTH = 4 << 20;
+	/**
+	 * length of entry without the bytes of change: position, amount of bytes
+	 * and checksum
+	 */
+	private final static int ENTRY_OVERHEAD = 8 + 4 + 4;
+	/**
+	 * initial capacity of buffers of appended entries
+	 */
+	private final static int INITIAL_CAPACITY = 1 << 16;
+
+	/**
+	 * logger is for debugging purposes
+	 */
+	private Logger log = Logger.getLogger(this.getClass().getPackage().getName());
+	/**
+	 * random access file reference to log file
+	 */
+	private final RandomAccessFile file;
+	/**
+	 * channel of log file
+	 */
+	private final FileChannel channel;
+	/**
+	 * storage backend of database file the entries are applied to
+	 */
+	private final RecordStore store;
+	/**
+	 * task that forces database file and truncates the log
+	 */
+	private final Runnable checkpointer;
+	/**
+	 * thread that writes, forces and applies appended entries
+	 */
+	private final Thread flusher;
+	/**
+	 * lock of buffers and counters of entries
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	/**
+	 * signalled when entries are appended or log is closed
+	 */
+	private final Condition appended = lock.newCondition();
+	/**
+	 * signalled when entries are applied, when flushing thread stops writing
+	 * or when flushing is failed
+	 */
+	private final Condition forced = lock.newCondition();
+	/**
+	 * checksum calculator of entries
+	 */
+	private final CRC32 crc = new CRC32();
+	/**
+	 * the latest changes that are appended but not applied to database file
+	 * yet, mapped by their positions in database file
+	 */
+	private final ConcurrentHashMap<Long, Change> unapplied = new ConcurrentHashMap<Long, Change>();
+	/**
+	 * entries appended but not written yet
+	 */
+	private ByteBuffer pending = ByteBuffer.allocate(INITIAL_CAPACITY);
+	/**
+	 * buffer that takes place of <code>pending</code> buffer when it is being
+	 * written
+	 */
+	private ByteBuffer spare = ByteBuffer.allocate(INITIAL_CAPACITY);
+	/**
+	 * sequence number of the last appended entry
+	 */
+	private long appendedCount;
+	/**
+	 * sequence number of the last forced and applied entry
+	 */
+	private long durableCount;
+	/**
+	 * error of flushing, after which log can not be used
+	 */
+	private IOException failure;
+	/**
+	 * defines flushing thread writes and applies the group of entries taken
+	 * from <code>pending</code> buffer
+	 */
+	private boolean flushing;
+	/**
+	 * defines log is closed
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructor opens log file and starts flushing thread.
+	 * 
+	 * @param file
+	 *         log file
+	 * @param store
+	 *         storage backend of database file
+	 * @param checkpointer
+	 *         task that must block changes of database, call
+	 *         {@link #checkpoint()} and unblock changes
+	 * @throws IOException
+	 *          on file opening error
+	 */
+	WriteAheadLog(File file, RecordStore store, Runnable checkpointer)
+			throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+		this.store = store;
+		this.checkpointer = checkpointer;
+		this.flusher = new Thread() {
+			/**
+			 * Overrides method run of java.lang.Thread to write appended entries
+			 */
+			public void run() {
+				flush();
+			}
+		};
+		flusher.setName("LOG_FLUSHING_THREAD");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Applies complete entries of log file to database file, forces database
+	 * file and truncates the log. Entries are applied in order up to the first
+	 * incomplete or damaged entry. Must be called before any entry is appended.
+	 * 
+	 * @return amount of applied entries
+	 * @throws IOException
+	 *          on reading or writing error
+	 */
+	int recover() throws IOException {
+		byte[] bytes = new byte[(int) channel.size()];
+		file.seek(0);
+		file.readFully(bytes);
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
+		int count = 0;
+		while (buf.remaining() >= ENTRY_OVERHEAD) {
+			int start = buf.position();
+			long pos = buf.getLong();
+			int length = buf.getInt();
+			if (pos < 0 || length < 0 || length > buf.remaining() - 4)
+				break;
+			crc.reset();
+			crc.update(bytes, start, ENTRY_OVERHEAD - 4 + length);
+			byte[] change = new byte[length];
+			buf.get(change);
+			if (buf.getInt() != (int) crc.getValue())
+				break;
+			store.write(pos, change);
+			count++;
+		}
+		store.force();
+		channel.truncate(0);
+		channel.position(0);
+		channel.force(false);
+		return count;
+	}
+
+	/**
+	 * Appends change of database file to the log. Change must be appended
+	 * while changes of database are blocked, so the order of entries is the
+	 * order of changes. Database file is not written, the change is applied
+	 * to it by flushing thread after the entry is forced to the disk.
+	 * 
+	 * @param pos
+	 *         position of change in database file
+	 * @param buf
+	 *         bytes to write to database file, array is copied
+	 * @return sequence number of entry to wait for by
+	 *         {@link #awaitDurable(long)}
+	 * @throws IOException
+	 *          if log is closed or flushing is failed
+	 */
+	long append(long pos, byte[] buf) throws IOException {
+		lock.lock();
+		try {
+			checkUsable();
+			int size = ENTRY_OVERHEAD + buf.length;
+			if (pending.remaining() < size) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+						pending.position() + size));
+				pending.flip();
+				larger.put(pending);
+				pending = larger;
+			}
+			int start = pending.position();
+			pending.putLong(pos).putInt(buf.length).put(buf);
+			crc.reset();
+			crc.update(pending.array(), start, size - 4);
+			pending.putInt((int) crc.getValue());
+			appendedCount++;
+			unapplied.put(pos, new Change(buf.clone(), appendedCount));
+			appended.signal();
+			return appendedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns bytes of the latest change appended at the position of database
+	 * file that is not applied to database file yet.
+	 * 
+	 * @param pos
+	 *         position of change in database file
+	 * @return bytes of change, that must not be changed, or <code>null</code>
+	 *         if database file has the latest bytes at this position
+	 */
+	byte[] getUnapplied(long pos) {
+		Change change = unapplied.get(pos);
+		return change != null ? change.bytes : null;
+	}
+
+	/**
+	 * Waits until entry is forced to the disk and applied to database file, or
+	 * database file with the change is forced by checkpoint.
+	 * 
+	 * @param sequence
+	 *         sequence number returned by {@link #append(long, byte[])}
+	 * @throws IOException
+	 *          if flushing is failed before entry is forced
+	 */
+	void awaitDurable(long sequence) throws IOException {
+		lock.lock();
+		try {
+			while (durableCount < sequence && failure == null) {
+				forced.awaitUninterruptibly();
+			}
+			if (durableCount < sequence)
+				checkUsable();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Applies all of the appended entries, forces database file and truncates
+	 * the log. All of the appended entries become durable. Must be called while
+	 * changes of database are blocked.<br>
+	 * Waits until flushing thread applies the group of entries it has taken,
+	 * and the next group is not taken until the log is truncated, so no entry
+	 * is written into the log after it is truncated. Entries that are not
+	 * taken yet are forced to the log before they are applied, the same way
+	 * flushing thread does.
+	 * 
+	 * @throws IOException
+	 *          on writing, forcing or truncating error
+	 */
+	void checkpoint() throws IOException {
+		lock.lock();
+		try {
+			while (flushing && failure == null) {
+				forced.awaitUninterruptibly();
+			}
+			if (failure != null)
+				throw new IOException("log file is failed: " + failure.getMessage());
+			if (pending.position() > 0) {
+				pending.flip();
+				while (pending.hasRemaining()) {
+					channel.write(pending);
+				}
+				channel.force(false);
+				apply(pending);
+			}
+			store.force();
+			channel.truncate(0);
+			channel.position(0);
+			channel.force(false);
+			pending.clear();
+			unapplied.clear();
+			durableCount = appendedCount;
+			forced.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes and applies all of the appended entries, stops flushing thread,
+	 * does checkpoint and closes log file.
+	 * 
+	 * @throws IOException
+	 *          on writing or closing error
+	 */
+	void close() throws IOException {
+		lock.lock();
+		try {
+			closed = true;
+			appended.signal();
+		} finally {
+			lock.unlock();
+		}
+		boolean interrupted = false;
+		while (flusher.isAlive()) {
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		try {
+			if (failure == null)
+				checkpoint();
+		} catch (IOException e) {
+			fail(e);
+			throw e;
+		} finally {
+			file.close();
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes groups of appended entries to log file, forces them to the disk
+	 * and applies them to database file until log is closed. Runs checkpoint
+	 * when log file is too long.
+	 */
+	private void flush() {
+		while (true) {
+			ByteBuffer batch;
+			long sequence;
+			lock.lock();
+			try {
+				while (pending.position() == 0 && !closed) {
+					appended.awaitUninterruptibly();
+				}
+				if (pending.position() == 0)
+					return;
+				batch = pending;
+				pending = spare;
+				spare = batch;
+				sequence = appendedCount;
+				flushing = true;
+			} finally {
+				lock.unlock();
+			}
+			try {
+				batch.flip();
+				while (batch.hasRemaining()) {
+					channel.write(batch);
+				}
+				channel.force(false);
+				apply(batch);
+				forget(batch, sequence);
+				batch.clear();
+				lock.lock();
+				try {
+					if (durableCount < sequence)
+						durableCount = sequence;
+					flushing = false;
+					forced.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				if (channel.size() >= CHECKPOINT_LENGTH)
+					checkpointer.run();
+			} catch (IOException e) {
+				log.log(Level.SEVERE, "error writing log file", e);
+				fail(e);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writes the changes of forced entries to database file in order of
+	 * entries.
+	 * 
+	 * @param entries
+	 *         buffer of entries which bytes from the beginning up to the limit
+	 *         are forced to the log
+	 * @throws IOException
+	 *          on database file writing error
+	 */
+	private void apply(ByteBuffer entries) throws IOException {
+		int end = entries.limit();
+		int pos = 0;
+		while (pos < end) {
+			long target = entries.getLong(pos);
+			int length = entries.getInt(pos + 8);
+			byte[] change = new byte[length];
+			System.arraycopy(entries.array(), pos + 12, change, 0, length);
+			store.write(target, change);
+			pos += ENTRY_OVERHEAD + length;
+		}
+	}
+
+	/**
+	 * Forgets applied changes, so readers read them in database file. Change
+	 * appended at the same position later is kept.
+	 * 
+	 * @param entries
+	 *         buffer of applied entries which bytes are from the beginning up
+	 *         to the limit
+	 * @param sequence
+	 *         sequence number of the last applied entry
+	 */
+	private void forget(ByteBuffer entries, long sequence) {
+		int end = entries.limit();
+		int pos = 0;
+		while (pos < end) {
+			Long target = entries.getLong(pos);
+			Change change = unapplied.get(target);
+			if (change != null && change.sequence <= sequence)
+				unapplied.remove(target, change);
+			pos += ENTRY_OVERHEAD + entries.getInt(pos + 8);
+		}
+	}
+
+	/**
+	 * Makes log unusable after error and wakes up waiting threads.
+	 * 
+	 * @param e
+	 *         error of writing log file
+	 */
+	private void fail(IOException e) {
+		lock.lock();
+		try {
+			failure = e;
+			forced.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks if entries can be appended. Must be called by the owner of
+	 * <code>lock</code>.
+	 * 
+	 * @throws IOException
+	 *          if log is closed or flushing is failed
+	 */
+	private void checkUsable() throws IOException {
+		if (failure != null)
+			throw new IOException("log file is failed: " + failure.getMessage());
+		if (closed)
+			throw new IOException("log file is closed");
+	}
+
+	/**
+	 * Change appended to the log but not applied to database file yet.
+	 */
+	private static class Change {
+		/**
+		 * bytes to write to database file
+		 */
+		private final byte[] bytes;
+		/**
+		 * sequence number of the entry of change
+		 */
+		private final long sequence;
+
+		/**
+		 * Constructor creates change.
+		 * 
+		 * @param bytes
+		 *         bytes to write to database file
+		 * @param sequence
+		 *         sequence number of the entry of change
+		 */
+		Change(byte[] bytes, long sequence) {
+			this.bytes = bytes;
+			this.sequence = sequence;
+		}
+	}
+}
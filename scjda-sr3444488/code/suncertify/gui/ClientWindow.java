@@ -8,6 +8,7 @@ import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.BorderFactory;
@@ -29,6 +30,7 @@ import suncertify.Application;
 import suncertify.ApplicationWindow;
 import suncertify.Application.ApplicationType;
 import suncertify.db.DBAccess;
+import suncertify.db.ExtendedDBAccess;
 import suncertify.gui.OperationDialogPanel.OperationType;
 
 /**
@@ -395,19 +397,22 @@ public class ClientWindow extends ApplicationWindow {
 			throws GuiException {
 		try {
 			RecordTableModel out = new RecordTableModel();
-			long[] res = application.getDBAccess().findByCriteria(criteriaArr);
-			nextRecNo: for (long recNo : res) {
+			DBAccess dba = application.getDBAccess();
+			if (dba instanceof ExtendedDBAccess) {
+				Map<Long, String[]> records = ((ExtendedDBAccess) dba)
+						.findAndRead(criteriaArr);
+				for (Map.Entry<Long, String[]> record : records.entrySet()) {
+					if (matchesExactly(record.getValue(), criteriaArr, exChecks))
+						out.addRecord(record.getKey(), record.getValue());
+				}
+				return out;
+			}
+			long[] res = dba.findByCriteria(criteriaArr);
+			for (long recNo : res) {
 				try {
 					String[] dataArr = readRecord(recNo);
-					if (exChecks != null) {
-						for (int i = 0; i < exChecks.length; i++) {
-							String data = dataArr[i];
-							if (exChecks[i] && !data.equals(criteriaArr[i])) {
-								continue nextRecNo;
-							}
-						}
-					}
-					out.addRecord(recNo, dataArr);
+					if (matchesExactly(dataArr, criteriaArr, exChecks))
+						out.addRecord(recNo, dataArr);
 				} catch (Exception e) {
 					log.log(Level.SEVERE, "record already not found " + recNo);
 				}
@@ -418,6 +423,31 @@ public class ClientWindow extends ApplicationWindow {
 		}
 	}
 
+	/**
+	 * Checks fields of record that must be equal to criteria.
+	 * 
+	 * @param dataArr
+	 *         fields of record
+	 * @param criteriaArr
+	 *         criteria of search
+	 * @param exChecks
+	 *         flags of fields that must be equal to criteria, can be
+	 *         <code>null</code>
+	 * @return <code>true</code> if all the flagged fields are equal to criteria
+	 */
+	private boolean matchesExactly(String[] dataArr, String[] criteriaArr,
+			boolean[] exChecks) {
+		if (exChecks != null) {
+			for (int i = 0; i < exChecks.length; i++) {
+				String data = dataArr[i];
+				if (exChecks[i] && !data.equals(criteriaArr[i])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Requests database for all records in database.
 	 * 
@@ -543,6 +573,56 @@ public class ClientWindow extends ApplicationWindow {
 		}
 	}
 
+	/**
+	 * Books or unbooks record without locking it while the owner is being
+	 * entered. New owner is written only if the record is still owned by the
+	 * owner that was shown to the user, otherwise the user is informed that the
+	 * record is changed by other client.
+	 * 
+	 * @param row
+	 *         row of record in the table
+	 * @param recNo
+	 *         record number
+	 * @param tableData
+	 *         table model to update
+	 * @throws GuiException
+	 *          on any error
+	 */
+	private void bookRecord(int row, long recNo, RecordTableModel tableData)
+			throws GuiException {
+		String[] data = readRecord(recNo).clone();
+		int ownerField = ExtendedDBAccess.OWNER_FIELD;
+		String owner = data[ownerField];
+		if (!OperationDialogPanel.showDialog(data, DBAccess.FIELD_SEQUENCE,
+				OperationType.BOOK))
+			return;
+		int result;
+		try {
+			result = ((ExtendedDBAccess) application.getDBAccess()).updateOwners(
+					new long[] { recNo }, new String[] { owner },
+					new String[] { data[ownerField] })[0];
+		} catch (Exception e) {
+			log.log(Level.SEVERE, "error occured during booking record " + recNo, e);
+			throw new GuiException(e);
+		}
+		if (result == ExtendedDBAccess.OWNER_NOT_FOUND) {
+			JOptionPane.showMessageDialog(this, "Record is deleted by other client",
+					"Conflict", JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		if (result == ExtendedDBAccess.OWNER_BUSY) {
+			JOptionPane.showMessageDialog(this,
+					"Record is locked by other client, try again later", "Conflict",
+					JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		if (result == ExtendedDBAccess.OWNER_CONFLICT)
+			JOptionPane.showMessageDialog(this,
+					"Record is booked or unbooked by other client", "Conflict",
+					JOptionPane.WARNING_MESSAGE);
+		tableData.update(row, readRecord(recNo));
+	}
+
 	/**
 	 * Updates row selection in table after table model changed
 	 * 
@@ -581,7 +661,10 @@ public class ClientWindow extends ApplicationWindow {
 					int res = JOptionPane.showConfirmDialog(ClientWindow.this,
 							"Do you really want to book/unbook record", "Are you sure?",
 							JOptionPane.YES_NO_OPTION);
-					if (res == JOptionPane.YES_OPTION) {
+					if (res == JOptionPane.YES_OPTION
+							&& application.getDBAccess() instanceof ExtendedDBAccess) {
+						bookRecord(row, recNo, tableData);
+					} else if (res == JOptionPane.YES_OPTION) {
 						lockCookie = lockRecord(recNo);
 						String[] data = readRecord(recNo);
 						if (OperationDialogPanel.showDialog(data, DBAccess.FIELD_SEQUENCE,
@@ -6,6 +6,8 @@ import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -59,6 +61,10 @@ public class ServerWindow extends ApplicationWindow {
 	 * clear log menu item
 	 */
 	private JMenuItem clearLogMI;
+	/**
+	 * Show locks menu item
+	 */
+	private JMenuItem showLocksMI;
 	/**
 	 * exit application menu item
 	 */
@@ -157,8 +163,6 @@ public class ServerWindow extends ApplicationWindow {
 
 		Logger log = Logger.getLogger("suncertify.db");
 		log.addHandler(handler);
-		log = Logger.getLogger("suncertify.db.utils");
-		log.setLevel(Level.OFF);
 		log = Logger.getLogger("suncertify.sockets");
 		log.addHandler(handler);
 
@@ -179,6 +183,7 @@ public class ServerWindow extends ApplicationWindow {
 		exitMI = new JMenuItem();
 		actionMenu = new JMenu();
 		clearLogMI = new JMenuItem();
+		showLocksMI = new JMenuItem();
 		helpMenu = new JMenu();
 		helpMI = new JMenuItem();
 		aboutMI = new JMenuItem();
@@ -226,6 +231,15 @@ public class ServerWindow extends ApplicationWindow {
 			}
 		});
 		actionMenu.add(clearLogMI);
+		showLocksMI.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_L,
+				InputEvent.ALT_MASK | InputEvent.CTRL_MASK));
+		showLocksMI.setText("Show Locks");
+		showLocksMI.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent evt) {
+				showLocksMIActionPerformed();
+			}
+		});
+		actionMenu.add(showLocksMI);
 		mainMenuBar.add(actionMenu);
 		helpMenu.setText("Help");
 		helpMI.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F1, 0));
@@ -289,6 +303,23 @@ public class ServerWindow extends ApplicationWindow {
 		clearLog();
 	}
 
+	/**
+	 * Shows records locked by connected clients, invoked from action listener
+	 * of menu item.
+	 */
+	private void showLocksMIActionPerformed() {
+		Map<String, long[]> owners = application.getLockOwners();
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, long[]> owner : owners.entrySet()) {
+			text.append(owner.getKey()).append(": ").append(
+					Arrays.toString(owner.getValue())).append('\n');
+		}
+		if (owners.isEmpty())
+			text.append("no records are locked by connected clients");
+		JOptionPane.showMessageDialog(this, text.toString(), "Locks",
+				JOptionPane.INFORMATION_MESSAGE);
+	}
+
 	/**
 	 * Shows help file.
 	 */
@@ -0,0 +1,787 @@
+package suncertify.sockets;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import suncertify.db.DBAccess;
+import suncertify.db.DuplicateKeyException;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SecurityException;
+
+/**
+ * Class <code>BinaryCodec</code> encodes messages of binary protocol version
+ * to bytes of message frame and decodes them back.<br>
+ * First byte of message is its kind: request, response or empty response.
+ * Identified messages continue with identifier of request. Request continues
+ * with the opcode of command, which is the ordinal of
+ * {@link SocketCommand}. Request and response continue with the type of
+ * transferred data and with the data itself. Numbers are
+ * written as primitive longs. Record fields are written as fixed-width ASCII
+ * fields of {@link DBAccess#FIELD_LENGTH} lengths padded with spaces, other
+ * arrays of strings are written as length-prefixed UTF-8 strings. Exception
+ * is written as its code and message: database exceptions and standard
+ * exceptions thrown by server are decoded as the exceptions of the same
+ * classes, other exceptions as {@link RuntimeException}.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+final class BinaryCodec {
+	/**
+	 * message kind: request of client
+	 */
+	private final static byte REQUEST = 1;
+	/**
+	 * message kind: response of server
+	 */
+	private final static byte RESPONSE = 2;
+	/**
+	 * message kind: response of server for command that has no result
+	 */
+	private final static byte EMPTY_RESPONSE = 3;
+	/**
+	 * type of transferred data: no data
+	 */
+	private final static byte TYPE_NULL = 0;
+	/**
+	 * type of transferred data: long number
+	 */
+	private final static byte TYPE_LONG = 1;
+	/**
+	 * type of transferred data: array of long
+	 */
+	private final static byte TYPE_LONG_ARRAY = 2;
+	/**
+	 * type of transferred data: array of strings
+	 */
+	private final static byte TYPE_STRING_ARRAY = 3;
+	/**
+	 * type of transferred data: exception
+	 */
+	private final static byte TYPE_EXCEPTION = 4;
+	/**
+	 * type of transferred data: array of long and array of strings
+	 */
+	private final static byte TYPE_LONG_AND_STRING_ARRAYS = 5;
+	/**
+	 * type of transferred data: map of record numbers to record fields
+	 */
+	private final static byte TYPE_RECORDS = 6;
+	/**
+	 * exception code: exception other than database exceptions
+	 */
+	private final static byte EXCEPTION_OTHER = 0;
+	/**
+	 * exception code: {@link RecordNotFoundException}
+	 */
+	private final static byte EXCEPTION_NOT_FOUND = 1;
+	/**
+	 * exception code: {@link SecurityException}
+	 */
+	private final static byte EXCEPTION_SECURITY = 2;
+	/**
+	 * exception code: {@link DuplicateKeyException}
+	 */
+	private final static byte EXCEPTION_DUPLICATE = 3;
+	/**
+	 * exception code: {@link IllegalArgumentException}
+	 */
+	private final static byte EXCEPTION_ILLEGAL_ARGUMENT = 4;
+	/**
+	 * exception code: {@link IllegalStateException}
+	 */
+	private final static byte EXCEPTION_ILLEGAL_STATE = 5;
+	/**
+	 * exception code: {@link UnsupportedOperationException}
+	 */
+	private final static byte EXCEPTION_UNSUPPORTED = 6;
+	/**
+	 * exception code: {@link NullPointerException}
+	 */
+	private final static byte EXCEPTION_NULL_POINTER = 7;
+	/**
+	 * exception code: {@link ClassCastException}
+	 */
+	private final static byte EXCEPTION_CLASS_CAST = 8;
+	/**
+	 * exception code: {@link IndexOutOfBoundsException}
+	 */
+	private final static byte EXCEPTION_INDEX = 9;
+	/**
+	 * standard exceptions thrown by server, indexed by exception code
+	 */
+	private final static Class<?>[] standardExceptions = { null, null, null,
+			null, IllegalArgumentException.class, IllegalStateException.class,
+			UnsupportedOperationException.class, NullPointerException.class,
+			ClassCastException.class, IndexOutOfBoundsException.class };
+	/**
+	 * array of strings is written as length-prefixed strings
+	 */
+	private final static byte STRINGS_VARIABLE = 0;
+	/**
+	 * array of strings is written as fixed-width record fields
+	 */
+	private final static byte STRINGS_FIXED = 1;
+	/**
+	 * encoding of fixed-width record fields
+	 */
+	private final static String ascii = "US-ASCII";
+	/**
+	 * encoding of length-prefixed strings
+	 */
+	private final static String utf8 = "UTF-8";
+	/**
+	 * space symbol as byte that pads fixed-width fields
+	 */
+	private final static byte space_byte = (byte) ' ';
+	/**
+	 * all the commands in the order of opcodes
+	 */
+	private final static SocketCommand[] commands = SocketCommand.values();
+
+	/**
+	 * Private constructor, class has only static members.
+	 */
+	private BinaryCodec() {
+	}
+
+	/**
+	 * Encodes message to bytes of message frame.
+	 * 
+	 * @param message
+	 *         {@link RequestCommand} or {@link ResponseResult} object, or
+	 *         <code>null</code> as response for command that has no result
+	 * @param identified
+	 *         defines message has identifier of request
+	 * @return bytes of message
+	 * @throws IOException
+	 *          if message can not be encoded
+	 */
+	static byte[] encode(Object message, boolean identified) throws IOException {
+		if (message == null)
+			return new byte[] { EMPTY_RESPONSE };
+		if (message instanceof RequestCommand)
+			return encodeRequest((RequestCommand) message, identified);
+		if (message instanceof ResponseResult)
+			return encodeResponse((ResponseResult) message, identified);
+		throw new IOException("unknown message object "
+				+ message.getClass().getName());
+	}
+
+	/**
+	 * Decodes message from bytes of message frame.
+	 * 
+	 * @param frame
+	 *         bytes of message
+	 * @param identified
+	 *         defines message has identifier of request
+	 * @return {@link RequestCommand} or {@link ResponseResult} object, or
+	 *         <code>null</code> as response for command that has no result
+	 * @throws IOException
+	 *          if bytes of message are not valid
+	 */
+	static Object decode(byte[] frame, boolean identified) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(frame);
+		try {
+			Object message;
+			byte kind = buf.get();
+			switch (kind) {
+			case REQUEST:
+				message = decodeRequest(buf, identified);
+				break;
+			case RESPONSE:
+				message = decodeResponse(buf, identified);
+				break;
+			case EMPTY_RESPONSE:
+				message = null;
+				break;
+			default:
+				throw new IOException("unknown message kind " + kind);
+			}
+			if (buf.hasRemaining())
+				throw new IOException("unexpected bytes at the end of message");
+			return message;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("message is truncated");
+		}
+	}
+
+	/**
+	 * Encodes request of client.
+	 * 
+	 * @param request
+	 *         request of client
+	 * @param identified
+	 *         defines message has identifier of request
+	 * @return bytes of message
+	 * @throws IOException
+	 *          if request can not be encoded
+	 */
+	private static byte[] encodeRequest(RequestCommand request,
+			boolean identified) throws IOException {
+		Object data = request.getData();
+		ByteBuffer buf = ByteBuffer.allocate(2 + (identified ? 4 : 0)
+				+ dataSize(data));
+		buf.put(REQUEST);
+		if (identified)
+			buf.putInt(request.getId());
+		buf.put((byte) request.getCommand().ordinal());
+		putData(buf, data);
+		return buf.array();
+	}
+
+	/**
+	 * Decodes request of client.
+	 * 
+	 * @param buf
+	 *         bytes of message after the message kind
+	 * @param identified
+	 *         defines message has identifier of request
+	 * @return request of client
+	 * @throws IOException
+	 *          if bytes of message are not valid
+	 */
+	private static RequestCommand decodeRequest(ByteBuffer buf,
+			boolean identified) throws IOException {
+		int id = identified ? buf.getInt() : 0;
+		int opcode = buf.get() & 0xFF;
+		if (opcode >= commands.length)
+			throw new IOException("unknown command opcode " + opcode);
+		RequestCommand request = new RequestCommand(commands[opcode]);
+		request.setId(id);
+		Object data = getData(buf);
+		if (data instanceof Long)
+			request.setLong((Long) data);
+		else if (data instanceof long[])
+			request.setArray((long[]) data);
+		else if (data instanceof String[])
+			request.setArray((String[]) data);
+		else if (data instanceof Object[]) {
+			try {
+				request.setArray((Object[]) data);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("invalid request parameters");
+			}
+		} else if (data != null)
+			throw new IOException("unknown request data");
+		return request;
+	}
+
+	/**
+	 * Encodes response of server.
+	 * 
+	 * @param response
+	 *         response of server
+	 * @param identified
+	 *         defines message has identifier of request
+	 * @return bytes of message
+	 * @throws IOException
+	 *          if response can not be encoded
+	 */
+	private static byte[] encodeResponse(ResponseResult response,
+			boolean identified) throws IOException {
+		Object data = response.getData();
+		ByteBuffer buf = ByteBuffer.allocate(1 + (identified ? 4 : 0)
+				+ dataSize(data));
+		buf.put(RESPONSE);
+		if (identified)
+			buf.putInt(response.getId());
+		putData(buf, data);
+		return buf.array();
+	}
+
+	/**
+	 * Decodes response of server.
+	 * 
+	 * @param buf
+	 *         bytes of message after the message kind
+	 * @param identified
+	 *         defines message has identifier of request
+	 * @return response of server
+	 * @throws IOException
+	 *          if bytes of message are not valid
+	 */
+	private static ResponseResult decodeResponse(ByteBuffer buf,
+			boolean identified) throws IOException {
+		int id = identified ? buf.getInt() : 0;
+		Object data = getData(buf);
+		ResponseResult response;
+		if (data == null && identified) {
+			response = ResponseResult.empty();
+		} else {
+			try {
+				response = new ResponseResult(data);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("unknown response data");
+			}
+		}
+		response.setId(id);
+		return response;
+	}
+
+	/**
+	 * Returns amount of bytes needed to write transferred data.
+	 * 
+	 * @param data
+	 *         transferred data of request or response
+	 * @return amount of bytes
+	 * @throws IOException
+	 *          if type of data is unknown
+	 */
+	private static int dataSize(Object data) throws IOException {
+		if (data == null)
+			return 1;
+		if (data instanceof Long)
+			return 1 + 8;
+		if (data instanceof long[])
+			return 1 + longArraySize((long[]) data);
+		if (data instanceof String[])
+			return 1 + stringArraySize((String[]) data);
+		if (data instanceof Object[]) {
+			Object[] arrays = (Object[]) data;
+			return 1 + longArraySize((long[]) arrays[0])
+					+ stringArraySize((String[]) arrays[1]);
+		}
+		if (data instanceof Map) {
+			int size = 1 + 4;
+			for (String[] fields : asRecords(data).values()) {
+				size += 8 + stringArraySize(fields);
+			}
+			return size;
+		}
+		if (data instanceof Exception)
+			return 2 + stringSize(exceptionMessage((Exception) data));
+		throw new IOException("unknown transferred data "
+				+ data.getClass().getName());
+	}
+
+	/**
+	 * Writes transferred data: type of data and the data itself.
+	 * 
+	 * @param buf
+	 *         buffer to write to
+	 * @param data
+	 *         transferred data of request or response
+	 * @throws IOException
+	 *          if data can not be encoded
+	 */
+	private static void putData(ByteBuffer buf, Object data) throws IOException {
+		if (data == null) {
+			buf.put(TYPE_NULL);
+		} else if (data instanceof Long) {
+			buf.put(TYPE_LONG);
+			buf.putLong((Long) data);
+		} else if (data instanceof long[]) {
+			buf.put(TYPE_LONG_ARRAY);
+			putLongArray(buf, (long[]) data);
+		} else if (data instanceof String[]) {
+			buf.put(TYPE_STRING_ARRAY);
+			putStringArray(buf, (String[]) data);
+		} else if (data instanceof Object[]) {
+			Object[] arrays = (Object[]) data;
+			buf.put(TYPE_LONG_AND_STRING_ARRAYS);
+			putLongArray(buf, (long[]) arrays[0]);
+			putStringArray(buf, (String[]) arrays[1]);
+		} else if (data instanceof Map) {
+			Map<Long, String[]> records = asRecords(data);
+			buf.put(TYPE_RECORDS);
+			buf.putInt(records.size());
+			for (Map.Entry<Long, String[]> entry : records.entrySet()) {
+				buf.putLong(entry.getKey());
+				putStringArray(buf, entry.getValue());
+			}
+		} else {
+			Exception e = (Exception) data;
+			buf.put(TYPE_EXCEPTION);
+			buf.put(exceptionCode(e));
+			putString(buf, exceptionMessage(e));
+		}
+	}
+
+	/**
+	 * Reads transferred data.
+	 * 
+	 * @param buf
+	 *         buffer to read from
+	 * @return transferred data of request or response
+	 * @throws IOException
+	 *          if bytes of data are not valid
+	 */
+	private static Object getData(ByteBuffer buf) throws IOException {
+		byte type = buf.get();
+		switch (type) {
+		case TYPE_NULL:
+			return null;
+		case TYPE_LONG:
+			return buf.getLong();
+		case TYPE_LONG_ARRAY:
+			return getLongArray(buf);
+		case TYPE_STRING_ARRAY:
+			return getStringArray(buf);
+		case TYPE_LONG_AND_STRING_ARRAYS: {
+			long[] longs = getLongArray(buf);
+			String[] strings = getStringArray(buf);
+			return new Object[] { longs, strings };
+		}
+		case TYPE_RECORDS: {
+			int count = buf.getInt();
+			if (count < 0 || count > buf.remaining() / 12)
+				throw new IOException("invalid amount of records " + count);
+			Map<Long, String[]> records = new LinkedHashMap<Long, String[]>(
+					count * 4 / 3 + 1);
+			for (int i = 0; i < count; i++) {
+				long recNo = buf.getLong();
+				records.put(recNo, getStringArray(buf));
+			}
+			return records;
+		}
+		case TYPE_EXCEPTION: {
+			byte code = buf.get();
+			return newException(code, getString(buf));
+		}
+		default:
+			throw new IOException("unknown data type " + type);
+		}
+	}
+
+	/**
+	 * Casts transferred data to the map of record numbers to record fields.
+	 * 
+	 * @param data
+	 *         transferred data, map of records
+	 * @return map of records
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<Long, String[]> asRecords(Object data) {
+		return (Map<Long, String[]>) data;
+	}
+
+	/**
+	 * Returns code of exception. Database exceptions and standard exceptions
+	 * of the exact classes thrown by server have their own codes, all other
+	 * exceptions are {@link #EXCEPTION_OTHER}.
+	 * 
+	 * @param e
+	 *         exception
+	 * @return exception code
+	 */
+	private static byte exceptionCode(Exception e) {
+		if (e instanceof RecordNotFoundException)
+			return EXCEPTION_NOT_FOUND;
+		if (e instanceof SecurityException)
+			return EXCEPTION_SECURITY;
+		if (e instanceof DuplicateKeyException)
+			return EXCEPTION_DUPLICATE;
+		for (byte code = 0; code < standardExceptions.length; code++) {
+			if (e.getClass() == standardExceptions[code])
+				return code;
+		}
+		return EXCEPTION_OTHER;
+	}
+
+	/**
+	 * Creates exception of specified code. Message of standard exception
+	 * includes its class name, as it is written by
+	 * {@link #exceptionMessage(Exception)}, and the class name is removed.
+	 * Exception of unknown code, such as the code of later protocol, is
+	 * created as {@link RuntimeException} with the whole message.
+	 * 
+	 * @param code
+	 *         exception code
+	 * @param message
+	 *         transferred message of exception
+	 * @return exception of the code
+	 */
+	private static Exception newException(byte code, String message) {
+		switch (code) {
+		case EXCEPTION_NOT_FOUND:
+			return new RecordNotFoundException(message);
+		case EXCEPTION_SECURITY:
+			return new SecurityException(message);
+		case EXCEPTION_DUPLICATE:
+			return new DuplicateKeyException(message);
+		case EXCEPTION_ILLEGAL_ARGUMENT:
+			return new IllegalArgumentException(standardMessage(code, message));
+		case EXCEPTION_ILLEGAL_STATE:
+			return new IllegalStateException(standardMessage(code, message));
+		case EXCEPTION_UNSUPPORTED:
+			return new UnsupportedOperationException(standardMessage(code, message));
+		case EXCEPTION_NULL_POINTER:
+			return new NullPointerException(standardMessage(code, message));
+		case EXCEPTION_CLASS_CAST:
+			return new ClassCastException(standardMessage(code, message));
+		case EXCEPTION_INDEX:
+			return new IndexOutOfBoundsException(standardMessage(code, message));
+		default:
+			return new RuntimeException(message);
+		}
+	}
+
+	/**
+	 * Removes class name of standard exception from its transferred message.
+	 * 
+	 * @param code
+	 *         code of standard exception
+	 * @param message
+	 *         transferred message, class name and the message of exception
+	 * @return message of exception or <code>null</code> if exception has no
+	 *         message
+	 */
+	private static String standardMessage(byte code, String message) {
+		String name = standardExceptions[code].getName();
+		if (message == null || message.equals(name))
+			return null;
+		if (message.startsWith(name + ": "))
+			return message.substring(name.length() + 2);
+		return message;
+	}
+
+	/**
+	 * Returns encoded message of exception. Message of exception other than
+	 * database exceptions includes class name of exception, so the clients
+	 * that do not know the code of standard exception show its class name.
+	 * 
+	 * @param e
+	 *         exception
+	 * @return encoded message or <code>null</code> if exception has no message
+	 * @throws UnsupportedEncodingException
+	 *          if encoding is not supported
+	 */
+	private static byte[] exceptionMessage(Exception e)
+			throws UnsupportedEncodingException {
+		String message = e.getMessage();
+		if (!(e instanceof RecordNotFoundException
+				|| e instanceof SecurityException || e instanceof DuplicateKeyException))
+			message = e.toString();
+		return message == null ? null : message.getBytes(utf8);
+	}
+
+	/**
+	 * Returns amount of bytes needed to write array of long.
+	 * 
+	 * @param longs
+	 *         array of long
+	 * @return amount of bytes
+	 */
+	private static int longArraySize(long[] longs) {
+		return 4 + (longs == null ? 0 : longs.length * 8);
+	}
+
+	/**
+	 * Writes array of long: length of array and the numbers.
+	 * 
+	 * @param buf
+	 *         buffer to write to
+	 * @param longs
+	 *         array of long, can be <code>null</code>
+	 */
+	private static void putLongArray(ByteBuffer buf, long[] longs) {
+		if (longs == null) {
+			buf.putInt(-1);
+			return;
+		}
+		buf.putInt(longs.length);
+		for (long l : longs) {
+			buf.putLong(l);
+		}
+	}
+
+	/**
+	 * Reads array of long.
+	 * 
+	 * @param buf
+	 *         buffer to read from
+	 * @return array of long or <code>null</code>
+	 * @throws IOException
+	 *          if length of array is not valid
+	 */
+	private static long[] getLongArray(ByteBuffer buf) throws IOException {
+		int length = buf.getInt();
+		if (length == -1)
+			return null;
+		if (length < 0 || length > buf.remaining() / 8)
+			throw new IOException("invalid array length " + length);
+		long[] longs = new long[length];
+		for (int i = 0; i < length; i++) {
+			longs[i] = buf.getLong();
+		}
+		return longs;
+	}
+
+	/**
+	 * Determines if array of strings can be written as fixed-width record
+	 * fields without loss: it has a field for each field of record, each field
+	 * is not <code>null</code>, consists of ASCII symbols, fits into its length
+	 * and does not end with space.
+	 * 
+	 * @param strings
+	 *         array of strings
+	 * @return <code>true</code> if array can be written as record fields
+	 */
+	private static boolean isFixedWidth(String[] strings) {
+		if (strings.length != DBAccess.FIELD_LENGTH.length)
+			return false;
+		for (int i = 0; i < strings.length; i++) {
+			String s = strings[i];
+			if (s == null || s.length() > DBAccess.FIELD_LENGTH[i])
+				return false;
+			if (s.length() > 0 && s.charAt(s.length() - 1) == ' ')
+				return false;
+			for (int j = 0; j < s.length(); j++) {
+				if (s.charAt(j) > 0x7F)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns amount of bytes needed to write array of strings.
+	 * 
+	 * @param strings
+	 *         array of strings, can be <code>null</code>
+	 * @return amount of bytes
+	 * @throws UnsupportedEncodingException
+	 *          if encoding is not supported
+	 */
+	private static int stringArraySize(String[] strings)
+			throws UnsupportedEncodingException {
+		if (strings == null)
+			return 4;
+		int size = 5;
+		if (isFixedWidth(strings)) {
+			for (int fl : DBAccess.FIELD_LENGTH) {
+				size += fl;
+			}
+			return size;
+		}
+		for (String s : strings) {
+			size += stringSize(s == null ? null : s.getBytes(utf8));
+		}
+		return size;
+	}
+
+	/**
+	 * Writes array of strings: length of array, the way strings are written and
+	 * the strings.
+	 * 
+	 * @param buf
+	 *         buffer to write to
+	 * @param strings
+	 *         array of strings, can be <code>null</code>
+	 * @throws UnsupportedEncodingException
+	 *          if encoding is not supported
+	 */
+	private static void putStringArray(ByteBuffer buf, String[] strings)
+			throws UnsupportedEncodingException {
+		if (strings == null) {
+			buf.putInt(-1);
+			return;
+		}
+		buf.putInt(strings.length);
+		if (isFixedWidth(strings)) {
+			buf.put(STRINGS_FIXED);
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = strings[i].getBytes(ascii);
+				buf.put(bytes);
+				for (int j = bytes.length; j < DBAccess.FIELD_LENGTH[i]; j++) {
+					buf.put(space_byte);
+				}
+			}
+		} else {
+			buf.put(STRINGS_VARIABLE);
+			for (String s : strings) {
+				putString(buf, s == null ? null : s.getBytes(utf8));
+			}
+		}
+	}
+
+	/**
+	 * Reads array of strings.
+	 * 
+	 * @param buf
+	 *         buffer to read from
+	 * @return array of strings or <code>null</code>
+	 * @throws IOException
+	 *          if bytes of array are not valid
+	 */
+	private static String[] getStringArray(ByteBuffer buf) throws IOException {
+		int length = buf.getInt();
+		if (length == -1)
+			return null;
+		if (length < 0 || length > buf.remaining())
+			throw new IOException("invalid array length " + length);
+		String[] strings = new String[length];
+		byte way = buf.get();
+		if (way == STRINGS_FIXED) {
+			if (length != DBAccess.FIELD_LENGTH.length)
+				throw new IOException("invalid amount of record fields " + length);
+			for (int i = 0; i < length; i++) {
+				int fl = DBAccess.FIELD_LENGTH[i];
+				int end = fl;
+				while (end > 0 && buf.get(buf.position() + end - 1) == space_byte)
+					end--;
+				strings[i] = new String(buf.array(), buf.position(), end, ascii);
+				buf.position(buf.position() + fl);
+			}
+		} else if (way == STRINGS_VARIABLE) {
+			for (int i = 0; i < length; i++) {
+				strings[i] = getString(buf);
+			}
+		} else {
+			throw new IOException("unknown way of writing strings " + way);
+		}
+		return strings;
+	}
+
+	/**
+	 * Returns amount of bytes needed to write string.
+	 * 
+	 * @param bytes
+	 *         encoded string, can be <code>null</code>
+	 * @return amount of bytes
+	 */
+	private static int stringSize(byte[] bytes) {
+		return 4 + (bytes == null ? 0 : bytes.length);
+	}
+
+	/**
+	 * Writes string: length of encoded string and its bytes.
+	 * 
+	 * @param buf
+	 *         buffer to write to
+	 * @param bytes
+	 *         encoded string, can be <code>null</code>
+	 */
+	private static void putString(ByteBuffer buf, byte[] bytes) {
+		if (bytes == null) {
+			buf.putInt(-1);
+			return;
+		}
+		buf.putInt(bytes.length);
+		buf.put(bytes);
+	}
+
+	/**
+	 * Reads string.
+	 * 
+	 * @param buf
+	 *         buffer to read from
+	 * @return string or <code>null</code>
+	 * @throws IOException
+	 *          if length of string is not valid
+	 */
+	private static String getString(ByteBuffer buf) throws IOException {
+		int length = buf.getInt();
+		if (length == -1)
+			return null;
+		if (length < 0 || length > buf.remaining())
+			throw new IOException("invalid string length " + length);
+		String s = new String(buf.array(), buf.position(), length, utf8);
+		buf.position(buf.position() + length);
+		return s;
+	}
+}
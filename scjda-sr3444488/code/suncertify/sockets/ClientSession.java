@@ -0,0 +1,108 @@
+package suncertify.sockets;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class <code>ClientSession</code> keeps locks held by one client connection.<br>
+ * {@link RequestExecutor} adds each lock granted to the connection and
+ * removes each lock released by the connection, {@link SessionRegistry}
+ * removes each lock released by auto-unlocking, so when the connection is
+ * closed, locks that client has not released are known and can be released
+ * at once, without waiting for the auto-unlock timeout. Lock granted after the
+ * session is closed is not kept, it must be released by the caller.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class ClientSession {
+	/**
+	 * name of session, address of client
+	 */
+	private final String name;
+	/**
+	 * locking cookies of held records mapped by record numbers
+	 */
+	private final Map<Long, Long> locks = new LinkedHashMap<Long, Long>();
+	/**
+	 * defines connection of session is closed
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructor creates session without locks.
+	 * 
+	 * @param name
+	 *         name of session, address of client
+	 */
+	ClientSession(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns name of session.
+	 * 
+	 * @return name of session, address of client
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Adds lock granted to the client.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param cookie
+	 *         locking cookie of record
+	 * @return <code>true</code> if lock is added, <code>false</code> if session
+	 *         is closed
+	 */
+	synchronized boolean addLock(long recNo, long cookie) {
+		if (closed)
+			return false;
+		locks.put(recNo, cookie);
+		return true;
+	}
+
+	/**
+	 * Removes lock released by the client.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param cookie
+	 *         locking cookie used to release the record
+	 */
+	synchronized void removeLock(long recNo, long cookie) {
+		Long held = locks.get(recNo);
+		if (held != null && held.longValue() == cookie)
+			locks.remove(recNo);
+	}
+
+	/**
+	 * Returns numbers of records locked by the client.
+	 * 
+	 * @return numbers of records in order of locking
+	 */
+	synchronized long[] getLockedRecords() {
+		long[] result = new long[locks.size()];
+		int i = 0;
+		for (Long recNo : locks.keySet()) {
+			result[i++] = recNo;
+		}
+		return result;
+	}
+
+	/**
+	 * Closes session. Locks added before are returned and forgotten, locks
+	 * granted later are not added.
+	 * 
+	 * @return locking cookies of held records mapped by record numbers
+	 */
+	synchronized Map<Long, Long> close() {
+		closed = true;
+		Map<Long, Long> result = new LinkedHashMap<Long, Long>(locks);
+		locks.clear();
+		return result;
+	}
+}
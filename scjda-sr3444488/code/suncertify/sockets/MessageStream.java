@@ -0,0 +1,290 @@
+package suncertify.sockets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+
+/**
+ * Class <code>MessageStream</code> transfers messages ({@link RequestCommand}
+ * and {@link ResponseResult} objects) through the socket connection.<br>
+ * Messages are transferred either with framed protocol described in
+ * {@link Protocol} or as a stream of serialized objects for clients that do
+ * not support framed protocol.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+abstract class MessageStream {
+	/**
+	 * Writes message to the connection.
+	 * 
+	 * @param message
+	 *         message object, can be <code>null</code>
+	 * @throws IOException
+	 *          on network error
+	 */
+	public abstract void write(Object message) throws IOException;
+
+	/**
+	 * Reads message from the connection.
+	 * 
+	 * @return message object
+	 * @throws IOException
+	 *          on network error or if message can not be read
+	 */
+	public abstract Object read() throws IOException;
+
+	/**
+	 * Returns version of framed protocol used by the connection.
+	 * 
+	 * @return protocol version, <code>0</code> if connection transfers stream
+	 *         of serialized objects
+	 */
+	public abstract byte getVersion();
+
+	/**
+	 * Closes streams of the connection.
+	 * 
+	 * @throws IOException
+	 *          on closing error
+	 */
+	public abstract void close() throws IOException;
+
+	/**
+	 * Creates message stream for client side of connection. Method performs
+	 * handshake of framed protocol.
+	 * 
+	 * @param socket
+	 *         connected socket
+	 * @return message stream or <code>null</code> if server does not support
+	 *         framed protocol. In the last case socket connection can not be used
+	 *         any more.
+	 * @throws IOException
+	 *          on network error or if server answer is unknown
+	 */
+	static MessageStream connect(Socket socket) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				socket.getOutputStream()));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket
+				.getInputStream()));
+		out.writeInt(Protocol.MAGIC);
+		out.writeByte(Protocol.CURRENT_VERSION);
+		out.flush();
+		int magic = in.readInt();
+		if (magic == Protocol.SERIALIZATION_MAGIC)
+			return null;
+		if (magic != Protocol.MAGIC)
+			throw new IOException("unknown server protocol");
+		byte version = in.readByte();
+		if (version == 0)
+			throw new IOException("server does not support protocol version "
+					+ Protocol.CURRENT_VERSION);
+		return new FramedStream(in, out, version);
+	}
+
+	/**
+	 * Creates message stream of serialized objects for client side of
+	 * connection.
+	 * 
+	 * @param socket
+	 *         connected socket
+	 * @return message stream
+	 * @throws IOException
+	 *          on network error
+	 */
+	static MessageStream connectSerialized(Socket socket) throws IOException {
+		ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+		ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
+		return new ObjectStream(oos, ois);
+	}
+
+	/**
+	 * Creates message stream for server side of connection. Method determines
+	 * protocol of client and performs handshake of framed protocol if client
+	 * supports it.
+	 * 
+	 * @param socket
+	 *         accepted socket
+	 * @param prefix
+	 *         bytes already read from the socket, can be <code>null</code>
+	 * @return message stream
+	 * @throws IOException
+	 *          on network error or if client protocol is unknown
+	 */
+	static MessageStream accept(Socket socket, byte[] prefix)
+			throws IOException {
+		InputStream sin = socket.getInputStream();
+		if (prefix != null && prefix.length > 0)
+			sin = new SequenceInputStream(new ByteArrayInputStream(prefix), sin);
+		BufferedInputStream bin = new BufferedInputStream(sin);
+		DataInputStream in = new DataInputStream(bin);
+		bin.mark(4);
+		int magic = in.readInt();
+		if (magic == Protocol.MAGIC) {
+			byte version = Protocol.negotiate(in.readByte());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					socket.getOutputStream()));
+			out.writeInt(Protocol.MAGIC);
+			out.writeByte(version);
+			out.flush();
+			if (version == 0)
+				throw new IOException("client protocol version is not supported");
+			return new FramedStream(in, out, version);
+		}
+		if (magic != Protocol.SERIALIZATION_MAGIC)
+			throw new IOException("unknown client protocol");
+		bin.reset();
+		ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+		ObjectInputStream ois = new ObjectInputStream(bin);
+		return new ObjectStream(oos, ois);
+	}
+
+	/**
+	 * Message stream that transfers messages as frames of framed protocol.
+	 */
+	private static class FramedStream extends MessageStream {
+		/**
+		 * input stream of connection
+		 */
+		private final DataInputStream in;
+		/**
+		 * output stream of connection
+		 */
+		private final DataOutputStream out;
+		/**
+		 * protocol version used by connection
+		 */
+		private final byte version;
+
+		/**
+		 * Constructor creates message stream over streams of connection.
+		 * 
+		 * @param in
+		 *         input stream of connection
+		 * @param out
+		 *         output stream of connection
+		 * @param version
+		 *         protocol version used by connection
+		 */
+		FramedStream(DataInputStream in, DataOutputStream out, byte version) {
+			this.in = in;
+			this.out = out;
+			this.version = version;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void write(Object message) throws IOException {
+			byte[] frame = Protocol.encode(message, version);
+			out.writeInt(frame.length);
+			out.write(frame);
+			out.flush();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public byte getVersion() {
+			return version;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object read() throws IOException {
+			int length = in.readInt();
+			Protocol.checkFrameLength(length);
+			byte[] frame = new byte[length];
+			in.readFully(frame);
+			return Protocol.decode(frame, version);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void close() throws IOException {
+			try {
+				out.close();
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Message stream that transfers messages as a stream of serialized objects.
+	 */
+	private static class ObjectStream extends MessageStream {
+		/**
+		 * The outputstream used to write a serialized object.
+		 */
+		private final ObjectOutputStream oos;
+		/**
+		 * The inputstream used to read a serialized object.
+		 */
+		private final ObjectInputStream ois;
+
+		/**
+		 * Constructor creates message stream over object streams of connection.
+		 * 
+		 * @param oos
+		 *         output stream of connection
+		 * @param ois
+		 *         input stream of connection
+		 */
+		ObjectStream(ObjectOutputStream oos, ObjectInputStream ois) {
+			this.oos = oos;
+			this.ois = ois;
+		}
+
+		/**
+		 * {@inheritDoc}<br>
+		 * Stream is reset after each message, so the table of objects written to
+		 * the stream does not grow during the connection.
+		 */
+		public void write(Object message) throws IOException {
+			oos.writeObject(message);
+			oos.reset();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object read() throws IOException {
+			try {
+				return ois.readObject();
+			} catch (ClassNotFoundException cnfe) {
+				IOException ioe = new IOException("problem with demarshelling message");
+				ioe.initCause(cnfe);
+				throw ioe;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public byte getVersion() {
+			return 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void close() throws IOException {
+			try {
+				oos.close();
+			} finally {
+				ois.close();
+			}
+		}
+	}
+}
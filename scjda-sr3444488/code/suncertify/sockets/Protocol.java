@@ -0,0 +1,185 @@
+package suncertify.sockets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Class <code>Protocol</code> defines constants and helper methods of the
+ * framed network protocol used by {@link RecordSocketClient} and
+ * {@link RecordSocketServer}.<br>
+ * Connection starts with handshake: client sends magic number and the highest
+ * protocol version it supports, server answers with magic number and the
+ * version both sides will use. After handshake each message is sent as a
+ * frame: length of message and bytes of message. Depending on the version
+ * messages are either serialized objects or compact binary messages encoded by
+ * {@link BinaryCodec}.<br>
+ * Clients that do not send magic number start their connection with header of
+ * Java serialization stream. Such clients exchange serialized objects without
+ * framing.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+final class Protocol {
+	/**
+	 * magic number that starts handshake of framed protocol
+	 */
+	static final int MAGIC = 0x53434A44;
+	/**
+	 * magic number and version of Java serialization stream header
+	 */
+	static final int SERIALIZATION_MAGIC = 0xACED0005;
+	/**
+	 * protocol version, messages are serialized objects
+	 */
+	static final byte VERSION_SERIALIZED = 1;
+	/**
+	 * protocol version, messages are encoded by {@link BinaryCodec}
+	 */
+	static final byte VERSION_BINARY = 2;
+	/**
+	 * protocol version, messages are encoded by {@link BinaryCodec} and have
+	 * identifiers, so client can send many requests without waiting for
+	 * responses and server can answer them in any order
+	 */
+	static final byte VERSION_PIPELINED = 3;
+	/**
+	 * protocol version, server supports command
+	 * {@link SocketCommand#FIND_AND_READ}
+	 */
+	static final byte VERSION_FIND_AND_READ = 4;
+	/**
+	 * protocol version, server supports command
+	 * {@link SocketCommand#UPDATE_OWNERS}
+	 */
+	static final byte VERSION_UPDATE_OWNERS = 5;
+	/**
+	 * protocol version, server supports commands
+	 * {@link SocketCommand#READ_VERSIONED} and
+	 * {@link SocketCommand#UPDATE_IF_VERSION}
+	 */
+	static final byte VERSION_RECORD_VERSIONS = 6;
+	/**
+	 * protocol version, server supports command
+	 * {@link SocketCommand#TIMED_LOCK}
+	 */
+	static final byte VERSION_TIMED_LOCK = 7;
+	/**
+	 * the highest protocol version supported
+	 */
+	static final byte CURRENT_VERSION = VERSION_TIMED_LOCK;
+	/**
+	 * maximum length of message frame in bytes
+	 */
+	static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	/**
+	 * Private constructor, class has only static members.
+	 */
+	private Protocol() {
+	}
+
+	/**
+	 * Returns protocol version both sides will use.
+	 * 
+	 * @param requested
+	 *         the highest protocol version supported by client
+	 * @return protocol version to use or <code>0</code> if there is no version
+	 *         supported by both sides
+	 */
+	static byte negotiate(byte requested) {
+		if (requested < VERSION_SERIALIZED)
+			return 0;
+		return (byte) Math.min(requested, CURRENT_VERSION);
+	}
+
+	/**
+	 * Checks length of message frame.
+	 * 
+	 * @param length
+	 *         length of message frame
+	 * @throws IOException
+	 *          if length is not valid
+	 */
+	static void checkFrameLength(int length) throws IOException {
+		if (length < 0 || length > MAX_FRAME_LENGTH)
+			throw new IOException("invalid message frame length " + length);
+	}
+
+	/**
+	 * Encodes message object to bytes of message frame.
+	 * 
+	 * @param message
+	 *         message object, can be <code>null</code>
+	 * @param version
+	 *         protocol version used by connection
+	 * @return bytes of message
+	 * @throws IOException
+	 *          on encoding error
+	 */
+	static byte[] encode(Object message, byte version) throws IOException {
+		if (version >= VERSION_BINARY)
+			return BinaryCodec.encode(message, version >= VERSION_PIPELINED);
+		return serialize(message);
+	}
+
+	/**
+	 * Decodes message object from bytes of message frame.
+	 * 
+	 * @param frame
+	 *         bytes of message
+	 * @param version
+	 *         protocol version used by connection
+	 * @return message object
+	 * @throws IOException
+	 *          on decoding error
+	 */
+	static Object decode(byte[] frame, byte version) throws IOException {
+		if (version >= VERSION_BINARY)
+			return BinaryCodec.decode(frame, version >= VERSION_PIPELINED);
+		return deserialize(frame);
+	}
+
+	/**
+	 * Serializes message object to bytes of message frame.
+	 * 
+	 * @param message
+	 *         message object, can be <code>null</code>
+	 * @return bytes of message
+	 * @throws IOException
+	 *          on serialization error
+	 */
+	static byte[] serialize(Object message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(message);
+		oos.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Deserializes message object from bytes of message frame.
+	 * 
+	 * @param frame
+	 *         bytes of message
+	 * @return message object
+	 * @throws IOException
+	 *          on deserialization error
+	 */
+	static Object deserialize(byte[] frame) throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
+				frame));
+		try {
+			return ois.readObject();
+		} catch (ClassNotFoundException cnfe) {
+			IOException ioe = new IOException("problem with demarshelling message");
+			ioe.initCause(cnfe);
+			throw ioe;
+		} finally {
+			ois.close();
+		}
+	}
+}
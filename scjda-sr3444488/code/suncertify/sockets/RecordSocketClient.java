@@ -1,31 +1,46 @@
 package suncertify.sockets;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import suncertify.db.DBAccess;
 import suncertify.db.DuplicateKeyException;
+import suncertify.db.ExtendedDBAccess;
+import suncertify.db.OwnerUpdates;
 import suncertify.db.RecordNotFoundException;
 import suncertify.db.SecurityException;
+import suncertify.db.VersionedRecord;
 
 /**
- * Class RecordSocketClient implements <code>DBAccess</code> interface. This
- * class purposed to operate database remotely.<br>
- * Each of <code>DBAccess</code> implemented methods:
+ * Class RecordSocketClient implements <code>ExtendedDBAccess</code> interface.
+ * This class purposed to operate database remotely.<br>
+ * Each of <code>ExtendedDBAccess</code> implemented methods:
  * <ol>
  * <li>Sends {@link RequestCommand} object to the server</li>
  * <li>Receives {@link ResponseResult} object from server for each of the
  * commands {@link SocketCommand}.</li>
  * </ol>
+ * If server supports pipelined protocol, requests are identified, so many
+ * requests can be sent without waiting for responses, and responses are
+ * matched with requests as they arrive. Asynchronous methods return
+ * {@link Future} of the result and let the caller send the next request before
+ * the result is received. Otherwise asynchronous methods perform request
+ * before they return.
  * 
  * @author Petr Shilkin
  * @version 1.0
  */
-public class RecordSocketClient implements DBAccess {
+public class RecordSocketClient implements ExtendedDBAccess {
 	/**
 	 * The logger for debugging issues
 	 */
@@ -35,17 +50,24 @@ public class RecordSocketClient implements DBAccess {
 	 */
 	private final Socket socket;
 	/**
-	 * The outputstream used to write a serialized object to a socket server.
+	 * The message stream used to write requests to a socket server and read
+	 * responses from the socket server.
 	 */
-	private final ObjectOutputStream oos;
+	private final MessageStream stream;
 	/**
-	 * The inputstream used to read a serialized object (a response) from the
-	 * socket server.
+	 * Reader of responses of pipelined protocol, <code>null</code> if server
+	 * does not support pipelined protocol
 	 */
-	private final ObjectInputStream ois;
+	private final ResponseReader reader;
+	/**
+	 * identifier of the last sent request
+	 */
+	private final AtomicInteger lastId = new AtomicInteger();
 
 	/**
-	 * Constructor takes in a hostname or IP address of the server to connect.
+	 * Constructor takes in a hostname or IP address of the server to connect.<br>
+	 * Framed protocol is used if server supports it, otherwise client reconnects
+	 * to exchange serialized objects.
 	 * 
 	 * @param hostname
 	 *         hostname to connect to
@@ -58,9 +80,68 @@ public class RecordSocketClient implements DBAccess {
 	 */
 	public RecordSocketClient(String hostname, int portNumber)
 			throws UnknownHostException, IOException {
-		this.socket = new Socket(hostname, portNumber);
-		this.oos = new ObjectOutputStream(socket.getOutputStream());
-		this.ois = new ObjectInputStream(socket.getInputStream());
+		Socket s = new Socket(hostname, portNumber);
+		s.setTcpNoDelay(true);
+		MessageStream ms = MessageStream.connect(s);
+		if (ms == null) {
+			log.log(Level.INFO, "server does not support framed protocol");
+			s.close();
+			s = new Socket(hostname, portNumber);
+			s.setTcpNoDelay(true);
+			ms = MessageStream.connectSerialized(s);
+		}
+		this.socket = s;
+		this.stream = ms;
+		if (ms.getVersion() >= Protocol.VERSION_PIPELINED) {
+			this.reader = new ResponseReader(ms);
+			Thread t = new Thread(reader, "RESPONSE_READING_THREAD");
+			t.setDaemon(true);
+			t.start();
+		} else {
+			this.reader = null;
+		}
+	}
+
+	/**
+	 * Sends request to the server. If server supports pipelined protocol,
+	 * method returns right after the request is sent, otherwise it waits for
+	 * response.
+	 * 
+	 * @param <V>
+	 *         type of result
+	 * @param command
+	 *         request object, command to operate with database remotely
+	 * @param future
+	 *         future completed by response of server
+	 * @return the same <code>future</code>
+	 */
+	private <V> Future<V> send(RequestCommand command, ResponseFuture<V> future) {
+		if (reader == null) {
+			synchronized (stream) {
+				try {
+					stream.write(command);
+					future.complete((ResponseResult) stream.read());
+				} catch (Exception e) {
+					future.fail(e);
+				}
+			}
+			return future;
+		}
+		int id = lastId.incrementAndGet();
+		if (id == 0)
+			id = lastId.incrementAndGet();
+		command.setId(id);
+		if (reader.register(id, future)) {
+			try {
+				synchronized (stream) {
+					stream.write(command);
+				}
+			} catch (IOException e) {
+				reader.unregister(id);
+				future.fail(e);
+			}
+		}
+		return future;
 	}
 
 	/**
@@ -74,20 +155,16 @@ public class RecordSocketClient implements DBAccess {
 	 *          on any request processing error
 	 */
 	private ResponseResult getResultFor(RequestCommand command) throws Exception {
+		Future<ResponseResult> future = send(command,
+				new ResponseFuture<ResponseResult>() {
+					protected ResponseResult valueOf(ResponseResult response) {
+						return response;
+					}
+				});
 		try {
-			oos.writeObject(command);
-			ResponseResult result = (ResponseResult) ois.readObject();
-			if (result == null)
-				return result;
-			if (!result.isException()) {
-				return result;
-			} else {
-				throw result.getException();
-			}
-		} catch (ClassNotFoundException cnfe) {
-			IOException ioe = new IOException("problem with demarshelling Record)");
-			ioe.initCause(cnfe);
-			throw ioe;
+			return future.get();
+		} catch (ExecutionException e) {
+			throw (Exception) e.getCause();
 		}
 	}
 
@@ -104,14 +181,9 @@ public class RecordSocketClient implements DBAccess {
 	 */
 	private void close() {
 		try {
-			oos.close();
+			stream.close();
 		} catch (IOException e) {
-			log.log(Level.SEVERE, "error closing output stream", e);
-		}
-		try {
-			ois.close();
-		} catch (IOException e) {
-			log.log(Level.SEVERE, "error closing input stream", e);
+			log.log(Level.SEVERE, "error closing streams", e);
 		}
 		try {
 			socket.close();
@@ -174,6 +246,91 @@ public class RecordSocketClient implements DBAccess {
 		}
 	}
 
+	/**
+	 * {@inheritDoc}<br>
+	 * Performs remote request to the server by sending
+	 * <code>SocketCommand.FIND_AND_READ</code> as a socket command. If server
+	 * does not support this command, records are found and then read with
+	 * separate requests.
+	 */
+	public Map<Long, String[]> findAndRead(String[] criteria) {
+		if (stream.getVersion() < Protocol.VERSION_FIND_AND_READ)
+			return findAndReadSeparately(criteria);
+		RequestCommand command = new RequestCommand(SocketCommand.FIND_AND_READ);
+		command.setArray(criteria);
+		try {
+			ResponseResult result = getResultFor(command);
+			return result.getRecords();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Performs remote request to the server by sending
+	 * <code>SocketCommand.UPDATE_OWNERS</code> as a socket command, so all the
+	 * records are booked by one round trip. If server does not support this
+	 * command, records are locked, read, updated and unlocked with separate
+	 * requests.
+	 */
+	public int[] updateOwners(long[] recNos, String[] expectedOwners,
+			String[] newOwners) {
+		if (stream.getVersion() < Protocol.VERSION_UPDATE_OWNERS)
+			return OwnerUpdates.updateOwners(this, recNos, expectedOwners,
+					newOwners, true);
+		if (expectedOwners.length != recNos.length
+				|| newOwners.length != recNos.length)
+			throw new IllegalArgumentException(
+					"amounts of records and owners must be equal");
+		String[] owners = new String[recNos.length * 2];
+		System.arraycopy(expectedOwners, 0, owners, 0, recNos.length);
+		System.arraycopy(newOwners, 0, owners, recNos.length, recNos.length);
+		RequestCommand command = new RequestCommand(SocketCommand.UPDATE_OWNERS);
+		command.setArray(new Object[] { recNos, owners });
+		try {
+			ResponseResult result = getResultFor(command);
+			long[] res = result.getLongArray();
+			int[] out = new int[res.length];
+			for (int i = 0; i < res.length; i++) {
+				out[i] = (int) res[i];
+			}
+			return out;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Finds records and then reads them with separate requests. Requests for
+	 * records are sent without waiting for responses if server supports
+	 * pipelined protocol.
+	 * 
+	 * @param criteria
+	 *         criteria to search records
+	 * @return fields of matching records mapped by record numbers
+	 */
+	private Map<Long, String[]> findAndReadSeparately(String[] criteria) {
+		long[] recNos = findByCriteria(criteria);
+		List<Future<String[]>> reads = new ArrayList<Future<String[]>>(
+				recNos.length);
+		for (long recNo : recNos) {
+			reads.add(readRecordAsync(recNo));
+		}
+		Map<Long, String[]> records = new LinkedHashMap<Long, String[]>();
+		for (int i = 0; i < recNos.length; i++) {
+			try {
+				records.put(recNos[i], reads.get(i).get());
+			} catch (ExecutionException e) {
+				if (!(e.getCause() instanceof RecordNotFoundException))
+					throw new RuntimeException(e.getCause());
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return records;
+	}
+
 	/**
 	 * {@inheritDoc}<br>
 	 * Performs remote request to the server by sending
@@ -211,6 +368,106 @@ public class RecordSocketClient implements DBAccess {
 
 	}
 
+	/**
+	 * {@inheritDoc}<br>
+	 * Performs remote request to the server by sending
+	 * <code>SocketCommand.READ_VERSIONED</code> as a socket command.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *          if server does not support record versions
+	 */
+	public VersionedRecord readVersionedRecord(long recNo)
+			throws RecordNotFoundException {
+		checkRecordVersions();
+		RequestCommand command = new RequestCommand(SocketCommand.READ_VERSIONED);
+		command.setLong(recNo);
+		try {
+			ResponseResult result = getResultFor(command);
+			return new VersionedRecord(result.getStringArray(), result
+					.getLongArray()[0]);
+		} catch (RecordNotFoundException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Performs remote request to the server by sending
+	 * <code>SocketCommand.UPDATE_IF_VERSION</code> as a socket command.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *          if server does not support record versions
+	 */
+	public long updateRecordIfVersion(long recNo, String[] data, long version)
+			throws RecordNotFoundException {
+		checkRecordVersions();
+		RequestCommand command = new RequestCommand(
+				SocketCommand.UPDATE_IF_VERSION);
+		command.setArray(new Object[] { new long[] { recNo, version }, data });
+		try {
+			ResponseResult result = getResultFor(command);
+			return result.getLong();
+		} catch (RecordNotFoundException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Performs remote request to the server by sending
+	 * <code>SocketCommand.TIMED_LOCK</code> as a socket command with zero
+	 * timeout.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *          if server does not support timed locks
+	 */
+	public long tryLockRecord(long recNo) throws RecordNotFoundException {
+		return lockRecord(recNo, 0);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Performs remote request to the server by sending
+	 * <code>SocketCommand.TIMED_LOCK</code> as a socket command. Server waits
+	 * for the lock, so the client waits for the response as long.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *          if server does not support timed locks
+	 */
+	public long lockRecord(long recNo, long timeout)
+			throws RecordNotFoundException {
+		if (stream.getVersion() < Protocol.VERSION_TIMED_LOCK)
+			throw new UnsupportedOperationException(
+					"server does not support timed locks");
+		RequestCommand command = new RequestCommand(SocketCommand.TIMED_LOCK);
+		command.setArray(new long[] { recNo, timeout });
+		try {
+			ResponseResult result = getResultFor(command);
+			return result.getLong();
+		} catch (RecordNotFoundException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Checks if server supports record versions. Versions can not be emulated
+	 * by other requests.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *          if server does not support record versions
+	 */
+	private void checkRecordVersions() {
+		if (stream.getVersion() < Protocol.VERSION_RECORD_VERSIONS)
+			throw new UnsupportedOperationException(
+					"server does not support record versions");
+	}
+
 	/**
 	 * {@inheritDoc}<br>
 	 * Performs remote request to the server by sending
@@ -250,4 +507,238 @@ public class RecordSocketClient implements DBAccess {
 		}
 	}
 
+	/**
+	 * Creates new record remotely without waiting for response of server.
+	 * 
+	 * @param data
+	 *         fields of record
+	 * @return future of number of created record, it reports
+	 *         {@link DuplicateKeyException} if record already exists
+	 * @see #createRecord(String[])
+	 */
+	public Future<Long> createRecordAsync(String[] data) {
+		RequestCommand command = new RequestCommand(SocketCommand.ADD);
+		command.setArray(data);
+		return send(command, new ResponseFuture<Long>() {
+			protected Long valueOf(ResponseResult response) {
+				return response.getLong();
+			}
+		});
+	}
+
+	/**
+	 * Deletes record remotely without waiting for response of server.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param lockCookie
+	 *         locking descriptor of record
+	 * @return future of deletion, it reports {@link RecordNotFoundException} or
+	 *         {@link SecurityException} if record can not be deleted
+	 * @see #deleteRecord(long, long)
+	 */
+	public Future<Void> deleteRecordAsync(long recNo, long lockCookie) {
+		RequestCommand command = new RequestCommand(SocketCommand.DELETE);
+		command.setArray(new long[] { recNo, lockCookie });
+		return send(command, new VoidFuture());
+	}
+
+	/**
+	 * Finds records remotely without waiting for response of server.
+	 * 
+	 * @param criteria
+	 *         criteria of search
+	 * @return future of numbers of matching records
+	 * @see #findByCriteria(String[])
+	 */
+	public Future<long[]> findByCriteriaAsync(String[] criteria) {
+		RequestCommand command = new RequestCommand(SocketCommand.FIND);
+		command.setArray(criteria);
+		return send(command, new ResponseFuture<long[]>() {
+			protected long[] valueOf(ResponseResult response) {
+				return response.getLongArray();
+			}
+		});
+	}
+
+	/**
+	 * Locks record remotely without waiting for response of server.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return future of locking descriptor of record, it reports
+	 *         {@link RecordNotFoundException} if record is not found
+	 * @see #lockRecord(long)
+	 */
+	public Future<Long> lockRecordAsync(long recNo) {
+		RequestCommand command = new RequestCommand(SocketCommand.LOCK);
+		command.setLong(recNo);
+		return send(command, new ResponseFuture<Long>() {
+			protected Long valueOf(ResponseResult response) {
+				return response.getLong();
+			}
+		});
+	}
+
+	/**
+	 * Reads record remotely without waiting for response of server.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return future of fields of record, it reports
+	 *         {@link RecordNotFoundException} if record is not found
+	 * @see #readRecord(long)
+	 */
+	public Future<String[]> readRecordAsync(long recNo) {
+		RequestCommand command = new RequestCommand(SocketCommand.READ);
+		command.setLong(recNo);
+		return send(command, new ResponseFuture<String[]>() {
+			protected String[] valueOf(ResponseResult response) {
+				return response.getStringArray();
+			}
+		});
+	}
+
+	/**
+	 * Unlocks record remotely without waiting for response of server.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param cookie
+	 *         locking descriptor of record
+	 * @return future of unlocking, it reports {@link SecurityException} if
+	 *         locking descriptor is invalid
+	 * @see #unlock(long, long)
+	 */
+	public Future<Void> unlockAsync(long recNo, long cookie) {
+		RequestCommand command = new RequestCommand(SocketCommand.UNLOCK);
+		command.setArray(new long[] { recNo, cookie });
+		return send(command, new VoidFuture());
+	}
+
+	/**
+	 * Updates record remotely without waiting for response of server.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param data
+	 *         new fields of record
+	 * @param lockCookie
+	 *         locking descriptor of record
+	 * @return future of update, it reports {@link RecordNotFoundException} or
+	 *         {@link SecurityException} if record can not be updated
+	 * @see #updateRecord(long, String[], long)
+	 */
+	public Future<Void> updateRecordAsync(long recNo, String[] data,
+			long lockCookie) {
+		RequestCommand command = new RequestCommand(SocketCommand.MODIFY);
+		command.setArray(new Object[] { new long[] { recNo, lockCookie }, data });
+		return send(command, new VoidFuture());
+	}
+
+	/**
+	 * Future of request of command that has no result.
+	 */
+	private static class VoidFuture extends ResponseFuture<Void> {
+		/**
+		 * {@inheritDoc}
+		 */
+		protected Void valueOf(ResponseResult response) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reader of responses of pipelined protocol. Reader runs in a separate
+	 * thread and completes futures of requests by responses with the same
+	 * identifiers. Reader does not refer to the client, so client can be
+	 * collected by garbage collector while reader waits for responses.
+	 */
+	private static class ResponseReader implements Runnable {
+		/**
+		 * The logger for debugging issues
+		 */
+		private Logger log = Logger.getLogger(this.getClass().getPackage()
+				.getName());
+		/**
+		 * message stream of connection
+		 */
+		private final MessageStream stream;
+		/**
+		 * futures of sent requests mapped by identifiers of requests
+		 */
+		private final Map<Integer, ResponseFuture<?>> pending = new ConcurrentHashMap<Integer, ResponseFuture<?>>();
+		/**
+		 * error that stopped reading, <code>null</code> while reading goes on
+		 */
+		private volatile IOException failure;
+
+		/**
+		 * Constructor creates reader of responses.
+		 * 
+		 * @param stream
+		 *         message stream of connection
+		 */
+		ResponseReader(MessageStream stream) {
+			this.stream = stream;
+		}
+
+		/**
+		 * Registers future of request to be completed by response.
+		 * 
+		 * @param id
+		 *         identifier of request
+		 * @param future
+		 *         future of request
+		 * @return <code>true</code> if future is registered,
+		 *         <code>false</code> if reading is stopped and future is failed
+		 */
+		boolean register(int id, ResponseFuture<?> future) {
+			pending.put(id, future);
+			IOException e = failure;
+			if (e != null) {
+				if (pending.remove(id) != null)
+					future.fail(e);
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Unregisters future of request that was not sent.
+		 * 
+		 * @param id
+		 *         identifier of request
+		 */
+		void unregister(int id) {
+			pending.remove(id);
+		}
+
+		/**
+		 * Reads responses until connection is closed.
+		 */
+		public void run() {
+			try {
+				while (true) {
+					ResponseResult response = (ResponseResult) stream.read();
+					ResponseFuture<?> future = response == null ? null : pending
+							.remove(response.getId());
+					if (future != null)
+						future.complete(response);
+					else
+						log.log(Level.SEVERE, "response for unknown request");
+				}
+			} catch (IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				failure = new IOException("invalid response " + e);
+			}
+			log.log(Level.INFO, "reading of responses stopped " + failure.getMessage());
+			for (Integer id : pending.keySet()) {
+				ResponseFuture<?> future = pending.remove(id);
+				if (future != null)
+					future.fail(failure);
+			}
+		}
+	}
 }
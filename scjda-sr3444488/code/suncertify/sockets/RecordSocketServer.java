@@ -4,20 +4,31 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import suncertify.db.DBAccess;
+import suncertify.db.DataAU;
 
 /**
  * Class <code>RecordSocketServer</code> handles socket client requests.
- * Instance of <code>RecordSocketServer</code> creates a separate processing
- * thread for each request and starts that thread.
+ * Depending on {@link ServerMode} instance of <code>RecordSocketServer</code>
+ * either creates a separate processing thread (platform or virtual) for each
+ * connection and starts that thread, or multiplexes all the connections with a
+ * few I/O threads.
  * 
  * @author Petr Shilkin
  * @version 1.0
  */
 public class RecordSocketServer {
+	/**
+	 * maximum length of the queue of incoming connections
+	 */
+	private final static int BACKLOG = 1024;
 	/**
 	 * Logger for debugging issues
 	 */
@@ -50,6 +61,22 @@ public class RecordSocketServer {
 	 * opened client connections list
 	 */
 	private Vector<Socket> connectionList = new Vector<Socket>();
+	/**
+	 * mode of handling client connections
+	 */
+	private final ServerMode mode;
+	/**
+	 * non-blocking server used in the selector mode
+	 */
+	private SelectorServer selectorServer;
+	/**
+	 * executor that starts thread per connection in the virtual threads mode
+	 */
+	private ExecutorService connectionExecutor;
+	/**
+	 * registry of sessions of connected clients
+	 */
+	private final SessionRegistry sessions = new SessionRegistry();
 
 	/**
 	 * Constructor creates instance of <code>RecordSocketServer</code>.
@@ -64,19 +91,50 @@ public class RecordSocketServer {
 	 *          on server creation error
 	 */
 	public RecordSocketServer(DBAccess dba, int port, int sotimeout) {
+		this(dba, port, sotimeout, ServerMode.THREADED);
+	}
+
+	/**
+	 * Constructor creates instance of <code>RecordSocketServer</code> that
+	 * handles client connections in specified mode.
+	 * 
+	 * @param dba
+	 *         database operating object reference
+	 * @param port
+	 *         port number
+	 * @param sotimeout
+	 *         socket timeout, used in the threaded mode
+	 * @param mode
+	 *         mode of handling client connections
+	 */
+	public RecordSocketServer(DBAccess dba, int port, int sotimeout,
+			ServerMode mode) {
 		this.dbAccess = dba;
 		this.port = port;
 		this.sotimeout = sotimeout;
+		this.mode = mode;
 	}
 
 	/**
 	 * Listens for new client connections, creating a new thread to handle the
-	 * requests.
+	 * requests, or multiplexing connections in the selector mode.
 	 */
 	public void start() throws IOException {
 		if (running)
 			return;
+		if (mode == ServerMode.SELECTOR) {
+			selectorServer = new SelectorServer(dbAccess, port, sessions);
+			selectorServer.start();
+			listenAutoUnlock();
+			running = true;
+			log.log(Level.SEVERE, "Server started on port " + port
+					+ " in selector mode");
+			return;
+		}
+		if (mode == ServerMode.VIRTUAL)
+			connectionExecutor = createVirtualThreadExecutor();
 		this.ssocket = createSocket();
+		listenAutoUnlock();
 		running = true;
 		workingThread = new Thread() {
 			public void run() {
@@ -86,9 +144,14 @@ public class RecordSocketServer {
 						Socket csocket = ssocket.accept();
 						addConnection(csocket);
 						log.log(Level.SEVERE, "client connected");
-						RequestProcessingThread requestThread = new RequestProcessingThread(
-								dbAccess, csocket);
-						requestThread.start();
+						if (connectionExecutor != null) {
+							connectionExecutor.execute(new RequestProcessingTask(dbAccess,
+									csocket, null, sessions));
+						} else {
+							RequestProcessingThread requestThread = new RequestProcessingThread(
+									dbAccess, csocket, null, sessions);
+							requestThread.start();
+						}
 					} catch (SocketTimeoutException e) {
 
 					} catch (IOException e) {
@@ -105,6 +168,15 @@ public class RecordSocketServer {
 		workingThread.start();
 	}
 
+	/**
+	 * Lets the registry of sessions forget the locks released by auto-unlocking,
+	 * if database unlocks records by timeout.
+	 */
+	private void listenAutoUnlock() {
+		if (dbAccess instanceof DataAU)
+			((DataAU) dbAccess).addAutoUnlockListener(sessions);
+	}
+
 	/**
 	 * Adds new client connection to connections list.
 	 * 
@@ -141,6 +213,14 @@ public class RecordSocketServer {
 		if (!running)
 			return;
 		running = false;
+		if (dbAccess instanceof DataAU)
+			((DataAU) dbAccess).removeAutoUnlockListener(sessions);
+		if (selectorServer != null) {
+			selectorServer.stop();
+			selectorServer = null;
+			log.log(Level.SEVERE, "Server stopped");
+			return;
+		}
 		if (workingThread != null) {
 			try {
 				workingThread.join();
@@ -153,6 +233,40 @@ public class RecordSocketServer {
 			}
 			closeConnections();
 		}
+		if (connectionExecutor != null) {
+			connectionExecutor.shutdown();
+			try {
+				connectionExecutor.awaitTermination(sotimeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				log.log(Level.SEVERE, "Interrupted while stopping connection threads",
+						e);
+			}
+			connectionExecutor = null;
+		}
+	}
+
+	/**
+	 * Creates executor that runs each task in a new virtual thread.<br>
+	 * Virtual threads are created by reflection, so the server is still
+	 * compiled and runnable in the other modes by Java runtime that does not
+	 * support them. Virtual mode is refused by such runtime instead of running a
+	 * platform thread per client, which would not keep thousands of connections.
+	 * 
+	 * @return executor that runs each task in a new virtual thread
+	 * @throws IOException
+	 *          if Java runtime does not support virtual threads
+	 */
+	private ExecutorService createVirtualThreadExecutor() throws IOException {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Virtual threads are not supported by Java "
+					+ System.getProperty("java.version")
+					+ ", virtual mode requires Java 21 or later");
+			throw new IOException(
+					"virtual mode requires Java 21 or later, use threaded or selector mode");
+		}
 	}
 
 	/**
@@ -163,7 +277,7 @@ public class RecordSocketServer {
 	 *          on socket creation error
 	 */
 	private ServerSocket createSocket() throws IOException {
-		ServerSocket aServerSocket = new ServerSocket(this.port);
+		ServerSocket aServerSocket = new ServerSocket(this.port, BACKLOG);
 		aServerSocket.setSoTimeout(this.sotimeout);
 		return aServerSocket;
 	}
@@ -178,6 +292,17 @@ public class RecordSocketServer {
 		return running;
 	}
 
+	/**
+	 * Returns records locked by connected clients. Locks of client are released
+	 * when its connection is closed.
+	 * 
+	 * @return numbers of locked records mapped by addresses of clients that
+	 *         hold them
+	 */
+	public Map<String, long[]> getLockOwners() {
+		return sessions.getLockOwners();
+	}
+
 	/**
 	 * Returns server port used in server.
 	 * 
@@ -40,6 +40,12 @@ public class RequestCommand implements Serializable {
 	 */
 	private Object data;
 
+	/**
+	 * Identifier of request used to match response with request, <code>0</code>
+	 * if request is not identified
+	 */
+	private int id;
+
 	/**
 	 * Constructor creates <code>RequestCommand</code> object with specified
 	 * <code>SocketCommand</code>.
@@ -145,4 +151,33 @@ public class RequestCommand implements Serializable {
 		this.data = data;
 	}
 
+	/**
+	 * Returns identifier of request.
+	 * 
+	 * @return identifier of request, <code>0</code> if request is not
+	 *         identified
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * Sets identifier of request.
+	 * 
+	 * @param id
+	 *         identifier of request
+	 */
+	void setId(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Returns transferred data object of command.
+	 * 
+	 * @return transferred data object
+	 */
+	Object getData() {
+		return data;
+	}
+
 }
@@ -0,0 +1,413 @@
+package suncertify.sockets;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import suncertify.db.DBAccess;
+import suncertify.db.Data;
+import suncertify.db.ExtendedDBAccess;
+import suncertify.db.LockListener;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SecurityException;
+import suncertify.db.VersionedRecord;
+
+/**
+ * Class <code>RequestExecutor</code> executes requests of clients.<br>
+ * Given from client {@link RequestCommand} object is parsed, and object that
+ * implements database operating interface {@link DBAccess} performs execution
+ * of command. Result of the execution is wrapped by {@link ResponseResult}
+ * object.<br>
+ * Locks granted and released by the requests of connection are kept in its
+ * {@link ClientSession}, so locks are released when connection is closed.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class RequestExecutor {
+	/**
+	 * Logger of the debugging issues
+	 */
+	private Logger log = Logger.getLogger(this.getClass().getPackage().getName());
+	/**
+	 * Reference to the database operating interface
+	 */
+	private final DBAccess dbAccess;
+
+	/**
+	 * Constructor of the <code>RequestExecutor</code>.
+	 * 
+	 * @param dba
+	 *         database operating object
+	 */
+	RequestExecutor(DBAccess dba) {
+		this.dbAccess = dba;
+	}
+
+	/**
+	 * Method takes the command object from the client and hands it to the
+	 * database.
+	 * 
+	 * @param request
+	 *         command object incoming from the <code>RecordSocketClient</code>.
+	 * @return response to the command <code>request</code>, <code>null</code>
+	 *         if command has no result and request is not identified. Response
+	 *         to identified request has identifier of request.
+	 */
+	public ResponseResult execute(RequestCommand request) {
+		return execute(request, null);
+	}
+
+	/**
+	 * Method takes the command object from the client and hands it to the
+	 * database, keeping locks of the client in its session.
+	 * 
+	 * @param request
+	 *         command object incoming from the <code>RecordSocketClient</code>.
+	 * @param session
+	 *         session of the client connection, <code>null</code> if locks are
+	 *         not kept
+	 * @return response to the command <code>request</code>, <code>null</code>
+	 *         if command has no result and request is not identified. Response
+	 *         to identified request has identifier of request.
+	 */
+	ResponseResult execute(RequestCommand request, ClientSession session) {
+
+		ResponseResult result = null;
+
+		try {
+			switch (request.getCommand()) {
+			case FIND: {
+				String[] criteria = request.getStringArray();
+				long[] res = dbAccess.findByCriteria(criteria);
+				result = new ResponseResult(res);
+				break;
+			}
+			case ADD: {
+				String[] data = request.getStringArray();
+				long recNo = dbAccess.createRecord(data);
+				result = new ResponseResult(recNo);
+				break;
+			}
+			case READ: {
+				long recNo = request.getLong();
+				String[] data = dbAccess.readRecord(recNo);
+				result = new ResponseResult(data);
+				break;
+			}
+			case DELETE: {
+				long[] args = request.getLongArray();
+				long recNo = args[0];
+				long lockCookie = args[1];
+				dbAccess.deleteRecord(recNo, lockCookie);
+				break;
+			}
+
+			case MODIFY: {
+				long[] args = request.getLongArray();
+				long recNo = args[0];
+				long lockCookie = args[1];
+				String[] data = request.getStringArray();
+				dbAccess.updateRecord(recNo, data, lockCookie);
+				break;
+			}
+
+			case LOCK: {
+				long recNo = request.getLong();
+				long cookie = dbAccess.lockRecord(recNo);
+				keepLock(session, recNo, cookie);
+				result = new ResponseResult(cookie);
+				break;
+			}
+			case UNLOCK: {
+				long[] args = request.getLongArray();
+				long recNo = args[0];
+				long lockCookie = args[1];
+				dbAccess.unlock(recNo, lockCookie);
+				if (session != null)
+					session.removeLock(recNo, lockCookie);
+				break;
+			}
+			case FIND_AND_READ: {
+				String[] criteria = request.getStringArray();
+				result = new ResponseResult(findAndRead(criteria));
+				break;
+			}
+			case UPDATE_OWNERS: {
+				long[] recNos = request.getLongArray();
+				String[] owners = request.getStringArray();
+				if (owners.length != recNos.length * 2)
+					throw new IllegalArgumentException(
+							"expected and new owner must be sent for each record");
+				String[] expectedOwners = Arrays.copyOfRange(owners, 0, recNos.length);
+				String[] newOwners = Arrays.copyOfRange(owners, recNos.length,
+						owners.length);
+				int[] res = getExtended().updateOwners(recNos, expectedOwners,
+						newOwners);
+				long[] out = new long[res.length];
+				for (int i = 0; i < res.length; i++) {
+					out[i] = res[i];
+				}
+				result = new ResponseResult(out);
+				break;
+			}
+			case READ_VERSIONED: {
+				long recNo = request.getLong();
+				VersionedRecord record = getExtended().readVersionedRecord(recNo);
+				result = new ResponseResult(new Object[] {
+						new long[] { record.getVersion() }, record.getData() });
+				break;
+			}
+			case UPDATE_IF_VERSION: {
+				long[] args = request.getLongArray();
+				long recNo = args[0];
+				long version = args[1];
+				String[] data = request.getStringArray();
+				long newVersion = getExtended().updateRecordIfVersion(recNo, data,
+						version);
+				result = new ResponseResult(newVersion);
+				break;
+			}
+			case TIMED_LOCK: {
+				long[] args = request.getLongArray();
+				long recNo = args[0];
+				long timeout = args[1];
+				long cookie = getExtended().lockRecord(recNo, timeout);
+				if (cookie != 0)
+					keepLock(session, recNo, cookie);
+				result = new ResponseResult(cookie);
+				break;
+			}
+			}
+		} catch (Exception e) {
+			result = new ResponseResult(e);
+		}
+		return identify(request, result);
+	}
+
+	/**
+	 * Checks whether request can wait for the record without holding the
+	 * thread, by {@link #lock(RequestCommand, ClientSession, LockListener)}.
+	 * 
+	 * @param request
+	 *         command object incoming from the <code>RecordSocketClient</code>.
+	 * @return <code>true</code> if request is valid LOCK or TIMED_LOCK request
+	 *         with time to wait and database is {@link Data}. Request with
+	 *         invalid arguments is executed as usual, so the client gets the
+	 *         error.
+	 */
+	boolean canWaitWithoutThread(RequestCommand request) {
+		if (!(dbAccess instanceof Data))
+			return false;
+		Object data = request.getData();
+		switch (request.getCommand()) {
+		case LOCK:
+			return data instanceof Long;
+		case TIMED_LOCK:
+			return data instanceof long[] && ((long[]) data).length == 2
+					&& ((long[]) data)[1] > 0;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Starts LOCK or TIMED_LOCK request without holding current thread while
+	 * the record is locked by other client. If the record is locked, listener
+	 * is queued and request is completed later by
+	 * {@link #completeLock(RequestCommand, ClientSession, long)} or
+	 * {@link #cancelLock(RequestCommand, LockListener)}.
+	 * 
+	 * @param request
+	 *         lock request
+	 * @param session
+	 *         session of the client connection, <code>null</code> if locks are
+	 *         not kept
+	 * @param listener
+	 *         listener that waits for the record
+	 * @return response to the request, <code>null</code> if listener is queued
+	 */
+	ResponseResult lock(RequestCommand request, ClientSession session,
+			LockListener listener) {
+		ResponseResult result;
+		try {
+			long recNo = getLockedRecord(request);
+			long cookie = ((Data) dbAccess).lockRecord(recNo, listener);
+			if (cookie == 0)
+				return null;
+			keepLock(session, recNo, cookie);
+			result = new ResponseResult(cookie);
+		} catch (Exception e) {
+			result = new ResponseResult(e);
+		}
+		return identify(request, result);
+	}
+
+	/**
+	 * Completes lock request which record is handed to its listener.
+	 * 
+	 * @param request
+	 *         lock request
+	 * @param session
+	 *         session of the client connection, <code>null</code> if locks are
+	 *         not kept
+	 * @param cookie
+	 *         locking cookie given to the listener
+	 * @return response to the request
+	 */
+	ResponseResult completeLock(RequestCommand request, ClientSession session,
+			long cookie) {
+		ResponseResult result;
+		try {
+			long recNo = getLockedRecord(request);
+			((Data) dbAccess).completeLock(recNo, cookie);
+			keepLock(session, recNo, cookie);
+			result = new ResponseResult(cookie);
+		} catch (Exception e) {
+			result = new ResponseResult(e);
+		}
+		return identify(request, result);
+	}
+
+	/**
+	 * Completes TIMED_LOCK request which time is out, if the record is not
+	 * handed to its listener yet.
+	 * 
+	 * @param request
+	 *         timed lock request
+	 * @param listener
+	 *         listener that waits for the record
+	 * @return response to the request, <code>null</code> if the record is
+	 *         already handed to the listener
+	 */
+	ResponseResult cancelLock(RequestCommand request, LockListener listener) {
+		if (!((Data) dbAccess).cancelLock(getLockedRecord(request), listener))
+			return null;
+		long cookie = 0;
+		return identify(request, new ResponseResult(cookie));
+	}
+
+	/**
+	 * Creates response to the request which execution is failed.
+	 * 
+	 * @param request
+	 *         command object incoming from the <code>RecordSocketClient</code>.
+	 * @param e
+	 *         error of execution
+	 * @return response with the error and identifier of request
+	 */
+	ResponseResult fail(RequestCommand request, Exception e) {
+		return identify(request, new ResponseResult(e));
+	}
+
+	/**
+	 * Returns number of record locked by LOCK or TIMED_LOCK request.
+	 * 
+	 * @param request
+	 *         lock request
+	 * @return record number
+	 */
+	private long getLockedRecord(RequestCommand request) {
+		if (request.getCommand() == SocketCommand.TIMED_LOCK)
+			return request.getLongArray()[0];
+		return request.getLong();
+	}
+
+	/**
+	 * Gives response the identifier of request.
+	 * 
+	 * @param request
+	 *         command object incoming from the <code>RecordSocketClient</code>.
+	 * @param result
+	 *         response to the request, can be <code>null</code>
+	 * @return response with identifier of request, <code>null</code> if
+	 *         command has no result and request is not identified
+	 */
+	private ResponseResult identify(RequestCommand request, ResponseResult result) {
+		if (request.getId() != 0) {
+			if (result == null)
+				result = ResponseResult.empty();
+			result.setId(request.getId());
+		}
+		return result;
+	}
+
+	/**
+	 * Keeps lock granted to the client in its session. If session is already
+	 * closed, lock is released at once, because nobody can release it later.
+	 * 
+	 * @param session
+	 *         session of the client connection, can be <code>null</code>
+	 * @param recNo
+	 *         record number
+	 * @param cookie
+	 *         locking cookie of record
+	 */
+	private void keepLock(ClientSession session, long recNo, long cookie) {
+		if (session == null || session.addLock(recNo, cookie))
+			return;
+		try {
+			dbAccess.unlock(recNo, cookie);
+		} catch (SecurityException e) {
+			// lock is already released by timeout
+		}
+	}
+
+	/**
+	 * Closes session of the client connection and releases all locks that
+	 * client has not released itself.
+	 * 
+	 * @param session
+	 *         session of closed connection
+	 */
+	void releaseLocks(ClientSession session) {
+		for (Map.Entry<Long, Long> lock : session.close().entrySet()) {
+			try {
+				dbAccess.unlock(lock.getKey(), lock.getValue());
+				log.log(Level.SEVERE, "record " + lock.getKey()
+						+ " unlocked on disconnect of " + session.getName());
+			} catch (SecurityException e) {
+				// lock is released by timeout while the session is being closed
+			}
+		}
+	}
+
+	/**
+	 * Returns database operating object as extended one, for the operations
+	 * that can not be done by {@link DBAccess} operations.
+	 * 
+	 * @return extended database operating object
+	 * @throws UnsupportedOperationException
+	 *          if database operating object is not extended one
+	 */
+	private ExtendedDBAccess getExtended() {
+		if (!(dbAccess instanceof ExtendedDBAccess))
+			throw new UnsupportedOperationException(
+					"database does not support this operation");
+		return (ExtendedDBAccess) dbAccess;
+	}
+
+	/**
+	 * Finds records that match criteria and reads them. If database operating
+	 * object does not support this operation, records are found and then read
+	 * one by one.
+	 * 
+	 * @param criteria
+	 *         criteria to search records
+	 * @return fields of matching records mapped by record numbers
+	 */
+	private Map<Long, String[]> findAndRead(String[] criteria) {
+		if (dbAccess instanceof ExtendedDBAccess)
+			return ((ExtendedDBAccess) dbAccess).findAndRead(criteria);
+		Map<Long, String[]> records = new LinkedHashMap<Long, String[]>();
+		for (long recNo : dbAccess.findByCriteria(criteria)) {
+			try {
+				records.put(recNo, dbAccess.readRecord(recNo));
+			} catch (RecordNotFoundException e) {
+				// record is deleted after it was found
+			}
+		}
+		return records;
+	}
+}
@@ -0,0 +1,130 @@
+package suncertify.sockets;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import suncertify.db.DBAccess;
+
+/**
+ * Class <code>RequestProcessingTask</code> handles request processing of one
+ * client connection.<br>
+ * Given from client {@link RequestCommand} object is parsed, and object that
+ * implements database operating interface {@link DBAccess} performs execution
+ * of command. Result of the execution wrapped by {@link ResponseResult} object
+ * returns to client. Task can be run by platform thread as well as by
+ * virtual thread.<br>
+ * Locks that client has not released are released when connection is
+ * closed.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class RequestProcessingTask implements Runnable {
+	/**
+	 * Logger of the debugging issues
+	 */
+	private Logger log = Logger.getLogger(this.getClass().getPackage().getName());
+
+	/**
+	 * Executor of the requests
+	 */
+	private final RequestExecutor executor;
+
+	/**
+	 * Reference for message stream of socket connection with client
+	 */
+	private MessageStream stream;
+
+	/**
+	 * Reference to socket that keeps connection with client
+	 */
+	private final Socket socket;
+
+	/**
+	 * bytes already read from the socket before processing started
+	 */
+	private final byte[] prefix;
+
+	/**
+	 * registry of sessions of the server, <code>null</code> if session is not
+	 * registered
+	 */
+	private final SessionRegistry sessions;
+
+	/**
+	 * session of connection that keeps locks of client
+	 */
+	private ClientSession session;
+
+	/**
+	 * Constructor of the <code>RequestProcessingTask</code>.
+	 * 
+	 * @param dba
+	 *         database operating object
+	 * @param socket
+	 *         connection to the client
+	 * @param prefix
+	 *         bytes already read from the socket, can be <code>null</code>
+	 * @param sessions
+	 *         registry of sessions of the server, can be <code>null</code>
+	 */
+	RequestProcessingTask(DBAccess dba, Socket socket, byte[] prefix,
+			SessionRegistry sessions) {
+		this.executor = new RequestExecutor(dba);
+		this.socket = socket;
+		this.prefix = prefix;
+		this.sessions = sessions;
+	}
+
+	/**
+	 * Processes requests of client until connection is closed.
+	 */
+	public void run() {
+		String name = String.valueOf(socket.getRemoteSocketAddress());
+		session = sessions != null ? sessions.open(name) : new ClientSession(name);
+		try {
+			stream = MessageStream.accept(socket, prefix);
+			while (true) {
+				RequestCommand cmdObj = (RequestCommand) stream.read();
+				Object respObj = executor.execute(cmdObj, session);
+				stream.write(respObj);
+			}
+		} catch (SocketException e) {
+			log
+					.log(
+							Level.SEVERE,
+							"socket exception occured in thread processing request. perhaps connection closed",
+							e);
+		} catch (EOFException e) {
+			log.log(Level.SEVERE, "socket closed by client", e);
+		} catch (Exception e) {
+			log.log(Level.SEVERE, "general exception in thread processing request", e);
+		}
+		close();
+	}
+
+	/**
+	 * Method closes streams of connection and socket itself, and releases locks
+	 * of client.
+	 */
+	private void close() {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				log.log(Level.SEVERE, "Error closing streams", e);
+			}
+		}
+		try {
+			socket.close();
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Error closing socket", e);
+		}
+		executor.releaseLocks(session);
+		if (sessions != null)
+			sessions.close(session);
+	}
+}
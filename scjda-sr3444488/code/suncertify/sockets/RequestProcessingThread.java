@@ -1,13 +1,6 @@
 package suncertify.sockets;
 
-import java.io.EOFException;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
-import java.net.SocketException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import suncertify.db.DBAccess;
 
 /**
@@ -23,29 +16,9 @@ import suncertify.db.DBAccess;
  */
 public class RequestProcessingThread extends Thread {
 	/**
-	 * Logger of the debugging issues
+	 * Processing of the requests of connection
 	 */
-	private Logger log = Logger.getLogger(this.getClass().getPackage().getName());
-
-	/**
-	 * Reference to the database operating interface
-	 */
-	private DBAccess dbAccess;
-
-	/**
-	 * Reference for outputstream of socket connection with client
-	 */
-	private ObjectOutputStream out;
-
-	/**
-	 * Reference for inputstream of socket connection with client
-	 */
-	private ObjectInputStream in;
-
-	/**
-	 * Reference to socket that keeps connection with client
-	 */
-	private final Socket socket;
+	private final RequestProcessingTask task;
 
 	/**
 	 * Constructor of the <code>RequestProcessingThread</code>.
@@ -56,128 +29,32 @@ public class RequestProcessingThread extends Thread {
 	 *         connection to the client
 	 */
 	public RequestProcessingThread(DBAccess dba, Socket socket) {
-		this.dbAccess = dba;
-		this.socket = socket;
-		try {
-			out = new ObjectOutputStream(this.socket.getOutputStream());
-			in = new ObjectInputStream(this.socket.getInputStream());
-		} catch (IOException e) {
-			log.log(Level.SEVERE, "Error getting socket streams", e);
-		}
+		this(dba, socket, null, null);
 	}
 
 	/**
-	 * Overrides method <code>run()</code> to perform the request processing in a
-	 * separate thread.
-	 */
-	public void run() {
-		try {
-			while (true) {
-				RequestCommand cmdObj = (RequestCommand) in.readObject();
-				Object respObj = execCmdObject(cmdObj);
-				out.writeObject(respObj);
-			}
-		} catch (SocketException e) {
-			log
-					.log(
-							Level.SEVERE,
-							"socket exception occured in thread processing request. perhaps connection closed",
-							e);
-		} catch (EOFException e) {
-			log.log(Level.SEVERE, "socket closed by client", e);
-		} catch (Exception e) {
-			log.log(Level.SEVERE, "general exception in thread processing request", e);
-		}
-		close();
-	}
-
-	/**
-	 * Helper method that takes the command object from the client and hands it to
-	 * the database.
+	 * Constructor of the <code>RequestProcessingThread</code> for connection
+	 * which first bytes were already read.
 	 * 
-	 * @param request
-	 *         command object incoming from the <code>RecordSocketClient</code>.
-	 * @return response to the command <code>request</code>
-	 */
-	private ResponseResult execCmdObject(RequestCommand request) {
-
-		ResponseResult result = null;
-
-		try {
-			switch (request.getCommand()) {
-			case FIND: {
-				String[] criteria = request.getStringArray();
-				long[] res = dbAccess.findByCriteria(criteria);
-				result = new ResponseResult(res);
-				break;
-			}
-			case ADD: {
-				String[] data = request.getStringArray();
-				long recNo = dbAccess.createRecord(data);
-				result = new ResponseResult(recNo);
-				break;
-			}
-			case READ: {
-				long recNo = request.getLong();
-				String[] data = dbAccess.readRecord(recNo);
-				result = new ResponseResult(data);
-				break;
-			}
-			case DELETE: {
-				long[] args = request.getLongArray();
-				long recNo = args[0];
-				long lockCookie = args[1];
-				dbAccess.deleteRecord(recNo, lockCookie);
-				break;
-			}
-
-			case MODIFY: {
-				long[] args = request.getLongArray();
-				long recNo = args[0];
-				long lockCookie = args[1];
-				String[] data = request.getStringArray();
-				dbAccess.updateRecord(recNo, data, lockCookie);
-				break;
-			}
-
-			case LOCK: {
-				long recNo = request.getLong();
-				long cookie = dbAccess.lockRecord(recNo);
-				result = new ResponseResult(cookie);
-				break;
-			}
-			case UNLOCK: {
-				long[] args = request.getLongArray();
-				long recNo = args[0];
-				long lockCookie = args[1];
-				dbAccess.unlock(recNo, lockCookie);
-				break;
-			}
-			}
-		} catch (Exception e) {
-			result = new ResponseResult(e);
-		}
-		return result;
+	 * @param dba
+	 *         database operating object
+	 * @param socket
+	 *         connection to the client
+	 * @param prefix
+	 *         bytes already read from the socket, can be <code>null</code>
+	 * @param sessions
+	 *         registry of sessions of the server, can be <code>null</code>
+	 */
+	RequestProcessingThread(DBAccess dba, Socket socket, byte[] prefix,
+			SessionRegistry sessions) {
+		this.task = new RequestProcessingTask(dba, socket, prefix, sessions);
 	}
 
 	/**
-	 * Method closes streams of connection and socket itself.
+	 * Overrides method <code>run()</code> to perform the request processing in a
+	 * separate thread.
 	 */
-	private void close() {
-		try {
-			out.close();
-		} catch (IOException e) {
-			log.log(Level.SEVERE, "Error closing output stream", e);
-		}
-		try {
-			in.close();
-		} catch (IOException e) {
-			log.log(Level.SEVERE, "Error closing input stream", e);
-		}
-		try {
-			socket.close();
-		} catch (IOException e) {
-			log.log(Level.SEVERE, "Error closing socket", e);
-		}
+	public void run() {
+		task.run();
 	}
 }
@@ -0,0 +1,122 @@
+package suncertify.sockets;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Class <code>ResponseFuture</code> is a result of request sent by
+ * {@link RecordSocketClient} which response may be not received yet.<br>
+ * When response is received, its transferred data is converted to the result
+ * by method {@link #valueOf(ResponseResult)}. Exception thrown by the server
+ * or network error is reported by {@link ExecutionException}. Request can not
+ * be cancelled once it is sent.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ * @param <V>
+ *         type of result
+ */
+abstract class ResponseFuture<V> implements Future<V> {
+	/**
+	 * latch released when response is received or request is failed
+	 */
+	private final CountDownLatch done = new CountDownLatch(1);
+	/**
+	 * response of server
+	 */
+	private volatile ResponseResult response;
+	/**
+	 * network error that prevented receiving of response
+	 */
+	private volatile Exception failure;
+
+	/**
+	 * Converts transferred data of response to the result.
+	 * 
+	 * @param response
+	 *         response of server, can be <code>null</code> for command that has
+	 *         no result
+	 * @return result of request
+	 */
+	protected abstract V valueOf(ResponseResult response);
+
+	/**
+	 * Completes request with received response.
+	 * 
+	 * @param response
+	 *         response of server
+	 */
+	void complete(ResponseResult response) {
+		this.response = response;
+		done.countDown();
+	}
+
+	/**
+	 * Completes request with network error.
+	 * 
+	 * @param failure
+	 *         error that prevented receiving of response
+	 */
+	void fail(Exception failure) {
+		this.failure = failure;
+		done.countDown();
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Request can not be cancelled, method always returns <code>false</code>.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isCancelled() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public V get() throws InterruptedException, ExecutionException {
+		done.await();
+		return getValue();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public V get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit))
+			throw new TimeoutException("response is not received");
+		return getValue();
+	}
+
+	/**
+	 * Returns result of completed request.
+	 * 
+	 * @return result of request
+	 * @throws ExecutionException
+	 *          if server threw exception or response was not received
+	 */
+	private V getValue() throws ExecutionException {
+		if (failure != null)
+			throw new ExecutionException(failure);
+		if (response != null && response.isException())
+			throw new ExecutionException(response.getException());
+		return valueOf(response);
+	}
+}
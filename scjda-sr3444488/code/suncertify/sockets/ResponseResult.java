@@ -2,6 +2,7 @@ package suncertify.sockets;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Class <code>ResponseResult</code> purposed for data transfer between
@@ -12,6 +13,10 @@ import java.util.Arrays;
  * <li>Array of long, that used to represent numbers of the found records</li>
  * <li>Array of String, that used to represent record fields</li>
  * <li>Long, that used to represent record number</li>
+ * <li>Map of record numbers to arrays of String, that used to represent found
+ * records</li>
+ * <li>Array of long and array of String wrapped by array of objects, that
+ * used to represent version and fields of record</li>
  * </ul>
  * 
  * @author Petr Shilkin
@@ -30,6 +35,12 @@ public class ResponseResult implements Serializable {
 	 */
 	private Object data = null;
 
+	/**
+	 * Identifier of request this response answers, <code>0</code> if request is
+	 * not identified
+	 */
+	private int id;
+
 	/**
 	 * Constructor of <code>ResponseResult</code> object.<br>
 	 * 
@@ -37,19 +48,55 @@ public class ResponseResult implements Serializable {
 	 *         transferring data object to wrap
 	 */
 	public ResponseResult(Object o) {
-		if (!(o instanceof Exception || o instanceof long[] || o instanceof String[] || o instanceof Long)) {
+		if (!(o instanceof Exception || o instanceof long[] || o instanceof String[]
+				|| o instanceof Long || o instanceof Map || isLongAndStringArrays(o))) {
 			throw new IllegalArgumentException(
 					"incompatible transferring data object passed");
 		}
 		this.data = o;
 	}
 
+	/**
+	 * Checks if object is array of long and array of String wrapped by array of
+	 * objects.
+	 * 
+	 * @param o
+	 *         transferring data object
+	 * @return <code>true</code> if object is pair of arrays
+	 */
+	private static boolean isLongAndStringArrays(Object o) {
+		if (!(o instanceof Object[]))
+			return false;
+		Object[] arrays = (Object[]) o;
+		return arrays.length == 2 && arrays[0] instanceof long[]
+				&& arrays[1] instanceof String[];
+	}
+
+	/**
+	 * Constructor of <code>ResponseResult</code> object without transferred
+	 * data. Such response is sent for identified request of command that has no
+	 * result.
+	 */
+	private ResponseResult() {
+	}
+
+	/**
+	 * Creates response without transferred data.
+	 * 
+	 * @return response without transferred data
+	 */
+	static ResponseResult empty() {
+		return new ResponseResult();
+	}
+
 	/**
 	 * Return the array of long as transfered data.
 	 * 
 	 * @return array of long if transferred object is array of long
 	 */
 	public long[] getLongArray() {
+		if (isLongAndStringArrays(data))
+			return (long[]) ((Object[]) data)[0];
 		return (long[]) data;
 	}
 
@@ -59,9 +106,21 @@ public class ResponseResult implements Serializable {
 	 * @return array of String if transferred object is array of String
 	 */
 	public String[] getStringArray() {
+		if (isLongAndStringArrays(data))
+			return (String[]) ((Object[]) data)[1];
 		return (String[]) data;
 	}
 
+	/**
+	 * Returns the map of record numbers to record fields as transferred data.
+	 * 
+	 * @return map of records if transferred object is {@link Map}
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<Long, String[]> getRecords() {
+		return (Map<Long, String[]>) data;
+	}
+
 	/**
 	 * Returns long as a transferred data.
 	 * 
@@ -104,4 +163,33 @@ public class ResponseResult implements Serializable {
 		}
 		return "null";
 	}
+
+	/**
+	 * Returns identifier of request this response answers.
+	 * 
+	 * @return identifier of request, <code>0</code> if request is not
+	 *         identified
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * Sets identifier of request this response answers.
+	 * 
+	 * @param id
+	 *         identifier of request
+	 */
+	void setId(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Returns transferred data object of response.
+	 * 
+	 * @return transferred data object
+	 */
+	Object getData() {
+		return data;
+	}
 }
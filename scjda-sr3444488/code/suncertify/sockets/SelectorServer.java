@@ -0,0 +1,784 @@
+package suncertify.sockets;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import suncertify.db.DBAccess;
+import suncertify.db.LockListener;
+import suncertify.db.SecurityException;
+
+/**
+ * Class <code>SelectorServer</code> is a non-blocking implementation of socket
+ * server used by {@link RecordSocketServer}.<br>
+ * A small fixed set of I/O threads multiplexes all of the client connections
+ * using selectors. I/O threads read and decode requests of framed protocol
+ * and hand them to the fixed pool of worker threads, requests wait in the
+ * queue of the pool while all of the workers are busy. Idle connections do not
+ * hold any thread. Lock request does not hold worker while the record is
+ * locked by other client: it is queued in the lock table of
+ * {@link suncertify.db.Data} and is completed by a worker when the record is
+ * handed to it or by the timer thread when its time is out. If database is not
+ * {@link suncertify.db.Data}, lock request holds worker while it waits, so at
+ * most the amount of workers clients wait for locks at a time and the other
+ * requests wait in the queue. Read-only
+ * requests of connection that uses pipelined protocol version are executed
+ * concurrently and their responses are sent as soon as they are ready. A
+ * request that changes state of database or locks is executed alone, after
+ * all of the earlier requests of connection are completed and before any of
+ * the later ones is started, so the connection keeps the order of its
+ * requests. Only one request of other connections is executed at a time, so
+ * responses are sent in order of requests. Connection is not read while it
+ * has the maximum amount of requests being executed or waiting.<br>
+ * Clients that do not support framed protocol are handed to a separate
+ * {@link RequestProcessingThread}.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class SelectorServer {
+	/**
+	 * size of the read buffer of connection
+	 */
+	private final static int BUFFER_SIZE = 8192;
+	/**
+	 * amount of worker threads
+	 */
+	final static int WORKERS = Math.max(4, 2 * Runtime.getRuntime()
+			.availableProcessors());
+	/**
+	 * maximum amount of requests of one pipelined connection executed or
+	 * waiting at a time
+	 */
+	private final static int MAX_IN_FLIGHT = 32;
+	/**
+	 * Logger for debugging issues
+	 */
+	private Logger log = Logger.getLogger(this.getClass().getPackage().getName());
+	/**
+	 * database operating object reference
+	 */
+	private final DBAccess dbAccess;
+	/**
+	 * executor of the requests
+	 */
+	private final RequestExecutor executor;
+	/**
+	 * registry of sessions of connected clients
+	 */
+	private final SessionRegistry sessions;
+	/**
+	 * server port
+	 */
+	private final int port;
+	/**
+	 * server socket channel
+	 */
+	private ServerSocketChannel serverChannel;
+	/**
+	 * I/O threads, the first one also accepts connections
+	 */
+	private IoLoop[] loops;
+	/**
+	 * pool of threads that execute requests
+	 */
+	private ThreadPoolExecutor workers;
+	/**
+	 * thread that completes timed lock requests which time is out
+	 */
+	private ScheduledThreadPoolExecutor timer;
+	/**
+	 * sockets of clients handed to separate threads
+	 */
+	private final List<Socket> handedSockets = new ArrayList<Socket>();
+	/**
+	 * index of I/O thread the next accepted connection is assigned to
+	 */
+	private int nextLoop;
+	/**
+	 * flag determines server is running
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Constructor creates instance of <code>SelectorServer</code>.
+	 * 
+	 * @param dba
+	 *         database operating object reference
+	 * @param port
+	 *         port number
+	 * @param sessions
+	 *         registry of sessions of connected clients
+	 */
+	SelectorServer(DBAccess dba, int port, SessionRegistry sessions) {
+		this.dbAccess = dba;
+		this.executor = new RequestExecutor(dba);
+		this.port = port;
+		this.sessions = sessions;
+	}
+
+	/**
+	 * Opens server socket channel and starts I/O threads.
+	 * 
+	 * @throws IOException
+	 *          on server creation error
+	 */
+	public void start() throws IOException {
+		int count = Math.max(1, Math.min(4, Runtime.getRuntime()
+				.availableProcessors()));
+		serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(port));
+			serverChannel.configureBlocking(false);
+			loops = new IoLoop[count];
+			for (int i = 0; i < count; i++) {
+				loops[i] = new IoLoop(Selector.open());
+			}
+			serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			serverChannel.close();
+			throw e;
+		}
+		workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger number = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "SERVER_WORKER_THREAD_"
+								+ number.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SERVER_TIMER_THREAD");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		running = true;
+		for (int i = 0; i < count; i++) {
+			Thread t = new Thread(loops[i], "SERVER_IO_THREAD_" + i);
+			loops[i].thread = t;
+			t.start();
+		}
+	}
+
+	/**
+	 * Stops I/O threads, closes all client connections and server socket
+	 * channel.
+	 */
+	public void stop() {
+		running = false;
+		for (IoLoop loop : loops) {
+			loop.selector.wakeup();
+			try {
+				loop.thread.join();
+			} catch (InterruptedException e) {
+				log.log(Level.SEVERE, "I/O thread is interrupted", e);
+			}
+		}
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Error closing server socket", e);
+		}
+		workers.shutdown();
+		timer.shutdownNow();
+		synchronized (handedSockets) {
+			for (Socket s : handedSockets) {
+				try {
+					s.close();
+				} catch (IOException e) {
+					log.log(Level.SEVERE, "error closing connection", e);
+				}
+			}
+			handedSockets.clear();
+		}
+	}
+
+	/**
+	 * Accepts new client connection and assigns it to one of I/O threads.
+	 */
+	private void accept() {
+		try {
+			SocketChannel channel = serverChannel.accept();
+			if (channel == null)
+				return;
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			IoLoop loop = loops[nextLoop];
+			nextLoop = (nextLoop + 1) % loops.length;
+			loop.register(channel);
+			log.log(Level.SEVERE, "client connected");
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "error occured with socket " + e.getMessage());
+		}
+	}
+
+	/**
+	 * I/O thread. Processes readiness of connections assigned to its selector.
+	 */
+	private class IoLoop implements Runnable {
+		/**
+		 * selector of connections assigned to this thread
+		 */
+		private final Selector selector;
+		/**
+		 * tasks to perform in this thread
+		 */
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		/**
+		 * connections to hand to separate threads after selection processed
+		 */
+		private final List<Connection> handoffs = new LinkedList<Connection>();
+		/**
+		 * thread that runs this loop
+		 */
+		private Thread thread;
+
+		/**
+		 * Constructor creates I/O loop.
+		 * 
+		 * @param selector
+		 *         selector of connections
+		 */
+		IoLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		/**
+		 * Registers accepted connection in this loop.
+		 * 
+		 * @param channel
+		 *         channel of accepted connection
+		 */
+		void register(final SocketChannel channel) {
+			execute(new Runnable() {
+				public void run() {
+					try {
+						Connection conn = new Connection(IoLoop.this, channel);
+						conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+					} catch (IOException e) {
+						log.log(Level.SEVERE, "error registering connection", e);
+						closeChannel(channel);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Performs task in this thread.
+		 * 
+		 * @param task
+		 *         task to perform
+		 */
+		void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		/**
+		 * Processes readiness of connections until server is stopped.
+		 */
+		public void run() {
+			try {
+				while (running) {
+					selector.select();
+					Runnable task;
+					while ((task = tasks.poll()) != null) {
+						task.run();
+					}
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						if (!key.isValid())
+							continue;
+						if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+						Connection conn = (Connection) key.attachment();
+						try {
+							if (key.isWritable())
+								conn.write();
+							if (key.isValid() && key.isReadable())
+								conn.read();
+						} catch (IOException e) {
+							log.log(Level.SEVERE, "connection closed " + e.getMessage());
+							conn.close();
+						}
+					}
+					handOff();
+				}
+			} catch (IOException e) {
+				log.log(Level.SEVERE, "error occured in I/O thread", e);
+			} catch (ClosedSelectorException e) {
+				log.log(Level.SEVERE, "selector closed", e);
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					if (key.attachment() instanceof Connection)
+						((Connection) key.attachment()).close();
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					log.log(Level.SEVERE, "error closing selector", e);
+				}
+			}
+		}
+
+		/**
+		 * Hands connections of clients that do not support framed protocol to
+		 * separate threads.
+		 * 
+		 * @throws IOException
+		 *          on selection error
+		 */
+		private void handOff() throws IOException {
+			if (handoffs.isEmpty())
+				return;
+			for (Connection conn : handoffs) {
+				conn.key.cancel();
+			}
+			selector.selectNow();
+			for (Connection conn : handoffs) {
+				try {
+					conn.channel.configureBlocking(true);
+					Socket s = conn.channel.socket();
+					synchronized (handedSockets) {
+						handedSockets.add(s);
+					}
+					new RequestProcessingThread(dbAccess, s, conn.consumed(), sessions)
+							.start();
+				} catch (IOException e) {
+					log.log(Level.SEVERE, "error handing connection to thread", e);
+					closeChannel(conn.channel);
+				}
+			}
+			handoffs.clear();
+		}
+	}
+
+	/**
+	 * State of the client connection.
+	 */
+	private class Connection {
+		/**
+		 * I/O loop connection is assigned to
+		 */
+		private final IoLoop loop;
+		/**
+		 * channel of connection
+		 */
+		private final SocketChannel channel;
+		/**
+		 * selection key of channel
+		 */
+		private SelectionKey key;
+		/**
+		 * buffer of bytes read from channel, in the write mode
+		 */
+		private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		/**
+		 * buffers waiting to be written to channel
+		 */
+		private final Queue<ByteBuffer> out = new LinkedList<ByteBuffer>();
+		/**
+		 * protocol version used by connection, <code>0</code> until handshake is
+		 * completed
+		 */
+		private volatile byte version;
+		/**
+		 * amount of requests of connection being executed
+		 */
+		private int inFlight;
+		/**
+		 * decoded requests of connection waiting for earlier requests
+		 */
+		private final Queue<RequestCommand> waiting = new LinkedList<RequestCommand>();
+		/**
+		 * flag determines request that changes state is being executed
+		 */
+		private boolean exclusive;
+		/**
+		 * session that keeps locks of client, <code>null</code> until handshake
+		 * is completed
+		 */
+		private ClientSession session;
+
+		/**
+		 * Constructor creates state of connection.
+		 * 
+		 * @param loop
+		 *         I/O loop connection is assigned to
+		 * @param channel
+		 *         channel of connection
+		 */
+		Connection(IoLoop loop, SocketChannel channel) {
+			this.loop = loop;
+			this.channel = channel;
+		}
+
+		/**
+		 * Reads available bytes from channel and processes them.
+		 * 
+		 * @throws IOException
+		 *          on network error or if connection is closed by client
+		 */
+		void read() throws IOException {
+			if (!in.hasRemaining()) {
+				ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+				in.flip();
+				bigger.put(in);
+				in = bigger;
+			}
+			if (channel.read(in) < 0)
+				throw new IOException("socket closed by client");
+			process();
+		}
+
+		/**
+		 * Processes bytes read from channel: performs handshake and decodes
+		 * requests.
+		 * 
+		 * @throws IOException
+		 *          if bytes read are not valid
+		 */
+		void process() throws IOException {
+			in.flip();
+			try {
+				if (version == 0) {
+					if (in.remaining() < 4)
+						return;
+					int magic = in.getInt(in.position());
+					if (magic == Protocol.SERIALIZATION_MAGIC) {
+						key.interestOps(0);
+						loop.handoffs.add(this);
+						return;
+					}
+					if (magic != Protocol.MAGIC)
+						throw new IOException("unknown client protocol");
+					if (in.remaining() < 5)
+						return;
+					in.getInt();
+					byte negotiated = Protocol.negotiate(in.get());
+					ByteBuffer answer = ByteBuffer.allocate(5);
+					answer.putInt(Protocol.MAGIC).put(negotiated).flip();
+					send(answer);
+					if (negotiated == 0)
+						throw new IOException("client protocol version is not supported");
+					version = negotiated;
+					session = sessions.open(String.valueOf(channel.socket()
+							.getRemoteSocketAddress()));
+				}
+				int limit = version >= Protocol.VERSION_PIPELINED ? MAX_IN_FLIGHT : 1;
+				while (inFlight + waiting.size() < limit && in.remaining() >= 4) {
+					int length = in.getInt(in.position());
+					Protocol.checkFrameLength(length);
+					if (in.remaining() < 4 + length) {
+						if (in.capacity() < 4 + length) {
+							ByteBuffer bigger = ByteBuffer.allocate(4 + length);
+							bigger.put(in);
+							in = bigger;
+							in.flip();
+						}
+						break;
+					}
+					in.getInt();
+					byte[] frame = new byte[length];
+					in.get(frame);
+					waiting.add((RequestCommand) Protocol.decode(frame, version));
+				}
+				schedule();
+				int ops = key.interestOps();
+				if (inFlight + waiting.size() < limit)
+					key.interestOps(ops | SelectionKey.OP_READ);
+				else
+					key.interestOps(ops & ~SelectionKey.OP_READ);
+			} catch (ClassCastException e) {
+				throw new IOException("unknown request object");
+			} finally {
+				in.compact();
+			}
+		}
+
+		/**
+		 * Hands waiting requests to the worker pool in order of their arrival.
+		 * Read-only requests are executed together, request that changes state
+		 * waits until the requests being executed are completed, and the later
+		 * requests wait until it is completed.
+		 */
+		private void schedule() {
+			RequestCommand request;
+			while ((request = waiting.peek()) != null) {
+				boolean readOnly = isReadOnly(request.getCommand());
+				if (exclusive || (!readOnly && inFlight > 0))
+					return;
+				waiting.poll();
+				exclusive = !readOnly;
+				dispatch(request);
+			}
+		}
+
+		/**
+		 * Hands request to the worker pool. The response is sent to the client in
+		 * I/O thread. Unexpected error of the worker is sent as the response, so
+		 * the connection keeps getting responses to its next requests.
+		 * 
+		 * @param request
+		 *         request of client
+		 */
+		private void dispatch(final RequestCommand request) {
+			inFlight++;
+			workers.execute(new Runnable() {
+				public void run() {
+					try {
+						if (executor.canWaitWithoutThread(request))
+							new LockWait(request).start();
+						else
+							respond(executor.execute(request, session));
+					} catch (RuntimeException e) {
+						log.log(Level.SEVERE, "error executing request", e);
+						respond(executor.fail(request, e));
+					}
+				}
+			});
+		}
+
+		/**
+		 * Encodes response and sends it to the client in I/O thread.
+		 * 
+		 * @param result
+		 *         response to the request of client
+		 */
+		private void respond(ResponseResult result) {
+			ByteBuffer response = null;
+			try {
+				byte[] frame = Protocol.encode(result, version);
+				response = ByteBuffer.allocate(4 + frame.length);
+				response.putInt(frame.length).put(frame).flip();
+			} catch (IOException e) {
+				log.log(Level.SEVERE, "error encoding response", e);
+			}
+			final ByteBuffer answer = response;
+			loop.execute(new Runnable() {
+				public void run() {
+					if (!channel.isOpen())
+						return;
+					try {
+						if (answer == null)
+							throw new IOException("response is not sent");
+						inFlight--;
+						exclusive = false;
+						send(answer);
+						process();
+					} catch (IOException e) {
+						log.log(Level.SEVERE, "connection closed " + e.getMessage());
+						close();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Queues buffer to be written to channel and writes as much as possible.
+		 * 
+		 * @param buffer
+		 *         bytes to write
+		 * @throws IOException
+		 *          on network error
+		 */
+		void send(ByteBuffer buffer) throws IOException {
+			out.add(buffer);
+			write();
+		}
+
+		/**
+		 * Writes queued buffers to channel until channel accepts bytes.
+		 * 
+		 * @throws IOException
+		 *          on network error
+		 */
+		void write() throws IOException {
+			while (!out.isEmpty()) {
+				ByteBuffer buffer = out.peek();
+				channel.write(buffer);
+				if (buffer.hasRemaining())
+					break;
+				out.poll();
+			}
+			if (key.isValid()) {
+				int ops = key.interestOps();
+				if (out.isEmpty())
+					key.interestOps(ops & ~SelectionKey.OP_WRITE);
+				else
+					key.interestOps(ops | SelectionKey.OP_WRITE);
+			}
+		}
+
+		/**
+		 * Returns bytes read from channel but not processed yet.
+		 * 
+		 * @return unprocessed bytes
+		 */
+		byte[] consumed() {
+			in.flip();
+			byte[] bytes = new byte[in.remaining()];
+			in.get(bytes);
+			return bytes;
+		}
+
+		/**
+		 * Lock request of connection that waits for the record without holding
+		 * worker thread.
+		 */
+		private class LockWait implements LockListener {
+			/**
+			 * lock request
+			 */
+			private final RequestCommand request;
+			/**
+			 * completion of timed lock request which time is out, <code>null</code>
+			 * if request is not timed or is not queued yet
+			 */
+			private volatile ScheduledFuture<?> timeout;
+
+			/**
+			 * Constructor creates waiting lock request.
+			 * 
+			 * @param request
+			 *         lock request
+			 */
+			LockWait(RequestCommand request) {
+				this.request = request;
+			}
+
+			/**
+			 * Locks the record or queues this request in the lock table. Time of
+			 * timed lock request is counted by the timer thread.
+			 */
+			void start() {
+				ResponseResult result = executor.lock(request, session, this);
+				if (result != null) {
+					respond(result);
+					return;
+				}
+				if (request.getCommand() != SocketCommand.TIMED_LOCK)
+					return;
+				try {
+					timeout = timer.schedule(new Runnable() {
+						public void run() {
+							ResponseResult result = executor.cancelLock(request,
+									LockWait.this);
+							if (result != null)
+								respond(result);
+						}
+					}, request.getLongArray()[1], TimeUnit.MILLISECONDS);
+				} catch (RejectedExecutionException e) {
+					// server is stopped, connection is closed
+				}
+			}
+
+			/**
+			 * Completes request by a worker when the record is handed to it.
+			 * 
+			 * @param recNo
+			 *         number of handed record
+			 * @param cookie
+			 *         locking descriptor of handed record
+			 */
+			public void locked(long recNo, final long cookie) {
+				ScheduledFuture<?> t = timeout;
+				if (t != null)
+					t.cancel(false);
+				try {
+					workers.execute(new Runnable() {
+						public void run() {
+							respond(executor.completeLock(request, session, cookie));
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					try {
+						dbAccess.unlock(recNo, cookie);
+					} catch (SecurityException ex) {
+						// lock is already released by timeout
+					}
+				}
+			}
+		}
+
+		/**
+		 * Closes connection and releases locks of client.
+		 */
+		void close() {
+			if (key != null)
+				key.cancel();
+			closeChannel(channel);
+			if (session != null) {
+				executor.releaseLocks(session);
+				sessions.close(session);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether command only reads database and does not change state of
+	 * database or locks.
+	 * 
+	 * @param command
+	 *         command of request
+	 * @return <code>true</code> if command may be executed together with other
+	 *         read-only commands of connection
+	 */
+	private static boolean isReadOnly(SocketCommand command) {
+		switch (command) {
+		case FIND:
+		case READ:
+		case FIND_AND_READ:
+		case READ_VERSIONED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Closes channel of client connection.
+	 * 
+	 * @param channel
+	 *         channel to close
+	 */
+	private void closeChannel(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "error closing connection", e);
+		}
+	}
+}
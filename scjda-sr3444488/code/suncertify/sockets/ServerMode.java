@@ -0,0 +1,28 @@
+package suncertify.sockets;
+
+/**
+ * Enumeration of modes in which {@link RecordSocketServer} handles client
+ * connections.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public enum ServerMode {
+	/**
+	 * Each client connection is handled by its own thread, that waits for the
+	 * requests of client.
+	 */
+	THREADED,
+	/**
+	 * Client connections are multiplexed by a small fixed set of I/O threads
+	 * using selectors. Requests are executed by a pool of worker threads.
+	 */
+	SELECTOR,
+	/**
+	 * Each client connection is handled by its own virtual thread. Virtual
+	 * thread does not occupy operating system thread while it waits for the
+	 * requests of client or for the record lock. Mode requires Java 21 or
+	 * later, server is not started in this mode by older Java runtime.
+	 */
+	VIRTUAL
+}
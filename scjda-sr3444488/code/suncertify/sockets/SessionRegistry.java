@@ -0,0 +1,74 @@
+package suncertify.sockets;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import suncertify.db.AutoUnlockListener;
+
+/**
+ * Class <code>SessionRegistry</code> keeps sessions of connected clients of
+ * the server, so the administrator can see which client holds which locks.<br>
+ * Registry listens for auto-unlocking of records, and the lock released by
+ * timeout is removed from the session that holds it, so the session never
+ * keeps the lock it does not hold anymore.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+class SessionRegistry implements AutoUnlockListener {
+	/**
+	 * sessions of connected clients
+	 */
+	private final Set<ClientSession> sessions = new LinkedHashSet<ClientSession>();
+
+	/**
+	 * Creates session of new connection.
+	 * 
+	 * @param name
+	 *         name of session, address of client
+	 * @return created session
+	 */
+	synchronized ClientSession open(String name) {
+		ClientSession session = new ClientSession(name);
+		sessions.add(session);
+		return session;
+	}
+
+	/**
+	 * Removes session of closed connection. Locks of session must be released
+	 * by {@link RequestExecutor#releaseLocks(ClientSession)}.
+	 * 
+	 * @param session
+	 *         session to remove
+	 */
+	synchronized void close(ClientSession session) {
+		sessions.remove(session);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Lock is removed from the session that holds it.
+	 */
+	public synchronized void autoUnlocked(long recNo, long cookie) {
+		for (ClientSession session : sessions) {
+			session.removeLock(recNo, cookie);
+		}
+	}
+
+	/**
+	 * Returns records locked by connected clients.
+	 * 
+	 * @return numbers of locked records mapped by names of sessions that hold
+	 *         them, sessions without locks are not included
+	 */
+	synchronized Map<String, long[]> getLockOwners() {
+		Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+		for (ClientSession session : sessions) {
+			long[] recNos = session.getLockedRecords();
+			if (recNos.length > 0)
+				result.put(session.getName(), recNos);
+		}
+		return result;
+	}
+}
@@ -13,7 +13,17 @@ package suncertify.sockets;
  * <li>Read - reads the specified record</li>
  * <li>Lock - locks the specified record for changing</li>
  * <li>Unlock - unlocks the specified record after locking</li>
+ * <li>Find and read - finds matching records and reads them</li>
+ * <li>Update owners - books or unbooks records if their owners are the
+ * expected ones</li>
+ * <li>Read versioned - reads the specified record along with its version</li>
+ * <li>Update if version - changes fields of the specified record if its
+ * version is the expected one</li>
+ * <li>Timed lock - locks the specified record if it is unlocked in the given
+ * time</li>
  * </ul>
+ * Ordinal of command is its opcode in binary protocol, so new commands must be
+ * added to the end of list.
  * 
  * @author Petr Shilkin
  * @version 1.0
@@ -34,5 +44,15 @@ public enum SocketCommand {
 	/** request will be performing a Unlock action. */
 	UNLOCK,
 	/** request will be performing a Read action. */
-	READ
+	READ,
+	/** request will be performing a Find and Read action. */
+	FIND_AND_READ,
+	/** request will be performing an Update Owners action. */
+	UPDATE_OWNERS,
+	/** request will be performing a Read Versioned action. */
+	READ_VERSIONED,
+	/** request will be performing an Update If Version action. */
+	UPDATE_IF_VERSION,
+	/** request will be performing a Timed Lock action. */
+	TIMED_LOCK
 }
@@ -0,0 +1,134 @@
+package suncertify;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suncertify.db.DBAccess;
+import suncertify.db.Data;
+import suncertify.db.DataSettings;
+import suncertify.db.DatabaseFiles;
+
+/**
+ * Checks the compaction mode of application: remap report is written to the
+ * file, and database file opened by other program is not compacted.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class DatabaseCompactorTest {
+	/**
+	 * folder of database and report files, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Moved records are written to the report, by default near the database
+	 * file, and compacted file is opened by other programs again.
+	 * 
+	 * @throws Exception
+	 *          on database or report error
+	 */
+	@Test
+	public void writesRemapReport() throws Exception {
+		File file = DatabaseFiles.copyTemplate(folder);
+		Data data = new Data(file.getPath());
+		long count = data.findByCriteria(new String[DBAccess.FIELD_LENGTH.length]).length;
+		String[] last = data.readRecord(count - 1).clone();
+		long cookie = data.lockRecord(2);
+		data.deleteRecord(2, cookie);
+		data.finalize();
+
+		Application.main("compact", file.getPath());
+		List<String> expected = new ArrayList<String>();
+		expected.add((count - 1) + " -> 2");
+		assertEquals(expected, readLines(new File(file.getPath() + ".remap")));
+
+		data = new Data(file.getPath());
+		try {
+			assertArrayEquals(last, data.readRecord(2));
+		} finally {
+			data.finalize();
+		}
+		File report = folder.newFile();
+		assertEquals(0, DatabaseCompactor.compact(file, report).size());
+		assertEquals(new ArrayList<String>(), readLines(report));
+	}
+
+	/**
+	 * Database file opened by other program is not compacted, and the file can
+	 * not be opened while it is opened exclusively.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test
+	public void refusesFileInUse() throws Exception {
+		File file = DatabaseFiles.copyTemplate(folder);
+		File report = new File(folder.getRoot(), "report");
+		Data data = new Data(file.getPath());
+		try {
+			long cookie = data.lockRecord(1);
+			data.deleteRecord(1, cookie);
+			long length = file.length();
+			try {
+				DatabaseCompactor.compact(file, report);
+				fail("file in use is compacted");
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals(length, file.length());
+			assertFalse(report.exists());
+		} finally {
+			data.finalize();
+		}
+
+		DataSettings settings = new DataSettings();
+		settings.setExclusive(true);
+		data = new Data(file.getPath(), settings);
+		try {
+			new Data(file.getPath());
+			fail("exclusively opened file is shared");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			data.finalize();
+		}
+		assertEquals(1, DatabaseCompactor.compact(file, report).size());
+	}
+
+	/**
+	 * Reads lines of text file.
+	 * 
+	 * @param file
+	 *         text file
+	 * @return lines of file
+	 * @throws IOException
+	 *          on reading error
+	 */
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+}
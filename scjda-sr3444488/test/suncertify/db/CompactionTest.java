@@ -0,0 +1,252 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks {@link Data#compact()} with both storage backends: valid records from
+ * the end of file are moved into the free slots with the least numbers,
+ * deleted records at the end of file are cut off, the returned remap gives the
+ * new number of each moved record, and compacted file is opened again with the
+ * same records.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class CompactionTest {
+	/**
+	 * owner of the records created by the tests
+	 */
+	private final static String OWNER = "12345678";
+
+	/**
+	 * folder of database files, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Records from the end of file are moved into the slots of deleted records,
+	 * the least free slot first, and the file is cut off by the moved slots.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test
+	public void movesLastRecordsIntoFreeSlots() throws Exception {
+		for (StorageType type : StorageType.values()) {
+			File file = DatabaseFiles.copyTemplate(folder);
+			Data data = open(file, type);
+			try {
+				long slot = slotLength(data, file);
+				long count = count(data);
+				String[] last = data.readRecord(count - 1).clone();
+				String[] beforeLast = data.readRecord(count - 2).clone();
+				delete(data, 3);
+				delete(data, 1);
+				long length = file.length();
+
+				Map<Long, Long> expected = new LinkedHashMap<Long, Long>();
+				expected.put(count - 1, 1L);
+				expected.put(count - 2, 3L);
+				assertEquals(type.name(), expected, data.compact());
+				assertArrayEquals(type.name(), last, data.readRecord(1));
+				assertArrayEquals(type.name(), beforeLast, data.readRecord(3));
+				assertNotFound(data, count - 1);
+				assertNotFound(data, count - 2);
+				assertEquals(type.name(), length - 2 * slot, file.length());
+				assertEquals(type.name(), count - 2, count(data));
+				assertEquals(type.name(), count - 2, create(data));
+			} finally {
+				data.finalize();
+			}
+		}
+	}
+
+	/**
+	 * Deleted records at the end of file are cut off without moving any record,
+	 * and compacted file keeps the same records when it is opened again.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test
+	public void shrinksDeletedTail() throws Exception {
+		for (StorageType type : StorageType.values()) {
+			File file = DatabaseFiles.copyTemplate(folder);
+			Data data = open(file, type);
+			long count;
+			String[][] kept;
+			try {
+				long slot = slotLength(data, file);
+				count = count(data);
+				delete(data, count - 1);
+				delete(data, count - 2);
+				kept = new String[(int) count - 2][];
+				for (int i = 0; i < kept.length; i++) {
+					kept[i] = data.readRecord(i).clone();
+				}
+				long length = file.length();
+				assertTrue(type.name(), data.compact().isEmpty());
+				assertEquals(type.name(), length - 2 * slot, file.length());
+				assertTrue(type.name(), data.compact().isEmpty());
+				assertEquals(type.name(), length - 2 * slot, file.length());
+			} finally {
+				data.finalize();
+			}
+			data = open(file, type);
+			try {
+				for (int i = 0; i < kept.length; i++) {
+					assertArrayEquals(type.name(), kept[i], data.readRecord(i));
+				}
+				assertNotFound(data, count - 2);
+				assertEquals(type.name(), count - 2, create(data));
+			} finally {
+				data.finalize();
+			}
+		}
+	}
+
+	/**
+	 * Compaction is refused while any record is locked, and nothing is moved.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test
+	public void refusesWhileLocked() throws Exception {
+		File file = DatabaseFiles.copyTemplate(folder);
+		Data data = open(file, StorageType.FILE);
+		try {
+			delete(data, 1);
+			long length = file.length();
+			long cookie = data.lockRecord(2);
+			try {
+				data.compact();
+				fail("compaction with locked record");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			assertEquals(length, file.length());
+			assertNotFound(data, 1);
+			data.unlock(2, cookie);
+		} finally {
+			data.finalize();
+		}
+	}
+
+	/**
+	 * Opens database file with specified storage backend.
+	 * 
+	 * @param file
+	 *         database file
+	 * @param type
+	 *         storage backend
+	 * @return opened database
+	 * @throws IOException
+	 *          on opening error
+	 */
+	private static Data open(File file, StorageType type) throws IOException {
+		DataSettings settings = new DataSettings();
+		settings.setStorageType(type);
+		return new Data(file.getPath(), settings);
+	}
+
+	/**
+	 * Returns length of record slot in file, measured by creating and deleting
+	 * a record at the end of file and compacting the file back.
+	 * 
+	 * @param data
+	 *         database
+	 * @param file
+	 *         database file
+	 * @return length of record slot in bytes
+	 * @throws Exception
+	 *          on database error
+	 */
+	private static long slotLength(Data data, File file) throws Exception {
+		long length = file.length();
+		long recNo = create(data);
+		long slot = file.length() - length;
+		delete(data, recNo);
+		data.compact();
+		assertEquals(length, file.length());
+		return slot;
+	}
+
+	/**
+	 * Returns amount of valid records.
+	 * 
+	 * @param data
+	 *         database
+	 * @return amount of valid records
+	 */
+	private static long count(Data data) {
+		return data.findByCriteria(new String[DBAccess.FIELD_LENGTH.length]).length;
+	}
+
+	/**
+	 * Creates record.
+	 * 
+	 * @param data
+	 *         database
+	 * @return number of created record
+	 * @throws DuplicateKeyException
+	 *          never, records have no keys
+	 */
+	private static long create(Data data) throws DuplicateKeyException {
+		String[] fields = new String[DBAccess.FIELD_LENGTH.length];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = "";
+		}
+		fields[0] = "Compacted";
+		fields[ExtendedDBAccess.OWNER_FIELD] = OWNER;
+		return data.createRecord(fields);
+	}
+
+	/**
+	 * Deletes record.
+	 * 
+	 * @param data
+	 *         database
+	 * @param recNo
+	 *         record number
+	 * @throws RecordNotFoundException
+	 *          if record does not exist
+	 * @throws SecurityException
+	 *          never, record is locked by the same client
+	 */
+	private static void delete(Data data, long recNo)
+			throws RecordNotFoundException, SecurityException {
+		long cookie = data.lockRecord(recNo);
+		data.deleteRecord(recNo, cookie);
+		data.unlock(recNo, cookie);
+	}
+
+	/**
+	 * Checks that record does not exist.
+	 * 
+	 * @param data
+	 *         database
+	 * @param recNo
+	 *         record number
+	 */
+	private static void assertNotFound(Data data, long recNo) {
+		try {
+			data.readRecord(recNo);
+			fail("record " + recNo + " exists");
+		} catch (RecordNotFoundException e) {
+			// expected
+		}
+	}
+}
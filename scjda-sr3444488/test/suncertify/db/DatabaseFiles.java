@@ -0,0 +1,57 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Class <code>DatabaseFiles</code> gives tests their own copies of the
+ * template database file, so tests can change records freely. Path to the
+ * template is given by system property <code>test.database</code>
+ * (db-2x3.db by default).
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public final class DatabaseFiles {
+
+	/**
+	 * Private constructor, class has only static members.
+	 */
+	private DatabaseFiles() {
+	}
+
+	/**
+	 * Copies the template database file into the temporary folder.
+	 * 
+	 * @param folder
+	 *         temporary folder of test
+	 * @return copy of database file
+	 * @throws IOException
+	 *          on reading or writing error
+	 */
+	public static File copyTemplate(TemporaryFolder folder) throws IOException {
+		File template = new File(System.getProperty("test.database", "db-2x3.db"));
+		File file = folder.newFile();
+		InputStream in = new FileInputStream(template);
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					out.write(buf, 0, n);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		return file;
+	}
+}
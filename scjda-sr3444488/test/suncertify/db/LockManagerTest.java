@@ -0,0 +1,255 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+/**
+ * Checks that {@link LockManager} hands unlocked records to waiting threads in
+ * order of waiting in the fair mode, that timed locking gives up in time, and
+ * that the thread which stops waiting by timeout or interrupt leaves no trace
+ * in the lock table, so the record is still usable.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class LockManagerTest {
+	/**
+	 * number of the locked record
+	 */
+	private final static long RECORD = 5;
+	/**
+	 * amount of threads waiting for the record
+	 */
+	private final static int WAITERS = 8;
+	/**
+	 * time to wait in milliseconds by the timed locking that must give up
+	 */
+	private final static long TIMEOUT = 100;
+	/**
+	 * maximum time in milliseconds a thread takes to start waiting
+	 */
+	private final static long START_TIME = 5000;
+
+	/**
+	 * In the fair mode unlocked record is handed to the first waiting thread,
+	 * other threads can not take it in between, and the old descriptor does
+	 * not unlock it.
+	 * 
+	 * @throws InterruptedException
+	 *          if test thread is interrupted
+	 */
+	@Test(timeout = 20000)
+	public void fairHandsInOrderOfWaiting() throws InterruptedException {
+		final LockManager locks = new LockManager(true);
+		final List<Integer> order = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch checked = new CountDownLatch(1);
+		long cookie = locks.lock(RECORD);
+		Thread[] threads = new Thread[WAITERS];
+		for (int i = 0; i < WAITERS; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				/**
+				 * Overrides method run of java.lang.Thread to lock the record
+				 */
+				public void run() {
+					long handed = locks.lock(RECORD);
+					order.add(index);
+					try {
+						if (index == 0)
+							checked.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					} finally {
+						locks.unlock(RECORD, handed);
+					}
+				}
+			};
+			threads[i].start();
+			awaitWaiting(threads[i]);
+		}
+		assertTrue(locks.unlock(RECORD, cookie));
+		assertEquals(0, locks.tryLock(RECORD));
+		assertFalse(locks.unlock(RECORD, cookie));
+		checked.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < WAITERS; i++) {
+			expected.add(i);
+		}
+		assertEquals(expected, order);
+		assertEquals(0, locks.size());
+	}
+
+	/**
+	 * Timed locking of locked record returns <code>0</code> after the timeout,
+	 * and the record is unlocked as usual then.
+	 */
+	@Test(timeout = 20000)
+	public void timedLockGivesUp() {
+		for (boolean fair : new boolean[] { false, true }) {
+			LockManager locks = new LockManager(fair);
+			long cookie = locks.lock(RECORD);
+			assertEquals(0, locks.tryLock(RECORD));
+			long start = System.nanoTime();
+			assertEquals(0, locks.lock(RECORD, TIMEOUT));
+			long waited = (System.nanoTime() - start) / 1000000;
+			assertTrue("gave up after " + waited + " ms", waited >= TIMEOUT - 10);
+			assertTrue(locks.unlock(RECORD, cookie));
+			assertEquals("fair " + fair, 0, locks.size());
+			assertTrue(locks.tryLock(RECORD) != 0);
+		}
+	}
+
+	/**
+	 * Timed locking gets the record unlocked before the timeout.
+	 * 
+	 * @throws InterruptedException
+	 *          if test thread is interrupted
+	 */
+	@Test(timeout = 20000)
+	public void timedLockGetsUnlockedRecord() throws InterruptedException {
+		for (boolean fair : new boolean[] { false, true }) {
+			final LockManager locks = new LockManager(fair);
+			final long[] handed = new long[1];
+			long cookie = locks.lock(RECORD);
+			Thread t = new Thread() {
+				/**
+				 * Overrides method run of java.lang.Thread to lock the record
+				 */
+				public void run() {
+					handed[0] = locks.lock(RECORD, START_TIME * 2);
+				}
+			};
+			t.start();
+			awaitWaiting(t);
+			assertTrue(locks.unlock(RECORD, cookie));
+			t.join();
+			assertTrue("fair " + fair, handed[0] != 0);
+			assertTrue(locks.isLockedWith(RECORD, handed[0]));
+			assertTrue(locks.unlock(RECORD, handed[0]));
+			assertEquals(0, locks.size());
+		}
+	}
+
+	/**
+	 * Interrupted waiting thread gets runtime exception caused by interrupt
+	 * and leaves the queue, so the record is unlocked and can be locked again.
+	 * 
+	 * @throws InterruptedException
+	 *          if test thread is interrupted
+	 */
+	@Test(timeout = 20000)
+	public void interruptedWaiterLeavesQueue() throws InterruptedException {
+		for (boolean fair : new boolean[] { false, true }) {
+			for (final boolean timed : new boolean[] { false, true }) {
+				final LockManager locks = new LockManager(fair);
+				final Throwable[] thrown = new Throwable[1];
+				long cookie = locks.lock(RECORD);
+				Thread t = new Thread() {
+					/**
+					 * Overrides method run of java.lang.Thread to lock the record
+					 */
+					public void run() {
+						try {
+							if (timed)
+								locks.lock(RECORD, START_TIME * 2);
+							else
+								locks.lock(RECORD);
+						} catch (RuntimeException e) {
+							thrown[0] = e;
+						}
+					}
+				};
+				t.start();
+				awaitWaiting(t);
+				t.interrupt();
+				t.join();
+				String mode = "fair " + fair + ", timed " + timed;
+				assertNotNull(mode, thrown[0]);
+				assertTrue(mode, thrown[0].getCause() instanceof InterruptedException);
+				assertTrue(mode, locks.unlock(RECORD, cookie));
+				assertEquals(mode, 0, locks.size());
+				long again = locks.tryLock(RECORD);
+				assertTrue(mode, again != 0);
+				assertTrue(mode, locks.unlock(RECORD, again));
+			}
+		}
+	}
+
+	/**
+	 * Listener waits for the record without thread and gets it when the record
+	 * is unlocked, cancelled listener gets nothing.
+	 */
+	@Test(timeout = 20000)
+	public void listenerGetsUnlockedRecord() {
+		for (boolean fair : new boolean[] { false, true }) {
+			LockManager locks = new LockManager(fair);
+			RecordingListener first = new RecordingListener();
+			RecordingListener cancelled = new RecordingListener();
+			long cookie = locks.lock(RECORD, first);
+			assertTrue(cookie != 0);
+			assertEquals(0, first.cookie);
+			assertEquals(0, locks.lock(RECORD, cancelled));
+			assertTrue(locks.cancel(RECORD, cancelled));
+			assertFalse(locks.cancel(RECORD, cancelled));
+			RecordingListener second = new RecordingListener();
+			assertEquals(0, locks.lock(RECORD, second));
+			assertTrue(locks.unlock(RECORD, cookie));
+			assertTrue("fair " + fair, second.cookie != 0);
+			assertTrue(locks.isLockedWith(RECORD, second.cookie));
+			assertFalse(locks.cancel(RECORD, second));
+			assertTrue(locks.unlock(RECORD, second.cookie));
+			assertEquals(0, cancelled.cookie);
+			assertEquals(0, locks.size());
+		}
+	}
+
+	/**
+	 * Waits until thread starts waiting for the record.
+	 * 
+	 * @param t
+	 *         thread that locks the record
+	 * @throws InterruptedException
+	 *          if test thread is interrupted
+	 */
+	private static void awaitWaiting(Thread t) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + START_TIME;
+		while (t.getState() != Thread.State.WAITING
+				&& t.getState() != Thread.State.TIMED_WAITING) {
+			if (System.currentTimeMillis() > deadline)
+				fail(t.getName() + " does not wait, state " + t.getState());
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Listener that keeps the descriptor of handed record.
+	 */
+	private static class RecordingListener implements LockListener {
+		/**
+		 * locking descriptor of handed record, <code>0</code> until the record
+		 * is handed
+		 */
+		private long cookie;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void locked(long recNo, long cookie) {
+			assertEquals(RECORD, recNo);
+			this.cookie = cookie;
+		}
+	}
+}
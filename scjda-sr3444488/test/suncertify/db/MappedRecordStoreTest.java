@@ -0,0 +1,305 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks {@link MappedRecordStore} at the bounds of its mapped segments: bytes
+ * of the last slot of one segment and the first slot of the next one are read
+ * and written in place, access across the bound goes through the channel, and
+ * records appended to the file are accessed the same way after the mapping is
+ * renewed or the end of file is cut off. Each byte of test file is derived
+ * from its position, so any read region is checked without keeping the
+ * written data.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class MappedRecordStoreTest {
+	/**
+	 * position of first record in test file
+	 */
+	private final static long DATA_OFFSET = 70;
+	/**
+	 * length of record including "deleted flag"
+	 */
+	private final static int SLOT_LENGTH = RecordStore.record_length + 1;
+	/**
+	 * length of mapped segment, the same as in the store
+	 */
+	private final static long SEGMENT_LENGTH = (1L << 16) * SLOT_LENGTH;
+	/**
+	 * amount of appended records after which the store renews mapping
+	 */
+	private final static int REMAP_RECORDS = 1 << 10;
+
+	/**
+	 * folder of test files, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Slots on both sides of the segment bound and bytes across the bound are
+	 * read and written, and the changes reach the file.
+	 * 
+	 * @throws IOException
+	 *          on file error
+	 */
+	@Test
+	public void accessesBothSidesOfSegmentBound() throws IOException {
+		long bound = bound();
+		File file = createFile(bound + 4 * SLOT_LENGTH);
+		MappedRecordStore store = new MappedRecordStore(file, DATA_OFFSET,
+				SLOT_LENGTH);
+		try {
+			assertEquals(file.length(), store.length());
+			assertRead(store, 0, (int) DATA_OFFSET);
+			assertRead(store, bound - SLOT_LENGTH, SLOT_LENGTH);
+			assertRead(store, bound, SLOT_LENGTH);
+			assertRead(store, bound - 3, 6);
+			assertEquals(pattern(bound - 1, 1)[0], store.read(bound - 1));
+			assertEquals(pattern(bound, 1)[0], store.read(bound));
+
+			store.write(bound - SLOT_LENGTH, changed(bound - SLOT_LENGTH,
+					SLOT_LENGTH - 3));
+			store.write(bound - 3, changed(bound - 3, 6));
+			store.write(bound + 3, changed(bound + 3, SLOT_LENGTH - 3));
+			store.write(bound + SLOT_LENGTH, (byte) 7);
+			byte[] buf = new byte[2 * SLOT_LENGTH];
+			store.read(bound - SLOT_LENGTH, buf);
+			assertArrayEquals(changed(bound - SLOT_LENGTH, 2 * SLOT_LENGTH), buf);
+			assertEquals(7, store.read(bound + SLOT_LENGTH));
+		} finally {
+			store.close();
+		}
+		assertArrayEquals(changed(bound - SLOT_LENGTH, 2 * SLOT_LENGTH),
+				readFile(file, bound - SLOT_LENGTH, 2 * SLOT_LENGTH));
+		assertEquals(7, readFile(file, bound + SLOT_LENGTH, 1)[0]);
+	}
+
+	/**
+	 * Records appended one by one and by one large write, which moves the end
+	 * of file into the next segment, are read back after the mapping is
+	 * renewed, and the records mapped before keep their bytes.
+	 * 
+	 * @throws IOException
+	 *          on file error
+	 */
+	@Test
+	public void remapsAppendedRecords() throws IOException {
+		long end = DATA_OFFSET + 2 * SLOT_LENGTH;
+		File file = createFile(end);
+		MappedRecordStore store = new MappedRecordStore(file, DATA_OFFSET,
+				SLOT_LENGTH);
+		long bound = bound();
+		try {
+			for (int i = 0; i <= REMAP_RECORDS; i++) {
+				store.write(end, pattern(end, SLOT_LENGTH));
+				end += SLOT_LENGTH;
+				assertEquals(end, store.length());
+			}
+			for (long pos = DATA_OFFSET; pos < end; pos += SLOT_LENGTH) {
+				assertRead(store, pos, SLOT_LENGTH);
+			}
+			long marked = end - SLOT_LENGTH;
+			store.write(marked, (byte) 7);
+			assertEquals(7, store.read(marked));
+
+			int appended = (int) (bound - end) + 2 * SLOT_LENGTH;
+			store.write(end, pattern(end, appended));
+			end += appended;
+			assertEquals(end, store.length());
+			assertRead(store, DATA_OFFSET, SLOT_LENGTH);
+			assertRead(store, bound - SLOT_LENGTH, SLOT_LENGTH);
+			assertRead(store, bound, SLOT_LENGTH);
+			assertRead(store, bound - 3, 6);
+			assertEquals(7, store.read(marked));
+			store.write(bound, changed(bound, SLOT_LENGTH));
+		} finally {
+			store.close();
+		}
+		assertEquals(end, file.length());
+		assertArrayEquals(changed(bound, SLOT_LENGTH), readFile(file, bound,
+				SLOT_LENGTH));
+	}
+
+	/**
+	 * End of file is cut off inside the first segment and at the segment bound,
+	 * bytes beyond the new end are not read anymore, and records appended
+	 * after cutting are read back.
+	 * 
+	 * @throws IOException
+	 *          on file error
+	 */
+	@Test
+	public void truncatesMappedSegments() throws IOException {
+		long bound = bound();
+		File file = createFile(bound + 4 * SLOT_LENGTH);
+		MappedRecordStore store = new MappedRecordStore(file, DATA_OFFSET,
+				SLOT_LENGTH);
+		try {
+			store.truncate(bound);
+			assertEquals(bound, store.length());
+			assertEquals(bound, file.length());
+			assertRead(store, bound - SLOT_LENGTH, SLOT_LENGTH);
+			assertNotRead(store, bound);
+
+			long end = bound - 3 * SLOT_LENGTH;
+			store.truncate(end);
+			assertEquals(end, store.length());
+			assertEquals(end, file.length());
+			assertRead(store, end - SLOT_LENGTH, SLOT_LENGTH);
+			assertNotRead(store, end);
+
+			store.write(end, changed(end, SLOT_LENGTH));
+			assertEquals(end + SLOT_LENGTH, store.length());
+			byte[] buf = new byte[SLOT_LENGTH];
+			store.read(end, buf);
+			assertArrayEquals(changed(end, SLOT_LENGTH), buf);
+		} finally {
+			store.close();
+		}
+		assertEquals(bound - 2 * SLOT_LENGTH, file.length());
+	}
+
+	/**
+	 * Returns position of the first byte of the second segment.
+	 * 
+	 * @return position of segment bound in file
+	 */
+	private static long bound() {
+		return DATA_OFFSET + SEGMENT_LENGTH;
+	}
+
+	/**
+	 * Creates test file filled by the pattern.
+	 * 
+	 * @param length
+	 *         length of file
+	 * @return test file
+	 * @throws IOException
+	 *          on file writing error
+	 */
+	private File createFile(long length) throws IOException {
+		File file = folder.newFile();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			int chunk = 1 << 20;
+			for (long pos = 0; pos < length; pos += chunk) {
+				raf.write(pattern(pos, (int) Math.min(chunk, length - pos)));
+			}
+		} finally {
+			raf.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Reads bytes of file by other file object than the store.
+	 * 
+	 * @param file
+	 *         test file
+	 * @param pos
+	 *         position of first byte
+	 * @param len
+	 *         amount of bytes
+	 * @return bytes of file
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	private static byte[] readFile(File file, long pos, int len)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			byte[] buf = new byte[len];
+			raf.seek(pos);
+			raf.readFully(buf);
+			return buf;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Checks that store reads the pattern at the given position.
+	 * 
+	 * @param store
+	 *         checked store
+	 * @param pos
+	 *         position of first byte
+	 * @param len
+	 *         amount of bytes
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	private static void assertRead(MappedRecordStore store, long pos, int len)
+			throws IOException {
+		byte[] buf = new byte[len];
+		store.read(pos, buf);
+		assertArrayEquals("at " + pos, pattern(pos, len), buf);
+	}
+
+	/**
+	 * Checks that store does not read record beyond the end of file.
+	 * 
+	 * @param store
+	 *         checked store
+	 * @param pos
+	 *         position of record
+	 * @throws IOException
+	 *          on file reading error
+	 */
+	private static void assertNotRead(MappedRecordStore store, long pos)
+			throws IOException {
+		try {
+			store.read(pos, new byte[SLOT_LENGTH]);
+			fail("record at " + pos + " is read beyond the end of file");
+		} catch (EOFException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Returns bytes of the pattern: each byte is derived from its position.
+	 * 
+	 * @param pos
+	 *         position of first byte
+	 * @param len
+	 *         amount of bytes
+	 * @return bytes of pattern
+	 */
+	private static byte[] pattern(long pos, int len) {
+		byte[] buf = new byte[len];
+		for (int i = 0; i < len; i++) {
+			buf[i] = (byte) ((pos + i) % 251);
+		}
+		return buf;
+	}
+
+	/**
+	 * Returns bytes that differ from the pattern at every position.
+	 * 
+	 * @param pos
+	 *         position of first byte
+	 * @param len
+	 *         amount of bytes
+	 * @return changed bytes
+	 */
+	private static byte[] changed(long pos, int len) {
+		byte[] buf = pattern(pos, len);
+		for (int i = 0; i < len; i++) {
+			buf[i] ^= 0x55;
+		}
+		return buf;
+	}
+}
@@ -0,0 +1,184 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that {@link Data#updateOwners(long[], String[], String[])} books
+ * records whose owners are the expected ones and reports conflicts, missing
+ * records and records locked by other clients without waiting for them, each
+ * record independently of the others in the batch.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class OwnerUpdatesTest {
+	/**
+	 * owner written by the tests
+	 */
+	private final static String OWNER = "12345678";
+
+	/**
+	 * folder of database file, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * database of the test
+	 */
+	private Data data;
+
+	/**
+	 * Opens copy of the template database file.
+	 * 
+	 * @throws IOException
+	 *          on copying or opening error
+	 */
+	@Before
+	public void setUp() throws IOException {
+		data = new Data(DatabaseFiles.copyTemplate(folder).getPath());
+	}
+
+	/**
+	 * Owner is replaced if it is the expected one or if any owner is accepted,
+	 * otherwise the record is not changed.
+	 * 
+	 * @throws RecordNotFoundException
+	 *          never, records exist
+	 */
+	@Test
+	public void replacesExpectedOwnerOnly() throws RecordNotFoundException {
+		String owner = owner(0);
+		assertArrayEquals(new int[] { ExtendedDBAccess.OWNER_UPDATED }, data
+				.updateOwners(new long[] { 0 }, new String[] { owner },
+						new String[] { OWNER }));
+		assertEquals(OWNER, owner(0));
+		assertArrayEquals(new int[] { ExtendedDBAccess.OWNER_CONFLICT }, data
+				.updateOwners(new long[] { 0 }, new String[] { owner + "9" },
+						new String[] { "" }));
+		assertEquals(OWNER, owner(0));
+		assertArrayEquals(new int[] { ExtendedDBAccess.OWNER_UPDATED }, data
+				.updateOwners(new long[] { 0 }, new String[] { null },
+						new String[] { "" }));
+		assertEquals("", owner(0));
+	}
+
+	/**
+	 * Deleted records and records out of the database are not found.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test
+	public void missingRecordsAreNotFound() throws Exception {
+		long cookie = data.lockRecord(1);
+		data.deleteRecord(1, cookie);
+		data.unlock(1, cookie);
+		int[] result = data.updateOwners(new long[] { 1, -1, 100000 },
+				new String[3], new String[] { OWNER, OWNER, OWNER });
+		int notFound = ExtendedDBAccess.OWNER_NOT_FOUND;
+		assertArrayEquals(new int[] { notFound, notFound, notFound }, result);
+	}
+
+	/**
+	 * Record locked by other client is not waited for and is not changed, its
+	 * lock stays usable.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test(timeout = 10000)
+	public void lockedRecordIsBusy() throws Exception {
+		String owner = owner(2);
+		long cookie = data.lockRecord(2);
+		assertArrayEquals(new int[] { ExtendedDBAccess.OWNER_BUSY }, data
+				.updateOwners(new long[] { 2 }, new String[] { null },
+						new String[] { OWNER }));
+		assertEquals(owner, owner(2));
+		data.unlock(2, cookie);
+		assertArrayEquals(new int[] { ExtendedDBAccess.OWNER_UPDATED }, data
+				.updateOwners(new long[] { 2 }, new String[] { null },
+						new String[] { OWNER }));
+	}
+
+	/**
+	 * Each record of the batch gets its own result.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test(timeout = 10000)
+	public void mixedBatch() throws Exception {
+		long deleted = data.lockRecord(3);
+		data.deleteRecord(3, deleted);
+		data.unlock(3, deleted);
+		long cookie = data.lockRecord(2);
+		int[] result = data.updateOwners(new long[] { 0, 1, 2, 3 },
+				new String[] { owner(0), owner(1) + "9", null, null }, new String[] {
+						OWNER, OWNER, OWNER, OWNER });
+		assertArrayEquals(new int[] { ExtendedDBAccess.OWNER_UPDATED,
+				ExtendedDBAccess.OWNER_CONFLICT, ExtendedDBAccess.OWNER_BUSY,
+				ExtendedDBAccess.OWNER_NOT_FOUND }, result);
+		assertEquals(OWNER, owner(0));
+		data.unlock(2, cookie);
+	}
+
+	/**
+	 * Client that waits for locks gets the record when other client unlocks
+	 * it.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test(timeout = 10000)
+	public void waitingUpdateGetsUnlockedRecord() throws Exception {
+		final long cookie = data.lockRecord(2);
+		Thread unlocker = new Thread() {
+			/**
+			 * Overrides method run of java.lang.Thread to unlock the record later
+			 */
+			public void run() {
+				try {
+					Thread.sleep(100);
+					data.unlock(2, cookie);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		unlocker.start();
+		assertArrayEquals(new int[] { ExtendedDBAccess.OWNER_UPDATED },
+				OwnerUpdates.updateOwners(data, new long[] { 2 },
+						new String[] { null }, new String[] { OWNER }, true));
+		unlocker.join();
+		assertEquals(OWNER, owner(2));
+	}
+
+	/**
+	 * Batch with different amounts of records and owners is refused.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesUnequalAmounts() {
+		data.updateOwners(new long[] { 0, 1 }, new String[1], new String[2]);
+	}
+
+	/**
+	 * Returns trimmed owner of record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return owner of record
+	 * @throws RecordNotFoundException
+	 *          if record does not exist
+	 */
+	private String owner(long recNo) throws RecordNotFoundException {
+		return data.readRecord(recNo)[ExtendedDBAccess.OWNER_FIELD].trim();
+	}
+}
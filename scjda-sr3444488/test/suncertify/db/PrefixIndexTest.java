@@ -0,0 +1,100 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Checks that {@link PrefixIndex} finds exactly the records which field value
+ * begins with the prefix: the values sorted right before and right after the
+ * run of matching values are not found, and so are not the values the prefix
+ * begins with.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class PrefixIndexTest {
+	/**
+	 * Values that sort next to the prefix but do not begin with it bound the
+	 * found records on both sides.
+	 */
+	@Test
+	public void findsOnlyValuesWithPrefix() {
+		PrefixIndex index = new PrefixIndex();
+		index.add("Pal", 0);
+		index.add("Palace", 1);
+		index.add("Palace", 2);
+		index.add("Palace Hotel", 3);
+		index.add("Palaces", 4);
+		index.add("Palb", 5);
+		index.add("Palac", 6);
+		index.add("palace", 7);
+		index.add("Palace\u0000", 8);
+
+		assertFound(index, "Palace", 1, 2, 3, 4, 8);
+		assertFound(index, "Palace ", 3);
+		assertFound(index, "Pala", 1, 2, 3, 4, 6, 8);
+		assertFound(index, "Pal", 0, 1, 2, 3, 4, 5, 6, 8);
+		assertFound(index, "Palaces Hotel");
+		assertFound(index, "Palad");
+		assertFound(index, "", 0, 1, 2, 3, 4, 5, 6, 7, 8);
+	}
+
+	/**
+	 * Prefix that sorts after all the values or before all of them finds
+	 * nothing, and the empty index finds nothing.
+	 */
+	@Test
+	public void findsNothingOutsideValues() {
+		PrefixIndex index = new PrefixIndex();
+		assertFound(index, "");
+		assertFound(index, "a");
+		index.add("b", 0);
+		index.add("c", 1);
+		assertFound(index, "a");
+		assertFound(index, "d");
+		assertFound(index, "\uFFFF");
+		assertFound(index, "bb");
+	}
+
+	/**
+	 * Removed record is not found, value without records leaves the index, and
+	 * removing of unknown record changes nothing.
+	 */
+	@Test
+	public void removesRecords() {
+		PrefixIndex index = new PrefixIndex();
+		index.add("Palace", 1);
+		index.add("Palace", 2);
+		index.add("Palaces", 3);
+		index.remove("Palace", 1);
+		index.remove("Palace", 9);
+		index.remove("Castle", 2);
+		assertFound(index, "Palace", 2, 3);
+		index.remove("Palace", 2);
+		assertFound(index, "Palace", 3);
+		index.clear();
+		assertFound(index, "");
+	}
+
+	/**
+	 * Checks that index finds the given records by prefix, and that the count
+	 * of records agrees.
+	 * 
+	 * @param index
+	 *         checked index
+	 * @param prefix
+	 *         beginning of field value
+	 * @param expected
+	 *         numbers of records that must be found
+	 */
+	private static void assertFound(PrefixIndex index, String prefix,
+			long... expected) {
+		long[] found = index.find(prefix);
+		Arrays.sort(found);
+		assertArrayEquals(prefix, expected, found);
+		assertEquals(prefix, expected.length, index.count(prefix));
+	}
+}
@@ -0,0 +1,100 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link RecordCache}: each segment evicts its least recently used
+ * record without touching other segments, and cached fields are copied both
+ * when they are put and when they are got, so callers never share the array
+ * with the cache.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class RecordCacheTest {
+	/**
+	 * amount of segments of cache, records which numbers differ by this amount
+	 * share segment
+	 */
+	private final static int SEGMENTS = 16;
+
+	/**
+	 * Full segment evicts the record that was not read or put for the longest
+	 * time, and records of other segments stay cached.
+	 */
+	@Test
+	public void evictsLeastRecentlyUsedOfSegment() {
+		RecordCache cache = new RecordCache(2 * SEGMENTS);
+		cache.put(0, record("a"));
+		cache.put(SEGMENTS, record("b"));
+		cache.put(1, record("c"));
+		cache.put(SEGMENTS + 1, record("d"));
+		assertArrayEquals(record("a"), cache.get(0));
+
+		cache.put(2 * SEGMENTS, record("e"));
+		assertArrayEquals(record("a"), cache.get(0));
+		assertNull(cache.get(SEGMENTS));
+		assertArrayEquals(record("e"), cache.get(2 * SEGMENTS));
+		assertArrayEquals(record("c"), cache.get(1));
+		assertArrayEquals(record("d"), cache.get(SEGMENTS + 1));
+
+		cache.put(2 * SEGMENTS, record("f"));
+		cache.put(3 * SEGMENTS, record("g"));
+		assertNull(cache.get(0));
+		assertArrayEquals(record("f"), cache.get(2 * SEGMENTS));
+		assertArrayEquals(record("g"), cache.get(3 * SEGMENTS));
+	}
+
+	/**
+	 * Changes of the put array and of the got array do not change the cached
+	 * fields.
+	 */
+	@Test
+	public void copiesFields() {
+		RecordCache cache = new RecordCache(SEGMENTS);
+		String[] put = record("a");
+		cache.put(5, put);
+		put[0] = "changed";
+		String[] got = cache.get(5);
+		assertArrayEquals(record("a"), got);
+		got[0] = "changed";
+		assertArrayEquals(record("a"), cache.get(5));
+	}
+
+	/**
+	 * Reads of cached records are counted as hits, other reads as misses, and
+	 * invalidated or cleared records are not found.
+	 */
+	@Test
+	public void countsHitsAndMisses() {
+		RecordCache cache = new RecordCache(SEGMENTS);
+		assertNull(cache.get(3));
+		cache.put(3, record("a"));
+		cache.put(4, record("b"));
+		cache.get(3);
+		cache.get(3);
+		cache.invalidate(3);
+		assertNull(cache.get(3));
+		assertArrayEquals(record("b"), cache.get(4));
+		cache.clear();
+		assertNull(cache.get(4));
+		assertEquals(3, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+	}
+
+	/**
+	 * Returns fields of record with the given name.
+	 * 
+	 * @param name
+	 *         first field of record
+	 * @return fields of record
+	 */
+	private static String[] record(String name) {
+		return new String[] { name, "Smallville", "2", "Y", "$150.00",
+				"2005/07/27", "" };
+	}
+}
@@ -0,0 +1,248 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that {@link RecordCodec} decodes and matches records right in their
+ * bytes the same way as the first release did with decoded strings: each field
+ * was decoded as US-ASCII and trimmed by {@link String#trim()}, and record was
+ * accepted if each trimmed field started with the criteria of this field by
+ * {@link String#startsWith(String)}.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class RecordCodecTest {
+	/**
+	 * bytes records are made of: letters, blanks and bytes that are not ASCII
+	 */
+	private final static byte[] ALPHABET = { 'a', 'b', 'A', ' ', ' ', '\t',
+			0x01, '?', (byte) 0xE9, (byte) 0xFF };
+	/**
+	 * characters criteria are made of besides the prefixes of fields
+	 */
+	private final static char[] CRITERIA_CHARS = { 'a', 'b', ' ', '\t', '?',
+			'\uFFFD', '\u00E9' };
+	/**
+	 * amount of random records checked
+	 */
+	private final static int RECORDS = 20000;
+
+	/**
+	 * Decoded fields are the same as the trimmed US-ASCII strings.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 *          never, US-ASCII is always supported
+	 */
+	@Test
+	public void decodesAsTrimmedAsciiStrings()
+			throws UnsupportedEncodingException {
+		Random random = new Random(1);
+		for (int i = 0; i < RECORDS; i++) {
+			byte[] record = randomRecord(random);
+			assertArrayEquals(decodeAsBefore(record), RecordCodec.decode(record));
+		}
+	}
+
+	/**
+	 * Records are accepted by the same criteria as before.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 *          never, US-ASCII is always supported
+	 */
+	@Test
+	public void matchesAsStartsWithOfTrimmedFields()
+			throws UnsupportedEncodingException {
+		Random random = new Random(2);
+		int accepted = 0;
+		for (int i = 0; i < RECORDS; i++) {
+			byte[] record = randomRecord(random);
+			String[] fields = decodeAsBefore(record);
+			String[] criteria = randomCriteria(random, fields);
+			boolean expected = matchesAsBefore(fields, criteria);
+			boolean actual = RecordCodec.matches(ByteBuffer.wrap(record), 0,
+					RecordCodec.encodeCriteria(criteria));
+			assertEquals("record " + Arrays.toString(fields) + ", criteria "
+					+ Arrays.toString(criteria), expected, actual);
+			if (expected)
+				accepted++;
+		}
+		assertTrue("too few records are accepted to compare: " + accepted,
+				accepted > RECORDS / 10);
+	}
+
+	/**
+	 * Record placed in a larger buffer is matched by its offset.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 *          never, US-ASCII is always supported
+	 */
+	@Test
+	public void matchesRecordAtOffset() throws UnsupportedEncodingException {
+		Random random = new Random(3);
+		byte[] record = randomRecord(random);
+		String[] fields = decodeAsBefore(record);
+		byte[] buffer = new byte[record.length + 10];
+		Arrays.fill(buffer, (byte) 'z');
+		System.arraycopy(record, 0, buffer, 7, record.length);
+		String[] criteria = new String[fields.length];
+		criteria[1] = fields[1];
+		criteria[4] = fields[4];
+		assertTrue(RecordCodec.matches(ByteBuffer.wrap(buffer), 7, RecordCodec
+				.encodeCriteria(criteria)));
+		assertArrayEquals(fields, RecordCodec.decode(buffer, 7));
+	}
+
+	/**
+	 * Missing or short criteria accept no record, empty criteria accept all.
+	 */
+	@Test
+	public void missingCriteriaAcceptNothing() {
+		byte[] record = new byte[RecordCodec.RECORD_LENGTH];
+		Arrays.fill(record, (byte) 'a');
+		ByteBuffer buf = ByteBuffer.wrap(record);
+		assertNull(RecordCodec.encodeCriteria(null));
+		assertNull(RecordCodec.encodeCriteria(new String[2]));
+		assertFalse(RecordCodec.matches(buf, 0, null));
+		byte[][] all = RecordCodec.encodeCriteria(new String[] { null, "", null,
+				"", null, "" });
+		assertTrue(RecordCodec.acceptsAll(all));
+		assertTrue(RecordCodec.matches(buf, 0, all));
+	}
+
+	/**
+	 * ASCII fields come back after encoding, longer fields are cut and other
+	 * characters are replaced.
+	 */
+	@Test
+	public void encodesFieldsBack() {
+		String[] fields = { "Buonarotti & Company", "Smallville",
+				"Air Conditioning, Painting", "10", "$40.00", "" };
+		byte[] record = new byte[RecordCodec.RECORD_LENGTH];
+		RecordCodec.encode(fields, record);
+		assertArrayEquals(fields, RecordCodec.decode(record));
+
+		char[] longName = new char[DBAccess.FIELD_LENGTH[0] + 5];
+		Arrays.fill(longName, 'n');
+		fields[0] = new String(longName);
+		fields[5] = "\u00E9t\u00E9";
+		RecordCodec.encode(fields, record);
+		String[] decoded = RecordCodec.decode(record);
+		assertEquals(fields[0].substring(0, DBAccess.FIELD_LENGTH[0]), decoded[0]);
+		assertEquals("?t?", decoded[5]);
+	}
+
+	/**
+	 * Generates record of random bytes of the alphabet. Each field has random
+	 * amount of blanks at its ends, some fields are blank.
+	 * 
+	 * @param random
+	 *         random numbers generator
+	 * @return bytes of record
+	 */
+	private static byte[] randomRecord(Random random) {
+		byte[] record = new byte[RecordCodec.RECORD_LENGTH];
+		int offset = 0;
+		for (int length : DBAccess.FIELD_LENGTH) {
+			int start = random.nextInt(3) == 0 ? random.nextInt(3) : 0;
+			int end = random.nextInt(8) == 0 ? start : start
+					+ random.nextInt(length - start + 1);
+			for (int i = 0; i < length; i++) {
+				byte b = ' ';
+				if (i >= start && i < end)
+					b = ALPHABET[random.nextInt(ALPHABET.length)];
+				record[offset + i] = b;
+			}
+			offset += length;
+		}
+		return record;
+	}
+
+	/**
+	 * Generates criteria for the record: missing or empty values, prefixes of
+	 * fields with and without extra characters, and random strings.
+	 * 
+	 * @param random
+	 *         random numbers generator
+	 * @param fields
+	 *         fields of record decoded as before
+	 * @return criteria
+	 */
+	private static String[] randomCriteria(Random random, String[] fields) {
+		String[] criteria = new String[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			String field = fields[i];
+			switch (random.nextInt(6)) {
+			case 0:
+				criteria[i] = null;
+				break;
+			case 1:
+				criteria[i] = "";
+				break;
+			case 2:
+			case 3:
+				criteria[i] = field.substring(0, random.nextInt(field.length() + 1));
+				break;
+			case 4:
+				criteria[i] = field.substring(0, random.nextInt(field.length() + 1))
+						+ CRITERIA_CHARS[random.nextInt(CRITERIA_CHARS.length)];
+				break;
+			default:
+				char[] chars = new char[1 + random.nextInt(3)];
+				for (int j = 0; j < chars.length; j++) {
+					chars[j] = CRITERIA_CHARS[random.nextInt(CRITERIA_CHARS.length)];
+				}
+				criteria[i] = new String(chars);
+			}
+		}
+		return criteria;
+	}
+
+	/**
+	 * Decodes record as the first release did.
+	 * 
+	 * @param record
+	 *         bytes of record
+	 * @return trimmed fields
+	 * @throws UnsupportedEncodingException
+	 *          never, US-ASCII is always supported
+	 */
+	private static String[] decodeAsBefore(byte[] record)
+			throws UnsupportedEncodingException {
+		String[] fields = new String[DBAccess.FIELD_LENGTH.length];
+		int offset = 0;
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = new String(record, offset, DBAccess.FIELD_LENGTH[i],
+					"US-ASCII").trim();
+			offset += DBAccess.FIELD_LENGTH[i];
+		}
+		return fields;
+	}
+
+	/**
+	 * Matches decoded record as the first release did.
+	 * 
+	 * @param fields
+	 *         trimmed fields of record
+	 * @param criteria
+	 *         filter criteria
+	 * @return <code>true</code> if record is accepted
+	 */
+	private static boolean matchesAsBefore(String[] fields, String[] criteria) {
+		for (int i = 0; i < fields.length; i++) {
+			if (criteria[i] != null && !fields[i].startsWith(criteria[i]))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,129 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks {@link RecordSlots}: free slots are taken in ascending order of their
+ * numbers however they were freed, valid records are counted and listed in
+ * ascending order, and the heap of free slots keeps its order after the slots
+ * beyond the cut off end of file are forgotten. Heap is compared with
+ * {@link PriorityQueue} fed by the same random slots.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class RecordSlotsTest {
+	/**
+	 * amount of slots of random checks, more than the initial capacity of heap
+	 */
+	private final static int SLOTS = 1000;
+
+	/**
+	 * Slots freed in random order, with some of them taken in between, are
+	 * taken in ascending order.
+	 */
+	@Test
+	public void takesLeastFreeSlotFirst() {
+		Random random = new Random(1);
+		RecordSlots slots = new RecordSlots();
+		PriorityQueue<Long> expected = new PriorityQueue<Long>();
+		for (long slot : shuffled(random)) {
+			slots.addFree(slot);
+			expected.add(slot);
+			if (random.nextInt(4) == 0)
+				assertEquals(expected.poll().longValue(), slots.pollFree());
+			assertEquals(expected.size(), slots.getFreeCount());
+		}
+		while (!expected.isEmpty()) {
+			assertEquals(expected.poll().longValue(), slots.pollFree());
+		}
+		assertEquals(-1, slots.pollFree());
+		assertEquals(0, slots.getFreeCount());
+	}
+
+	/**
+	 * Valid records are checked, counted and listed in ascending order, and
+	 * deleted record is not valid.
+	 */
+	@Test
+	public void keepsValidRecords() {
+		RecordSlots slots = new RecordSlots();
+		slots.addValid(70);
+		slots.addValid(3);
+		slots.addValid(3);
+		slots.addValid(0);
+		slots.addFree(1);
+		assertTrue(slots.isValid(3));
+		assertFalse(slots.isValid(1));
+		assertFalse(slots.isValid(-1));
+		assertFalse(slots.isValid(Long.MAX_VALUE));
+		assertEquals(3, slots.getValidCount());
+		assertArrayEquals(new long[] { 0, 3, 70 }, slots.getValid());
+
+		slots.addFree(3);
+		assertFalse(slots.isValid(3));
+		assertEquals(2, slots.getValidCount());
+		assertEquals(1, slots.pollFree());
+		assertEquals(3, slots.pollFree());
+		slots.addValid(3);
+		assertArrayEquals(new long[] { 0, 3, 70 }, slots.getValid());
+		slots.clear();
+		assertEquals(0, slots.getValidCount());
+		assertEquals(0, slots.getFreeCount());
+		assertFalse(slots.isValid(0));
+	}
+
+	/**
+	 * Free slots left after cutting off the end of file are still taken in
+	 * ascending order, and the forgotten slots are never taken.
+	 */
+	@Test
+	public void keepsHeapOrderAfterTruncate() {
+		Random random = new Random(2);
+		for (int round = 0; round < 20; round++) {
+			RecordSlots slots = new RecordSlots();
+			PriorityQueue<Long> expected = new PriorityQueue<Long>();
+			long count = random.nextInt(SLOTS);
+			for (long slot : shuffled(random)) {
+				if (random.nextBoolean()) {
+					slots.addFree(slot);
+					if (slot < count)
+						expected.add(slot);
+				}
+			}
+			slots.truncate(count);
+			assertEquals(expected.size(), slots.getFreeCount());
+			while (!expected.isEmpty()) {
+				assertEquals(expected.peek().longValue(), slots.peekFree());
+				assertEquals(expected.poll().longValue(), slots.pollFree());
+			}
+			assertEquals(-1, slots.pollFree());
+		}
+	}
+
+	/**
+	 * Returns numbers of all the slots in random order.
+	 * 
+	 * @param random
+	 *         source of order
+	 * @return shuffled numbers of slots
+	 */
+	private static List<Long> shuffled(Random random) {
+		List<Long> slots = new ArrayList<Long>();
+		for (long slot = 0; slot < SLOTS; slot++) {
+			slots.add(slot);
+		}
+		Collections.shuffle(slots, random);
+		return slots;
+	}
+}
@@ -0,0 +1,188 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks {@link Data#tryLockRecord(long)} and
+ * {@link Data#lockRecord(long, long)}: record locked by other client gives
+ * cookie <code>0</code> after the timeout, unlocked record is taken while
+ * waiting, and {@link DataAU} auto-unlocks timed locks like the other ones.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class TimedLockTest {
+	/**
+	 * auto-unlock timeout of database in milliseconds
+	 */
+	private final static long LOCK_TIMEOUT = 300;
+
+	/**
+	 * folder of database file, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * database of the test
+	 */
+	private Data data;
+
+	/**
+	 * Opens copy of the template database file.
+	 * 
+	 * @throws IOException
+	 *          on copying or opening error
+	 */
+	@Before
+	public void setUp() throws IOException {
+		data = new Data(DatabaseFiles.copyTemplate(folder).getPath());
+	}
+
+	/**
+	 * Closes database.
+	 */
+	@After
+	public void tearDown() {
+		data.finalize();
+	}
+
+	/**
+	 * Try of locked record returns <code>0</code> at once, try of unlocked
+	 * record locks it.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test(timeout = 10000)
+	public void tryLockDoesNotWait() throws Exception {
+		long cookie = data.lockRecord(2);
+		assertEquals(0, data.tryLockRecord(2));
+		data.unlock(2, cookie);
+		cookie = data.tryLockRecord(2);
+		assertTrue(cookie != 0);
+		data.unlock(2, cookie);
+	}
+
+	/**
+	 * Timed lock of record that stays locked returns <code>0</code> not before
+	 * the timeout.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test(timeout = 10000)
+	public void timedLockGivesUp() throws Exception {
+		long cookie = data.lockRecord(2);
+		long start = System.nanoTime();
+		assertEquals(0, data.lockRecord(2, 200));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+				.toNanos(200));
+		data.unlock(2, cookie);
+	}
+
+	/**
+	 * Timed lock gets the record unlocked by other client while waiting.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test(timeout = 10000)
+	public void timedLockGetsUnlockedRecord() throws Exception {
+		final long cookie = data.lockRecord(2);
+		Thread unlocker = new Thread() {
+			/**
+			 * Overrides method run of java.lang.Thread to unlock the record later
+			 */
+			public void run() {
+				try {
+					Thread.sleep(100);
+					data.unlock(2, cookie);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		unlocker.start();
+		long handed = data.lockRecord(2, 5000);
+		assertTrue(handed != 0);
+		unlocker.join();
+		data.unlock(2, handed);
+	}
+
+	/**
+	 * Timed lock of missing record is refused, and negative timeout is refused.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test
+	public void refusesInvalidArguments() throws Exception {
+		try {
+			data.lockRecord(-1, 100);
+			throw new AssertionError("missing record is locked");
+		} catch (RecordNotFoundException e) {
+			// expected
+		}
+		try {
+			data.tryLockRecord(100000);
+			throw new AssertionError("missing record is locked");
+		} catch (RecordNotFoundException e) {
+			// expected
+		}
+		try {
+			data.lockRecord(2, -1);
+			throw new AssertionError("negative timeout is accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Locks taken by try and by timed lock are auto-unlocked after lock timeout
+	 * and the listeners are notified, so other clients get the records.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test(timeout = 10000)
+	public void autoUnlocksTimedLocks() throws Exception {
+		DataAU au = new DataAU(DatabaseFiles.copyTemplate(folder).getPath(),
+				LOCK_TIMEOUT);
+		try {
+			final CountDownLatch unlocked = new CountDownLatch(2);
+			final long[] cookies = new long[2];
+			au.addAutoUnlockListener(new AutoUnlockListener() {
+				/**
+				 * Overrides method of AutoUnlockListener to count released locks
+				 */
+				public void autoUnlocked(long recNo, long cookie) {
+					if (cookies[(int) recNo - 2] == cookie)
+						unlocked.countDown();
+				}
+			});
+			cookies[0] = au.tryLockRecord(2);
+			cookies[1] = au.lockRecord(3, 1000);
+			assertTrue(cookies[0] != 0 && cookies[1] != 0);
+			assertTrue(unlocked.await(5, TimeUnit.SECONDS));
+			long cookie = au.lockRecord(2, 1000);
+			assertTrue(cookie != 0);
+			au.unlock(2, cookie);
+			cookie = au.tryLockRecord(3);
+			assertTrue(cookie != 0);
+			au.unlock(3, cookie);
+		} finally {
+			au.finalize();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks {@link Data#updateRecordIfVersion(long, String[], long)} and versions
+ * of {@link RecordSlots}: record is updated only with its current version and
+ * only while no other client holds its lock, and each change of slot,
+ * including deleting and reusing, gives the record a new version.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class VersionedUpdateTest {
+	/**
+	 * owner written by the tests
+	 */
+	private final static String OWNER = "12345678";
+
+	/**
+	 * folder of database file, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * database of the test
+	 */
+	private Data data;
+
+	/**
+	 * Opens copy of the template database file.
+	 * 
+	 * @throws IOException
+	 *          on copying or opening error
+	 */
+	@Before
+	public void setUp() throws IOException {
+		data = new Data(DatabaseFiles.copyTemplate(folder).getPath());
+	}
+
+	/**
+	 * Closes database.
+	 */
+	@After
+	public void tearDown() {
+		data.finalize();
+	}
+
+	/**
+	 * Update with the current version changes record and returns its new
+	 * version, update with the old version returns <code>0</code> and does not
+	 * change record.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test
+	public void updatesCurrentVersionOnly() throws Exception {
+		VersionedRecord record = data.readVersionedRecord(0);
+		String[] fields = withOwner(record.getData(), OWNER);
+		long version = data.updateRecordIfVersion(0, fields, record.getVersion());
+		assertTrue(version != 0 && version != record.getVersion());
+		assertEquals(version, data.readVersionedRecord(0).getVersion());
+		assertArrayEquals(fields, data.readRecord(0));
+
+		String[] stale = withOwner(record.getData(), "87654321");
+		assertEquals(0, data.updateRecordIfVersion(0, stale, record.getVersion()));
+		assertArrayEquals(fields, data.readRecord(0));
+		assertEquals(version, data.readVersionedRecord(0).getVersion());
+	}
+
+	/**
+	 * Record locked by other client is not updated even with its current
+	 * version, and the lock of that client stays usable.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test(timeout = 10000)
+	public void lockedRecordIsNotUpdated() throws Exception {
+		VersionedRecord record = data.readVersionedRecord(2);
+		long cookie = data.lockRecord(2);
+		assertEquals(0, data.updateRecordIfVersion(2, withOwner(record.getData(),
+				OWNER), record.getVersion()));
+		assertArrayEquals(record.getData(), data.readRecord(2));
+		assertEquals(record.getVersion(), data.readVersionedRecord(2).getVersion());
+		data.unlock(2, cookie);
+		assertTrue(data.updateRecordIfVersion(2, withOwner(record.getData(),
+				OWNER), record.getVersion()) != 0);
+	}
+
+	/**
+	 * Record created in the slot of deleted record has a new version, so the
+	 * version read before deleting does not update the new record.
+	 * 
+	 * @throws Exception
+	 *          on database error
+	 */
+	@Test
+	public void reusedSlotGetsNewVersion() throws Exception {
+		VersionedRecord record = data.readVersionedRecord(1);
+		long cookie = data.lockRecord(1);
+		data.deleteRecord(1, cookie);
+		data.unlock(1, cookie);
+		try {
+			data.updateRecordIfVersion(1, record.getData(), record.getVersion());
+			throw new AssertionError("deleted record is updated");
+		} catch (RecordNotFoundException e) {
+			// expected
+		}
+		assertEquals(1, data.createRecord(record.getData()));
+		long version = data.readVersionedRecord(1).getVersion();
+		assertTrue(version != record.getVersion());
+		assertEquals(0, data.updateRecordIfVersion(1, withOwner(record.getData(),
+				OWNER), record.getVersion()));
+		assertTrue(data.updateRecordIfVersion(1, withOwner(record.getData(),
+				OWNER), version) != 0);
+	}
+
+	/**
+	 * Each touch of slot changes version, versions of different slots are
+	 * independent, and slot forgotten by truncation keeps its version, so the
+	 * record created there later has a new one.
+	 */
+	@Test
+	public void slotVersionsChangeOnEachTouch() {
+		RecordSlots slots = new RecordSlots();
+		long initial = slots.getVersion(40);
+		assertEquals(initial, slots.getVersion(3));
+		assertTrue(initial != 0);
+		slots.addValid(3);
+		long created = slots.getVersion(3);
+		assertTrue(created != initial);
+		slots.touch(3);
+		long updated = slots.getVersion(3);
+		assertTrue(updated != created);
+		assertEquals(initial, slots.getVersion(40));
+
+		slots.addFree(3);
+		long deleted = slots.getVersion(3);
+		assertTrue(deleted != updated && deleted != created);
+		slots.truncate(3);
+		assertEquals(-1, slots.peekFree());
+		assertEquals(deleted, slots.getVersion(3));
+		slots.addValid(3);
+		assertTrue(slots.getVersion(3) != deleted
+				&& slots.getVersion(3) != created);
+	}
+
+	/**
+	 * Returns copy of record fields with the owner replaced.
+	 * 
+	 * @param fields
+	 *         fields of record
+	 * @param owner
+	 *         new owner
+	 * @return copy of fields
+	 */
+	private static String[] withOwner(String[] fields, String owner) {
+		String[] copy = fields.clone();
+		copy[ExtendedDBAccess.OWNER_FIELD] = owner;
+		return copy;
+	}
+}
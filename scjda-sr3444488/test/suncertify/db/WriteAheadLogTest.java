@@ -0,0 +1,286 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that {@link WriteAheadLog} recovers database file from the log left
+ * by a crash: complete entries are applied in order, and the recovery stops at
+ * the first entry that is cut off or damaged, so no part of such entry is
+ * written to database file.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class WriteAheadLogTest {
+	/**
+	 * length of entry without the bytes of change: position, amount of bytes
+	 * and checksum
+	 */
+	private final static int ENTRY_OVERHEAD = 8 + 4 + 4;
+	/**
+	 * length of database file the changes are applied to
+	 */
+	private final static int DATABASE_LENGTH = 64;
+	/**
+	 * byte database file is filled with before recovery
+	 */
+	private final static byte FILLER = '.';
+	/**
+	 * positions of logged changes in database file
+	 */
+	private final static long[] POSITIONS = { 0, 10, 0 };
+	/**
+	 * bytes of logged changes, the last one overwrites the first one
+	 */
+	private final static byte[][] CHANGES = { bytes("aaaa"), bytes("bbbbbb"),
+			bytes("cccc") };
+
+	/**
+	 * folder of database and log files, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * bytes of log file with all of the changes, as they are left by crash
+	 */
+	private byte[] logged;
+
+	/**
+	 * Appends the changes to the log and takes the log file before it is
+	 * truncated by closing.
+	 * 
+	 * @throws IOException
+	 *          on file error
+	 */
+	@Before
+	public void setUp() throws IOException {
+		File database = createDatabase();
+		File logFile = folder.newFile();
+		RecordStore store = new FileRecordStore(database);
+		WriteAheadLog wal = new WriteAheadLog(logFile, store, new Runnable() {
+			public void run() {
+			}
+		});
+		long sequence = 0;
+		for (int i = 0; i < CHANGES.length; i++) {
+			sequence = wal.append(POSITIONS[i], CHANGES[i]);
+		}
+		wal.awaitDurable(sequence);
+		logged = readFile(logFile);
+		wal.close();
+		store.close();
+		assertEquals(CHANGES.length * ENTRY_OVERHEAD + 4 + 6 + 4, logged.length);
+	}
+
+	/**
+	 * All of the complete entries are applied in order of appending, and the
+	 * log is truncated after recovery.
+	 * 
+	 * @throws IOException
+	 *          on file error
+	 */
+	@Test
+	public void appliesCompleteEntries() throws IOException {
+		assertRecovered(logged, 3, expected(3));
+		assertRecovered(new byte[0], 0, expected(0));
+	}
+
+	/**
+	 * Log cut off at any byte of the last entry gives the database of the
+	 * preceding entries.
+	 * 
+	 * @throws IOException
+	 *          on file error
+	 */
+	@Test
+	public void ignoresTruncatedTail() throws IOException {
+		int lastStart = entryStart(2);
+		for (int length = lastStart; length < logged.length; length++) {
+			assertRecovered(Arrays.copyOf(logged, length), 2, expected(2));
+		}
+		for (int length = 0; length < entryStart(1); length++) {
+			assertRecovered(Arrays.copyOf(logged, length), 0, expected(0));
+		}
+	}
+
+	/**
+	 * Last entry with any damaged byte, including garbage written after the
+	 * last complete entry, is not applied.
+	 * 
+	 * @throws IOException
+	 *          on file error
+	 */
+	@Test
+	public void ignoresTornTail() throws IOException {
+		for (int i = entryStart(2); i < logged.length; i++) {
+			byte[] torn = logged.clone();
+			torn[i] ^= 0x5A;
+			assertRecovered(torn, 2, expected(2));
+		}
+		byte[] garbage = Arrays.copyOf(logged, logged.length + ENTRY_OVERHEAD);
+		Arrays.fill(garbage, logged.length, garbage.length, (byte) 0x7F);
+		assertRecovered(garbage, 3, expected(3));
+	}
+
+	/**
+	 * Recovery stops at damaged entry, so the later entries are not applied
+	 * even if they are complete.
+	 * 
+	 * @throws IOException
+	 *          on file error
+	 */
+	@Test
+	public void stopsAtDamagedEntry() throws IOException {
+		byte[] torn = logged.clone();
+		torn[entryStart(1) + 12] = 'x';
+		assertRecovered(torn, 1, expected(1));
+	}
+
+	/**
+	 * Writes the log file, recovers new database file from it and checks the
+	 * database file and the log.
+	 * 
+	 * @param log
+	 *         bytes of log file
+	 * @param count
+	 *         expected amount of applied entries
+	 * @param database
+	 *         expected bytes of database file
+	 * @throws IOException
+	 *          on file error
+	 */
+	private void assertRecovered(byte[] log, int count, byte[] database)
+			throws IOException {
+		File databaseFile = createDatabase();
+		File logFile = folder.newFile();
+		writeFile(logFile, log);
+		RecordStore store = new FileRecordStore(databaseFile);
+		WriteAheadLog wal = new WriteAheadLog(logFile, store, new Runnable() {
+			public void run() {
+			}
+		});
+		try {
+			assertEquals("entries applied from log of " + log.length + " bytes",
+					count, wal.recover());
+			assertEquals(0, logFile.length());
+		} finally {
+			wal.close();
+			store.close();
+		}
+		assertArrayEquals("database recovered from log of " + log.length
+				+ " bytes", database, readFile(databaseFile));
+	}
+
+	/**
+	 * Returns bytes of database file after the first changes are applied.
+	 * 
+	 * @param count
+	 *         amount of applied changes
+	 * @return bytes of database file
+	 */
+	private static byte[] expected(int count) {
+		byte[] database = new byte[DATABASE_LENGTH];
+		Arrays.fill(database, FILLER);
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(CHANGES[i], 0, database, (int) POSITIONS[i],
+					CHANGES[i].length);
+		}
+		return database;
+	}
+
+	/**
+	 * Returns position of entry in log file.
+	 * 
+	 * @param index
+	 *         index of entry
+	 * @return position of the first byte of entry
+	 */
+	private static int entryStart(int index) {
+		int start = 0;
+		for (int i = 0; i < index; i++) {
+			start += ENTRY_OVERHEAD + CHANGES[i].length;
+		}
+		return start;
+	}
+
+	/**
+	 * Creates database file filled with <code>FILLER</code>.
+	 * 
+	 * @return database file
+	 * @throws IOException
+	 *          on file error
+	 */
+	private File createDatabase() throws IOException {
+		File database = folder.newFile();
+		byte[] bytes = new byte[DATABASE_LENGTH];
+		Arrays.fill(bytes, FILLER);
+		writeFile(database, bytes);
+		return database;
+	}
+
+	/**
+	 * Reads all bytes of file.
+	 * 
+	 * @param file
+	 *         file to read
+	 * @return bytes of file
+	 * @throws IOException
+	 *          on reading error
+	 */
+	private static byte[] readFile(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			byte[] bytes = new byte[(int) raf.length()];
+			raf.readFully(bytes);
+			return bytes;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Replaces content of file.
+	 * 
+	 * @param file
+	 *         file to write
+	 * @param bytes
+	 *         new content of file
+	 * @throws IOException
+	 *          on writing error
+	 */
+	private static void writeFile(File file, byte[] bytes) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.write(bytes);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns US-ASCII bytes of string.
+	 * 
+	 * @param s
+	 *         string of ASCII characters
+	 * @return bytes of string
+	 */
+	private static byte[] bytes(String s) {
+		byte[] bytes = new byte[s.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) s.charAt(i);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,262 @@
+package suncertify.sockets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import suncertify.db.DuplicateKeyException;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SecurityException;
+
+/**
+ * Checks that messages of binary protocol come back from
+ * {@link BinaryCodec} the same as they were encoded, with and without request
+ * identifiers, and that broken frames are refused.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class BinaryCodecTest {
+	/**
+	 * record that is written as fixed-width ASCII fields
+	 */
+	private final static String[] RECORD = { "Buonarotti & Company",
+			"Smallville", "Air Conditioning, Painting", "10", "$40.00", "" };
+	/**
+	 * record fields that are written as length-prefixed strings
+	 */
+	private final static String[] VARIABLE = { "Buonarotti ", null, "",
+			"\u041f\u0430\u043b\u0430\u0441", "$40.00", "12345678" };
+
+	/**
+	 * Every command keeps its opcode and every kind of request data comes back.
+	 * 
+	 * @throws IOException
+	 *          on codec error
+	 */
+	@Test
+	public void requestsRoundTrip() throws IOException {
+		for (boolean identified : new boolean[] { false, true }) {
+			for (SocketCommand command : SocketCommand.values()) {
+				RequestCommand request = new RequestCommand(command);
+				request.setLong(Long.MAX_VALUE);
+				request.setId(identified ? command.ordinal() + 1000 : 0);
+				RequestCommand copy = roundTrip(request, identified);
+				assertSame(command, copy.getCommand());
+				assertEquals(Long.MAX_VALUE, copy.getLong());
+				assertEquals(identified ? command.ordinal() + 1000 : 0, copy
+						.getId());
+			}
+			RequestCommand request = new RequestCommand(SocketCommand.DELETE);
+			request.setArray(new long[] { 0, -1, Long.MIN_VALUE });
+			assertArrayEquals(new long[] { 0, -1, Long.MIN_VALUE }, roundTrip(
+					request, identified).getLongArray());
+
+			request = new RequestCommand(SocketCommand.ADD);
+			request.setArray(fixedWidth());
+			assertArrayEquals(fixedWidth(), roundTrip(request, identified)
+					.getStringArray());
+
+			request = new RequestCommand(SocketCommand.FIND);
+			request.setArray(VARIABLE);
+			assertArrayEquals(VARIABLE, roundTrip(request, identified)
+					.getStringArray());
+
+			request = new RequestCommand(SocketCommand.MODIFY);
+			request.setArray(new Object[] { new long[] { 7, 42 }, fixedWidth() });
+			RequestCommand copy = roundTrip(request, identified);
+			assertArrayEquals(new long[] { 7, 42 }, copy.getLongArray());
+			assertArrayEquals(fixedWidth(), copy.getStringArray());
+
+			request = new RequestCommand(SocketCommand.UNSPECIFIED);
+			assertNull(roundTrip(request, identified).getData());
+		}
+	}
+
+	/**
+	 * Every kind of response data comes back, records keep their order.
+	 * 
+	 * @throws IOException
+	 *          on codec error
+	 */
+	@Test
+	public void responsesRoundTrip() throws IOException {
+		for (boolean identified : new boolean[] { false, true }) {
+			assertEquals(-5L, roundTrip(response(-5L, identified), identified)
+					.getLong());
+			assertArrayEquals(new long[0], roundTrip(
+					response(new long[0], identified), identified).getLongArray());
+			assertArrayEquals(VARIABLE, roundTrip(response(VARIABLE, identified),
+					identified).getStringArray());
+
+			Map<Long, String[]> records = new LinkedHashMap<Long, String[]>();
+			for (long recNo = 30; recNo > 0; recNo -= 3) {
+				records.put(recNo, recNo % 2 == 0 ? fixedWidth() : VARIABLE);
+			}
+			Map<Long, String[]> copy = roundTrip(response(records, identified),
+					identified).getRecords();
+			assertEquals(new ArrayList<Long>(records.keySet()),
+					new ArrayList<Long>(copy.keySet()));
+			for (Long recNo : records.keySet()) {
+				assertArrayEquals(records.get(recNo), copy.get(recNo));
+			}
+		}
+	}
+
+	/**
+	 * Exceptions of database and standard exceptions thrown by server keep
+	 * their classes and messages, other exceptions come back as runtime
+	 * exceptions with class name in the message.
+	 * 
+	 * @throws IOException
+	 *          on codec error
+	 */
+	@Test
+	public void exceptionsRoundTrip() throws IOException {
+		List<Exception> exceptions = Arrays.asList(new RecordNotFoundException(
+				"record 5 is deleted"), new SecurityException("invalid cookie"),
+				new DuplicateKeyException("duplicate"), new RecordNotFoundException(),
+				new IllegalArgumentException("timeout must be not negative"),
+				new IllegalStateException("broken"),
+				new IllegalStateException("java.lang.IllegalStateException"),
+				new UnsupportedOperationException(), new NullPointerException(),
+				new ClassCastException("java.lang.String: x"),
+				new IndexOutOfBoundsException("1"));
+		for (Exception e : exceptions) {
+			for (boolean identified : new boolean[] { true, false }) {
+				Exception copy = roundTrip(response(e, identified), identified)
+						.getException();
+				assertSame(e.getClass(), copy.getClass());
+				assertEquals(e.getMessage(), copy.getMessage());
+			}
+		}
+		Exception copy = roundTrip(
+				response(new NumberFormatException("broken"), false), false)
+				.getException();
+		assertSame(RuntimeException.class, copy.getClass());
+		assertEquals("java.lang.NumberFormatException: broken", copy.getMessage());
+	}
+
+	/**
+	 * Command without result is an empty response, which keeps identifier of
+	 * request in identified protocol.
+	 * 
+	 * @throws IOException
+	 *          on codec error
+	 */
+	@Test
+	public void emptyResponses() throws IOException {
+		assertNull(BinaryCodec.decode(BinaryCodec.encode(null, false), false));
+		ResponseResult empty = ResponseResult.empty();
+		empty.setId(77);
+		ResponseResult copy = roundTrip(empty, true);
+		assertEquals(77, copy.getId());
+		assertNull(copy.getData());
+	}
+
+	/**
+	 * Truncated frames, frames with extra bytes and unknown opcodes are
+	 * refused.
+	 * 
+	 * @throws IOException
+	 *          on codec error
+	 */
+	@Test
+	public void brokenFramesAreRefused() throws IOException {
+		RequestCommand request = new RequestCommand(SocketCommand.MODIFY);
+		request.setArray(new Object[] { new long[] { 7, 42 }, VARIABLE });
+		byte[] frame = BinaryCodec.encode(request, true);
+		for (int length = 0; length < frame.length; length++) {
+			assertRefused(Arrays.copyOf(frame, length));
+		}
+		assertRefused(Arrays.copyOf(frame, frame.length + 1));
+		byte[] unknown = BinaryCodec.encode(new RequestCommand(
+				SocketCommand.READ), false);
+		unknown[1] = (byte) SocketCommand.values().length;
+		assertRefused(unknown);
+	}
+
+	/**
+	 * Returns record fields written as fixed-width ASCII fields.
+	 * 
+	 * @return fields of record
+	 */
+	private static String[] fixedWidth() {
+		return RECORD.clone();
+	}
+
+	/**
+	 * Creates response with specified data and identifier.
+	 * 
+	 * @param data
+	 *         transferred data
+	 * @param identified
+	 *         <code>true</code> if response is identified
+	 * @return response
+	 */
+	private static ResponseResult response(Object data, boolean identified) {
+		ResponseResult response = new ResponseResult(data);
+		response.setId(identified ? 12345 : 0);
+		return response;
+	}
+
+	/**
+	 * Encodes request and decodes it back.
+	 * 
+	 * @param request
+	 *         request to encode
+	 * @param identified
+	 *         <code>true</code> if protocol identifies messages
+	 * @return decoded request
+	 * @throws IOException
+	 *          on codec error
+	 */
+	private static RequestCommand roundTrip(RequestCommand request,
+			boolean identified) throws IOException {
+		return (RequestCommand) BinaryCodec.decode(BinaryCodec.encode(request,
+				identified), identified);
+	}
+
+	/**
+	 * Encodes response and decodes it back, checks identifier of response.
+	 * 
+	 * @param response
+	 *         response to encode
+	 * @param identified
+	 *         <code>true</code> if protocol identifies messages
+	 * @return decoded response
+	 * @throws IOException
+	 *          on codec error
+	 */
+	private static ResponseResult roundTrip(ResponseResult response,
+			boolean identified) throws IOException {
+		ResponseResult copy = (ResponseResult) BinaryCodec.decode(BinaryCodec
+				.encode(response, identified), identified);
+		assertEquals(response.getId(), copy.getId());
+		return copy;
+	}
+
+	/**
+	 * Checks that frame is refused by decoder.
+	 * 
+	 * @param frame
+	 *         broken frame
+	 */
+	private static void assertRefused(byte[] frame) {
+		try {
+			BinaryCodec.decode(frame, true);
+			fail("broken frame of " + frame.length + " bytes is decoded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
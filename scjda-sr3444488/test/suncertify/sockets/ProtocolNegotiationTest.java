@@ -0,0 +1,420 @@
+package suncertify.sockets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suncertify.db.Data;
+
+/**
+ * Checks that clients of older protocol versions work with the current
+ * server in the threaded and selector modes: clients of the first release
+ * that exchange serialized objects without handshake, clients of framed
+ * protocol version 1, current clients of version
+ * {@link Protocol#VERSION_TIMED_LOCK} and clients of future versions, which
+ * get the highest version supported by server.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class ProtocolNegotiationTest {
+	/**
+	 * modes the server is checked in
+	 */
+	private final static ServerMode[] MODES = { ServerMode.THREADED,
+			ServerMode.SELECTOR };
+	/**
+	 * socket timeout of server in milliseconds, server is stopped in this time
+	 */
+	private final static int SERVER_TIMEOUT = 500;
+	/**
+	 * socket timeout of clients in milliseconds
+	 */
+	private final static int SO_TIMEOUT = 5000;
+
+	/**
+	 * folder of database file, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * database served to clients
+	 */
+	private Data data;
+	/**
+	 * running server, <code>null</code> between checks
+	 */
+	private RecordSocketServer server;
+
+	/**
+	 * Opens copy of the template database file.
+	 * 
+	 * @throws IOException
+	 *          on copying or opening error
+	 */
+	@Before
+	public void setUp() throws IOException {
+		File template = new File(System.getProperty("test.database", "db-2x3.db"));
+		File file = folder.newFile("db.db");
+		copy(template, file);
+		data = new Data(file.getPath());
+	}
+
+	/**
+	 * Stops server left running by failed check.
+	 */
+	@After
+	public void tearDown() {
+		stopServer();
+	}
+
+	/**
+	 * Server chooses the highest version supported by both sides, and refuses
+	 * versions that are not valid.
+	 */
+	@Test
+	public void negotiatesHighestCommonVersion() {
+		assertEquals(Protocol.VERSION_SERIALIZED, Protocol
+				.negotiate(Protocol.VERSION_SERIALIZED));
+		assertEquals(Protocol.VERSION_BINARY, Protocol
+				.negotiate(Protocol.VERSION_BINARY));
+		assertEquals(Protocol.VERSION_TIMED_LOCK, Protocol
+				.negotiate(Protocol.VERSION_TIMED_LOCK));
+		assertEquals(Protocol.CURRENT_VERSION, Protocol.negotiate((byte) 100));
+		assertEquals(0, Protocol.negotiate((byte) 0));
+		assertEquals(0, Protocol.negotiate((byte) -1));
+	}
+
+	/**
+	 * Client of the first release sends serialized objects without handshake
+	 * and gets serialized responses, <code>null</code> for commands without
+	 * result.
+	 * 
+	 * @throws Exception
+	 *          on network or database error
+	 */
+	@Test(timeout = 30000)
+	public void serializedClientWithoutHandshake() throws Exception {
+		for (ServerMode mode : MODES) {
+			int port = startServer(mode);
+			Socket socket = connect(port);
+			try {
+				ObjectOutputStream out = new ObjectOutputStream(socket
+						.getOutputStream());
+				out.flush();
+				ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+				out.writeObject(read(1));
+				out.flush();
+				ResponseResult response = (ResponseResult) in.readObject();
+				assertArrayEquals(mode.name(), data.readRecord(1), response
+						.getStringArray());
+
+				out.writeObject(lock(1));
+				out.flush();
+				long cookie = ((ResponseResult) in.readObject()).getLong();
+				assertTrue(mode.name(), cookie != 0);
+				out.writeObject(unlock(1, cookie));
+				out.flush();
+				assertNull(mode.name(), in.readObject());
+			} finally {
+				socket.close();
+			}
+			stopServer();
+		}
+	}
+
+	/**
+	 * Client of framed protocol version 1 gets version 1 and exchanges frames of
+	 * serialized objects.
+	 * 
+	 * @throws Exception
+	 *          on network or database error
+	 */
+	@Test(timeout = 30000)
+	public void framedClientOfFirstVersion() throws Exception {
+		for (ServerMode mode : MODES) {
+			int port = startServer(mode);
+			Socket socket = connect(port);
+			try {
+				DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				assertEquals(mode.name(), Protocol.VERSION_SERIALIZED, handshake(in,
+						out, Protocol.VERSION_SERIALIZED));
+				for (long recNo = 0; recNo < 3; recNo++) {
+					writeFrame(out, Protocol.serialize(read(recNo)));
+					ResponseResult response = (ResponseResult) Protocol
+							.deserialize(readFrame(in));
+					assertArrayEquals(mode.name(), data.readRecord(recNo), response
+							.getStringArray());
+				}
+				RequestCommand find = new RequestCommand(SocketCommand.FIND);
+				find.setArray(new String[] { "", "", "", "", "", "" });
+				writeFrame(out, Protocol.serialize(find));
+				ResponseResult response = (ResponseResult) Protocol
+						.deserialize(readFrame(in));
+				assertArrayEquals(mode.name(), data.findByCriteria(new String[] { "",
+						"", "", "", "", "" }), response.getLongArray());
+			} finally {
+				socket.close();
+			}
+			stopServer();
+		}
+	}
+
+	/**
+	 * Client of future version gets the current version, client of version 0
+	 * is answered with version 0 and disconnected.
+	 * 
+	 * @throws Exception
+	 *          on network error
+	 */
+	@Test(timeout = 30000)
+	public void futureAndInvalidVersions() throws Exception {
+		for (ServerMode mode : MODES) {
+			int port = startServer(mode);
+			Socket socket = connect(port);
+			try {
+				DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				assertEquals(mode.name(), Protocol.CURRENT_VERSION, handshake(in, out,
+						(byte) (Protocol.CURRENT_VERSION + 5)));
+				writeFrame(out, Protocol.encode(read(2), Protocol.CURRENT_VERSION));
+				ResponseResult response = (ResponseResult) Protocol.decode(
+						readFrame(in), Protocol.CURRENT_VERSION);
+				assertArrayEquals(mode.name(), data.readRecord(2), response
+						.getStringArray());
+			} finally {
+				socket.close();
+			}
+
+			socket = connect(port);
+			try {
+				DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				assertEquals(mode.name(), 0, handshake(in, out, (byte) 0));
+				assertEquals(mode.name(), -1, in.read());
+			} finally {
+				socket.close();
+			}
+			stopServer();
+		}
+	}
+
+	/**
+	 * Current client negotiates version {@link Protocol#VERSION_TIMED_LOCK} and
+	 * uses timed locks.
+	 * 
+	 * @throws Exception
+	 *          on network or database error
+	 */
+	@Test(timeout = 30000)
+	public void currentClientUsesTimedLocks() throws Exception {
+		for (ServerMode mode : MODES) {
+			int port = startServer(mode);
+			RecordSocketClient owner = new RecordSocketClient("localhost", port);
+			RecordSocketClient other = new RecordSocketClient("localhost", port);
+			try {
+				long cookie = owner.lockRecord(3, 1000);
+				assertTrue(mode.name(), cookie != 0);
+				assertEquals(mode.name(), 0, other.tryLockRecord(3));
+				assertEquals(mode.name(), 0, other.lockRecord(3, 100));
+				owner.unlock(3, cookie);
+				long handed = other.lockRecord(3, 1000);
+				assertTrue(mode.name(), handed != 0);
+				other.unlock(3, handed);
+			} finally {
+				owner.finalize();
+				other.finalize();
+			}
+			stopServer();
+		}
+	}
+
+	/**
+	 * Starts server on a free port in specified mode.
+	 * 
+	 * @param mode
+	 *         mode of handling client connections
+	 * @return port of server
+	 * @throws IOException
+	 *          on server starting error
+	 */
+	private int startServer(ServerMode mode) throws IOException {
+		ServerSocket probe = new ServerSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		server = new RecordSocketServer(data, port, SERVER_TIMEOUT, mode);
+		server.start();
+		return port;
+	}
+
+	/**
+	 * Stops running server.
+	 */
+	private void stopServer() {
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+	}
+
+	/**
+	 * Connects to the server.
+	 * 
+	 * @param port
+	 *         port of server
+	 * @return connected socket
+	 * @throws IOException
+	 *          on connecting error
+	 */
+	private static Socket connect(int port) throws IOException {
+		Socket socket = new Socket("localhost", port);
+		socket.setSoTimeout(SO_TIMEOUT);
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+
+	/**
+	 * Performs handshake of framed protocol.
+	 * 
+	 * @param in
+	 *         input stream of connection
+	 * @param out
+	 *         output stream of connection
+	 * @param version
+	 *         the highest version of client
+	 * @return version chosen by server
+	 * @throws IOException
+	 *          on network error
+	 */
+	private static byte handshake(DataInputStream in, DataOutputStream out,
+			byte version) throws IOException {
+		out.writeInt(Protocol.MAGIC);
+		out.writeByte(version);
+		out.flush();
+		assertEquals(Protocol.MAGIC, in.readInt());
+		return in.readByte();
+	}
+
+	/**
+	 * Writes message frame.
+	 * 
+	 * @param out
+	 *         output stream of connection
+	 * @param frame
+	 *         bytes of message
+	 * @throws IOException
+	 *          on network error
+	 */
+	private static void writeFrame(DataOutputStream out, byte[] frame)
+			throws IOException {
+		out.writeInt(frame.length);
+		out.write(frame);
+		out.flush();
+	}
+
+	/**
+	 * Reads message frame.
+	 * 
+	 * @param in
+	 *         input stream of connection
+	 * @return bytes of message
+	 * @throws IOException
+	 *          on network error
+	 */
+	private static byte[] readFrame(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		Protocol.checkFrameLength(length);
+		byte[] frame = new byte[length];
+		in.readFully(frame);
+		return frame;
+	}
+
+	/**
+	 * Creates request of reading record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return request
+	 */
+	private static RequestCommand read(long recNo) {
+		RequestCommand request = new RequestCommand(SocketCommand.READ);
+		request.setLong(recNo);
+		return request;
+	}
+
+	/**
+	 * Creates request of locking record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @return request
+	 */
+	private static RequestCommand lock(long recNo) {
+		RequestCommand request = new RequestCommand(SocketCommand.LOCK);
+		request.setLong(recNo);
+		return request;
+	}
+
+	/**
+	 * Creates request of unlocking record.
+	 * 
+	 * @param recNo
+	 *         record number
+	 * @param cookie
+	 *         locking descriptor
+	 * @return request
+	 */
+	private static RequestCommand unlock(long recNo, long cookie) {
+		RequestCommand request = new RequestCommand(SocketCommand.UNLOCK);
+		request.setArray(new long[] { recNo, cookie });
+		return request;
+	}
+
+	/**
+	 * Copies file.
+	 * 
+	 * @param from
+	 *         source file
+	 * @param to
+	 *         target file
+	 * @throws IOException
+	 *          on reading or writing error
+	 */
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					out.write(buf, 0, n);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package suncertify.sockets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suncertify.db.Data;
+import suncertify.db.DatabaseFiles;
+
+/**
+ * Checks that the selector server answers malformed requests with an error
+ * and keeps answering the next requests of the same connection.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class SelectorServerTest {
+	/**
+	 * socket timeout of clients in milliseconds
+	 */
+	private final static int SO_TIMEOUT = 5000;
+
+	/**
+	 * folder of database file, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * database served to clients
+	 */
+	private Data data;
+	/**
+	 * running server
+	 */
+	private RecordSocketServer server;
+	/**
+	 * port of server
+	 */
+	private int port;
+
+	/**
+	 * Opens copy of the template database file and starts server.
+	 * 
+	 * @throws IOException
+	 *          on copying, opening or starting error
+	 */
+	@Before
+	public void setUp() throws IOException {
+		data = new Data(DatabaseFiles.copyTemplate(folder).getPath());
+		ServerSocket probe = new ServerSocket(0);
+		port = probe.getLocalPort();
+		probe.close();
+		server = new RecordSocketServer(data, port, SO_TIMEOUT,
+				ServerMode.SELECTOR);
+		server.start();
+	}
+
+	/**
+	 * Stops server.
+	 */
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	/**
+	 * Lock requests without record number or time to wait get errors, and the
+	 * connection gets the response to the next request.
+	 * 
+	 * @throws Exception
+	 *          on network or database error
+	 */
+	@Test(timeout = 30000)
+	public void malformedLockRequestsGetErrors() throws Exception {
+		Socket socket = new Socket("localhost", port);
+		socket.setSoTimeout(SO_TIMEOUT);
+		try {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			out.writeInt(Protocol.MAGIC);
+			out.writeByte(Protocol.CURRENT_VERSION);
+			out.flush();
+			assertEquals(Protocol.MAGIC, in.readInt());
+			assertEquals(Protocol.CURRENT_VERSION, in.readByte());
+
+			RequestCommand shortLock = new RequestCommand(SocketCommand.TIMED_LOCK);
+			shortLock.setArray(new long[] { 4 });
+			RequestCommand emptyLock = new RequestCommand(SocketCommand.TIMED_LOCK);
+			RequestCommand emptyPlainLock = new RequestCommand(SocketCommand.LOCK);
+			int id = 0;
+			for (RequestCommand request : new RequestCommand[] { shortLock,
+					emptyLock, emptyPlainLock }) {
+				request.setId(++id);
+				ResponseResult response = exchange(in, out, request);
+				assertEquals(id, response.getId());
+				assertTrue("request " + id, response.isException());
+			}
+
+			RequestCommand read = new RequestCommand(SocketCommand.READ);
+			read.setLong(4);
+			read.setId(++id);
+			ResponseResult response = exchange(in, out, read);
+			assertEquals(id, response.getId());
+			assertArrayEquals(data.readRecord(4), response.getStringArray());
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Sends request and reads response of the current protocol version.
+	 * 
+	 * @param in
+	 *         input stream of connection
+	 * @param out
+	 *         output stream of connection
+	 * @param request
+	 *         request to send
+	 * @return response
+	 * @throws IOException
+	 *          on network error
+	 */
+	private static ResponseResult exchange(DataInputStream in,
+			DataOutputStream out, RequestCommand request) throws IOException {
+		byte[] frame = Protocol.encode(request, Protocol.CURRENT_VERSION);
+		out.writeInt(frame.length);
+		out.write(frame);
+		out.flush();
+		int length = in.readInt();
+		Protocol.checkFrameLength(length);
+		frame = new byte[length];
+		in.readFully(frame);
+		return (ResponseResult) Protocol.decode(frame, Protocol.CURRENT_VERSION);
+	}
+}
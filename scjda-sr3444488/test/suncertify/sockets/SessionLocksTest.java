@@ -0,0 +1,196 @@
+package suncertify.sockets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suncertify.db.AutoUnlockListener;
+import suncertify.db.DBAccess;
+import suncertify.db.Data;
+import suncertify.db.DataAU;
+import suncertify.db.DatabaseFiles;
+
+/**
+ * Checks sessions of client connections: locks that client has not released
+ * are released when its connection closes, in every mode of server, and the
+ * lock released by auto-unlocking is forgotten by the session, so the later
+ * disconnect does not touch the record locked by other client since.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class SessionLocksTest {
+	/**
+	 * socket timeout of server in milliseconds, server is stopped in this time
+	 */
+	private final static int SERVER_TIMEOUT = 500;
+	/**
+	 * auto-unlock timeout of database in milliseconds, lock of the second
+	 * client is checked within this time
+	 */
+	private final static long LOCK_TIMEOUT = 2000;
+	/**
+	 * time in milliseconds the server is given to notice closed connection
+	 */
+	private final static long DISCONNECT_DELAY = 200;
+
+	/**
+	 * folder of database file, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * running server, <code>null</code> between checks
+	 */
+	private RecordSocketServer server;
+
+	/**
+	 * Stops server left running by failed check.
+	 */
+	@After
+	public void tearDown() {
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+	}
+
+	/**
+	 * Records locked by client are unlocked when the client disconnects without
+	 * unlocking them. Virtual mode is checked only by Java runtime that
+	 * supports virtual threads.
+	 * 
+	 * @throws Exception
+	 *          on network or database error
+	 */
+	@Test(timeout = 60000)
+	public void locksAreReleasedOnDisconnect() throws Exception {
+		for (ServerMode mode : ServerMode.values()) {
+			if (mode == ServerMode.VIRTUAL && !supportsVirtualThreads())
+				continue;
+			Data data = new Data(DatabaseFiles.copyTemplate(folder).getPath());
+			int port = startServer(data, mode);
+			RecordSocketClient client = new RecordSocketClient("localhost", port);
+			long kept = client.lockRecord(2);
+			client.lockRecord(3);
+			client.unlock(2, kept);
+			client.lockRecord(4);
+			Map<String, long[]> owners = server.getLockOwners();
+			assertEquals(mode.name(), 1, owners.size());
+			assertArrayEquals(mode.name(), new long[] { 3, 4 }, owners.values()
+					.iterator().next());
+
+			client.finalize();
+			for (long recNo : new long[] { 3, 4 }) {
+				long cookie = data.lockRecord(recNo, 10000);
+				assertTrue(mode.name() + " record " + recNo, cookie != 0);
+				data.unlock(recNo, cookie);
+			}
+			assertTrue(mode.name(), server.getLockOwners().isEmpty());
+			server.stop();
+			server = null;
+		}
+	}
+
+	/**
+	 * Lock released by auto-unlocking is removed from the session of client,
+	 * so the record locked by other client afterwards stays locked when the
+	 * first client disconnects.
+	 * 
+	 * @throws Exception
+	 *          on network or database error
+	 */
+	@Test(timeout = 60000)
+	public void autoUnlockedLockIsForgotten() throws Exception {
+		for (ServerMode mode : new ServerMode[] { ServerMode.THREADED,
+				ServerMode.SELECTOR }) {
+			DataAU data = new DataAU(DatabaseFiles.copyTemplate(folder).getPath(),
+					LOCK_TIMEOUT);
+			int port = startServer(data, mode);
+			final CountDownLatch unlocked = new CountDownLatch(1);
+			data.addAutoUnlockListener(new AutoUnlockListener() {
+				/**
+				 * Overrides method of AutoUnlockListener to wait for auto-unlocking,
+				 * listener is notified after the sessions of server
+				 */
+				public void autoUnlocked(long recNo, long cookie) {
+					unlocked.countDown();
+				}
+			});
+			RecordSocketClient first = new RecordSocketClient("localhost", port);
+			RecordSocketClient second = new RecordSocketClient("localhost", port);
+			try {
+				first.lockRecord(2);
+				assertTrue(mode.name(), unlocked.await(10, TimeUnit.SECONDS));
+				assertTrue(mode.name(), server.getLockOwners().isEmpty());
+
+				long cookie = second.lockRecord(2);
+				Map<String, long[]> owners = server.getLockOwners();
+				assertEquals(mode.name(), 1, owners.size());
+				assertArrayEquals(mode.name(), new long[] { 2 }, owners.values()
+						.iterator().next());
+
+				first.finalize();
+				first = null;
+				Thread.sleep(DISCONNECT_DELAY);
+				assertEquals(mode.name(), 0, data.tryLockRecord(2));
+				assertEquals(mode.name(), owners.keySet(), server.getLockOwners()
+						.keySet());
+				second.unlock(2, cookie);
+				assertTrue(mode.name(), server.getLockOwners().isEmpty());
+			} finally {
+				if (first != null)
+					first.finalize();
+				second.finalize();
+			}
+			server.stop();
+			server = null;
+			data.finalize();
+		}
+	}
+
+	/**
+	 * Starts server of database on a free port in specified mode.
+	 * 
+	 * @param data
+	 *         database served to clients
+	 * @param mode
+	 *         mode of handling client connections
+	 * @return port of server
+	 * @throws IOException
+	 *          on server starting error
+	 */
+	private int startServer(DBAccess data, ServerMode mode) throws IOException {
+		ServerSocket probe = new ServerSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		server = new RecordSocketServer(data, port, SERVER_TIMEOUT, mode);
+		server.start();
+		return port;
+	}
+
+	/**
+	 * Returns <code>true</code> if Java runtime supports virtual threads.
+	 * 
+	 * @return <code>true</code> if virtual threads are supported
+	 */
+	private static boolean supportsVirtualThreads() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
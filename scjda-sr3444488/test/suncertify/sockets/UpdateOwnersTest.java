@@ -0,0 +1,173 @@
+package suncertify.sockets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import suncertify.db.Data;
+import suncertify.db.DatabaseFiles;
+import suncertify.db.ExtendedDBAccess;
+
+/**
+ * Checks that batches of owner updates sent to the server for the record
+ * locked by other client do not hold the worker threads of the server: more
+ * batches than workers are answered at once, and the client that holds the
+ * record still unlocks it.
+ * 
+ * @author Petr Shilkin
+ * @version 1.0
+ */
+public class UpdateOwnersTest {
+	/**
+	 * modes the server is checked in
+	 */
+	private final static ServerMode[] MODES = { ServerMode.SELECTOR,
+			ServerMode.THREADED };
+	/**
+	 * socket timeout of server in milliseconds, server is stopped in this time
+	 */
+	private final static int SERVER_TIMEOUT = 500;
+	/**
+	 * number of the contended record
+	 */
+	private final static long RECORD = 4;
+	/**
+	 * owner written by the batches
+	 */
+	private final static String OWNER = "12345678";
+
+	/**
+	 * folder of database file, deleted after each test
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * database served to clients
+	 */
+	private Data data;
+	/**
+	 * running server, <code>null</code> between checks
+	 */
+	private RecordSocketServer server;
+
+	/**
+	 * Opens copy of the template database file.
+	 * 
+	 * @throws IOException
+	 *          on copying or opening error
+	 */
+	@Before
+	public void setUp() throws IOException {
+		data = new Data(DatabaseFiles.copyTemplate(folder).getPath());
+	}
+
+	/**
+	 * Stops server left running by failed check.
+	 */
+	@After
+	public void tearDown() {
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+	}
+
+	/**
+	 * Batches for the record held by other client are answered as busy while
+	 * the record is locked, and update the record after it is unlocked.
+	 * 
+	 * @throws Exception
+	 *          on network or database error
+	 */
+	@Test(timeout = 60000)
+	public void batchesDoNotWaitForHeldRecord() throws Exception {
+		for (ServerMode mode : MODES) {
+			int port = startServer(mode);
+			RecordSocketClient holder = new RecordSocketClient("localhost", port);
+			final RecordSocketClient[] bookers = new RecordSocketClient[SelectorServer.WORKERS + 2];
+			final int[][] results = new int[bookers.length][];
+			Thread[] threads = new Thread[bookers.length];
+			try {
+				long cookie = holder.lockRecord(RECORD);
+				for (int i = 0; i < bookers.length; i++) {
+					bookers[i] = new RecordSocketClient("localhost", port);
+					final int index = i;
+					threads[i] = new Thread() {
+						/**
+						 * Overrides method run of java.lang.Thread to book the record
+						 */
+						public void run() {
+							results[index] = bookers[index].updateOwners(
+									new long[] { RECORD }, new String[] { null },
+									new String[] { OWNER });
+						}
+					};
+					threads[i].start();
+				}
+				for (Thread t : threads) {
+					t.join();
+				}
+				for (int[] result : results) {
+					assertArrayEquals(mode.name(),
+							new int[] { ExtendedDBAccess.OWNER_BUSY }, result);
+				}
+				assertTrue(mode.name(), !OWNER.equals(owner()));
+				holder.unlock(RECORD, cookie);
+				assertArrayEquals(mode.name(),
+						new int[] { ExtendedDBAccess.OWNER_UPDATED }, bookers[0]
+								.updateOwners(new long[] { RECORD }, new String[] { null },
+										new String[] { OWNER }));
+				assertEquals(mode.name(), OWNER, owner());
+				assertArrayEquals(mode.name(),
+						new int[] { ExtendedDBAccess.OWNER_UPDATED }, bookers[0]
+								.updateOwners(new long[] { RECORD }, new String[] { OWNER },
+										new String[] { "" }));
+			} finally {
+				holder.finalize();
+				for (RecordSocketClient booker : bookers) {
+					if (booker != null)
+						booker.finalize();
+				}
+			}
+			server.stop();
+			server = null;
+		}
+	}
+
+	/**
+	 * Starts server on a free port in specified mode.
+	 * 
+	 * @param mode
+	 *         mode of handling client connections
+	 * @return port of server
+	 * @throws IOException
+	 *          on server starting error
+	 */
+	private int startServer(ServerMode mode) throws IOException {
+		ServerSocket probe = new ServerSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		server = new RecordSocketServer(data, port, SERVER_TIMEOUT, mode);
+		server.start();
+		return port;
+	}
+
+	/**
+	 * Returns trimmed owner of the contended record.
+	 * 
+	 * @return owner of record
+	 * @throws Exception
+	 *          on database error
+	 */
+	private String owner() throws Exception {
+		return data.readRecord(RECORD)[ExtendedDBAccess.OWNER_FIELD].trim();
+	}
+}